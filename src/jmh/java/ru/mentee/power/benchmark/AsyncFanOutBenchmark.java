@@ -0,0 +1,96 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.mentee.power.config.ApplicationConfig;
+import ru.mentee.power.config.ConfigFilePath;
+import ru.mentee.power.config.ResultCacheConfig;
+import ru.mentee.power.model.ResultCacheMode;
+import ru.mentee.power.model.analytics.OrderAnalytics;
+import ru.mentee.power.model.analytics.PerformanceMetrics;
+import ru.mentee.power.repository.AsyncCompositeIndexRepositoryImpl;
+import ru.mentee.power.repository.CompositeIndexRepositoryImpl;
+
+/**
+ * Десять отчетов аналитики заказов по разным месяцам подряд против одновременного запуска
+ * через асинхронный репозиторий. Пул по умолчанию держит 10 соединений, поэтому
+ * одновременный запуск должен занимать примерно время самого долгого отчета. Кэш результатов
+ * выключен.
+ *
+ * <p>Запуск: {@code gradle jmh -Pjmh.includes=AsyncFanOutBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncFanOutBenchmark {
+
+    private static final int REPORTS = 10;
+    private static final List<String> REGIONS = List.of("MOSCOW", "SPB", "KAZAN", "UFA");
+    private static final List<String> STATUSES = List.of("PENDING", "SHIPPED", "DELIVERED");
+    private static final LocalDate FIRST_MONTH = LocalDate.of(2024, 1, 1);
+
+    private ApplicationConfig config;
+    private CompositeIndexRepositoryImpl repository;
+    private AsyncCompositeIndexRepositoryImpl asyncRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Properties properties = new Properties();
+        config = new ApplicationConfig(properties, new ConfigFilePath());
+        properties.setProperty(ResultCacheConfig.DB_RESULT_CACHE_MODE,
+                ResultCacheMode.DISABLED.name());
+        repository = new CompositeIndexRepositoryImpl(config, new ObjectMapper());
+        asyncRepository = new AsyncCompositeIndexRepositoryImpl(config, repository);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        config.getAsyncQueryExecutor().close();
+        config.getConnectionProvider().close();
+    }
+
+    @Benchmark
+    public List<PerformanceMetrics<List<OrderAnalytics>>> sequential() {
+        List<PerformanceMetrics<List<OrderAnalytics>>> reports = new ArrayList<>(REPORTS);
+        for (int i = 0; i < REPORTS; i++) {
+            LocalDate start = FIRST_MONTH.plusMonths(i);
+            reports.add(repository.getOrderAnalyticsWithIndex(
+                    REGIONS, STATUSES, start, start.plusMonths(1).minusDays(1)));
+        }
+        return reports;
+    }
+
+    @Benchmark
+    public List<PerformanceMetrics<List<OrderAnalytics>>> fanOut() {
+        List<CompletableFuture<PerformanceMetrics<List<OrderAnalytics>>>> futures =
+                new ArrayList<>(REPORTS);
+        for (int i = 0; i < REPORTS; i++) {
+            LocalDate start = FIRST_MONTH.plusMonths(i);
+            futures.add(asyncRepository.getOrderAnalyticsWithIndex(
+                    REGIONS, STATUSES, start, start.plusMonths(1).minusDays(1)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        return futures.stream().map(CompletableFuture::join).toList();
+    }
+}
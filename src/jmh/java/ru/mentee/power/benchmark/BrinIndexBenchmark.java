@@ -0,0 +1,195 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.benchmark;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.mentee.power.config.ApplicationConfig;
+import ru.mentee.power.config.ConfigFilePath;
+import ru.mentee.power.connection.ConnectionProvider;
+
+/**
+ * BRIN против B-tree на колонке created_at, которая заполняется в порядке вставки: задержка
+ * диапазонного запроса на 1% строк и вставка пачки самых новых строк. BRIN замеряется при
+ * нескольких pages_per_range, none - таблица без индекса. Время построения и размер индекса
+ * пишутся в лог при подготовке.
+ *
+ * <p>Замеры идут на копии таблицы brin_bench, чтобы не трогать индексы рабочей таблицы. Копия
+ * заполняется последовательным чтением без параллельных процессов и сохраняет физический порядок
+ * строк, от которого зависит BRIN. Диапазонные запросы читают строки целиком: иначе B-tree
+ * отвечал бы сканированием только индекса, а BRIN всегда идет в таблицу. Вставка каждый раз
+ * откатывается.
+ *
+ * <p>Запуск: {@code gradle jmh -Pjmh.includes=BrinIndexBenchmark}
+ */
+@Slf4j
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BrinIndexBenchmark {
+
+    private static final String BENCH_TABLE = "brin_bench";
+    private static final String BENCH_INDEX = "brin_bench_idx";
+    private static final String BATCH_TABLE = "brin_bench_batch";
+    private static final String COLUMN = "created_at";
+    private static final int RANGE_SCANS = 20;
+    private static final double RANGE_SELECTIVITY = 0.01;
+    private static final int INSERT_BATCH_ROWS = 10_000;
+    private static final long RANDOM_SEED = 42;
+
+    @Param({"orders", "reviews", "transactions"})
+    private String table;
+
+    @Param({"none", "btree", "brin16", "brin32", "brin64", "brin128"})
+    private String index;
+
+    private ConnectionProvider provider;
+    private Connection conn;
+    private PreparedStatement range;
+    private Statement insert;
+    private Object[] bounds;
+    private int nextRange;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ApplicationConfig config = new ApplicationConfig(new Properties(), new ConfigFilePath());
+        provider = config.getConnectionProvider();
+        conn = provider.getConnection();
+        try (Statement stmt = conn.createStatement()) {
+            copyTable(stmt);
+            bounds = rangeBounds();
+            if (!"none".equals(index)) {
+                long start = System.nanoTime();
+                stmt.execute("CREATE INDEX " + BENCH_INDEX + " ON " + BENCH_TABLE + " "
+                        + indexDefinition());
+                long buildTimeMs = (System.nanoTime() - start) / 1_000_000;
+                stmt.execute("ANALYZE " + BENCH_TABLE);
+                try (ResultSet rs = stmt.executeQuery(
+                        "SELECT pg_relation_size('" + BENCH_INDEX + "'::regclass)")) {
+                    rs.next();
+                    log.info("{}.{} {}: построение {} мс, размер {} КБ",
+                            table, COLUMN, index, buildTimeMs, rs.getLong(1) / 1024);
+                }
+                // На выборке в 1% планировщик мог бы предпочесть индексу Seq Scan
+                stmt.execute("SET enable_seqscan = off");
+            }
+        }
+        range = conn.prepareStatement("SELECT SUM(octet_length(b::text)) FROM " + BENCH_TABLE
+                + " b WHERE " + COLUMN + " >= ? AND " + COLUMN + " < ?");
+        insert = conn.createStatement();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("RESET enable_seqscan");
+            stmt.execute("DROP TABLE IF EXISTS " + BATCH_TABLE + ", " + BENCH_TABLE);
+        } finally {
+            range.close();
+            insert.close();
+            conn.close();
+            provider.close();
+        }
+    }
+
+    @Benchmark
+    public long rangeScan() throws SQLException {
+        int i = 2 * (nextRange++ % RANGE_SCANS);
+        range.setObject(1, bounds[i]);
+        range.setObject(2, bounds[i + 1]);
+        try (ResultSet rs = range.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0L;
+        }
+    }
+
+    /** Вставка {@value #INSERT_BATCH_ROWS} строк в конец таблицы, как пишет журнал. */
+    @Benchmark
+    public int insertBatch() throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            return insert.executeUpdate("INSERT INTO " + BENCH_TABLE
+                    + " SELECT * FROM " + BATCH_TABLE + " ORDER BY " + COLUMN);
+        } finally {
+            conn.rollback();
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private String indexDefinition() {
+        if ("btree".equals(index)) {
+            return "(" + COLUMN + ")";
+        }
+        int pages = Integer.parseInt(index.substring("brin".length()));
+        return "USING brin (" + COLUMN + ") WITH (pages_per_range = " + pages + ")";
+    }
+
+    private void copyTable(Statement stmt) throws SQLException {
+        stmt.execute("DROP TABLE IF EXISTS " + BATCH_TABLE + ", " + BENCH_TABLE);
+        conn.setAutoCommit(false);
+        try {
+            // Параллельное или синхронизированное чтение перемешало бы порядок строк в копии
+            stmt.execute("SET LOCAL max_parallel_workers_per_gather = 0");
+            stmt.execute("SET LOCAL synchronize_seqscans = off");
+            stmt.execute("CREATE TABLE " + BENCH_TABLE + " AS SELECT * FROM " + table);
+            stmt.execute("CREATE TEMP TABLE " + BATCH_TABLE + " AS SELECT * FROM " + BENCH_TABLE
+                    + " ORDER BY " + COLUMN + " DESC NULLS LAST LIMIT " + INSERT_BATCH_ROWS);
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        stmt.execute("VACUUM ANALYZE " + BENCH_TABLE);
+    }
+
+    /**
+     * Границы диапазонов парами [начало, конец): случайные окна по квантилям распределения
+     * значений, каждое покрывает {@value #RANGE_SELECTIVITY} строк. Семя фиксировано, и все
+     * индексы замеряются на одних диапазонах.
+     */
+    private Object[] rangeBounds() throws SQLException {
+        Random random = new Random(RANDOM_SEED);
+        Double[] fractions = new Double[RANGE_SCANS * 2];
+        for (int i = 0; i < RANGE_SCANS; i++) {
+            double start = random.nextDouble() * (1.0 - RANGE_SELECTIVITY);
+            fractions[2 * i] = start;
+            fractions[2 * i + 1] = start + RANGE_SELECTIVITY;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT percentile_disc(?) WITHIN GROUP"
+                + " (ORDER BY " + COLUMN + ") FROM " + BENCH_TABLE)) {
+            stmt.setArray(1, conn.createArrayOf("float8", fractions));
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                Array values = rs.getArray(1);
+                if (values == null) {
+                    throw new SQLException("Column " + COLUMN + " has no values to benchmark");
+                }
+                return (Object[]) values.getArray();
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.mentee.power.config.ApplicationConfig;
+import ru.mentee.power.config.ColumnarSnapshotConfig;
+import ru.mentee.power.config.ConfigFilePath;
+import ru.mentee.power.config.ConnectionPoolConfig;
+import ru.mentee.power.config.ResultCacheConfig;
+import ru.mentee.power.connection.ConnectionProvider;
+import ru.mentee.power.model.ResultCacheMode;
+import ru.mentee.power.model.analytics.OrderAnalytics;
+import ru.mentee.power.model.analytics.PerformanceMetrics;
+import ru.mentee.power.repository.ColumnarCompositeIndexRepository;
+import ru.mentee.power.repository.CompositeIndexRepositoryImpl;
+
+/**
+ * Аналитика заказов по колоночному снимку в памяти против запроса к базе по индексу
+ * (region, status, created_at) на 1 и 10 млн строк. Строки генерируются в отдельной схеме
+ * columnar_bench, search_path пула указывает на нее, поэтому оба пути читают одну таблицу
+ * orders. Кэш результатов выключен, фоновое обновление снимка за время замера не срабатывает,
+ * файл снимка не читается и не пишется.
+ *
+ * <p>Запуск: {@code gradle jmh -Pjmh.includes=ColumnarSnapshotBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColumnarSnapshotBenchmark {
+
+    private static final String SCHEMA = "columnar_bench";
+    private static final List<String> REGIONS = List.of("MOSCOW", "SPB", "KAZAN", "UFA");
+    private static final List<String> STATUSES = List.of("PENDING", "SHIPPED", "DELIVERED");
+    private static final LocalDate START_DATE = LocalDate.of(2024, 4, 1);
+    private static final LocalDate END_DATE = LocalDate.of(2024, 6, 30);
+
+    // Два года заказов по возрастанию id, каждый сотый без суммы
+    private static final String GENERATE_SQL = """
+            CREATE TABLE %1$s.orders AS
+            SELECT g AS id,
+                   (ARRAY['MOSCOW', 'SPB', 'KAZAN', 'UFA', 'NOVOSIBIRSK', 'EKATERINBURG'])
+                       [1 + floor(random() * 6)::int] AS region,
+                   (ARRAY['PENDING', 'PROCESSING', 'SHIPPED', 'DELIVERED', 'CANCELLED'])
+                       [1 + floor(random() * 5)::int] AS status,
+                   CASE WHEN g %% 100 = 0 THEN NULL
+                        ELSE round((random() * 10000)::numeric, 2)::numeric(12, 2)
+                   END AS total_amount,
+                   TIMESTAMP '2024-01-01' + make_interval(secs => g * 63072000.0 / %2$d) AS created_at
+            FROM generate_series(1, %2$d) g
+            """;
+
+    @Param({"1000000", "10000000"})
+    private int rows;
+
+    private ConnectionProvider provider;
+    private CompositeIndexRepositoryImpl database;
+    private ColumnarCompositeIndexRepository columnar;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Properties properties = new Properties();
+        ApplicationConfig config = new ApplicationConfig(properties, new ConfigFilePath());
+        properties.setProperty(ResultCacheConfig.DB_RESULT_CACHE_MODE,
+                ResultCacheMode.DISABLED.name());
+        properties.setProperty(ConnectionPoolConfig.DB_POOL_INIT_SQL,
+                "SET search_path TO " + SCHEMA + ", mentee_power, public");
+        properties.setProperty(ColumnarSnapshotConfig.DB_COLUMNAR_REFRESH_INTERVAL_MS,
+                String.valueOf(TimeUnit.HOURS.toMillis(1)));
+        properties.setProperty(ColumnarSnapshotConfig.DB_COLUMNAR_SNAPSHOT_FILE, "");
+        provider = config.getConnectionProvider();
+
+        try (Connection conn = provider.getConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+            stmt.execute("CREATE SCHEMA " + SCHEMA);
+            stmt.execute(String.format(GENERATE_SQL, SCHEMA, rows));
+            stmt.execute("CREATE INDEX idx_orders_region_status_date ON " + SCHEMA
+                    + ".orders (region, status, created_at) INCLUDE (total_amount)");
+            stmt.execute("VACUUM ANALYZE " + SCHEMA + ".orders");
+        }
+
+        database = new CompositeIndexRepositoryImpl(config, new ObjectMapper());
+        columnar = new ColumnarCompositeIndexRepository(config, database);
+        config.getOrderColumnarSnapshot().refresh();
+
+        if (!database.getOrderAnalyticsWithIndex(REGIONS, STATUSES, START_DATE, END_DATE).getData()
+                .equals(columnar.getOrderAnalyticsWithIndex(
+                        REGIONS, STATUSES, START_DATE, END_DATE).getData())) {
+            throw new IllegalStateException("Снимок и запрос к базе расходятся");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        try (Connection conn = provider.getConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        }
+        provider.close();
+    }
+
+    @Benchmark
+    public PerformanceMetrics<List<OrderAnalytics>> columnarSnapshot() {
+        return columnar.getOrderAnalyticsWithIndex(REGIONS, STATUSES, START_DATE, END_DATE);
+    }
+
+    @Benchmark
+    public PerformanceMetrics<List<OrderAnalytics>> databaseWithIndex() {
+        return database.getOrderAnalyticsWithIndex(REGIONS, STATUSES, START_DATE, END_DATE);
+    }
+}
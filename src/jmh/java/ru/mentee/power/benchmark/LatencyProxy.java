@@ -0,0 +1,128 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * TCP-прокси на localhost, задерживающий каждую порцию данных в каждую сторону на
+ * {@code oneWayDelayMs}. Так соединение с локальной базой ведет себя как соединение с
+ * удаленной: каждое обращение к серверу стоит 2 * oneWayDelayMs сверх выполнения запроса.
+ * Порции в одном направлении доставляются по порядку, задержка не ограничивает пропускную
+ * способность.
+ */
+@Slf4j
+final class LatencyProxy implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private final String targetHost;
+    private final int targetPort;
+    private final long oneWayDelayNanos;
+    private final ServerSocket serverSocket;
+
+    LatencyProxy(String targetHost, int targetPort, double oneWayDelayMs) throws IOException {
+        this.targetHost = targetHost;
+        this.targetPort = targetPort;
+        this.oneWayDelayNanos = (long) (oneWayDelayMs * 1_000_000);
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        daemon("latency-proxy-accept", this::acceptLoop).start();
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket client = serverSocket.accept();
+                Socket server = new Socket(targetHost, targetPort);
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+                pipe(client, server);
+                pipe(server, client);
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.warn("Прокси не смог принять соединение: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Читает из {@code from} и пишет в {@code to} с задержкой: чтение и запись идут в разных
+     * потоках, чтобы задержка одной порции не задерживала чтение следующих.
+     */
+    private void pipe(Socket from, Socket to) {
+        BlockingQueue<Chunk> queue = new LinkedBlockingQueue<>();
+        daemon("latency-proxy-read", () -> {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (InputStream in = from.getInputStream()) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    queue.add(new Chunk(System.nanoTime() + oneWayDelayNanos,
+                            Arrays.copyOf(buffer, read)));
+                }
+            } catch (IOException e) {
+                // Соединение закрыто другой стороной
+            }
+            queue.add(new Chunk(System.nanoTime() + oneWayDelayNanos, END_OF_STREAM));
+        }).start();
+        daemon("latency-proxy-write", () -> {
+            try (OutputStream out = to.getOutputStream()) {
+                while (true) {
+                    Chunk chunk = queue.take();
+                    long waitNanos = chunk.deliverAtNanos() - System.nanoTime();
+                    if (waitNanos > 0) {
+                        TimeUnit.NANOSECONDS.sleep(waitNanos);
+                    }
+                    if (chunk.data() == END_OF_STREAM) {
+                        break;
+                    }
+                    out.write(chunk.data());
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // Соединение закрыто другой стороной
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                closeQuietly(to);
+                closeQuietly(from);
+            }
+        }).start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private static Thread daemon(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Уже закрыт
+        }
+    }
+
+    private record Chunk(long deliverAtNanos, byte[] data) {
+    }
+}
@@ -0,0 +1,85 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.mentee.power.config.ApplicationConfig;
+import ru.mentee.power.config.ConfigFilePath;
+import ru.mentee.power.config.ResultCacheConfig;
+import ru.mentee.power.model.ResultCacheMode;
+import ru.mentee.power.model.analytics.OrderAnalytics;
+import ru.mentee.power.model.analytics.PerformanceMetrics;
+import ru.mentee.power.repository.CompositeIndexRepositoryImpl;
+
+/**
+ * Аналитика заказов за год с разбиением периода на N подынтервалов. N = 1 - тот же запрос
+ * одним обращением, без разбиения; значения N больше пула (10 соединений по умолчанию) упираются
+ * в ожидание соединений. Перед замером результат каждого N сверяется с обычным запросом по всему
+ * периоду. Кэш результатов выключен.
+ *
+ * <p>Запуск: {@code gradle jmh -Pjmh.includes=ParallelFanOutBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelFanOutBenchmark {
+
+    private static final List<String> REGIONS = List.of("MOSCOW", "SPB", "KAZAN", "UFA");
+    private static final List<String> STATUSES =
+            List.of("PENDING", "PROCESSING", "SHIPPED", "DELIVERED", "CANCELLED");
+    private static final LocalDate END_DATE = LocalDate.now();
+    private static final LocalDate START_DATE = END_DATE.minusYears(1);
+
+    @Param({"1", "2", "4", "8"})
+    private int parallelism;
+
+    private ApplicationConfig config;
+    private CompositeIndexRepositoryImpl repository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Properties properties = new Properties();
+        config = new ApplicationConfig(properties, new ConfigFilePath());
+        properties.setProperty(ResultCacheConfig.DB_RESULT_CACHE_MODE,
+                ResultCacheMode.DISABLED.name());
+        repository = new CompositeIndexRepositoryImpl(config, new ObjectMapper());
+
+        List<OrderAnalytics> expected = repository.getOrderAnalyticsWithoutIndex(
+                REGIONS, STATUSES, START_DATE, END_DATE).getData();
+        List<OrderAnalytics> actual = fanOut().getData();
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException(
+                    "Результат при N = " + parallelism + " расходится с одним запросом");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        config.getConnectionProvider().close();
+    }
+
+    @Benchmark
+    public PerformanceMetrics<List<OrderAnalytics>> fanOut() {
+        return repository.getOrderAnalyticsParallel(
+                REGIONS, STATUSES, START_DATE, END_DATE, parallelism);
+    }
+}
@@ -0,0 +1,127 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.mentee.power.config.ApplicationConfig;
+import ru.mentee.power.config.ConfigFilePath;
+import ru.mentee.power.config.DatabaseConfig;
+import ru.mentee.power.config.ResultCacheConfig;
+import ru.mentee.power.model.ResultCacheMode;
+import ru.mentee.power.model.analytics.OrderAnalytics;
+import ru.mentee.power.repository.CompositeIndexRepositoryImpl;
+import ru.mentee.power.utils.BatchQuery;
+import ru.mentee.power.utils.BatchResult;
+
+/**
+ * Страница дашборда из трех запросов: последовательные вызовы репозитория против одного пакета
+ * {@link CompositeIndexRepositoryImpl#executeBatch(List)}. Сетевая задержка roundTripMs
+ * имитируется {@link LatencyProxy} между приложением и базой. Перед замером результаты пакета
+ * сверяются с отдельными вызовами. Кэш результатов выключен, чтобы каждый вызов доходил до базы.
+ *
+ * <p>Запуск: {@code gradle jmh -Pjmh.includes=PipelinedBatchBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelinedBatchBenchmark {
+
+    private static final Pattern POSTGRES_URL =
+            Pattern.compile("jdbc:postgresql://([^/:?]+)(?::(\\d+))?(.*)");
+    private static final int DEFAULT_PORT = 5432;
+
+    private static final List<String> REGIONS = List.of("MOSCOW", "SPB", "KAZAN", "UFA");
+    private static final List<String> STATUSES =
+            List.of("PENDING", "PROCESSING", "SHIPPED", "DELIVERED", "CANCELLED");
+    private static final LocalDate END_DATE = LocalDate.now();
+    private static final LocalDate START_DATE = END_DATE.minusMonths(3);
+    private static final Long CATEGORY_ID = 5L;
+    private static final BigDecimal MIN_PRICE = new BigDecimal("1000");
+    private static final BigDecimal MAX_PRICE = new BigDecimal("5000");
+
+    @Param({"0", "1", "5", "20", "50"})
+    private double roundTripMs;
+
+    private ApplicationConfig config;
+    private LatencyProxy proxy;
+    private CompositeIndexRepositoryImpl repository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Properties properties = new Properties();
+        config = new ApplicationConfig(properties, new ConfigFilePath());
+        Matcher url = POSTGRES_URL.matcher(config.getUrl());
+        if (!url.matches()) {
+            throw new IllegalStateException("Неподдерживаемый URL базы: " + config.getUrl());
+        }
+        int port = url.group(2) != null ? Integer.parseInt(url.group(2)) : DEFAULT_PORT;
+        proxy = new LatencyProxy(url.group(1), port, roundTripMs / 2);
+
+        properties.setProperty(DatabaseConfig.DB_URL,
+                "jdbc:postgresql://localhost:" + proxy.getPort() + url.group(3));
+        properties.setProperty(ResultCacheConfig.DB_RESULT_CACHE_MODE,
+                ResultCacheMode.DISABLED.name());
+        repository = new CompositeIndexRepositoryImpl(config, new ObjectMapper());
+        checkSameResults();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        config.getConnectionProvider().close();
+        proxy.close();
+    }
+
+    @Benchmark
+    public void sequential(Blackhole blackhole) {
+        blackhole.consume(repository.getOrderAnalyticsWithIndex(
+                REGIONS, STATUSES, START_DATE, END_DATE));
+        blackhole.consume(repository.measureQueryWithIndex(CATEGORY_ID, MIN_PRICE, MAX_PRICE));
+        blackhole.consume(repository.testJsonSearch(
+                "Apple", "black", MIN_PRICE, MAX_PRICE, true));
+    }
+
+    @Benchmark
+    public BatchResult batch() {
+        return repository.executeBatch(List.of(
+                repository.orderAnalyticsQuery(REGIONS, STATUSES, START_DATE, END_DATE),
+                repository.productCountQuery(CATEGORY_ID, MIN_PRICE, MAX_PRICE),
+                repository.jsonSearchQuery("Apple", "black", MIN_PRICE, MAX_PRICE)));
+    }
+
+    private void checkSameResults() {
+        BatchQuery<Long> productCount =
+                repository.productCountQuery(CATEGORY_ID, MIN_PRICE, MAX_PRICE);
+        BatchQuery<List<OrderAnalytics>> analytics =
+                repository.orderAnalyticsQuery(REGIONS, STATUSES, START_DATE, END_DATE);
+        BatchResult result = repository.executeBatch(List.of(analytics, productCount));
+        if (!result.get(analytics).getData().equals(repository.getOrderAnalyticsWithIndex(
+                        REGIONS, STATUSES, START_DATE, END_DATE).getData())
+                || !result.get(productCount).getData().equals(repository.measureQueryWithIndex(
+                        CATEGORY_ID, MIN_PRICE, MAX_PRICE).getData())) {
+            throw new IllegalStateException("Результаты пакета расходятся с отдельными вызовами");
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.mentee.power.utils.QueryPlanParser;
+
+/**
+ * Сравнение разбора EXPLAIN JSON через дерево Jackson и потоковым парсером.
+ * SMALL - один Seq Scan под агрегатом, LARGE - Append по нескольким сотням партиций
+ * с Nested Loop и Index Scan в каждой ветке.
+ *
+ * <p>Запуск: {@code gradle jmh -Pjmh.includes=QueryPlanParserBenchmark -prof gc}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryPlanParserBenchmark {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Param({"SMALL", "LARGE"})
+    private String planSize;
+
+    private String planJson;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        int partitions = "SMALL".equals(planSize) ? 1 : 500;
+        planJson = buildPlan(partitions);
+
+        QueryPlanParser tree = new QueryPlanParser(OBJECT_MAPPER.readTree(planJson));
+        QueryPlanParser stream = new QueryPlanParser(planJson);
+        if (!tree.getRowsScanned().equals(stream.getRowsScanned())
+                || !tree.getRowsReturned().equals(stream.getRowsReturned())
+                || !tree.getBuffersHit().equals(stream.getBuffersHit())
+                || !tree.getCostEstimate().equals(stream.getCostEstimate())
+                || !tree.getIndexesUsed().equals(stream.getIndexesUsed())
+                || !tree.getPlanFingerprint().equals(stream.getPlanFingerprint())) {
+            throw new IllegalStateException("Потоковый и древовидный разбор расходятся");
+        }
+    }
+
+    @Benchmark
+    public QueryPlanParser treeParser() throws Exception {
+        return new QueryPlanParser(OBJECT_MAPPER.readTree(planJson));
+    }
+
+    @Benchmark
+    public QueryPlanParser streamingParser() {
+        return new QueryPlanParser(planJson);
+    }
+
+    private static String buildPlan(int partitions) {
+        StringBuilder json = new StringBuilder(partitions * 1_200);
+        json.append("[{\"Plan\": {\"Node Type\": \"Aggregate\", \"Strategy\": \"Hashed\",")
+            .append(" \"Startup Cost\": 1000.00, \"Total Cost\": 250000.50,")
+            .append(" \"Plan Rows\": 64, \"Actual Rows\": 48, \"Actual Loops\": 1,")
+            .append(" \"Group Key\": [\"o.region\", \"o.status\"],")
+            .append(" \"Shared Hit Blocks\": 120000, \"Shared Read Blocks\": 3400,")
+            .append(" \"Plans\": [");
+        if (partitions == 1) {
+            appendScan(json, "Seq Scan", "orders", null, 0);
+        } else {
+            json.append("{\"Node Type\": \"Append\", \"Total Cost\": 240000.00,")
+                .append(" \"Plan Rows\": 500000, \"Actual Rows\": 480000, \"Plans\": [");
+            for (int i = 0; i < partitions; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append("{\"Node Type\": \"Nested Loop\", \"Join Type\": \"Inner\",")
+                    .append(" \"Total Cost\": ").append(400 + i).append(".25,")
+                    .append(" \"Plan Rows\": 1000, \"Actual Rows\": 960,")
+                    .append(" \"Shared Hit Blocks\": 240, \"Shared Read Blocks\": 7,")
+                    .append(" \"Plans\": [");
+                appendScan(json, "Index Scan", "orders_p" + i,
+                    "orders_p" + i + "_region_status_created_at_idx", i);
+                json.append(',');
+                appendScan(json, "Index Only Scan", "users", "users_pkey", i);
+                json.append("]}");
+            }
+            json.append("]}");
+        }
+        json.append("]}, \"Planning Time\": 2.345, \"Triggers\": [],")
+            .append(" \"Execution Time\": 812.5}]");
+        return json.toString();
+    }
+
+    private static void appendScan(
+            StringBuilder json, String nodeType, String relation, String index, int i) {
+        json.append("{\"Node Type\": \"").append(nodeType).append("\",")
+            .append(" \"Parent Relationship\": \"Outer\", \"Parallel Aware\": false,")
+            .append(" \"Relation Name\": \"").append(relation).append("\",")
+            .append(" \"Alias\": \"o\",");
+        if (index != null) {
+            json.append(" \"Index Name\": \"").append(index).append("\",")
+                .append(" \"Index Cond\": \"((region)::text = ANY ('{MOSCOW,SPB}'::text[]))\",");
+        }
+        json.append(" \"Startup Cost\": 0.42, \"Total Cost\": ").append(200 + i).append(".75,")
+            .append(" \"Plan Rows\": 1000, \"Plan Width\": 48,")
+            .append(" \"Actual Startup Time\": 0.011, \"Actual Total Time\": 1.204,")
+            .append(" \"Actual Rows\": 960, \"Actual Loops\": 1,")
+            .append(" \"Filter\": \"(created_at >= '2024-01-01'::date)\",")
+            .append(" \"Rows Removed by Filter\": 40,")
+            .append(" \"Shared Hit Blocks\": 120, \"Shared Read Blocks\": 3,")
+            .append(" \"Shared Dirtied Blocks\": 0, \"Shared Written Blocks\": 0}");
+    }
+}
@@ -0,0 +1,93 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.mentee.power.config.ApplicationConfig;
+import ru.mentee.power.config.ConfigFilePath;
+import ru.mentee.power.connection.ConnectionProvider;
+
+/**
+ * Задержка одного вызова через кэш PreparedStatement пула против того же запроса с настройками
+ * драйвера по умолчанию (prepareThreshold=5, preparedStatementCacheQueries=256): без кэша пула
+ * оператор создается и закрывается на каждый вызов, а именованный серверный оператор после пятого
+ * выполнения держит собственный кэш драйвера. Разница показывает, что добавляет кэш пула сверх
+ * кэша драйвера.
+ *
+ * <p>Запуск: {@code gradle jmh -Pjmh.includes=StatementCacheBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatementCacheBenchmark {
+
+    private static final String CACHED_SQL = """
+            SELECT COUNT(*) as product_count
+            FROM products p
+            WHERE p.category_id = ?
+              AND p.price BETWEEN ? AND ?
+              AND p.is_active = true
+            """;
+
+    // Тот же запрос другим текстом, чтобы он не попал в кэш пула
+    private static final String DRIVER_DEFAULT_SQL = CACHED_SQL + " -- driver defaults";
+
+    private ConnectionProvider provider;
+    private long categoryId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ApplicationConfig config = new ApplicationConfig(new Properties(), new ConfigFilePath());
+        provider = config.getConnectionProvider();
+        provider.registerStatements(List.of(CACHED_SQL));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        provider.close();
+    }
+
+    @Benchmark
+    public long driverDefaults() throws SQLException {
+        return count(DRIVER_DEFAULT_SQL);
+    }
+
+    @Benchmark
+    public long poolStatementCache() throws SQLException {
+        return count(CACHED_SQL);
+    }
+
+    private long count(String sql) throws SQLException {
+        categoryId = categoryId % 7 + 1;
+        try (Connection conn = provider.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, categoryId);
+            stmt.setBigDecimal(2, new BigDecimal("1000"));
+            stmt.setBigDecimal(3, new BigDecimal("5000"));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0L;
+            }
+        }
+    }
+}
@@ -3,16 +3,60 @@ package ru.mentee.power.config;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
 import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.connection.ConnectionProvider;
+import ru.mentee.power.connection.DriverManagerConnectionProvider;
+import ru.mentee.power.connection.PooledConnectionProvider;
+import ru.mentee.power.model.PartitionRetentionAction;
+import ru.mentee.power.model.PlanCaptureMode;
+import ru.mentee.power.model.ResultCacheMode;
+import ru.mentee.power.model.SamplingMethod;
+import ru.mentee.power.utils.AnalyticsSnapshotStore;
+import ru.mentee.power.utils.AsyncQueryExecutor;
+import ru.mentee.power.utils.ChangeNotificationListener;
+import ru.mentee.power.utils.IndexUsageSampler;
+import ru.mentee.power.utils.OrderColumnarSnapshot;
+import ru.mentee.power.utils.PartitionMaintenance;
+import ru.mentee.power.utils.PlanCapturePolicy;
+import ru.mentee.power.utils.PlanHistoryStore;
+import ru.mentee.power.utils.ResultCache;
+import ru.mentee.power.utils.UserOrderStatsWorkingSet;
 
 @Slf4j
-public class ApplicationConfig implements DatabaseConfig, Overridable, Fileable {
+public class ApplicationConfig
+        implements DatabaseConfig,
+                ConnectionPoolConfig,
+                PlanCaptureConfig,
+                ResultCacheConfig,
+                StreamingConfig,
+                ApproximateQueryConfig,
+                PartitionConfig,
+                BrinConfig,
+                ColumnarSnapshotConfig,
+                AsyncQueryConfig,
+                Overridable,
+                Fileable {
     public static final String APP_NAME = "app.name";
 
-    private final DatabaseConfig dbConfig;
+    private final PostgresConfig dbConfig;
     private final Properties properties;
     private final SecureValidator validator;
+    private final ReentrantLock providerLock = new ReentrantLock();
+    private volatile ConnectionProvider connectionProvider;
+    private final PlanHistoryStore planHistoryStore = new PlanHistoryStore();
+    private final PlanCapturePolicy planCapturePolicy;
+    private volatile IndexUsageSampler indexUsageSampler;
+    private volatile ResultCache resultCache;
+    private volatile PartitionMaintenance partitionMaintenance;
+    private volatile OrderColumnarSnapshot orderColumnarSnapshot;
+    private volatile UserOrderStatsWorkingSet userOrderStatsWorkingSet;
+    private volatile AnalyticsSnapshotStore analyticsSnapshotStore;
+    private volatile AsyncQueryExecutor asyncQueryExecutor;
+    private ChangeNotificationListener changeListener;
 
     public ApplicationConfig(Properties properties, ConfigFilePath configFilePath)
             throws IOException {
@@ -30,6 +74,7 @@ public class ApplicationConfig implements DatabaseConfig, Overridable, Fileable
                     notFound);
         }
         override();
+        this.planCapturePolicy = new PlanCapturePolicy(this);
     }
 
     public String getApplicationName() {
@@ -56,6 +101,322 @@ public class ApplicationConfig implements DatabaseConfig, Overridable, Fileable
         return dbConfig.getShowSql();
     }
 
+    public int getPoolMinSize() {
+        return dbConfig.getPoolMinSize();
+    }
+
+    public int getPoolMaxSize() {
+        return dbConfig.getPoolMaxSize();
+    }
+
+    public long getPoolAcquireTimeoutMs() {
+        return dbConfig.getPoolAcquireTimeoutMs();
+    }
+
+    public int getPoolValidationTimeoutSec() {
+        return dbConfig.getPoolValidationTimeoutSec();
+    }
+
+    public String getPoolInitSql() {
+        return dbConfig.getPoolInitSql();
+    }
+
+    public boolean getPoolStatementCacheEnabled() {
+        return dbConfig.getPoolStatementCacheEnabled();
+    }
+
+    public PlanCaptureMode getPlanCaptureMode() {
+        return dbConfig.getPlanCaptureMode();
+    }
+
+    public int getPlanCaptureSampleRate() {
+        return dbConfig.getPlanCaptureSampleRate();
+    }
+
+    public long getPlanCaptureSlowThresholdMs() {
+        return dbConfig.getPlanCaptureSlowThresholdMs();
+    }
+
+    public long getPlanCaptureCacheTtlMs() {
+        return dbConfig.getPlanCaptureCacheTtlMs();
+    }
+
+    public ResultCacheMode getResultCacheMode() {
+        return dbConfig.getResultCacheMode();
+    }
+
+    public long getResultCacheMaxBytes() {
+        return dbConfig.getResultCacheMaxBytes();
+    }
+
+    public int getStreamingFetchSize() {
+        return dbConfig.getStreamingFetchSize();
+    }
+
+    public SamplingMethod getApproximateMethod() {
+        return dbConfig.getApproximateMethod();
+    }
+
+    public double getApproximateSamplePercent() {
+        return dbConfig.getApproximateSamplePercent();
+    }
+
+    public double getApproximatePilotPercent() {
+        return dbConfig.getApproximatePilotPercent();
+    }
+
+    public double getApproximateConfidence() {
+        return dbConfig.getApproximateConfidence();
+    }
+
+    public int getPartitionPremakeMonths() {
+        return dbConfig.getPartitionPremakeMonths();
+    }
+
+    public int getPartitionRetentionMonths() {
+        return dbConfig.getPartitionRetentionMonths();
+    }
+
+    public PartitionRetentionAction getPartitionRetentionAction() {
+        return dbConfig.getPartitionRetentionAction();
+    }
+
+    public int getBrinPagesPerRange() {
+        return dbConfig.getBrinPagesPerRange();
+    }
+
+    public double getBrinMinCorrelation() {
+        return dbConfig.getBrinMinCorrelation();
+    }
+
+    public long getColumnarRefreshIntervalMs() {
+        return dbConfig.getColumnarRefreshIntervalMs();
+    }
+
+    public long getColumnarLateRowWindowMs() {
+        return dbConfig.getColumnarLateRowWindowMs();
+    }
+
+    public long getColumnarReloadIntervalMs() {
+        return dbConfig.getColumnarReloadIntervalMs();
+    }
+
+    public String getColumnarSnapshotFile() {
+        return dbConfig.getColumnarSnapshotFile();
+    }
+
+    public long getColumnarPersistIntervalMs() {
+        return dbConfig.getColumnarPersistIntervalMs();
+    }
+
+    public long getAsyncTimeoutMs() {
+        return dbConfig.getAsyncTimeoutMs();
+    }
+
+    /**
+     * Возвращает поставщика соединений приложения. Если поставщик не был задан явно через
+     * {@link #setConnectionProvider(ConnectionProvider)}, при первом обращении создается
+     * встроенный пул {@link PooledConnectionProvider}.
+     */
+    public ConnectionProvider getConnectionProvider() {
+        ConnectionProvider provider = connectionProvider;
+        if (provider != null) {
+            return provider;
+        }
+        providerLock.lock();
+        try {
+            if (connectionProvider == null) {
+                connectionProvider = new PooledConnectionProvider(this);
+            }
+            return connectionProvider;
+        } finally {
+            providerLock.unlock();
+        }
+    }
+
+    public void setConnectionProvider(ConnectionProvider connectionProvider) {
+        providerLock.lock();
+        try {
+            this.connectionProvider = connectionProvider;
+        } finally {
+            providerLock.unlock();
+        }
+    }
+
+    /**
+     * Общее хранилище истории планов для всех репозиториев, работающих с этой конфигурацией.
+     */
+    public PlanHistoryStore getPlanHistoryStore() {
+        return planHistoryStore;
+    }
+
+    /**
+     * Общая политика снятия планов и кэш последних планов по запросам.
+     */
+    public PlanCapturePolicy getPlanCapturePolicy() {
+        return planCapturePolicy;
+    }
+
+    /**
+     * Общий кэш результатов аналитических запросов. При первом обращении, если кэш включен,
+     * запускается слушатель уведомлений об изменении таблиц на отдельном соединении вне пула.
+     */
+    public ResultCache getResultCache() {
+        ResultCache cache = resultCache;
+        if (cache != null) {
+            return cache;
+        }
+        providerLock.lock();
+        try {
+            if (resultCache == null) {
+                ResultCache created = new ResultCache(this);
+                if (created.getMode() != ResultCacheMode.DISABLED) {
+                    changeListener =
+                            new ChangeNotificationListener(
+                                    new DriverManagerConnectionProvider(this), created);
+                    changeListener.start();
+                }
+                resultCache = created;
+            }
+            return resultCache;
+        } finally {
+            providerLock.unlock();
+        }
+    }
+
+    /**
+     * Общий сборщик статистики использования индексов. Создается при первом обращении и не
+     * запускается сам: фоновое снятие снимков включается через {@link IndexUsageSampler#start()}.
+     */
+    public IndexUsageSampler getIndexUsageSampler() {
+        IndexUsageSampler sampler = indexUsageSampler;
+        if (sampler != null) {
+            return sampler;
+        }
+        providerLock.lock();
+        try {
+            if (indexUsageSampler == null) {
+                indexUsageSampler = new IndexUsageSampler(getConnectionProvider());
+            }
+            return indexUsageSampler;
+        } finally {
+            providerLock.unlock();
+        }
+    }
+
+    /**
+     * Общее обслуживание секций orders по настройкам db.partition.*. Создается при первом
+     * обращении и не запускается сам: периодический прогон включается через
+     * {@link PartitionMaintenance#start(java.time.Duration)}.
+     */
+    public PartitionMaintenance getPartitionMaintenance() {
+        PartitionMaintenance maintenance = partitionMaintenance;
+        if (maintenance != null) {
+            return maintenance;
+        }
+        providerLock.lock();
+        try {
+            if (partitionMaintenance == null) {
+                partitionMaintenance = new PartitionMaintenance(getConnectionProvider(), "orders",
+                        getPartitionPremakeMonths(), getPartitionRetentionMonths(),
+                        getPartitionRetentionAction());
+            }
+            return partitionMaintenance;
+        } finally {
+            providerLock.unlock();
+        }
+    }
+
+    /**
+     * Общий колоночный снимок orders. Создается при первом обращении пустым и не запускается
+     * сам: загрузка и обновление включаются через {@link OrderColumnarSnapshot#start(Duration)}.
+     */
+    public OrderColumnarSnapshot getOrderColumnarSnapshot() {
+        OrderColumnarSnapshot snapshot = orderColumnarSnapshot;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        providerLock.lock();
+        try {
+            if (orderColumnarSnapshot == null) {
+                orderColumnarSnapshot = new OrderColumnarSnapshot(getConnectionProvider(), "orders",
+                        Duration.ofMillis(getColumnarLateRowWindowMs()),
+                        Duration.ofMillis(getColumnarReloadIntervalMs()));
+            }
+            return orderColumnarSnapshot;
+        } finally {
+            providerLock.unlock();
+        }
+    }
+
+    /**
+     * Общий рабочий набор статистики тяжелых пользователей. Создается при первом обращении
+     * пустым и не запускается сам: дочитывание новых заказов включается через
+     * {@link UserOrderStatsWorkingSet#start(Duration)}.
+     */
+    public UserOrderStatsWorkingSet getUserOrderStatsWorkingSet() {
+        UserOrderStatsWorkingSet workingSet = userOrderStatsWorkingSet;
+        if (workingSet != null) {
+            return workingSet;
+        }
+        providerLock.lock();
+        try {
+            if (userOrderStatsWorkingSet == null) {
+                userOrderStatsWorkingSet = new UserOrderStatsWorkingSet(getConnectionProvider(),
+                        Duration.ofMillis(getColumnarReloadIntervalMs()));
+            }
+            return userOrderStatsWorkingSet;
+        } finally {
+            providerLock.unlock();
+        }
+    }
+
+    /**
+     * Общее хранилище снимков аналитики в файле db.columnar.snapshot-file. Создается при первом
+     * обращении; восстановление и периодическая запись включаются через
+     * {@link AnalyticsSnapshotStore#restore()} и {@link AnalyticsSnapshotStore#start(Duration)}.
+     */
+    public AnalyticsSnapshotStore getAnalyticsSnapshotStore() {
+        AnalyticsSnapshotStore store = analyticsSnapshotStore;
+        if (store != null) {
+            return store;
+        }
+        OrderColumnarSnapshot orders = getOrderColumnarSnapshot();
+        UserOrderStatsWorkingSet userStats = getUserOrderStatsWorkingSet();
+        providerLock.lock();
+        try {
+            if (analyticsSnapshotStore == null) {
+                String file = getColumnarSnapshotFile();
+                analyticsSnapshotStore = new AnalyticsSnapshotStore(getConnectionProvider(),
+                        file != null ? Path.of(file) : null, orders, userStats);
+            }
+            return analyticsSnapshotStore;
+        } finally {
+            providerLock.unlock();
+        }
+    }
+
+    /**
+     * Общий исполнитель асинхронных вызовов репозиториев на виртуальных потоках с таймаутом
+     * db.async.timeout-ms. Создается при первом обращении.
+     */
+    public AsyncQueryExecutor getAsyncQueryExecutor() {
+        AsyncQueryExecutor executor = asyncQueryExecutor;
+        if (executor != null) {
+            return executor;
+        }
+        providerLock.lock();
+        try {
+            if (asyncQueryExecutor == null) {
+                asyncQueryExecutor =
+                        new AsyncQueryExecutor(Duration.ofMillis(getAsyncTimeoutMs()));
+            }
+            return asyncQueryExecutor;
+        } finally {
+            providerLock.unlock();
+        }
+    }
+
     @Override
     public void load(String pathProperties) throws IOException {
         try (InputStream input = getClass().getResourceAsStream(pathProperties)) {
@@ -0,0 +1,19 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.config;
+
+import ru.mentee.power.model.SamplingMethod;
+
+public interface ApproximateQueryConfig {
+    String DB_APPROXIMATE_METHOD = "db.approximate.method";
+    String DB_APPROXIMATE_SAMPLE_PERCENT = "db.approximate.sample-percent";
+    String DB_APPROXIMATE_PILOT_PERCENT = "db.approximate.pilot-percent";
+    String DB_APPROXIMATE_CONFIDENCE = "db.approximate.confidence";
+
+    SamplingMethod getApproximateMethod();
+
+    double getApproximateSamplePercent();
+
+    double getApproximatePilotPercent();
+
+    double getApproximateConfidence();
+}
@@ -0,0 +1,8 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.config;
+
+public interface AsyncQueryConfig {
+    String DB_ASYNC_TIMEOUT_MS = "db.async.timeout-ms";
+
+    long getAsyncTimeoutMs();
+}
@@ -0,0 +1,11 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.config;
+
+public interface BrinConfig {
+    String DB_BRIN_PAGES_PER_RANGE = "db.brin.pages-per-range";
+    String DB_BRIN_MIN_CORRELATION = "db.brin.min-correlation";
+
+    int getBrinPagesPerRange();
+
+    double getBrinMinCorrelation();
+}
@@ -0,0 +1,20 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.config;
+
+public interface ColumnarSnapshotConfig {
+    String DB_COLUMNAR_REFRESH_INTERVAL_MS = "db.columnar.refresh-interval-ms";
+    String DB_COLUMNAR_LATE_ROW_WINDOW_MS = "db.columnar.late-row-window-ms";
+    String DB_COLUMNAR_RELOAD_INTERVAL_MS = "db.columnar.reload-interval-ms";
+    String DB_COLUMNAR_SNAPSHOT_FILE = "db.columnar.snapshot-file";
+    String DB_COLUMNAR_PERSIST_INTERVAL_MS = "db.columnar.persist-interval-ms";
+
+    long getColumnarRefreshIntervalMs();
+
+    long getColumnarLateRowWindowMs();
+
+    long getColumnarReloadIntervalMs();
+
+    String getColumnarSnapshotFile();
+
+    long getColumnarPersistIntervalMs();
+}
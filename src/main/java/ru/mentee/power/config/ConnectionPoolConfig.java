@@ -0,0 +1,23 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.config;
+
+public interface ConnectionPoolConfig {
+    String DB_POOL_MIN_SIZE = "db.pool.min-size";
+    String DB_POOL_MAX_SIZE = "db.pool.max-size";
+    String DB_POOL_ACQUIRE_TIMEOUT_MS = "db.pool.acquire-timeout-ms";
+    String DB_POOL_VALIDATION_TIMEOUT_SEC = "db.pool.validation-timeout-sec";
+    String DB_POOL_INIT_SQL = "db.pool.init-sql";
+    String DB_POOL_STATEMENT_CACHE_ENABLED = "db.pool.statement-cache-enabled";
+
+    int getPoolMinSize();
+
+    int getPoolMaxSize();
+
+    long getPoolAcquireTimeoutMs();
+
+    int getPoolValidationTimeoutSec();
+
+    String getPoolInitSql();
+
+    boolean getPoolStatementCacheEnabled();
+}
@@ -0,0 +1,16 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.config;
+
+import ru.mentee.power.model.PartitionRetentionAction;
+
+public interface PartitionConfig {
+    String DB_PARTITION_PREMAKE_MONTHS = "db.partition.premake-months";
+    String DB_PARTITION_RETENTION_MONTHS = "db.partition.retention-months";
+    String DB_PARTITION_RETENTION_ACTION = "db.partition.retention-action";
+
+    int getPartitionPremakeMonths();
+
+    int getPartitionRetentionMonths();
+
+    PartitionRetentionAction getPartitionRetentionAction();
+}
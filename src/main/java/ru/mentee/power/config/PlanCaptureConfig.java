@@ -0,0 +1,19 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.config;
+
+import ru.mentee.power.model.PlanCaptureMode;
+
+public interface PlanCaptureConfig {
+    String DB_PLAN_CAPTURE_MODE = "db.plan-capture.mode";
+    String DB_PLAN_CAPTURE_SAMPLE_RATE = "db.plan-capture.sample-rate";
+    String DB_PLAN_CAPTURE_SLOW_THRESHOLD_MS = "db.plan-capture.slow-threshold-ms";
+    String DB_PLAN_CAPTURE_CACHE_TTL_MS = "db.plan-capture.cache-ttl-ms";
+
+    PlanCaptureMode getPlanCaptureMode();
+
+    int getPlanCaptureSampleRate();
+
+    long getPlanCaptureSlowThresholdMs();
+
+    long getPlanCaptureCacheTtlMs();
+}
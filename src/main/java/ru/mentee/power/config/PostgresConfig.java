@@ -3,9 +3,51 @@ package ru.mentee.power.config;
 
 import java.util.Properties;
 import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.model.PartitionRetentionAction;
+import ru.mentee.power.model.PlanCaptureMode;
+import ru.mentee.power.model.ResultCacheMode;
+import ru.mentee.power.model.SamplingMethod;
 
 @Slf4j
-public class PostgresConfig implements DatabaseConfig {
+public class PostgresConfig
+        implements DatabaseConfig,
+                ConnectionPoolConfig,
+                PlanCaptureConfig,
+                ResultCacheConfig,
+                StreamingConfig,
+                ApproximateQueryConfig,
+                PartitionConfig,
+                BrinConfig,
+                ColumnarSnapshotConfig,
+                AsyncQueryConfig {
+    private static final int DEFAULT_POOL_MIN_SIZE = 2;
+    private static final int DEFAULT_POOL_MAX_SIZE = 10;
+    private static final long DEFAULT_POOL_ACQUIRE_TIMEOUT_MS = 5_000;
+    private static final int DEFAULT_POOL_VALIDATION_TIMEOUT_SEC = 2;
+    private static final String DEFAULT_POOL_INIT_SQL = "SET search_path TO mentee_power, public";
+    private static final PlanCaptureMode DEFAULT_PLAN_CAPTURE_MODE = PlanCaptureMode.SAMPLED;
+    private static final int DEFAULT_PLAN_CAPTURE_SAMPLE_RATE = 10;
+    private static final long DEFAULT_PLAN_CAPTURE_SLOW_THRESHOLD_MS = 500;
+    private static final long DEFAULT_PLAN_CAPTURE_CACHE_TTL_MS = 300_000;
+    private static final ResultCacheMode DEFAULT_RESULT_CACHE_MODE = ResultCacheMode.DISABLED;
+    private static final long DEFAULT_RESULT_CACHE_MAX_BYTES = 16L * 1024 * 1024;
+    private static final int DEFAULT_STREAMING_FETCH_SIZE = 1_000;
+    private static final SamplingMethod DEFAULT_APPROXIMATE_METHOD = SamplingMethod.BERNOULLI;
+    private static final double DEFAULT_APPROXIMATE_SAMPLE_PERCENT = 1.0;
+    private static final double DEFAULT_APPROXIMATE_PILOT_PERCENT = 0.1;
+    private static final double DEFAULT_APPROXIMATE_CONFIDENCE = 0.95;
+    private static final int DEFAULT_PARTITION_PREMAKE_MONTHS = 3;
+    private static final int DEFAULT_PARTITION_RETENTION_MONTHS = 0;
+    private static final PartitionRetentionAction DEFAULT_PARTITION_RETENTION_ACTION =
+            PartitionRetentionAction.DETACH;
+    private static final int DEFAULT_BRIN_PAGES_PER_RANGE = 128;
+    private static final double DEFAULT_BRIN_MIN_CORRELATION = 0.9;
+    private static final long DEFAULT_COLUMNAR_REFRESH_INTERVAL_MS = 10_000;
+    private static final long DEFAULT_COLUMNAR_LATE_ROW_WINDOW_MS = 300_000;
+    private static final long DEFAULT_COLUMNAR_RELOAD_INTERVAL_MS = 600_000;
+    private static final long DEFAULT_COLUMNAR_PERSIST_INTERVAL_MS = 300_000;
+    private static final long DEFAULT_ASYNC_TIMEOUT_MS = 30_000;
+
     private final Properties properties;
 
     public PostgresConfig(Properties properties) {
@@ -54,4 +96,216 @@ public class PostgresConfig implements DatabaseConfig {
         String showSql = properties.getProperty(DB_SHOW_SQL);
         return "true".equalsIgnoreCase(showSql);
     }
+
+    @Override
+    public int getPoolMinSize() {
+        return (int) getLong(DB_POOL_MIN_SIZE, DEFAULT_POOL_MIN_SIZE);
+    }
+
+    @Override
+    public int getPoolMaxSize() {
+        return (int) getLong(DB_POOL_MAX_SIZE, DEFAULT_POOL_MAX_SIZE);
+    }
+
+    @Override
+    public long getPoolAcquireTimeoutMs() {
+        return getLong(DB_POOL_ACQUIRE_TIMEOUT_MS, DEFAULT_POOL_ACQUIRE_TIMEOUT_MS);
+    }
+
+    @Override
+    public int getPoolValidationTimeoutSec() {
+        return (int) getLong(DB_POOL_VALIDATION_TIMEOUT_SEC, DEFAULT_POOL_VALIDATION_TIMEOUT_SEC);
+    }
+
+    @Override
+    public String getPoolInitSql() {
+        String initSql = properties.getProperty(DB_POOL_INIT_SQL);
+        if (initSql == null) {
+            return DEFAULT_POOL_INIT_SQL;
+        }
+        return initSql.trim();
+    }
+
+    @Override
+    public boolean getPoolStatementCacheEnabled() {
+        String enabled = properties.getProperty(DB_POOL_STATEMENT_CACHE_ENABLED);
+        return enabled == null || !"false".equalsIgnoreCase(enabled.trim());
+    }
+
+    @Override
+    public PlanCaptureMode getPlanCaptureMode() {
+        String mode = properties.getProperty(DB_PLAN_CAPTURE_MODE);
+        if (mode == null || mode.trim().isEmpty()) {
+            return DEFAULT_PLAN_CAPTURE_MODE;
+        }
+        try {
+            return PlanCaptureMode.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректное значение {}={}, используется {}",
+                    DB_PLAN_CAPTURE_MODE, mode, DEFAULT_PLAN_CAPTURE_MODE);
+            return DEFAULT_PLAN_CAPTURE_MODE;
+        }
+    }
+
+    @Override
+    public int getPlanCaptureSampleRate() {
+        return (int) getLong(DB_PLAN_CAPTURE_SAMPLE_RATE, DEFAULT_PLAN_CAPTURE_SAMPLE_RATE);
+    }
+
+    @Override
+    public long getPlanCaptureSlowThresholdMs() {
+        return getLong(DB_PLAN_CAPTURE_SLOW_THRESHOLD_MS, DEFAULT_PLAN_CAPTURE_SLOW_THRESHOLD_MS);
+    }
+
+    @Override
+    public long getPlanCaptureCacheTtlMs() {
+        return getLong(DB_PLAN_CAPTURE_CACHE_TTL_MS, DEFAULT_PLAN_CAPTURE_CACHE_TTL_MS);
+    }
+
+    @Override
+    public ResultCacheMode getResultCacheMode() {
+        String mode = properties.getProperty(DB_RESULT_CACHE_MODE);
+        if (mode == null || mode.trim().isEmpty()) {
+            return DEFAULT_RESULT_CACHE_MODE;
+        }
+        try {
+            return ResultCacheMode.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректное значение {}={}, используется {}",
+                    DB_RESULT_CACHE_MODE, mode, DEFAULT_RESULT_CACHE_MODE);
+            return DEFAULT_RESULT_CACHE_MODE;
+        }
+    }
+
+    @Override
+    public long getResultCacheMaxBytes() {
+        return getLong(DB_RESULT_CACHE_MAX_BYTES, DEFAULT_RESULT_CACHE_MAX_BYTES);
+    }
+
+    @Override
+    public int getStreamingFetchSize() {
+        return (int) getLong(DB_STREAMING_FETCH_SIZE, DEFAULT_STREAMING_FETCH_SIZE);
+    }
+
+    @Override
+    public SamplingMethod getApproximateMethod() {
+        String method = properties.getProperty(DB_APPROXIMATE_METHOD);
+        if (method == null || method.trim().isEmpty()) {
+            return DEFAULT_APPROXIMATE_METHOD;
+        }
+        try {
+            return SamplingMethod.valueOf(method.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректное значение {}={}, используется {}",
+                    DB_APPROXIMATE_METHOD, method, DEFAULT_APPROXIMATE_METHOD);
+            return DEFAULT_APPROXIMATE_METHOD;
+        }
+    }
+
+    @Override
+    public double getApproximateSamplePercent() {
+        return getDouble(DB_APPROXIMATE_SAMPLE_PERCENT, DEFAULT_APPROXIMATE_SAMPLE_PERCENT);
+    }
+
+    @Override
+    public double getApproximatePilotPercent() {
+        return getDouble(DB_APPROXIMATE_PILOT_PERCENT, DEFAULT_APPROXIMATE_PILOT_PERCENT);
+    }
+
+    @Override
+    public double getApproximateConfidence() {
+        return getDouble(DB_APPROXIMATE_CONFIDENCE, DEFAULT_APPROXIMATE_CONFIDENCE);
+    }
+
+    @Override
+    public int getPartitionPremakeMonths() {
+        return (int) getLong(DB_PARTITION_PREMAKE_MONTHS, DEFAULT_PARTITION_PREMAKE_MONTHS);
+    }
+
+    @Override
+    public int getPartitionRetentionMonths() {
+        return (int) getLong(DB_PARTITION_RETENTION_MONTHS, DEFAULT_PARTITION_RETENTION_MONTHS);
+    }
+
+    @Override
+    public PartitionRetentionAction getPartitionRetentionAction() {
+        String action = properties.getProperty(DB_PARTITION_RETENTION_ACTION);
+        if (action == null || action.trim().isEmpty()) {
+            return DEFAULT_PARTITION_RETENTION_ACTION;
+        }
+        try {
+            return PartitionRetentionAction.valueOf(action.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректное значение {}={}, используется {}",
+                    DB_PARTITION_RETENTION_ACTION, action, DEFAULT_PARTITION_RETENTION_ACTION);
+            return DEFAULT_PARTITION_RETENTION_ACTION;
+        }
+    }
+
+    @Override
+    public int getBrinPagesPerRange() {
+        return (int) getLong(DB_BRIN_PAGES_PER_RANGE, DEFAULT_BRIN_PAGES_PER_RANGE);
+    }
+
+    @Override
+    public double getBrinMinCorrelation() {
+        return getDouble(DB_BRIN_MIN_CORRELATION, DEFAULT_BRIN_MIN_CORRELATION);
+    }
+
+    @Override
+    public long getColumnarRefreshIntervalMs() {
+        return getLong(DB_COLUMNAR_REFRESH_INTERVAL_MS, DEFAULT_COLUMNAR_REFRESH_INTERVAL_MS);
+    }
+
+    @Override
+    public long getColumnarLateRowWindowMs() {
+        return getLong(DB_COLUMNAR_LATE_ROW_WINDOW_MS, DEFAULT_COLUMNAR_LATE_ROW_WINDOW_MS);
+    }
+
+    @Override
+    public long getColumnarReloadIntervalMs() {
+        return getLong(DB_COLUMNAR_RELOAD_INTERVAL_MS, DEFAULT_COLUMNAR_RELOAD_INTERVAL_MS);
+    }
+
+    @Override
+    public String getColumnarSnapshotFile() {
+        String file = properties.getProperty(DB_COLUMNAR_SNAPSHOT_FILE);
+        return file != null && !file.trim().isEmpty() ? file.trim() : null;
+    }
+
+    @Override
+    public long getColumnarPersistIntervalMs() {
+        return getLong(DB_COLUMNAR_PERSIST_INTERVAL_MS, DEFAULT_COLUMNAR_PERSIST_INTERVAL_MS);
+    }
+
+    @Override
+    public long getAsyncTimeoutMs() {
+        return getLong(DB_ASYNC_TIMEOUT_MS, DEFAULT_ASYNC_TIMEOUT_MS);
+    }
+
+    private long getLong(String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Некорректное значение {}={}, используется {}", key, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private double getDouble(String key, double defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Некорректное значение {}={}, используется {}", key, value, defaultValue);
+            return defaultValue;
+        }
+    }
 }
@@ -0,0 +1,13 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.config;
+
+import ru.mentee.power.model.ResultCacheMode;
+
+public interface ResultCacheConfig {
+    String DB_RESULT_CACHE_MODE = "db.result-cache.mode";
+    String DB_RESULT_CACHE_MAX_BYTES = "db.result-cache.max-bytes";
+
+    ResultCacheMode getResultCacheMode();
+
+    long getResultCacheMaxBytes();
+}
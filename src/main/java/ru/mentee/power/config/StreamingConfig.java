@@ -0,0 +1,8 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.config;
+
+public interface StreamingConfig {
+    String DB_STREAMING_FETCH_SIZE = "db.streaming.fetch-size";
+
+    int getStreamingFetchSize();
+}
@@ -0,0 +1,76 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.connection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import ru.mentee.power.model.PoolMetrics;
+
+/**
+ * Источник JDBC соединений для репозиториев.
+ * Вызывающий код обязан закрыть полученное соединение, что возвращает его поставщику.
+ */
+public interface ConnectionProvider extends AutoCloseable {
+
+    /**
+     * Выдает готовое к работе соединение.
+     *
+     * @return соединение с выполненной инициализацией сессии
+     * @throws SQLException если соединение не удалось получить или истек таймаут ожидания
+     */
+    Connection getConnection() throws SQLException;
+
+    /**
+     * Выдает сразу несколько соединений для сценариев с одновременными сессиями. Поставщики с
+     * ограниченным пулом резервируют их одним захватом, чтобы такие вызовы не держали часть
+     * соединений, ожидая остальные, и не блокировали друг друга до таймаута.
+     *
+     * @param count число соединений
+     * @return соединения, каждое из которых вызывающий код обязан закрыть
+     * @throws SQLException если соединения не удалось получить; уже выданные при этом закрываются
+     */
+    default List<Connection> getConnections(int count) throws SQLException {
+        List<Connection> connections = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                connections.add(getConnection());
+            }
+            return connections;
+        } catch (SQLException | RuntimeException e) {
+            closeAll(connections, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Регистрирует SQL-константы, которые стоит держать подготовленными на каждом соединении.
+     * Поставщики без кэша операторов игнорируют регистрацию.
+     *
+     * @param sqls неизменяемые тексты SQL, передаваемые в {@link Connection#prepareStatement(String)}
+     */
+    default void registerStatements(Collection<String> sqls) {}
+
+    /**
+     * Возвращает текущие метрики поставщика соединений.
+     *
+     * @return снимок метрик на момент вызова
+     */
+    PoolMetrics getMetrics();
+
+    /** Закрывает все физические соединения поставщика. */
+    @Override
+    void close();
+
+    /** Закрывает соединения, добавляя ошибки закрытия к {@code cause}. */
+    static void closeAll(List<Connection> connections, Exception cause) {
+        for (Connection connection : connections) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                cause.addSuppressed(e);
+            }
+        }
+    }
+}
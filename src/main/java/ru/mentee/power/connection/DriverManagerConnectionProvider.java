@@ -0,0 +1,66 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.connection;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.LongAdder;
+import ru.mentee.power.config.ApplicationConfig;
+import ru.mentee.power.model.PoolMetrics;
+
+/**
+ * Поставщик без пула: каждое обращение открывает новое физическое соединение.
+ * Полезен как базовая линия при замерах и для одноразовых утилит.
+ */
+public class DriverManagerConnectionProvider implements ConnectionProvider {
+    private final ApplicationConfig config;
+    private final LongAdder created = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+
+    public DriverManagerConnectionProvider(ApplicationConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection connection =
+                DriverManager.getConnection(
+                        config.getUrl(), config.getUsername(), config.getPassword());
+        String initSql = config.getPoolInitSql();
+        if (initSql != null && !initSql.isEmpty()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(initSql);
+            } catch (SQLException e) {
+                connection.close();
+                throw e;
+            }
+        }
+        created.increment();
+        acquireNanos.add(System.nanoTime() - start);
+        return connection;
+    }
+
+    @Override
+    public PoolMetrics getMetrics() {
+        long count = created.sum();
+        return PoolMetrics.builder()
+                .maxSize(0)
+                .totalConnections(0)
+                .activeConnections(0)
+                .idleConnections(0)
+                .waitingThreads(0)
+                .acquireCount(count)
+                .acquireTimeoutCount(0L)
+                .averageAcquireTimeMs(count == 0 ? 0.0 : acquireNanos.sum() / 1_000_000.0 / count)
+                .connectionsCreated(count)
+                .validationFailures(0L)
+                .capturedAt(LocalDateTime.now())
+                .build();
+    }
+
+    @Override
+    public void close() {}
+}
@@ -0,0 +1,542 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.connection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGStatement;
+import ru.mentee.power.config.ApplicationConfig;
+import ru.mentee.power.model.PoolMetrics;
+
+/**
+ * Ограниченный пул физических соединений PostgreSQL.
+ *
+ * <p>Размер пула ограничивается семафором, свободные соединения хранятся в LIFO-очереди, чтобы
+ * чаще переиспользовать "теплые" соединения. Инициализация сессии (например, search_path)
+ * выполняется один раз при открытии физического соединения, а не при каждой выдаче. При возврате
+ * в пул откатывается незавершенная транзакция и восстанавливаются autocommit и уровень изоляции.
+ *
+ * <p>Для SQL, зарегистрированного через {@link #registerStatements(Collection)}, каждое физическое
+ * соединение держит собственный кэш PreparedStatement. Объекты операторов создаются при открытии
+ * соединения, а для уже открытых свободных соединений - при регистрации. Драйвер отправляет Parse
+ * только при выполнении, поэтому именованный серверный оператор появляется при первом выполнении
+ * на соединении: prepareThreshold=1 делает его именованным сразу, а не на пятом вызове, как по
+ * умолчанию, и повторные вызовы пропускают разбор и планирование на сервере. Выполнять запрос
+ * заранее с фиктивными параметрами пул не пытается.
+ *
+ * <p>Операторы, созданные потоком с привязанной {@link QueryCancellation}, регистрируются в ней,
+ * чтобы асинхронный вызов можно было отменить через {@link Statement#cancel()}.
+ */
+@Slf4j
+public class PooledConnectionProvider implements ConnectionProvider {
+    private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final ApplicationConfig config;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMs;
+    private final int validationTimeoutSec;
+    private final String initSql;
+    private final boolean statementCacheEnabled;
+    private final Set<String> cacheableStatements = ConcurrentHashMap.newKeySet();
+
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final AtomicLong maxAcquireNanos = new AtomicLong();
+    private final LongAdder acquireTimeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder destroyed = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private volatile boolean closed;
+
+    public PooledConnectionProvider(ApplicationConfig config) {
+        this.config = config;
+        this.maxSize = Math.max(1, config.getPoolMaxSize());
+        this.minSize = Math.min(Math.max(0, config.getPoolMinSize()), maxSize);
+        this.acquireTimeoutMs = config.getPoolAcquireTimeoutMs();
+        this.validationTimeoutSec = config.getPoolValidationTimeoutSec();
+        this.initSql = config.getPoolInitSql();
+        this.statementCacheEnabled = config.getPoolStatementCacheEnabled();
+        this.permits = new Semaphore(maxSize, true);
+        loadDriver();
+        warmUp();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        acquirePermits(1);
+        return lease(start);
+    }
+
+    /**
+     * Резервирует {@code count} разрешений одним захватом справедливого семафора: пока вызов
+     * ждет, он не держит ни одного соединения, поэтому сценарии с несколькими сессиями не
+     * блокируют друг друга, а очередь не дает им голодать за одиночными запросами.
+     */
+    @Override
+    public List<Connection> getConnections(int count) throws SQLException {
+        if (count > maxSize) {
+            throw new SQLException(
+                    "Запрошено %d соединений одновременно, в пуле не больше %d"
+                            .formatted(count, maxSize));
+        }
+        long start = System.nanoTime();
+        acquirePermits(count);
+        List<Connection> connections = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                connections.add(lease(start));
+            }
+            return connections;
+        } catch (SQLException | RuntimeException e) {
+            // lease уже вернул разрешение неудавшегося соединения
+            permits.release(count - connections.size() - 1);
+            ConnectionProvider.closeAll(connections, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void registerStatements(Collection<String> sqls) {
+        if (!statementCacheEnabled) {
+            return;
+        }
+        cacheableStatements.addAll(sqls);
+        prepareIdleConnections();
+    }
+
+    @Override
+    public PoolMetrics getMetrics() {
+        long count = acquireCount.sum();
+        return PoolMetrics.builder()
+                .maxSize(maxSize)
+                .totalConnections(total.get())
+                .activeConnections(active.get())
+                .idleConnections(idle.size())
+                .waitingThreads(waiters.get())
+                .acquireCount(count)
+                .acquireTimeoutCount(acquireTimeouts.sum())
+                .averageAcquireTimeMs(count == 0 ? 0.0 : acquireNanos.sum() / 1_000_000.0 / count)
+                .maxAcquireTimeMs(maxAcquireNanos.get() / 1_000_000.0)
+                .connectionsCreated(created.sum())
+                .connectionsDestroyed(destroyed.sum())
+                .validationFailures(validationFailures.sum())
+                .statementCacheHits(statementCacheHits.sum())
+                .statementCacheMisses(statementCacheMisses.sum())
+                .capturedAt(LocalDateTime.now())
+                .build();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+        log.info("Пул соединений закрыт, активных соединений: {}", active.get());
+    }
+
+    private void acquirePermits(int count) throws SQLException {
+        if (closed) {
+            throw new SQLException("Пул соединений закрыт");
+        }
+        QueryCancellation cancellation = QueryCancellation.current();
+        if (cancellation != null) {
+            cancellation.checkNotCancelled();
+        }
+        waiters.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(count, acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Ожидание соединения из пула прервано", e);
+        } finally {
+            waiters.decrementAndGet();
+        }
+        if (!acquired) {
+            acquireTimeouts.increment();
+            throw new SQLTimeoutException(
+                    "Не удалось получить соединение за %d мс (active=%d, max=%d)"
+                            .formatted(acquireTimeoutMs, active.get(), maxSize));
+        }
+    }
+
+    /** Выдает соединение под уже занятое разрешение; при ошибке разрешение возвращается. */
+    private Connection lease(long start) throws SQLException {
+        try {
+            PooledConnection pooled = borrow();
+            active.incrementAndGet();
+            recordAcquire(System.nanoTime() - start);
+            return wrap(pooled);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void loadDriver() {
+        try {
+            Class.forName(config.getDriver());
+        } catch (ClassNotFoundException e) {
+            log.warn("JDBC драйвер {} не найден в classpath", config.getDriver());
+        }
+    }
+
+    private void warmUp() {
+        for (int i = 0; i < minSize; i++) {
+            try {
+                idle.offerLast(open());
+            } catch (SQLException e) {
+                log.warn("Не удалось заранее открыть соединения пула: {}", e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private PooledConnection borrow() throws SQLException {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (isAlive(pooled)) {
+                return pooled;
+            }
+            validationFailures.increment();
+            destroy(pooled);
+        }
+        return open();
+    }
+
+    /**
+     * Проверяет соединение перед выдачей. Соединение, вернувшееся в пул совсем недавно,
+     * считается живым без лишнего round trip до сервера.
+     */
+    private boolean isAlive(PooledConnection pooled) {
+        if (System.nanoTime() - pooled.lastReleasedNanos < VALIDATION_BYPASS_NANOS) {
+            return true;
+        }
+        try {
+            return pooled.raw.isValid(validationTimeoutSec);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection raw =
+                DriverManager.getConnection(
+                        config.getUrl(), config.getUsername(), config.getPassword());
+        try {
+            if (initSql != null && !initSql.isEmpty()) {
+                try (Statement statement = raw.createStatement()) {
+                    statement.execute(initSql);
+                }
+            }
+            PooledConnection pooled = new PooledConnection(raw, raw.getTransactionIsolation());
+            prepareKnownStatements(pooled);
+            total.incrementAndGet();
+            created.increment();
+            return pooled;
+        } catch (SQLException e) {
+            raw.close();
+            throw e;
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        active.decrementAndGet();
+        try {
+            if (closed || pooled.raw.isClosed()) {
+                destroy(pooled);
+                return;
+            }
+            reset(pooled);
+            pooled.lastReleasedNanos = System.nanoTime();
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            log.warn("Соединение не удалось вернуть в пул, оно будет закрыто: {}", e.getMessage());
+            destroy(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void reset(PooledConnection pooled) throws SQLException {
+        Connection raw = pooled.raw;
+        for (CachedStatement cached : pooled.statements.values()) {
+            if (cached.inUse) {
+                cached.recycle();
+            }
+        }
+        if (!raw.getAutoCommit()) {
+            raw.rollback();
+            raw.setAutoCommit(true);
+        }
+        if (raw.getTransactionIsolation() != pooled.defaultIsolation) {
+            raw.setTransactionIsolation(pooled.defaultIsolation);
+        }
+        if (raw.isReadOnly()) {
+            raw.setReadOnly(false);
+        }
+        raw.clearWarnings();
+    }
+
+    /**
+     * Добавляет зарегистрированные операторы в кэш свободных соединений, открытых до регистрации
+     * (например, в {@link #warmUp()}). Соединение на время подготовки забирается из очереди
+     * под разрешение семафора, поэтому размер пула не превышается; если все разрешения заняты,
+     * остальные соединения подготовят операторы при первом обращении к ним.
+     */
+    private void prepareIdleConnections() {
+        List<PooledConnection> prepared = new ArrayList<>();
+        int count = idle.size();
+        for (int i = 0; i < count && permits.tryAcquire(); i++) {
+            try {
+                PooledConnection pooled = idle.pollFirst();
+                if (pooled == null) {
+                    break;
+                }
+                try {
+                    prepareKnownStatements(pooled);
+                    prepared.add(pooled);
+                } catch (SQLException e) {
+                    log.warn("Не удалось подготовить операторы на соединении пула: {}",
+                            e.getMessage());
+                    destroy(pooled);
+                }
+            } finally {
+                permits.release();
+            }
+        }
+        for (int i = prepared.size() - 1; i >= 0; i--) {
+            idle.offerFirst(prepared.get(i));
+        }
+    }
+
+    private void prepareKnownStatements(PooledConnection pooled) throws SQLException {
+        for (String sql : cacheableStatements) {
+            if (!pooled.statements.containsKey(sql)) {
+                pooled.statements.put(sql, new CachedStatement(prepareCacheable(pooled.raw, sql)));
+            }
+        }
+    }
+
+    private PreparedStatement prepareCached(PooledConnection pooled, String sql)
+            throws SQLException {
+        CachedStatement cached = pooled.statements.get(sql);
+        if (cached != null && cached.inUse) {
+            // Тот же SQL уже открыт на этом соединении: отдаем обычный оператор вне кэша
+            return pooled.raw.prepareStatement(sql);
+        }
+        if (cached != null && !cached.raw.isClosed()) {
+            statementCacheHits.increment();
+        } else {
+            statementCacheMisses.increment();
+            cached = new CachedStatement(prepareCacheable(pooled.raw, sql));
+            pooled.statements.put(sql, cached);
+        }
+        cached.inUse = true;
+        cached.lease++;
+        return (PreparedStatement)
+                Proxy.newProxyInstance(
+                        PreparedStatement.class.getClassLoader(),
+                        new Class<?>[] {PreparedStatement.class},
+                        new CachedStatementHandler(cached, cached.lease));
+    }
+
+    /**
+     * Создает оператор кэша. Серверный именованный оператор драйвер создаст при первом
+     * выполнении благодаря prepareThreshold=1.
+     */
+    private PreparedStatement prepareCacheable(Connection raw, String sql) throws SQLException {
+        PreparedStatement statement = raw.prepareStatement(sql);
+        if (statement.isWrapperFor(PGStatement.class)) {
+            statement.unwrap(PGStatement.class).setPrepareThreshold(1);
+        }
+        return statement;
+    }
+
+    private void destroy(PooledConnection pooled) {
+        total.decrementAndGet();
+        destroyed.increment();
+        try {
+            pooled.raw.close();
+        } catch (SQLException e) {
+            log.debug("Ошибка закрытия физического соединения", e);
+        }
+    }
+
+    private void recordAcquire(long nanos) {
+        acquireCount.increment();
+        acquireNanos.add(nanos);
+        maxAcquireNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private Connection wrap(PooledConnection pooled) {
+        return (Connection)
+                Proxy.newProxyInstance(
+                        Connection.class.getClassLoader(),
+                        new Class<?>[] {Connection.class},
+                        new PooledConnectionHandler(pooled));
+    }
+
+    private static final class PooledConnection {
+        private final Connection raw;
+        private final int defaultIsolation;
+        private final Map<String, CachedStatement> statements = new HashMap<>();
+        private volatile long lastReleasedNanos = System.nanoTime();
+
+        private PooledConnection(Connection raw, int defaultIsolation) {
+            this.raw = raw;
+            this.defaultIsolation = defaultIsolation;
+        }
+    }
+
+    /**
+     * Кэшированный оператор принадлежит одному физическому соединению. Счетчик lease отличает
+     * текущую выдачу от предыдущих, чтобы запоздалый close() старого прокси не освободил
+     * оператор, уже выданный заново.
+     */
+    private static final class CachedStatement {
+        private final PreparedStatement raw;
+        private boolean inUse;
+        private long lease;
+
+        private CachedStatement(PreparedStatement raw) {
+            this.raw = raw;
+        }
+
+        private void recycle() throws SQLException {
+            inUse = false;
+            ResultSet resultSet = raw.getResultSet();
+            if (resultSet != null) {
+                resultSet.close();
+            }
+            raw.clearParameters();
+            raw.clearWarnings();
+        }
+    }
+
+    /** Перехватывает close(), возвращая физическое соединение в пул вместо закрытия. */
+    private final class PooledConnectionHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final AtomicBoolean returned = new AtomicBoolean();
+
+        private PooledConnectionHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (returned.compareAndSet(false, true)) {
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned.get() || pooled.raw.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pooled.raw + "]";
+                default:
+                    break;
+            }
+            if (returned.get()) {
+                throw new SQLException("Соединение уже возвращено в пул");
+            }
+            Object result;
+            if ("prepareStatement".equals(method.getName())
+                    && args.length == 1
+                    && cacheableStatements.contains((String) args[0])) {
+                result = prepareCached(pooled, (String) args[0]);
+            } else {
+                try {
+                    result = method.invoke(pooled.raw, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+            QueryCancellation cancellation = QueryCancellation.current();
+            if (cancellation != null && result instanceof Statement statement) {
+                return cancellation.track(statement, method.getReturnType());
+            }
+            return result;
+        }
+    }
+
+    /** Перехватывает close(), возвращая оператор в кэш соединения вместо закрытия. */
+    private static final class CachedStatementHandler implements InvocationHandler {
+        private final CachedStatement cached;
+        private final long lease;
+
+        private CachedStatementHandler(CachedStatement cached, long lease) {
+            this.cached = cached;
+            this.lease = lease;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            boolean current = cached.inUse && cached.lease == lease;
+            switch (method.getName()) {
+                case "close":
+                    if (current) {
+                        cached.recycle();
+                    }
+                    return null;
+                case "isClosed":
+                    return !current || cached.raw.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (!current) {
+                throw new SQLException("Оператор уже закрыт");
+            }
+            try {
+                return method.invoke(cached.raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.connection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Область отмены одного вызова репозитория. Пока область привязана к потоку через
+ * {@link #bind()}, {@link PooledConnectionProvider} регистрирует в ней операторы, созданные
+ * этим потоком, и {@link #cancel()} вызывает {@link Statement#cancel()} у тех, что сейчас
+ * внутри execute*. После отмены новые соединения и выполнения в области завершаются
+ * SQLException с SQLState 57014, как отмененный сервером запрос.
+ *
+ * <p>Отмена, завершение выполнения и {@link #finish()} взаимно исключены одной блокировкой:
+ * оператор попадает под отмену только между началом и возвратом execute*, а вернуться в кэш
+ * операторов соединения и достаться другому вызову может лишь после этого. Чтение уже
+ * полученного ResultSet не отменяется, отмена проявится на следующем execute*.
+ *
+ * <p>Вызов, раздающий работу другим потокам, заводит для нее дочернюю область через
+ * {@link #child()}: отмена родителя отменяет дочерние, а отмена дочерней, например при ошибке
+ * одной из частей, родителя не затрагивает.
+ *
+ * <p>Поток вызова не прерывается: прерывание виртуального потока в сокетном чтении закрывает
+ * сокет, и физическое соединение пришлось бы выбросить. Работа, переданная репозиторием в
+ * другие потоки, отменяется, только если эти потоки тоже привязали область.
+ */
+@Slf4j
+public final class QueryCancellation {
+    private static final String QUERY_CANCELED = "57014";
+    private static final ThreadLocal<QueryCancellation> CURRENT = new ThreadLocal<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Операторы внутри execute*; меняются под lock
+    private final Set<Statement> executing = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<QueryCancellation> children = new ArrayList<>();
+    private volatile boolean cancelled;
+    private volatile boolean finished;
+
+    /** Возвращает область, привязанную к текущему потоку, или null. */
+    public static QueryCancellation current() {
+        return CURRENT.get();
+    }
+
+    /** Привязывает область к текущему потоку до закрытия привязки. */
+    public Binding bind() {
+        QueryCancellation previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    /**
+     * Создает дочернюю область. Если эта область уже отменена, дочерняя создается отмененной.
+     */
+    public QueryCancellation child() {
+        QueryCancellation child = new QueryCancellation();
+        lock.lock();
+        try {
+            if (cancelled) {
+                child.cancelled = true;
+            } else if (!finished) {
+                children.add(child);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return child;
+    }
+
+    /** Отменяет выполняющиеся операторы области и дочерних областей и запрещает новые. */
+    public void cancel() {
+        lock.lock();
+        try {
+            cancelled = true;
+            if (finished) {
+                return;
+            }
+            // Блокировки берутся только от родителя к дочерней области
+            for (QueryCancellation child : children) {
+                child.cancel();
+            }
+            for (Statement statement : executing) {
+                try {
+                    statement.cancel();
+                } catch (SQLException e) {
+                    log.debug("Оператор не отменен: {}", e.getMessage());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Отмечает, что вызов завершился: дальнейшая отмена ничего не делает. */
+    public void finish() {
+        lock.lock();
+        try {
+            finished = true;
+            executing.clear();
+            children.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    void checkNotCancelled() throws SQLException {
+        if (cancelled) {
+            throw new SQLException("Запрос отменен", QUERY_CANCELED);
+        }
+    }
+
+    /**
+     * Возвращает оператор, который перед каждым execute* проверяет отмену и на время
+     * выполнения доступен {@link #cancel()}.
+     */
+    Statement track(Statement statement, Class<?> type) {
+        if (finished || !type.isInterface() || !Statement.class.isAssignableFrom(type)) {
+            return statement;
+        }
+        return (Statement)
+                Proxy.newProxyInstance(
+                        Statement.class.getClassLoader(),
+                        new Class<?>[] {type},
+                        new TrackedStatementHandler(statement));
+    }
+
+    /** Привязка области к потоку; закрытие возвращает прежнюю. */
+    public interface Binding extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Регистрирует оператор как выполняющийся, если вызов еще не завершен и не отменен.
+     *
+     * @return false, если вызов уже завершен и оператор выполняется вне области
+     */
+    private boolean beginExecute(Statement statement) throws SQLException {
+        lock.lock();
+        try {
+            checkNotCancelled();
+            if (finished) {
+                return false;
+            }
+            executing.add(statement);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void endExecute(Statement statement) {
+        lock.lock();
+        try {
+            executing.remove(statement);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private final class TrackedStatementHandler implements InvocationHandler {
+        private final Statement statement;
+
+        private TrackedStatementHandler(Statement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            boolean tracked = method.getName().startsWith("execute") && beginExecute(statement);
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if (tracked) {
+                    endExecute(statement);
+                }
+            }
+        }
+    }
+}
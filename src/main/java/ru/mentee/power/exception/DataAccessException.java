@@ -3,6 +3,10 @@ package ru.mentee.power.exception;
 import java.sql.SQLException;
 
 public class DataAccessException extends RuntimeException {
+    public DataAccessException(String message) {
+    super(message);
+  }
+
     public DataAccessException(String message, SQLException e) {
     super(message, e);
   }
@@ -1,5 +1,6 @@
 package ru.mentee.power.model;
 
+import java.util.List;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -13,6 +14,17 @@ public class ConcurrencySimulationResult {
   private Integer totalOperations;
   private Double successRate;
   private Double averageResponseTime;
+  private Double averagePermitWaitTime;
   private Integer deadlockCount;
   private Integer serializationFailureCount;
-}
\ No newline at end of file
+  private String executionMode;
+  private String isolationLevel;
+  private Integer users;
+  private Integer concurrencyLimit;
+  private Integer failedOperationCount;
+  private Integer poolTimeoutCount;
+  private Long totalDurationMillis;
+  private Double throughputOpsPerSecond;
+  private Long pinnedEventCount;
+  private List<String> pinningSources;
+}
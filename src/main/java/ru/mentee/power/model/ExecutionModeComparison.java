@@ -0,0 +1,18 @@
+package ru.mentee.power.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExecutionModeComparison {
+  private ConcurrencySimulationResult virtualThreads;
+  private ConcurrencySimulationResult platformThreads;
+  private Double throughputRatio;
+  private Double throughputDifferenceOpsPerSecond;
+  private String summary;
+}
@@ -0,0 +1,11 @@
+package ru.mentee.power.model;
+
+/**
+ * Что делать с секциями, вышедшими за срок хранения.
+ */
+public enum PartitionRetentionAction {
+  /** Отсоединить секцию: данные остаются в отдельной таблице для архивации. */
+  DETACH,
+  /** Отсоединить и удалить секцию вместе с данными. */
+  DROP
+}
@@ -0,0 +1,15 @@
+package ru.mentee.power.model;
+
+/**
+ * Политика снятия плана EXPLAIN (ANALYZE) для измеряемых запросов.
+ */
+public enum PlanCaptureMode {
+  /** План снимается при каждом вызове, запрос выполняется дважды. */
+  ALWAYS,
+  /** План снимается при первом вызове и затем на каждом N-м, или если в кэше нет плана. */
+  SAMPLED,
+  /** План снимается только после вызова, который выполнялся дольше порога. */
+  SLOW_ONLY,
+  /** План не снимается, метрики плана берутся только из кэша. */
+  NEVER
+}
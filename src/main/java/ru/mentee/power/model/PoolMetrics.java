@@ -0,0 +1,30 @@
+/* @MENTEE_POWER (C)2025 */
+package ru.mentee.power.model;
+
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PoolMetrics {
+  private Integer maxSize;
+  private Integer totalConnections;
+  private Integer activeConnections;
+  private Integer idleConnections;
+  private Integer waitingThreads;
+  private Long acquireCount;
+  private Long acquireTimeoutCount;
+  private Double averageAcquireTimeMs;
+  private Double maxAcquireTimeMs;
+  private Long connectionsCreated;
+  private Long connectionsDestroyed;
+  private Long validationFailures;
+  private Long statementCacheHits;
+  private Long statementCacheMisses;
+  private LocalDateTime capturedAt;
+}
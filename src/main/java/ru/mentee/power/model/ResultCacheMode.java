@@ -0,0 +1,13 @@
+package ru.mentee.power.model;
+
+/**
+ * Режим кэша результатов аналитических запросов.
+ */
+public enum ResultCacheMode {
+  /** Кэш выключен, каждый вызов выполняет запрос. Режим по умолчанию. */
+  DISABLED,
+  /** Изменение таблицы удаляет зависящие от нее записи, следующий вызов ждет запроса. */
+  INVALIDATE,
+  /** Изменение таблицы помечает записи устаревшими; они отдаются, пока идет фоновое обновление. */
+  STALE_WHILE_REFRESH
+}
@@ -0,0 +1,11 @@
+package ru.mentee.power.model;
+
+/**
+ * Метод выборки TABLESAMPLE для приближенных запросов.
+ */
+public enum SamplingMethod {
+  /** Выбираются целые страницы: читается только доля таблицы, но строки страницы коррелируют. */
+  SYSTEM,
+  /** Каждая строка выбирается независимо: точнее при той же доле, но читается вся таблица. */
+  BERNOULLI
+}
@@ -0,0 +1,11 @@
+package ru.mentee.power.model;
+
+/**
+ * Модель потоков для симуляции конкурентной нагрузки.
+ */
+public enum SimulationExecutionMode {
+  /** Каждый пользователь выполняется в отдельном виртуальном потоке. */
+  VIRTUAL_THREADS,
+  /** Пользователи выполняются в фиксированном пуле платформенных потоков. */
+  PLATFORM_THREADS
+}
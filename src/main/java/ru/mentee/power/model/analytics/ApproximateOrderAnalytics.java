@@ -0,0 +1,18 @@
+package ru.mentee.power.model.analytics;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Оценка строки аналитики заказов по выборке. Количество и сумма в {@code estimate} пересчитаны
+ * на всю таблицу; first/last order - крайние значения, встретившиеся в выборке.
+ */
+@Data
+@Builder
+public class ApproximateOrderAnalytics {
+  private OrderAnalytics estimate;
+  private ConfidenceInterval ordersCount;
+  private ConfidenceInterval totalRevenue;
+  private ConfidenceInterval avgOrderValue;
+  private Long sampledRows;
+}
@@ -0,0 +1,21 @@
+package ru.mentee.power.model.analytics;
+
+import java.time.LocalDateTime;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class AsyncCallMetrics {
+  private String operation;
+  private Long calls;
+  private Long succeeded;
+  private Long failed;
+  private Long timedOut;
+  private Long cancelled;
+  private Long inFlight;
+  private Double averageQueueWaitMs;
+  private Double averageLatencyMs;
+  private Double maxLatencyMs;
+  private LocalDateTime capturedAt;
+}
@@ -0,0 +1,21 @@
+package ru.mentee.power.model.analytics;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class BrinCandidate {
+  private String tableName;
+  private String columnName;
+  private String dataType;
+  /** Корреляция физического порядка строк с порядком значений из pg_stats, от -1 до 1. */
+  private Double correlation;
+  private Long tablePages;
+  private Long tableSizeBytes;
+  private Integer pagesPerRange;
+  private boolean recommended;
+  private String reason;
+  /** Команда создания BRIN индекса, если он рекомендован, иначе null. */
+  private String createStatement;
+}
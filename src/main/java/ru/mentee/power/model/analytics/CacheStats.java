@@ -0,0 +1,27 @@
+package ru.mentee.power.model.analytics;
+
+import java.time.LocalDateTime;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class CacheStats {
+  private String mode;
+  private Long hits;
+  private Long staleHits;
+  private Long misses;
+  private Double hitRatio;
+  private Long evictions;
+  private Long invalidations;
+  private Long backgroundRefreshes;
+  private Long refreshFailures;
+  private Integer entries;
+  private Integer staleEntries;
+  private Long sizeBytes;
+  private Long maxBytes;
+  private Long oldestStaleAgeMs;
+  private Long maxServedStalenessMs;
+  private Double avgServedStalenessMs;
+  private LocalDateTime capturedAt;
+}
@@ -0,0 +1,16 @@
+package ru.mentee.power.model.analytics;
+
+import java.time.LocalDateTime;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class CapturedPlan {
+  private String queryKey;
+  private String planJson;
+  private LocalDateTime capturedAt;
+  private long capturedAtNanos;
+  /** true, если план снят в этом вызове, false - если взят из кэша. */
+  private boolean fresh;
+}
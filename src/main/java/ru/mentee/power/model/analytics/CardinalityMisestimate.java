@@ -0,0 +1,20 @@
+package ru.mentee.power.model.analytics;
+
+import java.util.List;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class CardinalityMisestimate {
+  private String operation;
+  private String relation;
+  private Integer depth;
+  private Long estimatedRows;
+  private Long actualRows;
+  private Long loops;
+  private Double errorFactor;
+  private boolean underestimated;
+  private String condition;
+  private List<String> columns;
+}
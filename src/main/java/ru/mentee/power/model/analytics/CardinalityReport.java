@@ -0,0 +1,20 @@
+package ru.mentee.power.model.analytics;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class CardinalityReport {
+  private String query;
+  private Double errorFactorThreshold;
+  private Double worstErrorFactor;
+  private BigDecimal executionTime;
+  private String planFingerprint;
+  private List<CardinalityMisestimate> misestimates;
+  private List<String> proposedStatements;
+  private LocalDateTime analyzedAt;
+}
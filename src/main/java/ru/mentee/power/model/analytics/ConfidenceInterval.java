@@ -0,0 +1,14 @@
+package ru.mentee.power.model.analytics;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class ConfidenceInterval {
+  private double estimate;
+  private double low;
+  private double high;
+  private double standardError;
+  private double relativeError;
+}
@@ -0,0 +1,19 @@
+package ru.mentee.power.model.analytics;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class DropCandidate {
+  private String indexName;
+  private String tableName;
+  private RedundancyReason reason;
+  private String coveredBy;
+  private String definition;
+  private Long scans;
+  private Long indexWrites;
+  private Double writesPerScan;
+  private Long sizeBytes;
+  private String dropStatement;
+}
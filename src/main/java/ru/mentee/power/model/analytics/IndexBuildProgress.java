@@ -0,0 +1,25 @@
+package ru.mentee.power.model.analytics;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class IndexBuildProgress {
+  private String indexName;
+  private String phase;
+  private Long blocksDone;
+  private Long blocksTotal;
+  private Long tuplesDone;
+  private Long tuplesTotal;
+
+  public double getPercent() {
+    if (blocksTotal != null && blocksTotal > 0) {
+      return blocksDone * 100.0 / blocksTotal;
+    }
+    if (tuplesTotal != null && tuplesTotal > 0) {
+      return tuplesDone * 100.0 / tuplesTotal;
+    }
+    return 0.0;
+  }
+}
@@ -0,0 +1,47 @@
+package ru.mentee.power.model.analytics;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class IndexBuildRequest {
+  private String indexName;
+  private String tableName;
+  /** Ключ индекса в скобках, например "(region, status, created_at)". */
+  private String keySql;
+  /** Неключевые колонки INCLUDE для сканирования только индекса или null. */
+  private List<String> includeColumns;
+  /** Предикат частичного индекса без WHERE или null. */
+  private String predicate;
+  /** Метод доступа, например "brin", или null для B-tree. */
+  private String method;
+  /** Параметры хранения без WITH, например "pages_per_range = 32", или null. */
+  private String storageParameters;
+
+  public IndexBuildRequest(String indexName, String tableName, String keySql, String predicate) {
+    this(indexName, tableName, keySql, null, predicate, null, null);
+  }
+
+  public String toCreateConcurrentlySql() {
+    return "CREATE INDEX CONCURRENTLY IF NOT EXISTS " + indexName + " ON " + tableName + " "
+        + toDefinitionSql();
+  }
+
+  /**
+   * Часть команды после имени таблицы: метод, ключ, колонки INCLUDE, параметры хранения и
+   * предикат.
+   */
+  public String toDefinitionSql() {
+    return (method != null ? "USING " + method + " " : "") + keySql
+        + (includeColumns != null && !includeColumns.isEmpty()
+            ? " INCLUDE (" + String.join(", ", includeColumns) + ")" : "")
+        + (storageParameters != null ? " WITH (" + storageParameters + ")" : "")
+        + (predicate != null ? " WHERE " + predicate : "");
+  }
+}
@@ -0,0 +1,20 @@
+package ru.mentee.power.model.analytics;
+
+import java.util.List;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class IndexBuildResult {
+  private String indexName;
+  private String tableName;
+  private IndexBuildStatus status;
+  private int attempts;
+  private int invalidLeftoversDropped;
+  private Long buildTimeMs;
+  private Long sizeBytes;
+  private String error;
+  /** Построения по секциям, если таблица секционирована, иначе null. */
+  private List<IndexBuildResult> partitionBuilds;
+}
@@ -0,0 +1,13 @@
+package ru.mentee.power.model.analytics;
+
+/**
+ * Итог построения одного индекса.
+ */
+public enum IndexBuildStatus {
+  /** Индекс построен. */
+  CREATED,
+  /** Валидный индекс с таким именем уже был, построение пропущено. */
+  ALREADY_EXISTS,
+  /** Все попытки завершились ошибкой, невалидный остаток удален. */
+  FAILED
+}
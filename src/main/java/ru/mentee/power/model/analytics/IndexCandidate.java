@@ -0,0 +1,29 @@
+package ru.mentee.power.model.analytics;
+
+import java.util.List;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class IndexCandidate {
+  private String indexName;
+  private String tableName;
+  private List<String> columns;
+  private String predicate;
+  private String sourceFilter;
+
+  /**
+   * Команда создания индекса без CONCURRENTLY: ее принимает hypopg_create_index,
+   * и ее можно выполнить внутри транзакции.
+   */
+  public String toCreateSql() {
+    StringBuilder sql = new StringBuilder("CREATE INDEX ")
+        .append(indexName).append(" ON ").append(tableName)
+        .append(" (").append(String.join(", ", columns)).append(')');
+    if (predicate != null) {
+      sql.append(" WHERE ").append(predicate);
+    }
+    return sql.toString();
+  }
+}
@@ -0,0 +1,21 @@
+package ru.mentee.power.model.analytics;
+
+import java.util.List;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class IndexDefinition {
+  private String indexName;
+  private String tableName;
+  private String accessMethod;
+  private boolean unique;
+  private boolean primary;
+  private List<String> keyColumns;
+  private List<String> includeColumns;
+  private String predicate;
+  private String definition;
+  private Long scans;
+  private Long sizeBytes;
+}
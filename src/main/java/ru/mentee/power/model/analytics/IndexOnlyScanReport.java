@@ -0,0 +1,26 @@
+package ru.mentee.power.model.analytics;
+
+import java.time.LocalDateTime;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class IndexOnlyScanReport {
+  private String relation;
+  private String indexName;
+  /** Строк, возвращенных узлом за все циклы. */
+  private Long rowsReturned;
+  private Long heapFetches;
+  /** Доля строк, за которыми пришлось обращаться к таблице. */
+  private Double heapFetchRatio;
+  private Long tablePages;
+  private Long allVisiblePages;
+  /** Доля страниц таблицы, отмеченных в карте видимости как all-visible, или null. */
+  private Double allVisibleRatio;
+  private Long deadTuples;
+  private LocalDateTime lastVacuum;
+  /** Сканирование только индекса упирается в устаревшую карту видимости. */
+  private boolean limitedByVisibilityMap;
+  private String recommendation;
+}
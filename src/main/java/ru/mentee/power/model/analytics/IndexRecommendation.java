@@ -0,0 +1,20 @@
+package ru.mentee.power.model.analytics;
+
+import java.math.BigDecimal;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class IndexRecommendation {
+  private IndexCandidate candidate;
+  private String createStatement;
+  private String evaluationMethod;
+  private BigDecimal baselineCost;
+  private BigDecimal estimatedCost;
+  private BigDecimal estimatedBenefit;
+  private Double improvementPercent;
+  private Long estimatedSizeBytes;
+  private boolean usedByPlanner;
+  private Integer rank;
+}
@@ -0,0 +1,16 @@
+package ru.mentee.power.model.analytics;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class IndexRedundancyReport {
+  private List<DropCandidate> dropCandidates;
+  private List<TableWriteCost> tables;
+  private Long reclaimableBytes;
+  private boolean usageFromSampler;
+  private LocalDateTime generatedAt;
+}
@@ -0,0 +1,19 @@
+package ru.mentee.power.model.analytics;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class IndexUsageRate {
+  private String indexName;
+  private String tableName;
+  private Double scansPerSecond;
+  private Double tuplesReadPerSecond;
+  private Double tuplesFetchedPerSecond;
+  private Double sizeGrowthBytesPerHour;
+  private Long sizeBytes;
+  private Long windowSeconds;
+  private Integer sampleCount;
+  private String verdict;
+}
@@ -15,4 +15,6 @@ public class IndexUsageStats {
   private Long sizeBytes;
   private String definition;
   private String recommendedUsage;
+  private Double scansPerSecond;
+  private Long observedWindowSeconds;
 }
\ No newline at end of file
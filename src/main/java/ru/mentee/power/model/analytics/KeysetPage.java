@@ -0,0 +1,18 @@
+package ru.mentee.power.model.analytics;
+
+import java.util.List;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Страница результата keyset-пагинации. {@code nextPageToken} передается в следующий вызов
+ * как есть и равен null на последней странице.
+ */
+@Data
+@Builder
+public class KeysetPage<T> {
+  private List<T> items;
+  private Integer pageSize;
+  private String nextPageToken;
+  private boolean hasMore;
+}
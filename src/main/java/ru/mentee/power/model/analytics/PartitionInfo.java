@@ -0,0 +1,16 @@
+package ru.mentee.power.model.analytics;
+
+import java.time.LocalDateTime;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class PartitionInfo {
+  private String partitionName;
+  private LocalDateTime rangeFrom;
+  private LocalDateTime rangeTo;
+  private boolean defaultPartition;
+  private Long estimatedRows;
+  private Long sizeBytes;
+}
@@ -0,0 +1,20 @@
+package ru.mentee.power.model.analytics;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class PartitionMaintenanceResult {
+  private String tableName;
+  private List<String> created;
+  private List<String> detached;
+  private List<String> dropped;
+  private List<String> failures;
+  private Integer partitionsTotal;
+  private String skippedReason;
+  private Long durationMs;
+  private LocalDateTime ranAt;
+}
@@ -0,0 +1,23 @@
+package ru.mentee.power.model.analytics;
+
+import java.util.List;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Сколько секций таблицы затрагивает план запроса. Секции, отброшенные при планировании,
+ * в план не попадают; отброшенные при выполнении учитываются в {@code subplansRemoved}.
+ */
+@Data
+@Builder
+public class PartitionPruningReport {
+  private String queryName;
+  private String tableName;
+  private Integer partitionsTotal;
+  private Integer partitionsInPlan;
+  private Integer partitionsScanned;
+  private Long subplansRemoved;
+  private List<String> scannedPartitions;
+  private boolean pruned;
+  private String verdict;
+}
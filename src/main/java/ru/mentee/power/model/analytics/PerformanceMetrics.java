@@ -6,7 +6,7 @@ import lombok.Builder;
 import lombok.Data;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class PerformanceMetrics<T> {
   private T data;
   private Long executionTimeMs;
@@ -22,6 +22,15 @@ public class PerformanceMetrics<T> {
   private Double costEstimate;
   private List<String> indexesUsed;
   private String optimizationRecommendation;
+  private String planFingerprint;
+  private String planRegression;
+  private LocalDateTime planCapturedAt;
+  private List<IndexBuildResult> indexBuilds;
+  private Boolean cacheHit;
+  private Boolean cacheStale;
+  private Long cacheAgeMs;
+  private Long asyncQueueWaitMs;
+  private Long asyncLatencyMs;
 
   public static <T> PerformanceMetricsBuilder<T> builder() {
     return new PerformanceMetricsBuilder<T>();
@@ -0,0 +1,22 @@
+package ru.mentee.power.model.analytics;
+
+import java.time.LocalDateTime;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class PlanChange {
+  private String queryKey;
+  private String previousFingerprint;
+  private String newFingerprint;
+  private String previousShape;
+  private String newShape;
+  private Double baselineExecutionTimeMs;
+  private Double executionTimeMs;
+  private Long baselineBuffers;
+  private Long buffers;
+  private boolean regression;
+  private String reason;
+  private LocalDateTime detectedAt;
+}
@@ -1,6 +1,7 @@
 package ru.mentee.power.model.analytics;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.List;
 import lombok.Builder;
 import lombok.Data;
 
@@ -11,10 +12,23 @@ public class PlanNode {
   private BigDecimal cost;
   private BigDecimal actualTime;
   private Long rows;
+  private Long planRows;
   private String operation;
   private String relation;
+  private String alias;
   private String indexName;
   private String filter;
+  private String condition;
   private Long buffersHit;
   private Long buffersRead;
+  private Long loops;
+  /** Секции, отброшенные при выполнении узлом Append (Subplans Removed). */
+  private Long subplansRemoved;
+  /** Обращения Index Only Scan к таблице за строками вне all-visible страниц (Heap Fetches). */
+  private Long heapFetches;
+  private Integer depth;
+  private BigDecimal exclusiveTime;
+  private Long exclusiveBuffersHit;
+  private Long exclusiveBuffersRead;
+  private List<PlanNode> children;
 }
@@ -0,0 +1,22 @@
+package ru.mentee.power.model.analytics;
+
+import java.time.LocalDateTime;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class PlanObservation {
+  private String queryKey;
+  private String fingerprint;
+  private String planShape;
+  private Double executionTimeMs;
+  private Long buffersHit;
+  private Long buffersRead;
+  private Double costEstimate;
+  private LocalDateTime observedAt;
+
+  public long getTotalBuffers() {
+    return (buffersHit != null ? buffersHit : 0L) + (buffersRead != null ? buffersRead : 0L);
+  }
+}
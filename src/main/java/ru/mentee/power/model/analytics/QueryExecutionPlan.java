@@ -13,9 +13,15 @@ public class QueryExecutionPlan {
   private BigDecimal totalCost;
   private BigDecimal executionTime;
   private BigDecimal planningTime;
+  private PlanNode rootNode;
   private List<PlanNode> nodes;
+  private PlanNode hottestNode;
+  private String planFingerprint;
+  private PlanChange planChange;
+  private LocalDateTime capturedAt;
   private String performanceAnalysis;
   private List<String> recommendations;
   private Long buffersHit;
   private Long buffersRead;
+  private List<IndexOnlyScanReport> indexOnlyScans;
 }
@@ -0,0 +1,19 @@
+package ru.mentee.power.model.analytics;
+
+/**
+ * Причина, по которой индекс предлагается удалить.
+ */
+public enum RedundancyReason {
+  /** Тот же метод доступа, ключ, INCLUDE и предикат, что у другого индекса. */
+  EXACT_DUPLICATE,
+  /** Ключ индекса является началом ключа другого индекса с тем же предикатом. */
+  PREFIX_DUPLICATE,
+  /** Частичный индекс, ключ которого покрыт полным индексом на той же таблице. */
+  SUBSUMED,
+  /** Частичный индекс, который не сканировался. */
+  UNUSED_PARTIAL,
+  /** Индекс не сканировался, хотя обновляется при каждой записи. */
+  UNUSED,
+  /** Колонки индекса есть в другом индексе, а записей на одно сканирование слишком много. */
+  LOW_BENEFIT_OVERLAP
+}
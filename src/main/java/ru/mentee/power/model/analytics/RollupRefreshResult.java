@@ -0,0 +1,17 @@
+package ru.mentee.power.model.analytics;
+
+import java.time.LocalDateTime;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class RollupRefreshResult {
+  private String rollupName;
+  private LocalDateTime processedFrom;
+  private LocalDateTime processedUntil;
+  private Integer groupsUpserted;
+  private Long refreshTimeMs;
+  private boolean upToDate;
+  private LocalDateTime refreshedAt;
+}
@@ -0,0 +1,17 @@
+package ru.mentee.power.model.analytics;
+
+import lombok.Builder;
+import lombok.Data;
+import ru.mentee.power.model.SamplingMethod;
+
+@Data
+@Builder
+public class SampledResult<T> {
+  private T data;
+  private SamplingMethod method;
+  private Double samplePercent;
+  private Double confidence;
+  private String rateSelection;
+  private Long pilotTimeMs;
+  private Double maxRelativeError;
+}
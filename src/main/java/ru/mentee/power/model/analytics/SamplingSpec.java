@@ -0,0 +1,20 @@
+package ru.mentee.power.model.analytics;
+
+import lombok.Builder;
+import lombok.Data;
+import ru.mentee.power.model.SamplingMethod;
+
+/**
+ * Параметры приближенного запроса. Если доля выборки не задана, она подбирается по пробному
+ * запросу под целевую задержку и/или целевую относительную погрешность. Незаполненные поля
+ * берутся из конфигурации.
+ */
+@Data
+@Builder
+public class SamplingSpec {
+  private SamplingMethod method;
+  private Double samplePercent;
+  private Long latencyTargetMs;
+  private Double relativeErrorTarget;
+  private Double confidence;
+}
@@ -0,0 +1,15 @@
+package ru.mentee.power.model.analytics;
+
+import java.util.List;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class StatisticsTuningResult {
+  private CardinalityReport before;
+  private CardinalityReport after;
+  private List<String> appliedStatements;
+  private boolean planChanged;
+  private String summary;
+}
@@ -0,0 +1,18 @@
+package ru.mentee.power.model.analytics;
+
+import java.time.LocalDateTime;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class StreamingMetrics {
+  private String queryType;
+  private Integer fetchSize;
+  private Long rowsStreamed;
+  private Long timeToFirstRowMs;
+  private Long elapsedMs;
+  private Double rowsPerSecond;
+  private boolean completed;
+  private LocalDateTime startedAt;
+}
@@ -0,0 +1,19 @@
+package ru.mentee.power.model.analytics;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class TableActivityRate {
+  private String tableName;
+  private Double seqScansPerSecond;
+  private Double indexScansPerSecond;
+  private Double insertsPerSecond;
+  private Double updatesPerSecond;
+  private Double hotUpdatesPerSecond;
+  private Double deletesPerSecond;
+  private Double sizeGrowthBytesPerHour;
+  private Long liveTuples;
+  private Long windowSeconds;
+}
@@ -0,0 +1,17 @@
+package ru.mentee.power.model.analytics;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class TableWriteCost {
+  private String tableName;
+  private Integer indexCount;
+  private Long inserts;
+  private Long nonHotUpdates;
+  private Long hotUpdates;
+  private Integer dropCandidateCount;
+  private Long reclaimableBytes;
+  private Double estimatedInsertGainPercent;
+}
@@ -0,0 +1,159 @@
+package ru.mentee.power.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import ru.mentee.power.config.ApplicationConfig;
+import ru.mentee.power.model.analytics.ApproximateOrderAnalytics;
+import ru.mentee.power.model.analytics.BrinCandidate;
+import ru.mentee.power.model.analytics.ConfidenceInterval;
+import ru.mentee.power.model.analytics.IndexRecommendation;
+import ru.mentee.power.model.analytics.IndexRedundancyReport;
+import ru.mentee.power.model.analytics.IndexUsageStats;
+import ru.mentee.power.model.analytics.OrderAnalytics;
+import ru.mentee.power.model.analytics.PartitionMaintenanceResult;
+import ru.mentee.power.model.analytics.PartitionPruningReport;
+import ru.mentee.power.model.analytics.PerformanceMetrics;
+import ru.mentee.power.model.analytics.RollupRefreshResult;
+import ru.mentee.power.model.analytics.SampledResult;
+import ru.mentee.power.model.analytics.SamplingSpec;
+import ru.mentee.power.repository.interfaces.AsyncCompositeIndexRepository;
+import ru.mentee.power.repository.interfaces.CompositeIndexRepository;
+import ru.mentee.power.utils.AsyncQueryExecutor;
+import ru.mentee.power.utils.BatchQuery;
+import ru.mentee.power.utils.BatchResult;
+
+/**
+ * Выполняет методы {@code delegate} через общий {@link AsyncQueryExecutor} конфигурации.
+ */
+public class AsyncCompositeIndexRepositoryImpl implements AsyncCompositeIndexRepository {
+
+  private final CompositeIndexRepository delegate;
+  private final AsyncQueryExecutor executor;
+
+  public AsyncCompositeIndexRepositoryImpl(ApplicationConfig config,
+      CompositeIndexRepository delegate) {
+    this.delegate = delegate;
+    this.executor = config.getAsyncQueryExecutor();
+  }
+
+  @Override
+  public CompletableFuture<PerformanceMetrics<List<OrderAnalytics>>> getOrderAnalyticsWithoutIndex(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate) {
+    return executor.submitMetrics("getOrderAnalyticsWithoutIndex",
+        () -> delegate.getOrderAnalyticsWithoutIndex(regions, statuses, startDate, endDate));
+  }
+
+  @Override
+  public CompletableFuture<PerformanceMetrics<List<OrderAnalytics>>> getOrderAnalyticsWithIndex(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate) {
+    return executor.submitMetrics("getOrderAnalyticsWithIndex",
+        () -> delegate.getOrderAnalyticsWithIndex(regions, statuses, startDate, endDate));
+  }
+
+  @Override
+  public CompletableFuture<PerformanceMetrics<List<OrderAnalytics>>> getOrderAnalyticsFromRollup(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate) {
+    return executor.submitMetrics("getOrderAnalyticsFromRollup",
+        () -> delegate.getOrderAnalyticsFromRollup(regions, statuses, startDate, endDate));
+  }
+
+  @Override
+  public CompletableFuture<RollupRefreshResult> refreshOrderRollup() {
+    return executor.submit("refreshOrderRollup", delegate::refreshOrderRollup);
+  }
+
+  @Override
+  public CompletableFuture<PerformanceMetrics<List<OrderAnalytics>>> getOrderAnalyticsParallel(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate,
+      int parallelism) {
+    return executor.submitMetrics("getOrderAnalyticsParallel",
+        () -> delegate.getOrderAnalyticsParallel(
+            regions, statuses, startDate, endDate, parallelism));
+  }
+
+  @Override
+  public CompletableFuture<PerformanceMetrics<SampledResult<List<ApproximateOrderAnalytics>>>>
+      getOrderAnalyticsApproximate(
+          List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate,
+          SamplingSpec spec) {
+    return executor.submitMetrics("getOrderAnalyticsApproximate",
+        () -> delegate.getOrderAnalyticsApproximate(regions, statuses, startDate, endDate, spec));
+  }
+
+  @Override
+  public CompletableFuture<PerformanceMetrics<Long>> measureQueryWithoutIndex(
+      Long categoryId, BigDecimal minPrice, BigDecimal maxPrice) {
+    return executor.submitMetrics("measureQueryWithoutIndex",
+        () -> delegate.measureQueryWithoutIndex(categoryId, minPrice, maxPrice));
+  }
+
+  @Override
+  public CompletableFuture<PerformanceMetrics<Long>> measureQueryWithIndex(
+      Long categoryId, BigDecimal minPrice, BigDecimal maxPrice) {
+    return executor.submitMetrics("measureQueryWithIndex",
+        () -> delegate.measureQueryWithIndex(categoryId, minPrice, maxPrice));
+  }
+
+  @Override
+  public CompletableFuture<PerformanceMetrics<SampledResult<ConfidenceInterval>>>
+      measureQueryApproximate(
+          Long categoryId, BigDecimal minPrice, BigDecimal maxPrice, SamplingSpec spec) {
+    return executor.submitMetrics("measureQueryApproximate",
+        () -> delegate.measureQueryApproximate(categoryId, minPrice, maxPrice, spec));
+  }
+
+  @Override
+  public CompletableFuture<BatchResult> executeBatch(List<BatchQuery<?>> queries) {
+    return executor.submit("executeBatch", () -> delegate.executeBatch(queries));
+  }
+
+  @Override
+  public CompletableFuture<PerformanceMetrics<String>> createCompositeIndexes() {
+    return executor.submitMetrics("createCompositeIndexes", delegate::createCompositeIndexes);
+  }
+
+  @Override
+  public CompletableFuture<PerformanceMetrics<String>> dropCompositeIndexes() {
+    return executor.submitMetrics("dropCompositeIndexes", delegate::dropCompositeIndexes);
+  }
+
+  @Override
+  public CompletableFuture<List<BrinCandidate>> findBrinCandidates() {
+    return executor.submit("findBrinCandidates", delegate::findBrinCandidates);
+  }
+
+  @Override
+  public CompletableFuture<PerformanceMetrics<String>> createBrinIndexes(Integer pagesPerRange) {
+    return executor.submitMetrics("createBrinIndexes",
+        () -> delegate.createBrinIndexes(pagesPerRange));
+  }
+
+  @Override
+  public CompletableFuture<List<IndexUsageStats>> analyzeCompositeIndexUsage() {
+    return executor.submit("analyzeCompositeIndexUsage", delegate::analyzeCompositeIndexUsage);
+  }
+
+  @Override
+  public CompletableFuture<IndexRedundancyReport> findRedundantIndexes() {
+    return executor.submit("findRedundantIndexes", delegate::findRedundantIndexes);
+  }
+
+  @Override
+  public CompletableFuture<List<PartitionPruningReport>> checkPartitionPruning(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate) {
+    return executor.submit("checkPartitionPruning",
+        () -> delegate.checkPartitionPruning(regions, statuses, startDate, endDate));
+  }
+
+  @Override
+  public CompletableFuture<PartitionMaintenanceResult> maintainOrderPartitions() {
+    return executor.submit("maintainOrderPartitions", delegate::maintainOrderPartitions);
+  }
+
+  @Override
+  public CompletableFuture<List<IndexRecommendation>> recommendIndexes(String query) {
+    return executor.submit("recommendIndexes", () -> delegate.recommendIndexes(query));
+  }
+}
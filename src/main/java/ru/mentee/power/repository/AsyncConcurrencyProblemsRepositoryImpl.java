@@ -0,0 +1,66 @@
+package ru.mentee.power.repository;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import ru.mentee.power.config.ApplicationConfig;
+import ru.mentee.power.model.ConcurrencyAnomalyResult;
+import ru.mentee.power.model.MoneyTransferResult;
+import ru.mentee.power.repository.interfaces.AsyncConcurrencyProblemsRepository;
+import ru.mentee.power.repository.interfaces.ConcurrencyProblemsRepository;
+import ru.mentee.power.utils.AsyncQueryExecutor;
+
+/**
+ * Выполняет методы {@code delegate} через общий {@link AsyncQueryExecutor} конфигурации.
+ */
+public class AsyncConcurrencyProblemsRepositoryImpl implements AsyncConcurrencyProblemsRepository {
+
+  private final ConcurrencyProblemsRepository delegate;
+  private final AsyncQueryExecutor executor;
+
+  public AsyncConcurrencyProblemsRepositoryImpl(ApplicationConfig config,
+      ConcurrencyProblemsRepository delegate) {
+    this.delegate = delegate;
+    this.executor = config.getAsyncQueryExecutor();
+  }
+
+  @Override
+  public CompletableFuture<ConcurrencyAnomalyResult> demonstrateDirtyRead(
+      Long accountId, BigDecimal amountToChange) {
+    return executor.submit("demonstrateDirtyRead",
+        () -> delegate.demonstrateDirtyRead(accountId, amountToChange));
+  }
+
+  @Override
+  public CompletableFuture<ConcurrencyAnomalyResult> demonstrateNonRepeatableRead(
+      Long accountId, BigDecimal amountToChange) {
+    return executor.submit("demonstrateNonRepeatableRead",
+        () -> delegate.demonstrateNonRepeatableRead(accountId, amountToChange));
+  }
+
+  @Override
+  public CompletableFuture<ConcurrencyAnomalyResult> demonstratePhantomRead(
+      Long accountId, BigDecimal thresholdAmount, BigDecimal newTransactionAmount) {
+    return executor.submit("demonstratePhantomRead",
+        () -> delegate.demonstratePhantomRead(accountId, thresholdAmount, newTransactionAmount));
+  }
+
+  @Override
+  public CompletableFuture<ConcurrencyAnomalyResult> demonstrateLostUpdate(
+      Long accountId, BigDecimal firstAmount, BigDecimal secondAmount) {
+    return executor.submit("demonstrateLostUpdate",
+        () -> delegate.demonstrateLostUpdate(accountId, firstAmount, secondAmount));
+  }
+
+  @Override
+  public CompletableFuture<MoneyTransferResult> safeMoneyTransfer(
+      Long fromAccountId, Long toAccountId, BigDecimal amount) {
+    return executor.submit("safeMoneyTransfer",
+        () -> delegate.safeMoneyTransfer(fromAccountId, toAccountId, amount));
+  }
+
+  @Override
+  public CompletableFuture<String> getCurrentIsolationLevelInfo() {
+    return executor.submit("getCurrentIsolationLevelInfo",
+        delegate::getCurrentIsolationLevelInfo);
+  }
+}
@@ -0,0 +1,83 @@
+package ru.mentee.power.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import ru.mentee.power.config.ApplicationConfig;
+import ru.mentee.power.model.analytics.CardinalityReport;
+import ru.mentee.power.model.analytics.KeysetPage;
+import ru.mentee.power.model.analytics.PerformanceMetrics;
+import ru.mentee.power.model.analytics.QueryExecutionPlan;
+import ru.mentee.power.model.analytics.StatisticsTuningResult;
+import ru.mentee.power.model.analytics.UserOrderStats;
+import ru.mentee.power.repository.interfaces.AsyncPerformanceAnalysisRepository;
+import ru.mentee.power.repository.interfaces.PerformanceAnalysisRepository;
+import ru.mentee.power.utils.AsyncQueryExecutor;
+
+/**
+ * Выполняет методы {@code delegate} через общий {@link AsyncQueryExecutor} конфигурации.
+ */
+public class AsyncPerformanceAnalysisRepositoryImpl implements AsyncPerformanceAnalysisRepository {
+
+  private final PerformanceAnalysisRepository delegate;
+  private final AsyncQueryExecutor executor;
+
+  public AsyncPerformanceAnalysisRepositoryImpl(ApplicationConfig config,
+      PerformanceAnalysisRepository delegate) {
+    this.delegate = delegate;
+    this.executor = config.getAsyncQueryExecutor();
+  }
+
+  @Override
+  public CompletableFuture<PerformanceMetrics<List<UserOrderStats>>> getSlowUserOrderStats(
+      String city, LocalDate startDate, Integer minOrders) {
+    return executor.submitMetrics("getSlowUserOrderStats",
+        () -> delegate.getSlowUserOrderStats(city, startDate, minOrders));
+  }
+
+  @Override
+  public CompletableFuture<PerformanceMetrics<List<UserOrderStats>>> getFastUserOrderStats(
+      String city, LocalDate startDate, Integer minOrders) {
+    return executor.submitMetrics("getFastUserOrderStats",
+        () -> delegate.getFastUserOrderStats(city, startDate, minOrders));
+  }
+
+  @Override
+  public CompletableFuture<PerformanceMetrics<KeysetPage<UserOrderStats>>>
+      getHeavyUserOrderStatsPage(
+          String city, LocalDate startDate, Integer minOrders, int pageSize, String pageToken) {
+    return executor.submitMetrics("getHeavyUserOrderStatsPage",
+        () -> delegate.getHeavyUserOrderStatsPage(
+            city, startDate, minOrders, pageSize, pageToken));
+  }
+
+  @Override
+  public CompletableFuture<QueryExecutionPlan> getExecutionPlan(String query) {
+    return executor.submit("getExecutionPlan", () -> delegate.getExecutionPlan(query));
+  }
+
+  @Override
+  public CompletableFuture<PerformanceMetrics<String>> createOptimizationIndexes() {
+    return executor.submitMetrics("createOptimizationIndexes",
+        delegate::createOptimizationIndexes);
+  }
+
+  @Override
+  public CompletableFuture<PerformanceMetrics<String>> dropOptimizationIndexes() {
+    return executor.submitMetrics("dropOptimizationIndexes", delegate::dropOptimizationIndexes);
+  }
+
+  @Override
+  public CompletableFuture<CardinalityReport> analyzeCardinalityEstimates(
+      String query, double errorFactor) {
+    return executor.submit("analyzeCardinalityEstimates",
+        () -> delegate.analyzeCardinalityEstimates(query, errorFactor));
+  }
+
+  @Override
+  public CompletableFuture<StatisticsTuningResult> applyStatisticsAndRemeasure(
+      String query, double errorFactor) {
+    return executor.submit("applyStatisticsAndRemeasure",
+        () -> delegate.applyStatisticsAndRemeasure(query, errorFactor));
+  }
+}
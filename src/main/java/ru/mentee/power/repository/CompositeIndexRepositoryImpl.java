@@ -1,24 +1,41 @@
 package ru.mentee.power.repository;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.sql.Date;
-import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import ru.mentee.power.config.ApplicationConfig;
 import ru.mentee.power.exception.DataAccessException;
+import ru.mentee.power.model.SamplingMethod;
 import ru.mentee.power.model.analytics.*;
 import ru.mentee.power.repository.interfaces.CompositeIndexRepository;
+import ru.mentee.power.utils.BatchQuery;
+import ru.mentee.power.utils.BatchResult;
+import ru.mentee.power.utils.CursorStream;
+import ru.mentee.power.utils.IndexBuildOrchestrator;
+import ru.mentee.power.utils.IndexCandidateGenerator;
+import ru.mentee.power.utils.IndexUsageSampler;
+import ru.mentee.power.utils.OrderAnalyticsMerger;
+import ru.mentee.power.utils.ParallelRangeExecutor;
+import ru.mentee.power.utils.PartitionCatalog;
+import ru.mentee.power.utils.PartitionPruningAnalyzer;
+import ru.mentee.power.utils.PipelinedBatch;
+import ru.mentee.power.utils.PlanCapturePolicy;
+import ru.mentee.power.utils.PlanFingerprint;
 import ru.mentee.power.utils.QueryPlanParser;
+import ru.mentee.power.utils.RedundantIndexDetector;
+import ru.mentee.power.utils.ResultCache;
+import ru.mentee.power.utils.SampleEstimator;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.*;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.ToDoubleFunction;
 
 @Slf4j
-@AllArgsConstructor
 public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
 
   private final ApplicationConfig config;
@@ -41,6 +58,174 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
         ORDER BY o.region, o.status;
         """;
 
+  // Частичные агрегаты по полуоткрытому подынтервалу: AVG не складывается, поэтому вместо него
+  // отдается число непустых сумм, по которому среднее пересчитывается после объединения
+  private static final String ORDER_ANALYTICS_PARTIAL_SQL = """
+        SELECT
+            o.region,
+            o.status,
+            COUNT(*) as orders_count,
+            COUNT(o.total_amount) as amount_count,
+            SUM(o.total_amount) as total_revenue,
+            MIN(o.created_at) as first_order,
+            MAX(o.created_at) as last_order
+        FROM orders o
+        WHERE o.region = ANY(?)
+          AND o.status = ANY(?)
+          AND o.created_at >= ? AND o.created_at < ?
+        GROUP BY o.region, o.status
+        """;
+
+  // Агрегаты по выборке для оценок с интервалами. Кроме итогов нужны суммы квадратов и
+  // произведений итогов по единицам выборки: строкам для BERNOULLI и страницам для SYSTEM.
+  // Страница определяется парой (tableoid, номер блока из ctid): у секций orders номера
+  // блоков совпадают, и без tableoid страницы разных секций слились бы в одну единицу
+  private static final String ORDER_ANALYTICS_BERNOULLI_SAMPLE_SQL = """
+        SELECT
+            o.region,
+            o.status,
+            COUNT(*) as rows_count,
+            COUNT(*) as rows_sq,
+            COUNT(o.total_amount) as amount_count,
+            COUNT(o.total_amount) as amount_sq,
+            COALESCE(SUM(o.total_amount), 0) as revenue,
+            COALESCE(SUM(o.total_amount * o.total_amount), 0) as revenue_sq,
+            COALESCE(SUM(o.total_amount), 0) as revenue_amount,
+            MIN(o.created_at) as first_order,
+            MAX(o.created_at) as last_order
+        FROM orders o TABLESAMPLE BERNOULLI (?)
+        WHERE o.region = ANY(?)
+          AND o.status = ANY(?)
+          AND o.created_at BETWEEN ? AND ?
+        GROUP BY o.region, o.status
+        ORDER BY o.region, o.status
+        """;
+
+  private static final String ORDER_ANALYTICS_SYSTEM_SAMPLE_SQL = """
+        SELECT
+            region,
+            status,
+            SUM(unit_rows) as rows_count,
+            SUM(unit_rows * unit_rows) as rows_sq,
+            SUM(unit_amounts) as amount_count,
+            SUM(unit_amounts * unit_amounts) as amount_sq,
+            SUM(unit_revenue) as revenue,
+            SUM(unit_revenue * unit_revenue) as revenue_sq,
+            SUM(unit_revenue * unit_amounts) as revenue_amount,
+            MIN(first_order) as first_order,
+            MAX(last_order) as last_order
+        FROM (
+            SELECT
+                o.region,
+                o.status,
+                COUNT(*) as unit_rows,
+                COUNT(o.total_amount) as unit_amounts,
+                COALESCE(SUM(o.total_amount), 0) as unit_revenue,
+                MIN(o.created_at) as first_order,
+                MAX(o.created_at) as last_order
+            FROM orders o TABLESAMPLE SYSTEM (?)
+            WHERE o.region = ANY(?)
+              AND o.status = ANY(?)
+              AND o.created_at BETWEEN ? AND ?
+            GROUP BY o.region, o.status, o.tableoid, (o.ctid::text::point)[0]
+        ) pages
+        GROUP BY region, status
+        ORDER BY region, status
+        """;
+
+  private static final String ROLLUP_NAME = "order_daily_rollup";
+
+  private static final Set<String> ORDER_ANALYTICS_TABLES = Set.of("orders");
+  private static final long CACHED_METRICS_BYTES = 512;
+  private static final long ORDER_ANALYTICS_ROW_BYTES = 320;
+  private static final String NOT_MEASURED = "NOT_MEASURED";
+
+  // Заказы последнего часа могут еще не быть зафиксированы, поэтому день попадает в агрегаты
+  // только после того, как с его конца прошел этот запас. Триггер orders_rollup_sync (миграция
+  // 009) полагается на тот же запас, пропуская вставки свежих заказов
+  private static final String ROLLUP_SAFETY_LAG = "1 hour";
+
+  private static final String ROLLUP_ANALYTICS_SQL = """
+        WITH parts AS (
+            SELECT r.region, r.status, r.orders_count, r.total_revenue, r.amount_count,
+                   r.first_order, r.last_order
+            FROM order_daily_rollup r
+            WHERE r.region = ANY(?)
+              AND r.status = ANY(?)
+              AND r.day >= ? AND r.day < ?
+            UNION ALL
+            SELECT o.region, o.status, COUNT(*), SUM(o.total_amount), COUNT(o.total_amount),
+                   MIN(o.created_at), MAX(o.created_at)
+            FROM orders o
+            WHERE o.region = ANY(?)
+              AND o.status = ANY(?)
+              AND o.created_at >= ? AND o.created_at < ?
+            GROUP BY o.region, o.status
+            UNION ALL
+            SELECT o.region, o.status, COUNT(*), SUM(o.total_amount), COUNT(o.total_amount),
+                   MIN(o.created_at), MAX(o.created_at)
+            FROM orders o
+            WHERE o.region = ANY(?)
+              AND o.status = ANY(?)
+              AND o.created_at >= ? AND o.created_at <= ?
+            GROUP BY o.region, o.status
+        )
+        SELECT
+            region,
+            status,
+            SUM(orders_count) as orders_count,
+            CASE WHEN SUM(amount_count) > 0 THEN SUM(total_revenue) END as total_revenue,
+            SUM(total_revenue) / NULLIF(SUM(amount_count), 0) as avg_order_value,
+            MIN(first_order) as first_order,
+            MAX(last_order) as last_order
+        FROM parts
+        GROUP BY region, status
+        ORDER BY region, status;
+        """;
+
+  private static final String ROLLUP_WATERMARK_SQL = """
+        SELECT covered_from, covered_until
+        FROM order_rollup_watermark
+        WHERE rollup_name = ?
+        """;
+
+  private static final String ROLLUP_WATERMARK_LOCK_SQL = ROLLUP_WATERMARK_SQL + " FOR UPDATE";
+
+  private static final String ROLLUP_BOUNDS_SQL = """
+        SELECT date_trunc('day', MIN(created_at)) as first_day,
+               date_trunc('day', now() - interval '%s')::timestamp as cutoff
+        FROM orders
+        """.formatted(ROLLUP_SAFETY_LAG);
+
+  // Дописывает дни после водяного знака; изменения заказов в уже покрытых днях переносит в
+  // агрегаты триггер orders_rollup_sync
+  private static final String ROLLUP_MERGE_SQL = """
+        INSERT INTO order_daily_rollup AS r
+            (region, status, day, orders_count, total_revenue, amount_count, first_order, last_order)
+        SELECT o.region, o.status, o.created_at::date, COUNT(*),
+               COALESCE(SUM(o.total_amount), 0), COUNT(o.total_amount),
+               MIN(o.created_at), MAX(o.created_at)
+        FROM orders o
+        WHERE o.created_at >= ? AND o.created_at < ?
+          AND o.region IS NOT NULL
+          AND o.status IS NOT NULL
+        GROUP BY o.region, o.status, o.created_at::date
+        ON CONFLICT (region, status, day) DO UPDATE SET
+            orders_count = r.orders_count + EXCLUDED.orders_count,
+            total_revenue = r.total_revenue + EXCLUDED.total_revenue,
+            amount_count = r.amount_count + EXCLUDED.amount_count,
+            first_order = LEAST(r.first_order, EXCLUDED.first_order),
+            last_order = GREATEST(r.last_order, EXCLUDED.last_order);
+        """;
+
+  private static final String ROLLUP_ADVANCE_WATERMARK_SQL = """
+        UPDATE order_rollup_watermark
+        SET covered_from = COALESCE(covered_from, ?),
+            covered_until = ?,
+            refreshed_at = now()
+        WHERE rollup_name = ?
+        """;
+
   private static final String PRODUCT_COUNT_SQL = """
         SELECT COUNT(*) as product_count
         FROM products p
@@ -49,6 +234,28 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
           AND p.is_active = true;
         """;
 
+  private static final String PRODUCT_COUNT_BERNOULLI_SAMPLE_SQL = """
+        SELECT COUNT(*) as rows_count, COUNT(*) as rows_sq
+        FROM products p TABLESAMPLE BERNOULLI (?)
+        WHERE p.category_id = ?
+          AND p.price BETWEEN ? AND ?
+          AND p.is_active = true
+        """;
+
+  private static final String PRODUCT_COUNT_SYSTEM_SAMPLE_SQL = """
+        SELECT
+            COALESCE(SUM(unit_rows), 0) as rows_count,
+            COALESCE(SUM(unit_rows * unit_rows), 0) as rows_sq
+        FROM (
+            SELECT COUNT(*) as unit_rows
+            FROM products p TABLESAMPLE SYSTEM (?)
+            WHERE p.category_id = ?
+              AND p.price BETWEEN ? AND ?
+              AND p.is_active = true
+            GROUP BY p.tableoid, (p.ctid::text::point)[0]
+        ) pages
+        """;
+
   private static final String CASE_INSENSITIVE_SEARCH_SQL = """
         SELECT email FROM users u
         WHERE LOWER(u.email) = LOWER(?)
@@ -65,7 +272,7 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
           AND p.is_active = true;
         """;
 
-  private static final String CREATE_COMPOSITE_INDEXES_SQL = """
+  private static final String PREPARE_COMPOSITE_COLUMNS_SQL = """
         -- Добавляем недостающие колонки
         ALTER TABLE IF EXISTS orders ADD COLUMN IF NOT EXISTS region VARCHAR(50);
         ALTER TABLE IF EXISTS products ADD COLUMN IF NOT EXISTS attributes JSONB DEFAULT '{}'::jsonb;
@@ -76,26 +283,48 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
         WHERE o.user_id = u.id AND o.region IS NULL;
         
         UPDATE orders SET region = 'UNKNOWN' WHERE region IS NULL;
-        
-        -- Составные индексы
-        CREATE INDEX IF NOT EXISTS idx_orders_region_status_date 
-        ON orders(region, status, created_at);
-        
-        CREATE INDEX IF NOT EXISTS idx_products_category_price 
-        ON products(category_id, price) 
-        WHERE is_active = true;
-        
-        -- Функциональные индексы
-        CREATE INDEX IF NOT EXISTS idx_users_email_lower 
-        ON users(LOWER(email)) 
-        WHERE is_active = true;
-        
-        CREATE INDEX IF NOT EXISTS idx_products_attributes_brand 
-        ON products(((attributes->>'brand')::text));
-        
-        CREATE INDEX IF NOT EXISTS idx_products_attributes_color 
-        ON products(((attributes->>'color')::text));
-        
+        """;
+
+  // Составные и функциональные индексы строятся через CONCURRENTLY по одному на команду
+  private static final List<IndexBuildRequest> COMPOSITE_INDEXES = List.of(
+      new IndexBuildRequest("idx_orders_region_status_date", "orders",
+          "(region, status, created_at)", null),
+      new IndexBuildRequest("idx_products_category_price", "products",
+          "(category_id, price)", "is_active = true"),
+      new IndexBuildRequest("idx_users_email_lower", "users",
+          "(LOWER(email))", "is_active = true"),
+      new IndexBuildRequest("idx_products_attributes_brand", "products",
+          "(((attributes->>'brand')::text))", null),
+      new IndexBuildRequest("idx_products_attributes_color", "products",
+          "(((attributes->>'color')::text))", null));
+
+  // Колонки дат и времени с корреляцией физического порядка из pg_stats. Секции не
+  // рассматриваются: отсечение секций по диапазону уже работает как грубый BRIN
+  private static final String BRIN_CANDIDATES_SQL = """
+        SELECT
+            c.relname AS table_name,
+            a.attname AS column_name,
+            format_type(a.atttypid, a.atttypmod) AS data_type,
+            s.correlation,
+            c.relpages AS table_pages,
+            pg_table_size(c.oid) AS table_size
+        FROM pg_stats s
+        JOIN pg_namespace n ON n.nspname = s.schemaname
+        JOIN pg_class c ON c.relnamespace = n.oid AND c.relname = s.tablename
+        JOIN pg_attribute a ON a.attrelid = c.oid AND a.attname = s.attname
+        WHERE s.schemaname = ANY(current_schemas(false))
+          AND NOT s.inherited
+          AND c.relkind = 'r'
+          AND NOT c.relispartition
+          AND c.relname <> 'brin_bench'
+          AND a.atttypid IN ('timestamp'::regtype, 'timestamptz'::regtype, 'date'::regtype)
+          AND s.correlation IS NOT NULL
+        ORDER BY abs(s.correlation) DESC, c.relpages DESC
+        """;
+  // BRIN меньше чем на восемь диапазонов почти ничего не отсекает
+  private static final int BRIN_MIN_RANGES = 8;
+
+  private static final String ANALYZE_COMPOSITE_TABLES_SQL = """
         -- Обновляем статистику
         ANALYZE orders;
         ANALYZE products;
@@ -112,28 +341,64 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
 
   private static final String GET_INDEX_USAGE_STATS_SQL = """
         SELECT 
-            schemaname || '.' || indexname as index_name,
-            tablename as table_name,
-            idx_scan as total_scans,
-            idx_tup_read as tuples_read,
-            idx_tup_fetch as tuples_returned,
+            s.schemaname || '.' || s.indexrelname as index_name,
+            s.relname as table_name,
+            s.idx_scan as total_scans,
+            s.idx_tup_read as tuples_read,
+            s.idx_tup_fetch as tuples_returned,
             CASE 
-                WHEN idx_scan > 0 THEN idx_tup_fetch::float / idx_scan::float
+                WHEN s.idx_scan > 0 THEN s.idx_tup_fetch::float / s.idx_scan::float
                 ELSE 0 
             END as selectivity,
-            pg_relation_size(schemaname || '.' || indexname) as size_bytes,
-            indexdef as definition,
+            pg_relation_size(s.indexrelid) as size_bytes,
+            i.indexdef as definition,
             CASE 
-                WHEN idx_scan = 0 THEN 'RARELY USED - CONSIDER DROPPING'
-                WHEN idx_tup_fetch::float / idx_scan::float < 0.1 THEN 'LOW SELECTIVITY - REVIEW NEEDED'
+                WHEN s.idx_scan = 0 THEN 'RARELY USED - CONSIDER DROPPING'
+                WHEN s.idx_tup_fetch::float / s.idx_scan::float < 0.1 THEN 'LOW SELECTIVITY - REVIEW NEEDED'
                 ELSE 'HEALTHY - KEEP USING'
             END as recommended_usage
-        FROM pg_stat_user_indexes
-        JOIN pg_indexes ON indexname = indexname AND schemaname = schemaname
-        WHERE schemaname NOT LIKE 'pg_%'
+        FROM pg_stat_user_indexes s
+        JOIN pg_indexes i ON i.schemaname = s.schemaname AND i.indexname = s.indexrelname
+        WHERE s.schemaname NOT LIKE 'pg_%'
         ORDER BY total_scans DESC;
         """;
 
+  private static final String GET_INDEX_DEFINITIONS_SQL = """
+        SELECT
+            n.nspname || '.' || ic.relname as index_name,
+            t.relname as table_name,
+            am.amname as access_method,
+            ix.indisunique as is_unique,
+            ix.indisprimary as is_primary,
+            ix.indnkeyatts as key_count,
+            ARRAY(
+                SELECT pg_get_indexdef(ix.indexrelid, k + 1, true)
+                FROM generate_subscripts(ix.indkey, 1) as k
+                ORDER BY k
+            ) as columns,
+            pg_get_expr(ix.indpred, ix.indrelid) as predicate,
+            pg_get_indexdef(ix.indexrelid) as definition,
+            COALESCE(s.idx_scan, 0) as scans,
+            pg_relation_size(ix.indexrelid) as size_bytes
+        FROM pg_index ix
+        JOIN pg_class ic ON ic.oid = ix.indexrelid
+        JOIN pg_class t ON t.oid = ix.indrelid
+        JOIN pg_namespace n ON n.oid = ic.relnamespace
+        JOIN pg_am am ON am.oid = ic.relam
+        JOIN pg_stat_user_tables st ON st.relid = ix.indrelid
+        LEFT JOIN pg_stat_user_indexes s ON s.indexrelid = ix.indexrelid
+        WHERE ix.indisvalid
+        ORDER BY t.relname, ic.relname;
+        """;
+
+  private static final String GET_TABLE_WRITE_COUNTERS_SQL = """
+        SELECT relname as table_name,
+               n_tup_ins as inserts,
+               n_tup_upd - n_tup_hot_upd as non_hot_updates,
+               n_tup_hot_upd as hot_updates
+        FROM pg_stat_user_tables;
+        """;
+
   private static final String CREATE_TEST_INDEX_WRONG_ORDER = """
         CREATE INDEX idx_test_wrong_order ON products(price, category_id) 
         WHERE is_active = true;
@@ -157,6 +422,45 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
           AND is_active = true;
         """;
 
+  private static final String EXPLAIN_PREFIX = "EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) ";
+  private static final String EXPLAIN_COST_PREFIX = "EXPLAIN (FORMAT JSON) ";
+
+  private static final String HYPOPG_AVAILABLE_SQL =
+      "SELECT EXISTS (SELECT 1 FROM pg_extension WHERE extname = 'hypopg')";
+  private static final String HYPOPG_CREATE_SQL =
+      "SELECT indexrelid, indexname FROM hypopg_create_index(?)";
+  private static final String HYPOPG_SIZE_SQL = "SELECT hypopg_relation_size(?)";
+  private static final String HYPOPG_RESET_SQL = "SELECT hypopg_reset()";
+  private static final String INDEX_SIZE_SQL = "SELECT pg_relation_size(?::regclass)";
+  private static final String WHAT_IF_STATEMENT_TIMEOUT_SQL = "SET LOCAL statement_timeout = '60s'";
+  // Без hypopg кандидат строится на выборке из таблицы примерно такого числа строк
+  private static final long WHAT_IF_SAMPLE_ROWS = 100_000;
+  private static final double WHAT_IF_DEFAULT_SAMPLE_PERCENT = 1.0;
+  private static final String WHAT_IF_TABLE_SQL = """
+        SELECT quote_ident(c.relname) as sample_name,
+               quote_ident(n.nspname) || '.' || quote_ident(c.relname) as source_name,
+               GREATEST(c.reltuples, 0) + COALESCE((
+                   SELECT SUM(GREATEST(p.reltuples, 0))
+                   FROM pg_inherits i
+                   JOIN pg_class p ON p.oid = i.inhrelid
+                   WHERE i.inhparent = c.oid), 0) as live_rows
+        FROM pg_class c
+        JOIN pg_namespace n ON n.oid = c.relnamespace
+        WHERE c.oid = ?::regclass
+        """;
+  private static final String WHAT_IF_SAMPLE_SQL =
+      "CREATE TEMP TABLE %s ON COMMIT DROP AS SELECT * FROM %s TABLESAMPLE SYSTEM (%s)";
+
+  private static final List<String> CACHED_STATEMENTS = List.of(
+      ORDER_ANALYTICS_BASE_SQL, ORDER_ANALYTICS_PARTIAL_SQL, PRODUCT_COUNT_SQL,
+      CASE_INSENSITIVE_SEARCH_SQL, JSON_SEARCH_SQL);
+
+  public CompositeIndexRepositoryImpl(ApplicationConfig config, ObjectMapper objectMapper) {
+    this.config = config;
+    this.objectMapper = objectMapper;
+    config.getConnectionProvider().registerStatements(CACHED_STATEMENTS);
+  }
+
   @Override
   public PerformanceMetrics<List<OrderAnalytics>> getOrderAnalyticsWithoutIndex(
       List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate)
@@ -168,7 +472,431 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
   public PerformanceMetrics<List<OrderAnalytics>> getOrderAnalyticsWithIndex(
       List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate)
       throws DataAccessException {
-    return executeOrderAnalytics(regions, statuses, startDate, endDate, true);
+    return ResultCache.annotate(config.getResultCache().get(
+        ResultCache.key("orderAnalyticsWithIndex", regions, statuses, startDate, endDate),
+        ORDER_ANALYTICS_TABLES,
+        () -> executeOrderAnalytics(regions, statuses, startDate, endDate, true),
+        CompositeIndexRepositoryImpl::weighOrderAnalytics));
+  }
+
+  @Override
+  public PerformanceMetrics<List<OrderAnalytics>> getOrderAnalyticsFromRollup(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate)
+      throws DataAccessException {
+    return ResultCache.annotate(config.getResultCache().get(
+        ResultCache.key("orderAnalyticsFromRollup", regions, statuses, startDate, endDate),
+        ORDER_ANALYTICS_TABLES,
+        () -> executeRollupOrderAnalytics(regions, statuses, startDate, endDate),
+        CompositeIndexRepositoryImpl::weighOrderAnalytics));
+  }
+
+  private PerformanceMetrics<List<OrderAnalytics>> executeRollupOrderAnalytics(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate)
+      throws DataAccessException {
+    long startTime = System.nanoTime();
+
+    try (Connection conn = getConnection()) {
+      LocalDate rollupFrom = startDate;
+      LocalDate rollupTo = startDate;
+      try (PreparedStatement stmt = conn.prepareStatement(ROLLUP_WATERMARK_SQL)) {
+        stmt.setString(1, ROLLUP_NAME);
+        try (ResultSet rs = stmt.executeQuery()) {
+          if (rs.next() && rs.getTimestamp("covered_until") != null) {
+            LocalDate coveredFrom = rs.getTimestamp("covered_from").toLocalDateTime().toLocalDate();
+            LocalDate coveredUntil = rs.getTimestamp("covered_until").toLocalDateTime().toLocalDate();
+            LocalDate from = startDate.isAfter(coveredFrom) ? startDate : coveredFrom;
+            LocalDate to = endDate.isBefore(coveredUntil) ? endDate : coveredUntil;
+            if (from.isBefore(to)) {
+              rollupFrom = from;
+              rollupTo = to;
+            }
+          }
+        }
+      }
+
+      // Дни [rollupFrom, rollupTo) берутся из агрегатов, края диапазона - из orders
+      Array regionArray = conn.createArrayOf("VARCHAR", regions.toArray());
+      Array statusArray = conn.createArrayOf("VARCHAR", statuses.toArray());
+      Object[] params = {
+          regionArray, statusArray, Date.valueOf(rollupFrom), Date.valueOf(rollupTo),
+          regionArray, statusArray,
+          Timestamp.valueOf(startDate.atStartOfDay()), Timestamp.valueOf(rollupFrom.atStartOfDay()),
+          regionArray, statusArray,
+          Timestamp.valueOf(rollupTo.atStartOfDay()), Timestamp.valueOf(endDate.atStartOfDay())
+      };
+
+      List<OrderAnalytics> results = new ArrayList<>();
+      try (PreparedStatement stmt = conn.prepareStatement(ROLLUP_ANALYTICS_SQL)) {
+        for (int i = 0; i < params.length; i++) {
+          stmt.setObject(i + 1, params[i]);
+        }
+        try (ResultSet rs = stmt.executeQuery()) {
+          while (rs.next()) {
+            results.add(mapOrderAnalytics(rs));
+          }
+        }
+      }
+
+      long executionTimeMs = (System.nanoTime() - startTime) / 1_000_000;
+      PlanSnapshot plan = resolvePlan(ROLLUP_ANALYTICS_SQL, executionTimeMs,
+          () -> executeExplainQuery(conn, EXPLAIN_PREFIX + ROLLUP_ANALYTICS_SQL, params));
+
+      long rollupDays = rollupTo.toEpochDay() - rollupFrom.toEpochDay();
+      return withPlan(PerformanceMetrics.<List<OrderAnalytics>>builder()
+          .data(results)
+          .executionTimeMs(executionTimeMs)
+          .queryType("rollup")
+          .executedAt(LocalDateTime.now())
+          .performanceGrade(gradePerformance(executionTimeMs))
+          .rowsReturned((long) results.size())
+          .optimizationRecommendation(rollupDays > 0
+              ? String.format("Days from %s: %d (%s..%s), edges from orders",
+                  ROLLUP_NAME, rollupDays, rollupFrom, rollupTo.minusDays(1))
+              : "Range not covered by " + ROLLUP_NAME + ", served from orders"), plan)
+          .build();
+    } catch (SQLException e) {
+      log.error("Error executing rollup order analytics", e);
+      throw new DataAccessException("Failed to execute rollup order analytics", e);
+    }
+  }
+
+  @Override
+  public RollupRefreshResult refreshOrderRollup() throws DataAccessException {
+    long startTime = System.nanoTime();
+
+    try (Connection conn = getConnection()) {
+      boolean autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+      try {
+        // Блокировка строки водяного знака не дает двум обновлениям обработать дни дважды
+        Timestamp coveredUntil;
+        try (PreparedStatement stmt = conn.prepareStatement(ROLLUP_WATERMARK_LOCK_SQL)) {
+          stmt.setString(1, ROLLUP_NAME);
+          try (ResultSet rs = stmt.executeQuery()) {
+            if (!rs.next()) {
+              throw new SQLException("Rollup watermark " + ROLLUP_NAME + " not found");
+            }
+            coveredUntil = rs.getTimestamp("covered_until");
+          }
+        }
+
+        Timestamp from;
+        Timestamp cutoff;
+        try (Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery(ROLLUP_BOUNDS_SQL)) {
+          rs.next();
+          from = coveredUntil != null ? coveredUntil : rs.getTimestamp("first_day");
+          cutoff = rs.getTimestamp("cutoff");
+        }
+
+        if (from == null || !from.before(cutoff)) {
+          conn.commit();
+          log.info("Агрегаты {} актуальны до {}", ROLLUP_NAME, coveredUntil);
+          return RollupRefreshResult.builder()
+              .rollupName(ROLLUP_NAME)
+              .processedUntil(coveredUntil != null ? coveredUntil.toLocalDateTime() : null)
+              .groupsUpserted(0)
+              .refreshTimeMs((System.nanoTime() - startTime) / 1_000_000)
+              .upToDate(true)
+              .refreshedAt(LocalDateTime.now())
+              .build();
+        }
+
+        int groups;
+        try (PreparedStatement stmt = conn.prepareStatement(ROLLUP_MERGE_SQL)) {
+          stmt.setTimestamp(1, from);
+          stmt.setTimestamp(2, cutoff);
+          groups = stmt.executeUpdate();
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(ROLLUP_ADVANCE_WATERMARK_SQL)) {
+          stmt.setTimestamp(1, from);
+          stmt.setTimestamp(2, cutoff);
+          stmt.setString(3, ROLLUP_NAME);
+          stmt.executeUpdate();
+        }
+        conn.commit();
+
+        long refreshTimeMs = (System.nanoTime() - startTime) / 1_000_000;
+        log.info("Агрегаты {} обновлены за {} мс: заказы с {} по {}, групп {}",
+            ROLLUP_NAME, refreshTimeMs, from, cutoff, groups);
+        return RollupRefreshResult.builder()
+            .rollupName(ROLLUP_NAME)
+            .processedFrom(from.toLocalDateTime())
+            .processedUntil(cutoff.toLocalDateTime())
+            .groupsUpserted(groups)
+            .refreshTimeMs(refreshTimeMs)
+            .upToDate(false)
+            .refreshedAt(LocalDateTime.now())
+            .build();
+      } catch (SQLException e) {
+        conn.rollback();
+        throw e;
+      } finally {
+        conn.setAutoCommit(autoCommit);
+      }
+    } catch (SQLException e) {
+      log.error("Error refreshing order rollup", e);
+      throw new DataAccessException("Failed to refresh order rollup", e);
+    }
+  }
+
+  @Override
+  public CursorStream<OrderAnalytics> streamOrderAnalytics(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate,
+      int fetchSize) throws DataAccessException {
+    try {
+      return CursorStream.open(config.getConnectionProvider(), "ORDER_ANALYTICS_STREAM",
+          ORDER_ANALYTICS_BASE_SQL, fetchSize,
+          stmt -> {
+            Connection conn = stmt.getConnection();
+            stmt.setArray(1, conn.createArrayOf("VARCHAR", regions.toArray()));
+            stmt.setArray(2, conn.createArrayOf("VARCHAR", statuses.toArray()));
+            stmt.setDate(3, Date.valueOf(startDate));
+            stmt.setDate(4, Date.valueOf(endDate));
+          },
+          this::mapOrderAnalytics);
+    } catch (SQLException e) {
+      log.error("Error opening order analytics cursor", e);
+      throw new DataAccessException("Failed to open order analytics cursor", e);
+    }
+  }
+
+  @Override
+  public PerformanceMetrics<List<OrderAnalytics>> getOrderAnalyticsParallel(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate,
+      int parallelism) throws DataAccessException {
+    long startTime = System.nanoTime();
+    int parts = Math.max(1, Math.min(parallelism, config.getPoolMaxSize()));
+
+    // BETWEEN по датам включает полночь endDate, поэтому исключающая граница на микросекунду позже
+    List<ParallelRangeExecutor.TimeRange> ranges = ParallelRangeExecutor.split(
+        startDate.atStartOfDay(), endDate.atStartOfDay().plusNanos(1_000), parts);
+    List<List<OrderAnalyticsMerger.Partial>> partials =
+        new ParallelRangeExecutor(config.getConnectionProvider()).execute(ranges,
+            (conn, range) -> queryOrderAnalyticsPartial(conn, regions, statuses, range));
+
+    List<OrderAnalytics> results = OrderAnalyticsMerger.merge(
+        partials.stream().flatMap(List::stream).toList());
+    long executionTimeMs = (System.nanoTime() - startTime) / 1_000_000;
+
+    return PerformanceMetrics.<List<OrderAnalytics>>builder()
+        .data(results)
+        .executionTimeMs(executionTimeMs)
+        .queryType("parallel_fan_out_" + ranges.size())
+        .executedAt(LocalDateTime.now())
+        .performanceGrade(gradePerformance(executionTimeMs))
+        .rowsReturned((long) results.size())
+        .optimizationRecommendation(parts < parallelism
+            ? "Parallelism limited by pool size: " + parts
+            : "Index used: idx_orders_region_status_date")
+        .build();
+  }
+
+  private List<OrderAnalyticsMerger.Partial> queryOrderAnalyticsPartial(Connection conn,
+      List<String> regions, List<String> statuses, ParallelRangeExecutor.TimeRange range)
+      throws SQLException {
+    try (PreparedStatement stmt = conn.prepareStatement(ORDER_ANALYTICS_PARTIAL_SQL)) {
+      stmt.setArray(1, conn.createArrayOf("VARCHAR", regions.toArray()));
+      stmt.setArray(2, conn.createArrayOf("VARCHAR", statuses.toArray()));
+      stmt.setTimestamp(3, Timestamp.valueOf(range.from()));
+      stmt.setTimestamp(4, Timestamp.valueOf(range.toExclusive()));
+
+      List<OrderAnalyticsMerger.Partial> result = new ArrayList<>();
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          Timestamp firstOrder = rs.getTimestamp("first_order");
+          Timestamp lastOrder = rs.getTimestamp("last_order");
+          result.add(new OrderAnalyticsMerger.Partial(
+              rs.getString("region"),
+              rs.getString("status"),
+              rs.getLong("orders_count"),
+              rs.getLong("amount_count"),
+              rs.getBigDecimal("total_revenue"),
+              firstOrder != null ? firstOrder.toLocalDateTime() : null,
+              lastOrder != null ? lastOrder.toLocalDateTime() : null));
+        }
+      }
+      return result;
+    }
+  }
+
+  @Override
+  public PerformanceMetrics<SampledResult<List<ApproximateOrderAnalytics>>>
+      getOrderAnalyticsApproximate(List<String> regions, List<String> statuses,
+          LocalDate startDate, LocalDate endDate, SamplingSpec spec) throws DataAccessException {
+    long startTime = System.nanoTime();
+    double confidence = resolveConfidence(spec);
+    double z = SampleEstimator.zScore(confidence);
+
+    try (Connection conn = getConnection()) {
+      SampledResult<List<ApproximateOrderAnalytics>> result = executeSampled(spec,
+          (method, percent) -> queryApproximateOrderAnalytics(
+              conn, method, percent, z, regions, statuses, startDate, endDate),
+          CompositeIndexRepositoryImpl::maxRelativeError);
+      result.setConfidence(confidence);
+      long executionTimeMs = (System.nanoTime() - startTime) / 1_000_000;
+
+      return PerformanceMetrics.<SampledResult<List<ApproximateOrderAnalytics>>>builder()
+          .data(result)
+          .executionTimeMs(executionTimeMs)
+          .queryType("approximate_" + result.getMethod().name().toLowerCase())
+          .executedAt(LocalDateTime.now())
+          .performanceGrade(gradePerformance(executionTimeMs))
+          .rowsReturned((long) result.getData().size())
+          .optimizationRecommendation(describeSample(result))
+          .build();
+    } catch (SQLException e) {
+      log.error("Error executing approximate order analytics", e);
+      throw new DataAccessException("Failed to execute approximate order analytics", e);
+    }
+  }
+
+  private List<ApproximateOrderAnalytics> queryApproximateOrderAnalytics(Connection conn,
+      SamplingMethod method, double percent, double z, List<String> regions,
+      List<String> statuses, LocalDate startDate, LocalDate endDate) throws SQLException {
+    String sql = method == SamplingMethod.SYSTEM
+        ? ORDER_ANALYTICS_SYSTEM_SAMPLE_SQL : ORDER_ANALYTICS_BERNOULLI_SAMPLE_SQL;
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      stmt.setFloat(1, (float) percent);
+      stmt.setArray(2, conn.createArrayOf("VARCHAR", regions.toArray()));
+      stmt.setArray(3, conn.createArrayOf("VARCHAR", statuses.toArray()));
+      stmt.setDate(4, Date.valueOf(startDate));
+      stmt.setDate(5, Date.valueOf(endDate));
+
+      List<ApproximateOrderAnalytics> rows = new ArrayList<>();
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          rows.add(mapApproximateOrderAnalytics(rs, percent, z));
+        }
+      }
+      return rows;
+    }
+  }
+
+  private ApproximateOrderAnalytics mapApproximateOrderAnalytics(
+      ResultSet rs, double percent, double z) throws SQLException {
+    double revenue = rs.getDouble("revenue");
+    double revenueSq = rs.getDouble("revenue_sq");
+    ConfidenceInterval ordersCount = SampleEstimator.total(
+        rs.getDouble("rows_count"), rs.getDouble("rows_sq"), percent, z);
+    ConfidenceInterval totalRevenue = SampleEstimator.total(revenue, revenueSq, percent, z);
+    ConfidenceInterval avgOrderValue = SampleEstimator.ratio(revenue,
+        rs.getDouble("amount_count"), revenueSq, rs.getDouble("amount_sq"),
+        rs.getDouble("revenue_amount"), percent, z);
+    Timestamp firstOrder = rs.getTimestamp("first_order");
+    Timestamp lastOrder = rs.getTimestamp("last_order");
+
+    return ApproximateOrderAnalytics.builder()
+        .estimate(OrderAnalytics.builder()
+            .region(rs.getString("region"))
+            .status(rs.getString("status"))
+            .ordersCount(Math.round(ordersCount.getEstimate()))
+            .totalRevenue(BigDecimal.valueOf(totalRevenue.getEstimate())
+                .setScale(2, RoundingMode.HALF_UP))
+            .avgOrderValue(avgOrderValue != null
+                ? BigDecimal.valueOf(avgOrderValue.getEstimate()).setScale(2, RoundingMode.HALF_UP)
+                : null)
+            .firstOrder(firstOrder != null ? firstOrder.toLocalDateTime() : null)
+            .lastOrder(lastOrder != null ? lastOrder.toLocalDateTime() : null)
+            .build())
+        .ordersCount(ordersCount)
+        .totalRevenue(totalRevenue)
+        .avgOrderValue(avgOrderValue)
+        .sampledRows(rs.getLong("rows_count"))
+        .build();
+  }
+
+  // Пустая выборка ничего не говорит о погрешности, поэтому считается бесконечно неточной
+  private static double maxRelativeError(List<ApproximateOrderAnalytics> rows) {
+    return rows.stream()
+        .mapToDouble(row -> Math.max(row.getOrdersCount().getRelativeError(),
+            row.getTotalRevenue().getRelativeError()))
+        .max()
+        .orElse(Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Выполняет запрос по выборке. Если доля задана явно или целей нет, запрос выполняется один
+   * раз. Иначе сначала выполняется пробный запрос с долей из конфигурации, по его времени и
+   * погрешности выбирается доля под цели, и запрос повторяется, если нужна большая доля.
+   * Когда заданы обе цели, задержка важнее: доля не поднимается выше допустимой по времени.
+   */
+  private <T> SampledResult<T> executeSampled(SamplingSpec spec, SampleQuery<T> query,
+      ToDoubleFunction<T> relativeError) throws SQLException {
+    SamplingMethod method = spec != null && spec.getMethod() != null
+        ? spec.getMethod() : config.getApproximateMethod();
+    Long latencyTargetMs = spec != null ? spec.getLatencyTargetMs() : null;
+    Double errorTarget = spec != null ? spec.getRelativeErrorTarget() : null;
+
+    if (spec != null && spec.getSamplePercent() != null
+        || latencyTargetMs == null && errorTarget == null) {
+      double percent = spec != null && spec.getSamplePercent() != null
+          ? spec.getSamplePercent() : config.getApproximateSamplePercent();
+      T data = query.run(method, percent);
+      return sampledResult(data, method, percent, "fixed", null, relativeError);
+    }
+
+    List<String> selection = new ArrayList<>();
+    double pilotPercent = config.getApproximatePilotPercent();
+    long pilotStart = System.nanoTime();
+    T pilot = query.run(method, pilotPercent);
+    long pilotMs = (System.nanoTime() - pilotStart) / 1_000_000;
+
+    if (latencyTargetMs != null && method == SamplingMethod.BERNOULLI
+        && pilotMs > latencyTargetMs) {
+      // BERNOULLI читает всю таблицу при любой доле, уложиться в задержку можно только страницами
+      selection.add("BERNOULLI pilot took " + pilotMs + " ms, switched to SYSTEM");
+      method = SamplingMethod.SYSTEM;
+      pilotStart = System.nanoTime();
+      pilot = query.run(method, pilotPercent);
+      pilotMs += (System.nanoTime() - pilotStart) / 1_000_000;
+    }
+
+    double pilotError = relativeError.applyAsDouble(pilot);
+    double percent = SampleEstimator.MAX_PERCENT;
+    if (errorTarget != null) {
+      percent = SampleEstimator.percentForError(pilotPercent, pilotError, errorTarget);
+      selection.add(String.format("error target %.4f -> %.4f%%", errorTarget, percent));
+    }
+    if (latencyTargetMs != null) {
+      double latencyPercent =
+          SampleEstimator.percentForLatency(pilotPercent, pilotMs, latencyTargetMs);
+      selection.add(String.format("latency target %d ms -> %.4f%%", latencyTargetMs,
+          latencyPercent));
+      percent = Math.min(percent, latencyPercent);
+    }
+
+    if (percent <= pilotPercent) {
+      return sampledResult(pilot, method, pilotPercent, String.join("; ", selection), pilotMs,
+          relativeError);
+    }
+    T data = query.run(method, percent);
+    return sampledResult(data, method, percent, String.join("; ", selection), pilotMs,
+        relativeError);
+  }
+
+  private <T> SampledResult<T> sampledResult(T data, SamplingMethod method, double percent,
+      String rateSelection, Long pilotTimeMs, ToDoubleFunction<T> relativeError) {
+    return SampledResult.<T>builder()
+        .data(data)
+        .method(method)
+        .samplePercent(percent)
+        .rateSelection(rateSelection)
+        .pilotTimeMs(pilotTimeMs)
+        .maxRelativeError(relativeError.applyAsDouble(data))
+        .build();
+  }
+
+  private double resolveConfidence(SamplingSpec spec) {
+    return spec != null && spec.getConfidence() != null
+        ? spec.getConfidence() : config.getApproximateConfidence();
+  }
+
+  private static String describeSample(SampledResult<?> result) {
+    return String.format(
+        "Approximate: %s %.4f%% sample, max relative error %.4f at %.0f%% confidence",
+        result.getMethod(), result.getSamplePercent(), result.getMaxRelativeError(),
+        result.getConfidence() * 100);
   }
 
   @Override
@@ -183,17 +911,56 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
     return testCompositeIndexQuery(categoryId, minPrice, maxPrice, true);
   }
 
-  public PerformanceMetrics<String> testCaseInsensitiveSearch(String email, boolean useIndex)
+  @Override
+  public PerformanceMetrics<SampledResult<ConfidenceInterval>> measureQueryApproximate(
+      Long categoryId, BigDecimal minPrice, BigDecimal maxPrice, SamplingSpec spec)
       throws DataAccessException {
     long startTime = System.nanoTime();
-    String queryType = useIndex ? "with_index" : "without_index";
+    double confidence = resolveConfidence(spec);
+    double z = SampleEstimator.zScore(confidence);
 
     try (Connection conn = getConnection()) {
-      String explainSql = "EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) " + CASE_INSENSITIVE_SEARCH_SQL;
-      JsonNode planNode = executeExplainQuery(conn, explainSql, email);
+      SampledResult<ConfidenceInterval> result = executeSampled(spec,
+          (method, percent) -> {
+            String sql = method == SamplingMethod.SYSTEM
+                ? PRODUCT_COUNT_SYSTEM_SAMPLE_SQL : PRODUCT_COUNT_BERNOULLI_SAMPLE_SQL;
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+              stmt.setFloat(1, (float) percent);
+              stmt.setLong(2, categoryId);
+              stmt.setBigDecimal(3, minPrice);
+              stmt.setBigDecimal(4, maxPrice);
+              try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return SampleEstimator.total(
+                    rs.getDouble("rows_count"), rs.getDouble("rows_sq"), percent, z);
+              }
+            }
+          },
+          count -> count.getEstimate() == 0 ? Double.POSITIVE_INFINITY : count.getRelativeError());
+      result.setConfidence(confidence);
+      long executionTimeMs = (System.nanoTime() - startTime) / 1_000_000;
+
+      return PerformanceMetrics.<SampledResult<ConfidenceInterval>>builder()
+          .data(result)
+          .executionTimeMs(executionTimeMs)
+          .queryType("approximate_" + result.getMethod().name().toLowerCase())
+          .executedAt(LocalDateTime.now())
+          .performanceGrade(gradePerformance(executionTimeMs))
+          .rowsReturned(1L)
+          .optimizationRecommendation(describeSample(result))
+          .build();
+    } catch (SQLException e) {
+      log.error("Error executing approximate product count", e);
+      throw new DataAccessException("Failed to execute approximate product count", e);
+    }
+  }
 
-      QueryPlanParser parser = new QueryPlanParser(planNode);
+  public PerformanceMetrics<String> testCaseInsensitiveSearch(String email, boolean useIndex)
+      throws DataAccessException {
+    long startTime = System.nanoTime();
+    String queryType = useIndex ? "with_index" : "without_index";
 
+    try (Connection conn = getConnection()) {
       try (PreparedStatement stmt = conn.prepareStatement(CASE_INSENSITIVE_SEARCH_SQL)) {
         stmt.setString(1, email);
 
@@ -202,26 +969,21 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
 
         long endTime = System.nanoTime();
         long executionTimeMs = (endTime - startTime) / 1_000_000;
+        PlanSnapshot plan = resolvePlan(CASE_INSENSITIVE_SEARCH_SQL, executionTimeMs,
+            () -> executeExplainQuery(conn, EXPLAIN_PREFIX + CASE_INSENSITIVE_SEARCH_SQL, email));
 
         String recommendation = useIndex ?
             "Index used: idx_users_email_lower" :
             "Recommendation: Create functional index on LOWER(email)";
 
-        return PerformanceMetrics.<String>builder()
+        return withPlan(PerformanceMetrics.<String>builder()
             .data(result)
             .executionTimeMs(executionTimeMs)
-            .planningTimeMs(parser.getPlanningTimeMs())
-            .buffersHit(parser.getBuffersHit())
-            .buffersRead(parser.getBuffersRead())
             .queryType(queryType)
             .executedAt(LocalDateTime.now())
             .performanceGrade(gradePerformance(executionTimeMs))
-            .scanType(parser.getScanType())
-            .rowsScanned(parser.getRowsScanned())
             .rowsReturned(result != null ? 1L : 0L)
-            .costEstimate(parser.getCostEstimate())
-            .indexesUsed(parser.getIndexesUsed())
-            .optimizationRecommendation(recommendation)
+            .optimizationRecommendation(recommendation), plan)
             .build();
       }
     } catch (SQLException e) {
@@ -237,11 +999,6 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
     String queryType = useIndex ? "with_index" : "without_index";
 
     try (Connection conn = getConnection()) {
-      String explainSql = "EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) " + JSON_SEARCH_SQL;
-      JsonNode planNode = executeExplainQuery(conn, explainSql, brand, color, minPrice, maxPrice);
-
-      QueryPlanParser parser = new QueryPlanParser(planNode);
-
       try (PreparedStatement stmt = conn.prepareStatement(JSON_SEARCH_SQL)) {
         stmt.setString(1, brand);
         stmt.setString(2, color);
@@ -253,26 +1010,21 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
 
         long endTime = System.nanoTime();
         long executionTimeMs = (endTime - startTime) / 1_000_000;
+        PlanSnapshot plan = resolvePlan(JSON_SEARCH_SQL, executionTimeMs,
+            () -> executeExplainQuery(conn, EXPLAIN_PREFIX + JSON_SEARCH_SQL, brand, color, minPrice, maxPrice));
 
         String recommendation = useIndex ?
             "Indexes used: idx_products_attributes_brand, idx_products_attributes_color" :
             "Recommendation: Create functional indexes on JSON attributes";
 
-        return PerformanceMetrics.<Long>builder()
+        return withPlan(PerformanceMetrics.<Long>builder()
             .data(count)
             .executionTimeMs(executionTimeMs)
-            .planningTimeMs(parser.getPlanningTimeMs())
-            .buffersHit(parser.getBuffersHit())
-            .buffersRead(parser.getBuffersRead())
             .queryType(queryType)
             .executedAt(LocalDateTime.now())
             .performanceGrade(gradePerformance(executionTimeMs))
-            .scanType(parser.getScanType())
-            .rowsScanned(parser.getRowsScanned())
             .rowsReturned(count)
-            .costEstimate(parser.getCostEstimate())
-            .indexesUsed(parser.getIndexesUsed())
-            .optimizationRecommendation(recommendation)
+            .optimizationRecommendation(recommendation), plan)
             .build();
       }
     } catch (SQLException e) {
@@ -281,6 +1033,74 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
     }
   }
 
+  @Override
+  public BatchQuery<List<OrderAnalytics>> orderAnalyticsQuery(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate) {
+    return BatchQuery.of("order_analytics", ORDER_ANALYTICS_BASE_SQL,
+        rs -> {
+          List<OrderAnalytics> results = new ArrayList<>();
+          while (rs.next()) {
+            results.add(mapOrderAnalytics(rs));
+          }
+          return results;
+        },
+        BatchQuery.varcharArray(regions), BatchQuery.varcharArray(statuses),
+        Date.valueOf(startDate), Date.valueOf(endDate));
+  }
+
+  @Override
+  public BatchQuery<Long> productCountQuery(
+      Long categoryId, BigDecimal minPrice, BigDecimal maxPrice) {
+    return BatchQuery.of("product_count", PRODUCT_COUNT_SQL,
+        rs -> rs.next() ? rs.getLong("product_count") : 0L,
+        categoryId, minPrice, maxPrice);
+  }
+
+  @Override
+  public BatchQuery<Long> jsonSearchQuery(
+      String brand, String color, BigDecimal minPrice, BigDecimal maxPrice) {
+    return BatchQuery.of("json_search", JSON_SEARCH_SQL,
+        rs -> rs.next() ? rs.getLong("product_count") : 0L,
+        brand, color, minPrice, maxPrice);
+  }
+
+  @Override
+  public BatchResult executeBatch(List<BatchQuery<?>> queries) throws DataAccessException {
+    long startTime = System.nanoTime();
+
+    try (Connection conn = getConnection()) {
+      List<Object> data = PipelinedBatch.execute(conn, queries);
+      long executionTimeMs = (System.nanoTime() - startTime) / 1_000_000;
+
+      BatchResult result = new BatchResult(executionTimeMs, 1);
+      for (int i = 0; i < queries.size(); i++) {
+        putBatchMetrics(result, queries.get(i), data.get(i), queries.size());
+      }
+      return result;
+    } catch (SQLException e) {
+      log.error("Error executing query batch", e);
+      throw new DataAccessException("Failed to execute query batch", e);
+    }
+  }
+
+  /**
+   * Запросы пакета выполняются за одно обращение, и время отдельного запроса не измеряется:
+   * оно есть только у пакета целиком, в {@link BatchResult#getTotalTimeMs()}.
+   */
+  @SuppressWarnings("unchecked")
+  private <T> void putBatchMetrics(BatchResult result, BatchQuery<T> query, Object data,
+      int batchSize) {
+    result.put(query, PerformanceMetrics.<T>builder()
+        .data((T) data)
+        .queryType("batch_" + query.getName())
+        .executedAt(LocalDateTime.now())
+        .performanceGrade(NOT_MEASURED)
+        .optimizationRecommendation(String.format(
+            "Executed with %d queries in one round trip; see the batch total time",
+            batchSize))
+        .build());
+  }
+
   public PerformanceMetrics<String> testIndexColumnOrder() throws DataAccessException {
     long startTime = System.nanoTime();
 
@@ -293,6 +1113,7 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
         stmt.execute(DROP_TEST_INDEXES);
         stmt.execute(CREATE_TEST_INDEX_WRONG_ORDER);
       }
+      config.getPlanCapturePolicy().invalidateAll();
 
       PerformanceMetrics<Long> wrongOrderMetrics = testCompositeIndexQuery(
           categoryId, minPrice, maxPrice, false);
@@ -301,6 +1122,7 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
         stmt.execute(DROP_TEST_INDEXES);
         stmt.execute(CREATE_TEST_INDEX_CORRECT_ORDER);
       }
+      config.getPlanCapturePolicy().invalidateAll();
 
       PerformanceMetrics<Long> correctOrderMetrics = testCompositeIndexQuery(
           categoryId, minPrice, maxPrice, false);
@@ -325,6 +1147,7 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
       try (Statement stmt = conn.createStatement()) {
         stmt.execute(DROP_TEST_INDEXES);
       }
+      config.getPlanCapturePolicy().invalidateAll();
 
       return PerformanceMetrics.<String>builder()
           .data(result)
@@ -344,20 +1167,38 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
   public PerformanceMetrics<String> createCompositeIndexes() throws DataAccessException {
     long startTime = System.nanoTime();
 
-    try (Connection conn = getConnection();
-        Statement stmt = conn.createStatement()) {
+    try {
+      try (Connection conn = getConnection();
+          Statement stmt = conn.createStatement()) {
+        stmt.execute(PREPARE_COMPOSITE_COLUMNS_SQL);
+      }
+
+      List<IndexBuildResult> builds =
+          new IndexBuildOrchestrator(config.getConnectionProvider()).build(COMPOSITE_INDEXES);
 
-      stmt.execute(CREATE_COMPOSITE_INDEXES_SQL);
+      try (Connection conn = getConnection();
+          Statement stmt = conn.createStatement()) {
+        stmt.execute(ANALYZE_COMPOSITE_TABLES_SQL);
+      }
+      config.getPlanCapturePolicy().invalidateAll();
 
       long endTime = System.nanoTime();
       long executionTimeMs = (endTime - startTime) / 1_000_000;
+      long failed = builds.stream()
+          .filter(build -> build.getStatus() == IndexBuildStatus.FAILED)
+          .count();
 
       return PerformanceMetrics.<String>builder()
-          .data("Composite indexes created successfully")
+          .data(failed == 0
+              ? "Composite indexes created successfully"
+              : String.format("Composite indexes created with %d failures", failed))
           .executionTimeMs(executionTimeMs)
           .executedAt(LocalDateTime.now())
           .performanceGrade(gradePerformance(executionTimeMs))
-          .optimizationRecommendation("Indexes are ready for use")
+          .optimizationRecommendation(failed == 0
+              ? "Indexes are ready for use"
+              : "Check indexBuilds for errors and rerun createCompositeIndexes")
+          .indexBuilds(builds)
           .build();
 
     } catch (SQLException e) {
@@ -374,6 +1215,7 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
         Statement stmt = conn.createStatement()) {
 
       stmt.execute(DROP_COMPOSITE_INDEXES_SQL);
+      config.getPlanCapturePolicy().invalidateAll();
 
       long endTime = System.nanoTime();
       long executionTimeMs = (endTime - startTime) / 1_000_000;
@@ -392,9 +1234,111 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
     }
   }
 
+  @Override
+  public List<BrinCandidate> findBrinCandidates() throws DataAccessException {
+    int pagesPerRange = config.getBrinPagesPerRange();
+    double minCorrelation = config.getBrinMinCorrelation();
+    List<BrinCandidate> candidates = new ArrayList<>();
+
+    try (Connection conn = getConnection();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(BRIN_CANDIDATES_SQL)) {
+      while (rs.next()) {
+        String tableName = rs.getString("table_name");
+        String columnName = rs.getString("column_name");
+        double correlation = rs.getDouble("correlation");
+        long tablePages = rs.getLong("table_pages");
+
+        boolean correlated = Math.abs(correlation) >= minCorrelation;
+        boolean largeEnough = tablePages >= (long) pagesPerRange * BRIN_MIN_RANGES;
+        boolean recommended = correlated && largeEnough;
+        String reason;
+        if (!correlated) {
+          reason = String.format("Correlation %.3f is below %.2f, BRIN ranges would overlap",
+              correlation, minCorrelation);
+        } else if (!largeEnough) {
+          reason = String.format("Table has %d pages, fewer than %d ranges of %d pages",
+              tablePages, BRIN_MIN_RANGES, pagesPerRange);
+        } else {
+          reason = String.format("Correlation %.3f: rows are stored in %s order,"
+              + " BRIN can replace a B-tree for range scans", correlation, columnName);
+        }
+
+        candidates.add(BrinCandidate.builder()
+            .tableName(tableName)
+            .columnName(columnName)
+            .dataType(rs.getString("data_type"))
+            .correlation(correlation)
+            .tablePages(tablePages)
+            .tableSizeBytes(rs.getLong("table_size"))
+            .pagesPerRange(pagesPerRange)
+            .recommended(recommended)
+            .reason(reason)
+            .createStatement(recommended
+                ? brinRequest(tableName, columnName, pagesPerRange).toCreateConcurrentlySql()
+                : null)
+            .build());
+      }
+      return candidates;
+    } catch (SQLException e) {
+      log.error("Error finding BRIN candidates", e);
+      throw new DataAccessException("Failed to find BRIN candidates", e);
+    }
+  }
+
+  @Override
+  public PerformanceMetrics<String> createBrinIndexes(Integer pagesPerRange)
+      throws DataAccessException {
+    long startTime = System.nanoTime();
+    int pages = pagesPerRange != null ? pagesPerRange : config.getBrinPagesPerRange();
+
+    List<IndexBuildRequest> requests = findBrinCandidates().stream()
+        .filter(BrinCandidate::isRecommended)
+        .map(candidate -> brinRequest(candidate.getTableName(), candidate.getColumnName(), pages))
+        .toList();
+    List<IndexBuildResult> builds =
+        new IndexBuildOrchestrator(config.getConnectionProvider()).build(requests);
+    config.getPlanCapturePolicy().invalidateAll();
+
+    long executionTimeMs = (System.nanoTime() - startTime) / 1_000_000;
+    long failed = builds.stream()
+        .filter(build -> build.getStatus() == IndexBuildStatus.FAILED)
+        .count();
+
+    return PerformanceMetrics.<String>builder()
+        .data(requests.isEmpty()
+            ? "No columns are correlated enough for BRIN indexes"
+            : String.format("BRIN indexes created: %d of %d (pages_per_range = %d)",
+                builds.size() - failed, builds.size(), pages))
+        .executionTimeMs(executionTimeMs)
+        .executedAt(LocalDateTime.now())
+        .performanceGrade(gradePerformance(executionTimeMs))
+        .optimizationRecommendation(failed == 0
+            ? "BRIN indexes need summarization of new ranges: enable autosummarize"
+                + " or rely on autovacuum"
+            : "Check indexBuilds for errors and rerun createBrinIndexes")
+        .indexBuilds(builds)
+        .build();
+  }
+
+  private static IndexBuildRequest brinRequest(
+      String tableName, String columnName, int pagesPerRange) {
+    return IndexBuildRequest.builder()
+        .indexName("idx_" + tableName + "_" + columnName + "_brin")
+        .tableName(tableName)
+        .keySql("(" + columnName + ")")
+        .method("brin")
+        .storageParameters("pages_per_range = " + pagesPerRange)
+        .build();
+  }
+
   @Override
   public List<IndexUsageStats> analyzeCompositeIndexUsage() throws DataAccessException {
     List<IndexUsageStats> stats = new ArrayList<>();
+    Map<String, IndexUsageRate> rates = new HashMap<>();
+    for (IndexUsageRate rate : config.getIndexUsageSampler().getIndexRates(null)) {
+      rates.put(rate.getIndexName(), rate);
+    }
 
     try (Connection conn = getConnection();
         Statement stmt = conn.createStatement();
@@ -412,6 +1356,14 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
             .definition(rs.getString("definition"))
             .recommendedUsage(rs.getString("recommended_usage"))
             .build();
+        // Накопительные счетчики не говорят, когда их сбросили, поэтому при наличии
+        // снимков вердикт берется из фактической скорости за наблюдаемое окно
+        IndexUsageRate rate = rates.get(indexStats.getIndexName());
+        if (rate != null) {
+          indexStats.setScansPerSecond(rate.getScansPerSecond());
+          indexStats.setObservedWindowSeconds(rate.getWindowSeconds());
+          indexStats.setRecommendedUsage(rate.getVerdict());
+        }
         stats.add(indexStats);
       }
 
@@ -423,19 +1375,347 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
     }
   }
 
-  private Connection getConnection() throws SQLException {
+  @Override
+  public List<IndexUsageRate> getIndexUsageRates(Duration window) {
+    return config.getIndexUsageSampler().getIndexRates(window);
+  }
+
+  @Override
+  public IndexRedundancyReport findRedundantIndexes() throws DataAccessException {
+    List<IndexDefinition> indexes = new ArrayList<>();
+    Map<String, TableWriteCost> tables = new HashMap<>();
+
+    try (Connection conn = getConnection();
+        Statement stmt = conn.createStatement()) {
+      try (ResultSet rs = stmt.executeQuery(GET_INDEX_DEFINITIONS_SQL)) {
+        while (rs.next()) {
+          List<String> columns = Arrays.asList((String[]) rs.getArray("columns").getArray());
+          int keyCount = rs.getInt("key_count");
+          indexes.add(IndexDefinition.builder()
+              .indexName(rs.getString("index_name"))
+              .tableName(rs.getString("table_name"))
+              .accessMethod(rs.getString("access_method"))
+              .unique(rs.getBoolean("is_unique"))
+              .primary(rs.getBoolean("is_primary"))
+              .keyColumns(List.copyOf(columns.subList(0, keyCount)))
+              .includeColumns(List.copyOf(columns.subList(keyCount, columns.size())))
+              .predicate(rs.getString("predicate"))
+              .definition(rs.getString("definition"))
+              .scans(rs.getLong("scans"))
+              .sizeBytes(rs.getLong("size_bytes"))
+              .build());
+        }
+      }
+      try (ResultSet rs = stmt.executeQuery(GET_TABLE_WRITE_COUNTERS_SQL)) {
+        while (rs.next()) {
+          String table = rs.getString("table_name");
+          tables.put(table, TableWriteCost.builder()
+              .tableName(table)
+              .inserts(rs.getLong("inserts"))
+              .nonHotUpdates(rs.getLong("non_hot_updates"))
+              .hotUpdates(rs.getLong("hot_updates"))
+              .build());
+        }
+      }
+    } catch (SQLException e) {
+      log.error("Error reading index definitions", e);
+      throw new DataAccessException("Failed to read index definitions", e);
+    }
+
+    boolean fromSampler = applySampledUsage(indexes, tables);
+    IndexRedundancyReport report = new RedundantIndexDetector().detect(indexes, tables, fromSampler);
+    for (DropCandidate candidate : report.getDropCandidates()) {
+      log.info("Кандидат на удаление {} ({}): {} записей на сканирование, {} байт",
+          candidate.getIndexName(), candidate.getReason(),
+          String.format("%.0f", candidate.getWritesPerScan()), candidate.getSizeBytes());
+    }
+    return report;
+  }
+
+  /**
+   * Заменяет накопительные счетчики на приращения за окно фонового сборщика, если он
+   * наблюдал индексы достаточно долго для вердикта. Возвращает true, если замена выполнена.
+   */
+  private boolean applySampledUsage(
+      List<IndexDefinition> indexes, Map<String, TableWriteCost> tables) {
+    IndexUsageSampler sampler = config.getIndexUsageSampler();
+    Map<String, IndexUsageRate> rates = new HashMap<>();
+    for (IndexUsageRate rate : sampler.getIndexRates(null)) {
+      if (IndexUsageSampler.VERDICT_INSUFFICIENT_HISTORY.equals(rate.getVerdict())) {
+        return false;
+      }
+      rates.put(rate.getIndexName(), rate);
+    }
+    if (rates.isEmpty()) {
+      return false;
+    }
+
+    for (IndexDefinition index : indexes) {
+      IndexUsageRate rate = rates.get(index.getIndexName());
+      if (rate != null) {
+        index.setScans(Math.round(rate.getScansPerSecond() * rate.getWindowSeconds()));
+      }
+    }
+    for (TableActivityRate rate : sampler.getTableRates(null)) {
+      TableWriteCost cost = tables.get(rate.getTableName());
+      if (cost != null) {
+        long seconds = rate.getWindowSeconds();
+        cost.setInserts(Math.round(rate.getInsertsPerSecond() * seconds));
+        cost.setNonHotUpdates(Math.round(
+            (rate.getUpdatesPerSecond() - rate.getHotUpdatesPerSecond()) * seconds));
+        cost.setHotUpdates(Math.round(rate.getHotUpdatesPerSecond() * seconds));
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public List<PartitionPruningReport> checkPartitionPruning(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate
+  ) throws DataAccessException {
+    try (Connection conn = getConnection()) {
+      List<PartitionInfo> partitions = PartitionCatalog.listPartitions(conn, "orders");
+      Array regionArray = conn.createArrayOf("VARCHAR", regions.toArray());
+      Array statusArray = conn.createArrayOf("VARCHAR", statuses.toArray());
+      Timestamp from = Timestamp.valueOf(startDate.atStartOfDay());
+      Timestamp to = Timestamp.valueOf(endDate.atStartOfDay().plusNanos(1_000));
+
+      List<PartitionPruningReport> reports = new ArrayList<>();
+      reports.add(PartitionPruningAnalyzer.analyze("order_analytics", "orders", partitions,
+          new QueryPlanParser(executeExplainQuery(conn, EXPLAIN_PREFIX + ORDER_ANALYTICS_BASE_SQL,
+              regions, statuses, startDate, endDate))));
+      reports.add(PartitionPruningAnalyzer.analyze("order_analytics_partial", "orders",
+          partitions, new QueryPlanParser(executeExplainQuery(conn,
+              EXPLAIN_PREFIX + ORDER_ANALYTICS_PARTIAL_SQL, regionArray, statusArray, from, to))));
+      reports.add(PartitionPruningAnalyzer.analyze("order_analytics_sample", "orders",
+          partitions, new QueryPlanParser(executeExplainQuery(conn,
+              EXPLAIN_PREFIX + ORDER_ANALYTICS_BERNOULLI_SAMPLE_SQL, config.getApproximateSamplePercent(),
+              regionArray, statusArray, Date.valueOf(startDate), Date.valueOf(endDate)))));
+
+      for (PartitionPruningReport report : reports) {
+        log.info("Секции {} в запросе {}: просканировано {} из {} - {}", report.getTableName(),
+            report.getQueryName(), report.getPartitionsScanned(), report.getPartitionsTotal(),
+            report.getVerdict());
+      }
+      return reports;
+    } catch (SQLException e) {
+      log.error("Error checking partition pruning", e);
+      throw new DataAccessException("Failed to check partition pruning", e);
+    }
+  }
+
+  @Override
+  public PartitionMaintenanceResult maintainOrderPartitions() throws DataAccessException {
     try {
-      Class.forName(config.getDriver());
-      return DriverManager.getConnection(
-          config.getUrl(),
-          config.getUsername(),
-          config.getPassword()
-      );
-    } catch (ClassNotFoundException e) {
-      throw new SQLException("Database driver not found", e);
+      return config.getPartitionMaintenance().run();
+    } catch (SQLException e) {
+      log.error("Error maintaining order partitions", e);
+      throw new DataAccessException("Failed to maintain order partitions", e);
     }
   }
 
+  @Override
+  public List<IndexRecommendation> recommendIndexes(String query) throws DataAccessException {
+    try (Connection conn = getConnection()) {
+      QueryPlanParser baseline = explainCost(conn, query);
+      List<IndexCandidate> candidates = new IndexCandidateGenerator().generate(baseline.getNodes());
+      if (candidates.isEmpty() || baseline.getTotalCost() == null) {
+        return new ArrayList<>();
+      }
+
+      boolean hypothetical = isHypopgAvailable(conn);
+      List<IndexRecommendation> recommendations = new ArrayList<>();
+      for (IndexCandidate candidate : candidates) {
+        try {
+          IndexRecommendation recommendation = hypothetical
+              ? evaluateHypothetical(conn, query, candidate, baseline.getTotalCost())
+              : evaluateOnSample(conn, query, candidate, baseline.getTotalCost());
+          if (recommendation.isUsedByPlanner()
+              && recommendation.getEstimatedBenefit().signum() > 0) {
+            recommendations.add(recommendation);
+          }
+        } catch (SQLException e) {
+          log.warn("Candidate {} skipped: {}", candidate.getIndexName(), e.getMessage());
+        }
+      }
+
+      recommendations.sort(Comparator
+          .comparing(IndexRecommendation::getEstimatedBenefit).reversed()
+          .thenComparing(IndexRecommendation::getEstimatedSizeBytes));
+      for (int i = 0; i < recommendations.size(); i++) {
+        recommendations.get(i).setRank(i + 1);
+      }
+      return recommendations;
+
+    } catch (SQLException e) {
+      log.error("Error recommending indexes", e);
+      throw new DataAccessException("Failed to recommend indexes", e);
+    }
+  }
+
+  /**
+   * Проверяет кандидата гипотетическим индексом hypopg: индекс существует только для
+   * планировщика в текущей сессии и не строится.
+   */
+  private IndexRecommendation evaluateHypothetical(
+      Connection conn, String query, IndexCandidate candidate, BigDecimal baselineCost)
+      throws SQLException {
+    conn.setAutoCommit(false);
+    try {
+      long indexRelId;
+      String indexName;
+      try (PreparedStatement stmt = conn.prepareStatement(HYPOPG_CREATE_SQL)) {
+        stmt.setString(1, candidate.toCreateSql());
+        try (ResultSet rs = stmt.executeQuery()) {
+          if (!rs.next()) {
+            throw new SQLException("hypopg did not create index " + candidate.getIndexName());
+          }
+          indexRelId = rs.getLong("indexrelid");
+          indexName = rs.getString("indexname");
+        }
+      }
+
+      long sizeBytes;
+      try (PreparedStatement stmt = conn.prepareStatement(HYPOPG_SIZE_SQL)) {
+        stmt.setLong(1, indexRelId);
+        try (ResultSet rs = stmt.executeQuery()) {
+          sizeBytes = rs.next() ? rs.getLong(1) : 0L;
+        }
+      }
+
+      QueryPlanParser plan = explainCost(conn, query);
+      return recommendation(candidate, "HYPOPG", baselineCost,
+          plan.getTotalCost() != null ? plan.getTotalCost() : baselineCost,
+          usesIndex(plan, indexName), sizeBytes);
+    } finally {
+      // Гипотетические индексы живут в сессии, а не в транзакции, поэтому сбрасываются явно
+      conn.rollback();
+      conn.setAutoCommit(true);
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute(HYPOPG_RESET_SQL);
+      }
+    }
+  }
+
+  /**
+   * Проверяет кандидата без hypopg на выборке: таблица копируется через TABLESAMPLE SYSTEM во
+   * временную таблицу с тем же именем, которая закрывает исходную для неквалифицированных имен
+   * в запросе, и индекс строится на копии. Рабочая таблица читается только на долю страниц
+   * выборки и не блокируется для записи; стоимость и размер переносятся на всю таблицу
+   * пропорционально. Запросы с именем схемы и кандидаты по секциям, к которым запрос обращается
+   * через родителя, копию не видят, поэтому такие кандидаты не рекомендуются.
+   */
+  private IndexRecommendation evaluateOnSample(
+      Connection conn, String query, IndexCandidate candidate, BigDecimal baselineCost)
+      throws SQLException {
+    conn.setAutoCommit(false);
+    try {
+      String sampleName;
+      String sourceName;
+      double liveRows;
+      try (PreparedStatement stmt = conn.prepareStatement(WHAT_IF_TABLE_SQL)) {
+        stmt.setString(1, candidate.getTableName());
+        try (ResultSet rs = stmt.executeQuery()) {
+          if (!rs.next()) {
+            throw new SQLException("Table " + candidate.getTableName() + " not found");
+          }
+          sampleName = rs.getString("sample_name");
+          sourceName = rs.getString("source_name");
+          liveRows = rs.getDouble("live_rows");
+        }
+      }
+
+      double samplePercent = liveRows <= 0
+          ? WHAT_IF_DEFAULT_SAMPLE_PERCENT
+          : Math.min(100.0, WHAT_IF_SAMPLE_ROWS * 100.0 / liveRows);
+      long sampleRows;
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute(WHAT_IF_STATEMENT_TIMEOUT_SQL);
+        stmt.execute(String.format(Locale.ROOT, WHAT_IF_SAMPLE_SQL,
+            sampleName, sourceName, String.format(Locale.ROOT, "%.6f", samplePercent)));
+        stmt.execute("ANALYZE " + sampleName);
+        try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + sampleName)) {
+          sampleRows = rs.next() ? rs.getLong(1) : 0L;
+        }
+      }
+      if (sampleRows == 0) {
+        throw new SQLException("Sample of " + sourceName + " is empty");
+      }
+
+      QueryPlanParser sampleBaseline = explainCost(conn, query);
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute(candidate.toCreateSql());
+      }
+
+      long sampleSizeBytes;
+      try (PreparedStatement stmt = conn.prepareStatement(INDEX_SIZE_SQL)) {
+        stmt.setString(1, candidate.getIndexName());
+        try (ResultSet rs = stmt.executeQuery()) {
+          sampleSizeBytes = rs.next() ? rs.getLong(1) : 0L;
+        }
+      }
+
+      QueryPlanParser plan = explainCost(conn, query);
+      if (plan.getTotalCost() == null || sampleBaseline.getTotalCost() == null
+          || sampleBaseline.getTotalCost().signum() <= 0) {
+        throw new SQLException("No cost estimate on sample of " + sourceName);
+      }
+      // Стоимость на копии переносится на таблицу в той же доле от исходного плана
+      BigDecimal estimatedCost = baselineCost.multiply(plan.getTotalCost())
+          .divide(sampleBaseline.getTotalCost(), 2, RoundingMode.HALF_UP);
+      double rowsScale = liveRows > sampleRows ? liveRows / sampleRows : 1.0;
+      return recommendation(candidate, "SAMPLED_BUILD", baselineCost, estimatedCost,
+          usesIndex(plan, candidate.getIndexName()), Math.round(sampleSizeBytes * rowsScale));
+    } finally {
+      conn.rollback();
+      conn.setAutoCommit(true);
+    }
+  }
+
+  private IndexRecommendation recommendation(IndexCandidate candidate, String method,
+      BigDecimal baselineCost, BigDecimal estimatedCost, boolean used, long sizeBytes) {
+    BigDecimal benefit = baselineCost.subtract(estimatedCost);
+
+    return IndexRecommendation.builder()
+        .candidate(candidate)
+        .createStatement(candidate.toCreateSql()
+            .replaceFirst("^CREATE INDEX ", "CREATE INDEX CONCURRENTLY IF NOT EXISTS "))
+        .evaluationMethod(method)
+        .baselineCost(baselineCost)
+        .estimatedCost(estimatedCost)
+        .estimatedBenefit(benefit)
+        .improvementPercent(baselineCost.signum() > 0
+            ? benefit.doubleValue() * 100 / baselineCost.doubleValue() : 0.0)
+        .estimatedSizeBytes(sizeBytes)
+        .usedByPlanner(used)
+        .build();
+  }
+
+  private static boolean usesIndex(QueryPlanParser plan, String indexName) {
+    return plan.getNodes().stream().anyMatch(node -> indexName.equals(node.getIndexName()));
+  }
+
+  private QueryPlanParser explainCost(Connection conn, String query) throws SQLException {
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(EXPLAIN_COST_PREFIX + query)) {
+      if (!rs.next()) {
+        throw new SQLException("No explain plan returned");
+      }
+      return new QueryPlanParser(rs.getString(1));
+    }
+  }
+
+  private boolean isHypopgAvailable(Connection conn) throws SQLException {
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(HYPOPG_AVAILABLE_SQL)) {
+      return rs.next() && rs.getBoolean(1);
+    }
+  }
+
+  private Connection getConnection() throws SQLException {
+    return config.getConnectionProvider().getConnection();
+  }
+
   private PerformanceMetrics<List<OrderAnalytics>> executeOrderAnalytics(
       List<String> regions, List<String> statuses,
       LocalDate startDate, LocalDate endDate, boolean useIndex)
@@ -444,11 +1724,6 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
     String queryType = useIndex ? "with_index" : "without_index";
 
     try (Connection conn = getConnection()) {
-      String explainSql = "EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) " + ORDER_ANALYTICS_BASE_SQL;
-      JsonNode planNode = executeExplainQuery(conn, explainSql, regions, statuses, startDate, endDate);
-
-      QueryPlanParser parser = new QueryPlanParser(planNode);
-
       try (PreparedStatement stmt = conn.prepareStatement(ORDER_ANALYTICS_BASE_SQL)) {
         Array regionArray = conn.createArrayOf("VARCHAR", regions.toArray());
         Array statusArray = conn.createArrayOf("VARCHAR", statuses.toArray());
@@ -462,42 +1737,26 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
         List<OrderAnalytics> results = new ArrayList<>();
 
         while (rs.next()) {
-          OrderAnalytics analytics = OrderAnalytics.builder()
-              .region(rs.getString("region"))
-              .status(rs.getString("status"))
-              .ordersCount(rs.getLong("orders_count"))
-              .totalRevenue(rs.getBigDecimal("total_revenue"))
-              .avgOrderValue(rs.getBigDecimal("avg_order_value"))
-              .firstOrder(rs.getTimestamp("first_order") != null ?
-                  rs.getTimestamp("first_order").toLocalDateTime() : null)
-              .lastOrder(rs.getTimestamp("last_order") != null ?
-                  rs.getTimestamp("last_order").toLocalDateTime() : null)
-              .build();
-          results.add(analytics);
+          results.add(mapOrderAnalytics(rs));
         }
 
         long endTime = System.nanoTime();
         long executionTimeMs = (endTime - startTime) / 1_000_000;
+        PlanSnapshot plan = resolvePlan(ORDER_ANALYTICS_BASE_SQL, executionTimeMs,
+            () -> executeExplainQuery(conn, EXPLAIN_PREFIX + ORDER_ANALYTICS_BASE_SQL, regions, statuses, startDate, endDate));
 
         String recommendation = useIndex ?
             "Index used: idx_orders_region_status_date" :
             "Recommendation: Create composite index on (region, status, created_at)";
 
-        return PerformanceMetrics.<List<OrderAnalytics>>builder()
+        return withPlan(PerformanceMetrics.<List<OrderAnalytics>>builder()
             .data(results)
             .executionTimeMs(executionTimeMs)
-            .planningTimeMs(parser.getPlanningTimeMs())
-            .buffersHit(parser.getBuffersHit())
-            .buffersRead(parser.getBuffersRead())
             .queryType(queryType)
             .executedAt(LocalDateTime.now())
             .performanceGrade(gradePerformance(executionTimeMs))
-            .scanType(parser.getScanType())
-            .rowsScanned(parser.getRowsScanned())
             .rowsReturned((long) results.size())
-            .costEstimate(parser.getCostEstimate())
-            .indexesUsed(parser.getIndexesUsed())
-            .optimizationRecommendation(recommendation)
+            .optimizationRecommendation(recommendation), plan)
             .build();
       }
     } catch (SQLException e) {
@@ -506,6 +1765,24 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
     }
   }
 
+  private static long weighOrderAnalytics(PerformanceMetrics<List<OrderAnalytics>> metrics) {
+    return CACHED_METRICS_BYTES + metrics.getData().size() * ORDER_ANALYTICS_ROW_BYTES;
+  }
+
+  private OrderAnalytics mapOrderAnalytics(ResultSet rs) throws SQLException {
+    return OrderAnalytics.builder()
+        .region(rs.getString("region"))
+        .status(rs.getString("status"))
+        .ordersCount(rs.getLong("orders_count"))
+        .totalRevenue(rs.getBigDecimal("total_revenue"))
+        .avgOrderValue(rs.getBigDecimal("avg_order_value"))
+        .firstOrder(rs.getTimestamp("first_order") != null ?
+            rs.getTimestamp("first_order").toLocalDateTime() : null)
+        .lastOrder(rs.getTimestamp("last_order") != null ?
+            rs.getTimestamp("last_order").toLocalDateTime() : null)
+        .build();
+  }
+
   private PerformanceMetrics<Long> testCompositeIndexQuery(
       Long categoryId, BigDecimal minPrice, BigDecimal maxPrice, boolean useIndex)
       throws DataAccessException {
@@ -513,11 +1790,6 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
     String queryType = useIndex ? "with_index" : "without_index";
 
     try (Connection conn = getConnection()) {
-      String explainSql = "EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) " + PRODUCT_COUNT_SQL;
-      JsonNode planNode = executeExplainQuery(conn, explainSql, categoryId, minPrice, maxPrice);
-
-      QueryPlanParser parser = new QueryPlanParser(planNode);
-
       try (PreparedStatement stmt = conn.prepareStatement(PRODUCT_COUNT_SQL)) {
         stmt.setLong(1, categoryId);
         stmt.setBigDecimal(2, minPrice);
@@ -528,26 +1800,21 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
 
         long endTime = System.nanoTime();
         long executionTimeMs = (endTime - startTime) / 1_000_000;
+        PlanSnapshot plan = resolvePlan(PRODUCT_COUNT_SQL, executionTimeMs,
+            () -> executeExplainQuery(conn, EXPLAIN_PREFIX + PRODUCT_COUNT_SQL, categoryId, minPrice, maxPrice));
 
         String recommendation = useIndex ?
             "Index used: idx_products_category_price" :
             "Recommendation: Create index on (category_id, price) WHERE is_active = true";
 
-        return PerformanceMetrics.<Long>builder()
+        return withPlan(PerformanceMetrics.<Long>builder()
             .data(count)
             .executionTimeMs(executionTimeMs)
-            .planningTimeMs(parser.getPlanningTimeMs())
-            .buffersHit(parser.getBuffersHit())
-            .buffersRead(parser.getBuffersRead())
             .queryType(queryType)
             .executedAt(LocalDateTime.now())
             .performanceGrade(gradePerformance(executionTimeMs))
-            .scanType(parser.getScanType())
-            .rowsScanned(parser.getRowsScanned())
             .rowsReturned(count)
-            .costEstimate(parser.getCostEstimate())
-            .indexesUsed(parser.getIndexesUsed())
-            .optimizationRecommendation(recommendation)
+            .optimizationRecommendation(recommendation), plan)
             .build();
       }
     } catch (SQLException e) {
@@ -556,7 +1823,7 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
     }
   }
 
-  private JsonNode executeExplainQuery(Connection conn, String explainSql, Object... params)
+  private String executeExplainQuery(Connection conn, String explainSql, Object... params)
       throws SQLException {
     try (PreparedStatement explainStmt = conn.prepareStatement(explainSql)) {
       for (int i = 0; i < params.length; i++) {
@@ -565,8 +1832,7 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
 
       ResultSet explainRs = explainStmt.executeQuery();
       if (explainRs.next()) {
-        String jsonPlan = explainRs.getString(1);
-        return objectMapper.readTree(jsonPlan);
+        return explainRs.getString(1);
       }
       throw new SQLException("No explain plan returned");
     } catch (Exception e) {
@@ -574,7 +1840,7 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
     }
   }
 
-  private JsonNode executeExplainQuery(Connection conn, String explainSql,
+  private String executeExplainQuery(Connection conn, String explainSql,
       List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate)
       throws SQLException {
     try (PreparedStatement explainStmt = conn.prepareStatement(explainSql)) {
@@ -588,8 +1854,7 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
 
       ResultSet explainRs = explainStmt.executeQuery();
       if (explainRs.next()) {
-        String jsonPlan = explainRs.getString(1);
-        return objectMapper.readTree(jsonPlan);
+        return explainRs.getString(1);
       }
       throw new SQLException("No explain plan returned");
     } catch (Exception e) {
@@ -597,7 +1862,68 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
     }
   }
 
-  private String gradePerformance(Long executionTimeMs) {
+  /**
+   * Возвращает план для только что выполненного запроса: снимает его заново, если этого требует
+   * политика {@link PlanCapturePolicy}, или берет последний план из кэша. Свежие планы
+   * сохраняются в историю планов для поиска регрессий.
+   */
+  private PlanSnapshot resolvePlan(String sql, long executionTimeMs, ExplainCall explain)
+      throws SQLException {
+    PlanCapturePolicy policy = config.getPlanCapturePolicy();
+    String queryKey = PlanFingerprint.normalizeSql(sql);
+
+    CapturedPlan captured;
+    if (policy.shouldCapture(queryKey, executionTimeMs)) {
+      captured = policy.store(queryKey, explain.explain());
+    } else {
+      captured = policy.getCachedPlan(queryKey).orElse(null);
+    }
+    if (captured == null) {
+      return null;
+    }
+
+    QueryPlanParser parser = new QueryPlanParser(captured.getPlanJson());
+    String regression = captured.isFresh() ? recordPlan(queryKey, parser) : null;
+    return new PlanSnapshot(parser, regression, captured.getCapturedAt());
+  }
+
+  private String recordPlan(String queryKey, QueryPlanParser parser) {
+    PlanObservation observation = PlanObservation.builder()
+        .queryKey(queryKey)
+        .fingerprint(parser.getPlanFingerprint())
+        .planShape(parser.getPlanShape())
+        .executionTimeMs(parser.getExecutionTimeMs())
+        .buffersHit(parser.getBuffersHit())
+        .buffersRead(parser.getBuffersRead())
+        .costEstimate(parser.getCostEstimate())
+        .observedAt(LocalDateTime.now())
+        .build();
+    return config.getPlanHistoryStore().record(observation)
+        .filter(PlanChange::isRegression)
+        .map(PlanChange::getReason)
+        .orElse(null);
+  }
+
+  private <T> PerformanceMetrics.PerformanceMetricsBuilder<T> withPlan(
+      PerformanceMetrics.PerformanceMetricsBuilder<T> builder, PlanSnapshot plan) {
+    if (plan == null) {
+      return builder;
+    }
+    QueryPlanParser parser = plan.parser();
+    return builder
+        .planningTimeMs(parser.getPlanningTimeMs())
+        .buffersHit(parser.getBuffersHit())
+        .buffersRead(parser.getBuffersRead())
+        .scanType(parser.getScanType())
+        .rowsScanned(parser.getRowsScanned())
+        .costEstimate(parser.getCostEstimate())
+        .indexesUsed(parser.getIndexesUsed())
+        .planFingerprint(parser.getPlanFingerprint())
+        .planRegression(plan.regression())
+        .planCapturedAt(plan.capturedAt());
+  }
+
+  static String gradePerformance(Long executionTimeMs) {
     if (executionTimeMs == null) return "UNKNOWN";
     if (executionTimeMs < 10) return "A+";
     if (executionTimeMs < 50) return "A";
@@ -606,4 +1932,18 @@ public class CompositeIndexRepositoryImpl implements CompositeIndexRepository {
     if (executionTimeMs < 1000) return "D";
     return "F";
   }
-}
\ No newline at end of file
+
+  @FunctionalInterface
+  private interface SampleQuery<T> {
+    T run(SamplingMethod method, double percent) throws SQLException;
+  }
+
+  @FunctionalInterface
+  private interface ExplainCall {
+    String explain() throws SQLException;
+  }
+
+  private record PlanSnapshot(
+      QueryPlanParser parser, String regression, LocalDateTime capturedAt) {
+  }
+}
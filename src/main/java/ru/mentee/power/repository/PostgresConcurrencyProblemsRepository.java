@@ -3,7 +3,6 @@ package ru.mentee.power.repository;
 
 import java.math.BigDecimal;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -20,28 +19,58 @@ import ru.mentee.power.repository.interfaces.ConcurrencyProblemsRepository;
 
 public class PostgresConcurrencyProblemsRepository implements ConcurrencyProblemsRepository {
 
+  private static final String SELECT_BALANCE_SQL =
+      "SELECT balance FROM mentee_power.accounts WHERE id = ?";
+  private static final String SELECT_BALANCE_FOR_UPDATE_SQL =
+      "SELECT balance FROM mentee_power.accounts WHERE id = ? FOR UPDATE";
+  private static final String UPDATE_BALANCE_SQL =
+      "UPDATE mentee_power.accounts SET balance = balance + ?, updated_at = NOW() WHERE"
+          + " id = ?";
+  private static final String COUNT_TRANSACTIONS_SQL =
+      "SELECT COUNT(*) as cnt FROM mentee_power.transactions "
+          + "WHERE account_id = ? AND amount >= ?";
+  private static final String INSERT_TEST_TRANSACTION_SQL =
+      "INSERT INTO mentee_power.transactions "
+          + "(account_id, amount, transaction_type, status, description, created_at) "
+          + "VALUES (?, ?, 'DEPOSIT', 'COMPLETED', 'Test transaction', NOW())";
+  private static final String INSERT_WITHDRAWAL_SQL =
+      "INSERT INTO mentee_power.transactions (account_id, amount, transaction_type,"
+          + " status, description, created_at) VALUES (?, ?, 'WITHDRAWAL', 'COMPLETED',"
+          + " 'Transfer to account ' || ?, NOW())";
+  private static final String INSERT_DEPOSIT_SQL =
+      "INSERT INTO mentee_power.transactions (account_id, amount, transaction_type,"
+          + " status, description, created_at) VALUES (?, ?, 'DEPOSIT', 'COMPLETED',"
+          + " 'Transfer from account ' || ?, NOW())";
+
   private ApplicationConfig config;
 
   public PostgresConcurrencyProblemsRepository(ApplicationConfig config) {
     this.config = config;
+    config.getConnectionProvider().registerStatements(List.of(
+        SELECT_BALANCE_SQL, SELECT_BALANCE_FOR_UPDATE_SQL, UPDATE_BALANCE_SQL,
+        COUNT_TRANSACTIONS_SQL, INSERT_TEST_TRANSACTION_SQL, INSERT_WITHDRAWAL_SQL,
+        INSERT_DEPOSIT_SQL));
   }
 
+  /**
+   * Выдает соединение из пула приложения. search_path устанавливается пулом один раз при
+   * открытии физического соединения (см. {@code db.pool.init-sql}).
+   */
   protected Connection getConnection() throws DataAccessException, SQLException {
-    Connection conn =
-        DriverManager.getConnection(
-            config.getUrl(), config.getUsername(), config.getPassword());
-    try (PreparedStatement statement =
-        conn.prepareStatement("SET search_path TO mentee_power, public")) {
-      statement.execute();
-    } catch (SQLException e) {
-      throw new DataAccessException("Ошибка соединения", e);
-    }
-    return conn;
+    return config.getConnectionProvider().getConnection();
+  }
+
+  /**
+   * Выдает соединения для одновременных сессий демонстрации одним захватом пула. Если брать
+   * их по одному, параллельные демонстрации держат по соединению и ждут следующие друг у
+   * друга, пока не истечет таймаут пула.
+   */
+  protected Sessions openSessions(int count) throws SQLException {
+    return new Sessions(config.getConnectionProvider().getConnections(count));
   }
 
   private BigDecimal getAccountBalance(Connection conn, Long accountId) throws SQLException {
-    String sql = "SELECT balance FROM mentee_power.accounts WHERE id = ?";
-    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+    try (PreparedStatement stmt = conn.prepareStatement(SELECT_BALANCE_SQL)) {
       stmt.setLong(1, accountId);
       try (ResultSet rs = stmt.executeQuery()) {
         if (rs.next()) {
@@ -54,10 +83,7 @@ public class PostgresConcurrencyProblemsRepository implements ConcurrencyProblem
 
   private void updateAccountBalance(Connection conn, Long accountId, BigDecimal amount)
       throws SQLException {
-    String sql =
-        "UPDATE mentee_power.accounts SET balance = balance + ?, updated_at = NOW() WHERE"
-            + " id = ?";
-    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+    try (PreparedStatement stmt = conn.prepareStatement(UPDATE_BALANCE_SQL)) {
       stmt.setBigDecimal(1, amount);
       stmt.setLong(2, accountId);
       stmt.executeUpdate();
@@ -72,8 +98,9 @@ public class PostgresConcurrencyProblemsRepository implements ConcurrencyProblem
     String isolationLevel = "READ UNCOMMITTED";
     List<String> steps = new ArrayList<>();
 
-    try (Connection conn1 = getConnection();
-        Connection conn2 = getConnection()) {
+    try (Sessions sessions = openSessions(2)) {
+      Connection conn1 = sessions.get(0);
+      Connection conn2 = sessions.get(1);
 
       // Сессия 2: Устанавливаем READ UNCOMMITTED ДО начала транзакции
       conn2.setTransactionIsolation(Connection.TRANSACTION_READ_UNCOMMITTED);
@@ -151,8 +178,9 @@ public class PostgresConcurrencyProblemsRepository implements ConcurrencyProblem
     String isolationLevel = "READ COMMITTED";
     List<String> steps = new ArrayList<>();
 
-    try (Connection conn1 = getConnection();
-        Connection conn2 = getConnection()) {
+    try (Sessions sessions = openSessions(2)) {
+      Connection conn1 = sessions.get(0);
+      Connection conn2 = sessions.get(1);
 
       // Устанавливаем уровень изоляции ДО начала транзакций
       conn1.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
@@ -222,8 +250,9 @@ public class PostgresConcurrencyProblemsRepository implements ConcurrencyProblem
     String isolationLevel = "REPEATABLE READ";
     List<String> steps = new ArrayList<>();
 
-    try (Connection conn1 = getConnection();
-        Connection conn2 = getConnection()) {
+    try (Sessions sessions = openSessions(2)) {
+      Connection conn1 = sessions.get(0);
+      Connection conn2 = sessions.get(1);
 
       // Устанавливаем уровень изоляции ДО начала транзакций
       conn1.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
@@ -300,10 +329,7 @@ public class PostgresConcurrencyProblemsRepository implements ConcurrencyProblem
 
   private Integer countTransactions(Connection conn, Long accountId, BigDecimal threshold)
       throws SQLException {
-    String sql =
-        "SELECT COUNT(*) as cnt FROM mentee_power.transactions "
-            + "WHERE account_id = ? AND amount >= ?";
-    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+    try (PreparedStatement stmt = conn.prepareStatement(COUNT_TRANSACTIONS_SQL)) {
       stmt.setLong(1, accountId);
       stmt.setBigDecimal(2, threshold);
       try (ResultSet rs = stmt.executeQuery()) {
@@ -317,11 +343,7 @@ public class PostgresConcurrencyProblemsRepository implements ConcurrencyProblem
 
   private void createTransaction(Connection conn, Long accountId, BigDecimal amount)
       throws SQLException {
-    String sql =
-        "INSERT INTO mentee_power.transactions "
-            + "(account_id, amount, transaction_type, status, description, created_at) "
-            + "VALUES (?, ?, 'DEPOSIT', 'COMPLETED', 'Test transaction', NOW())";
-    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+    try (PreparedStatement stmt = conn.prepareStatement(INSERT_TEST_TRANSACTION_SQL)) {
       stmt.setLong(1, accountId);
       stmt.setBigDecimal(2, amount);
       stmt.executeUpdate();
@@ -337,8 +359,10 @@ public class PostgresConcurrencyProblemsRepository implements ConcurrencyProblem
     String isolationLevel = "READ COMMITTED";
     List<String> steps = new ArrayList<>();
 
-    try (Connection conn1 = getConnection();
-        Connection conn2 = getConnection()) {
+    try (Sessions sessions = openSessions(3)) {
+      Connection conn1 = sessions.get(0);
+      Connection conn2 = sessions.get(1);
+      Connection conn3 = sessions.get(2);
 
       // Устанавливаем уровень изоляции ДО начала транзакций
       conn1.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
@@ -379,47 +403,45 @@ public class PostgresConcurrencyProblemsRepository implements ConcurrencyProblem
               + newBalance2);
 
       // Проверяем финальный баланс
-      try (Connection conn3 = getConnection()) {
-        BigDecimal finalBalance = getAccountBalance(conn3, accountId);
-        steps.add("6. Финальный баланс = " + finalBalance);
-
-        // Ожидаемый баланс = initial + firstAmount + secondAmount
-        BigDecimal expectedBalance = initialBalance.add(firstAmount).add(secondAmount);
-        boolean anomalyDetected = !finalBalance.equals(expectedBalance);
-
-        long duration = System.currentTimeMillis() - startTime;
-
-        List<String> recommendations =
-            Arrays.asList(
-                "Используйте SELECT FOR UPDATE для блокировки строк перед"
-                    + " обновлением",
-                "Применяйте оптимистичную блокировку через версионирование (version"
-                    + " column)",
-                "Используйте уровень изоляции SERIALIZABLE для предотвращения lost"
-                    + " updates",
-                "Используйте атомарные операции UPDATE с WHERE условиями");
-
-        return ConcurrencyAnomalyResult.builder()
-            .anomalyType("LOST_UPDATE")
-            .isolationLevel(isolationLevel)
-            .anomalyDetected(anomalyDetected)
-            .detailedDescription(
-                anomalyDetected
-                    ? "Обнаружен lost update: Ожидаемый баланс = "
-                    + expectedBalance
-                    + ", фактический баланс = "
-                    + finalBalance
-                    + ". Обновление сессии 1 потеряно!"
-                    : "Lost update не обнаружен")
-            .executionSteps(steps)
-            .initialValue(initialBalance.toString())
-            .intermediateValue(newBalance1.toString())
-            .finalValue(finalBalance.toString())
-            .executionTime(executionTime)
-            .executionDurationMillis(duration)
-            .preventionRecommendations(recommendations)
-            .build();
-      }
+      BigDecimal finalBalance = getAccountBalance(conn3, accountId);
+      steps.add("6. Финальный баланс = " + finalBalance);
+
+      // Ожидаемый баланс = initial + firstAmount + secondAmount
+      BigDecimal expectedBalance = initialBalance.add(firstAmount).add(secondAmount);
+      boolean anomalyDetected = !finalBalance.equals(expectedBalance);
+
+      long duration = System.currentTimeMillis() - startTime;
+
+      List<String> recommendations =
+          Arrays.asList(
+              "Используйте SELECT FOR UPDATE для блокировки строк перед"
+                  + " обновлением",
+              "Применяйте оптимистичную блокировку через версионирование (version"
+                  + " column)",
+              "Используйте уровень изоляции SERIALIZABLE для предотвращения lost"
+                  + " updates",
+              "Используйте атомарные операции UPDATE с WHERE условиями");
+
+      return ConcurrencyAnomalyResult.builder()
+          .anomalyType("LOST_UPDATE")
+          .isolationLevel(isolationLevel)
+          .anomalyDetected(anomalyDetected)
+          .detailedDescription(
+              anomalyDetected
+                  ? "Обнаружен lost update: Ожидаемый баланс = "
+                  + expectedBalance
+                  + ", фактический баланс = "
+                  + finalBalance
+                  + ". Обновление сессии 1 потеряно!"
+                  : "Lost update не обнаружен")
+          .executionSteps(steps)
+          .initialValue(initialBalance.toString())
+          .intermediateValue(newBalance1.toString())
+          .finalValue(finalBalance.toString())
+          .executionTime(executionTime)
+          .executionDurationMillis(duration)
+          .preventionRecommendations(recommendations)
+          .build();
 
     } catch (SQLException e) {
       throw new DataAccessException("Ошибка демонстрации lost update", e);
@@ -505,8 +527,7 @@ public class PostgresConcurrencyProblemsRepository implements ConcurrencyProblem
 
   private BigDecimal getAccountBalanceWithLock(Connection conn, Long accountId)
       throws SQLException {
-    String sql = "SELECT balance FROM mentee_power.accounts WHERE id = ? FOR UPDATE";
-    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+    try (PreparedStatement stmt = conn.prepareStatement(SELECT_BALANCE_FOR_UPDATE_SQL)) {
       stmt.setLong(1, accountId);
       try (ResultSet rs = stmt.executeQuery()) {
         if (rs.next()) {
@@ -521,17 +542,8 @@ public class PostgresConcurrencyProblemsRepository implements ConcurrencyProblem
       Connection conn, Long fromAccountId, Long toAccountId, BigDecimal amount)
       throws SQLException {
     // Создаем две записи: списание со счета отправителя и пополнение счета получателя
-    String withdrawSql =
-        "INSERT INTO mentee_power.transactions (account_id, amount, transaction_type,"
-            + " status, description, created_at) VALUES (?, ?, 'WITHDRAWAL', 'COMPLETED',"
-            + " 'Transfer to account ' || ?, NOW())";
-    String depositSql =
-        "INSERT INTO mentee_power.transactions (account_id, amount, transaction_type,"
-            + " status, description, created_at) VALUES (?, ?, 'DEPOSIT', 'COMPLETED',"
-            + " 'Transfer from account ' || ?, NOW())";
-
-    try (PreparedStatement withdrawStmt = conn.prepareStatement(withdrawSql);
-        PreparedStatement depositStmt = conn.prepareStatement(depositSql)) {
+    try (PreparedStatement withdrawStmt = conn.prepareStatement(INSERT_WITHDRAWAL_SQL);
+        PreparedStatement depositStmt = conn.prepareStatement(INSERT_DEPOSIT_SQL)) {
       // Списание со счета отправителя
       withdrawStmt.setLong(1, fromAccountId);
       withdrawStmt.setBigDecimal(2, amount.negate());
@@ -602,4 +614,38 @@ public class PostgresConcurrencyProblemsRepository implements ConcurrencyProblem
       throw new DataAccessException("Ошибка получения информации об уровне изоляции", e);
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Соединения одновременных сессий, закрываемые вместе.
+   */
+  protected static final class Sessions implements AutoCloseable {
+    private final List<Connection> connections;
+
+    private Sessions(List<Connection> connections) {
+      this.connections = connections;
+    }
+
+    public Connection get(int index) {
+      return connections.get(index);
+    }
+
+    @Override
+    public void close() throws SQLException {
+      SQLException failure = null;
+      for (Connection connection : connections) {
+        try {
+          connection.close();
+        } catch (SQLException e) {
+          if (failure == null) {
+            failure = e;
+          } else {
+            failure.addSuppressed(e);
+          }
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+    }
+  }
+}
@@ -1,15 +1,50 @@
 package ru.mentee.power.repository;
 
 
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.config.ApplicationConfig;
 import ru.mentee.power.exception.DataAccessException;
 import ru.mentee.power.model.*;
 import ru.mentee.power.repository.interfaces.IsolationLevelRepository;
 import ru.mentee.power.service.IsolationLevelService;
+import ru.mentee.power.utils.VirtualThreadPinningMonitor;
 
+@Slf4j
 public class PostgresIsolationLevelRepository
     implements IsolationLevelRepository, IsolationLevelService {
 
+  private static final int PLATFORM_THREADS_LIMIT = 200;
+  private static final BigDecimal SIMULATION_TRANSFER_AMOUNT = new BigDecimal("1.00");
+
+  private static final String SELECT_ACCOUNT_IDS_SQL =
+      "SELECT id FROM mentee_power.accounts ORDER BY id LIMIT 1000";
+  private static final String SELECT_BALANCE_SQL =
+      "SELECT balance FROM mentee_power.accounts WHERE id = ?";
+  private static final String UPDATE_BALANCE_SQL =
+      "UPDATE mentee_power.accounts SET balance = balance + ?, updated_at = NOW() WHERE id = ?";
+
+  private final ApplicationConfig config;
+
+  public PostgresIsolationLevelRepository(ApplicationConfig config) {
+    this.config = config;
+    config.getConnectionProvider().registerStatements(
+        List.of(SELECT_BALANCE_SQL, UPDATE_BALANCE_SQL));
+  }
+
   @Override
   public <T> T executeWithIsolationLevel(String isolationLevel, TransactionOperation<T> operation)
       throws DataAccessException {
@@ -51,6 +86,223 @@ public class PostgresIsolationLevelRepository
   @Override
   public ConcurrencySimulationResult simulateHighConcurrency(
       Integer users, Integer operations, String isolationLevel) {
-    return null;
+    return simulateHighConcurrency(
+        users, operations, isolationLevel, SimulationExecutionMode.VIRTUAL_THREADS);
+  }
+
+  @Override
+  public ConcurrencySimulationResult simulateHighConcurrency(
+      Integer users, Integer operations, String isolationLevel, SimulationExecutionMode mode)
+      throws DataAccessException {
+    int jdbcIsolation = toJdbcIsolation(isolationLevel);
+    List<Long> accountIds = loadAccountIds();
+    if (accountIds.size() < 2) {
+      throw new DataAccessException(
+          "Для симуляции нужно минимум два счета в mentee_power.accounts");
+    }
+
+    // Пользователей больше, чем соединений: без ограничения тысячи виртуальных потоков ждут
+    // соединение в пуле и получают таймаут получения вместо результата транзакции
+    int concurrencyLimit = Math.max(1, config.getPoolMaxSize());
+    Semaphore connectionPermits = new Semaphore(concurrencyLimit, true);
+    SimulationCounters counters = new SimulationCounters();
+    VirtualThreadPinningMonitor pinningMonitor = new VirtualThreadPinningMonitor();
+    long durationNanos;
+
+    try (pinningMonitor) {
+      long startTime = System.nanoTime();
+      try (ExecutorService executor = newExecutor(mode, users)) {
+        for (int user = 0; user < users; user++) {
+          executor.submit(() -> runSimulatedUser(
+              operations, jdbcIsolation, accountIds, connectionPermits, counters));
+        }
+      }
+      durationNanos = System.nanoTime() - startTime;
+    }
+
+    int totalOperations = users * operations;
+    long succeeded = counters.succeeded.sum();
+    double durationSeconds = durationNanos / 1_000_000_000.0;
+
+    log.info("Симуляция {}: {} пользователей, {} операций за {} мс, одновременных транзакций"
+            + " не больше {}, ошибок транзакций: {}, таймаутов пула: {}, pinning событий: {}",
+        mode, users, totalOperations, durationNanos / 1_000_000, concurrencyLimit,
+        counters.failed.sum(), counters.poolTimeouts.sum(), pinningMonitor.getPinnedEventCount());
+
+    return ConcurrencySimulationResult.builder()
+        .totalOperations(totalOperations)
+        .successRate(totalOperations == 0 ? 0.0 : succeeded * 100.0 / totalOperations)
+        // Время транзакции и ожидание разрешения считаются отдельно: очередь к лимиту
+        // одновременных транзакций не должна выдаваться за медленную базу
+        .averageResponseTime(totalOperations == 0 ? 0.0
+            : counters.transactionNanos.sum() / 1_000_000.0 / totalOperations)
+        .averagePermitWaitTime(totalOperations == 0 ? 0.0
+            : counters.permitWaitNanos.sum() / 1_000_000.0 / totalOperations)
+        .deadlockCount(counters.deadlocks.intValue())
+        .serializationFailureCount(counters.serializationFailures.intValue())
+        .executionMode(mode.name())
+        .isolationLevel(isolationLevel)
+        .users(users)
+        .concurrencyLimit(concurrencyLimit)
+        .failedOperationCount(counters.failed.intValue())
+        .poolTimeoutCount(counters.poolTimeouts.intValue())
+        .totalDurationMillis(durationNanos / 1_000_000)
+        .throughputOpsPerSecond(durationSeconds == 0 ? 0.0 : succeeded / durationSeconds)
+        .pinnedEventCount(pinningMonitor.getPinnedEventCount())
+        .pinningSources(pinningMonitor.getPinningSources())
+        .build();
+  }
+
+  @Override
+  public ExecutionModeComparison compareExecutionModes(
+      Integer users, Integer operations, String isolationLevel) throws DataAccessException {
+    ConcurrencySimulationResult platform = simulateHighConcurrency(
+        users, operations, isolationLevel, SimulationExecutionMode.PLATFORM_THREADS);
+    ConcurrencySimulationResult virtual = simulateHighConcurrency(
+        users, operations, isolationLevel, SimulationExecutionMode.VIRTUAL_THREADS);
+
+    double platformThroughput = platform.getThroughputOpsPerSecond();
+    double virtualThroughput = virtual.getThroughputOpsPerSecond();
+    double ratio = platformThroughput == 0 ? 0.0 : virtualThroughput / platformThroughput;
+
+    // Оба режима упираются в один лимит одновременных транзакций размером с пул, а вне
+    // разрешения пользователи не работают, поэтому пропускная способность почти совпадает.
+    // В сводке видно, где проходит время: в ожидании разрешения или в транзакции
+    return ExecutionModeComparison.builder()
+        .virtualThreads(virtual)
+        .platformThreads(platform)
+        .throughputRatio(ratio)
+        .throughputDifferenceOpsPerSecond(virtualThroughput - platformThroughput)
+        .summary(String.format(
+            "Virtual threads: %.1f ops/s, permit wait %.2f ms, transaction %.2f ms"
+                + " (pinning: %d); platform threads (max %d): %.1f ops/s, permit wait %.2f ms,"
+                + " transaction %.2f ms. Both modes run at most %d transactions at once,"
+                + " so throughput is bounded by the pool, not by the thread model",
+            virtualThroughput, virtual.getAveragePermitWaitTime(),
+            virtual.getAverageResponseTime(), virtual.getPinnedEventCount(),
+            Math.min(users, PLATFORM_THREADS_LIMIT), platformThroughput,
+            platform.getAveragePermitWaitTime(), platform.getAverageResponseTime(),
+            virtual.getConcurrencyLimit()))
+        .build();
+  }
+
+  private ExecutorService newExecutor(SimulationExecutionMode mode, int users) {
+    if (mode == SimulationExecutionMode.PLATFORM_THREADS) {
+      return Executors.newFixedThreadPool(Math.max(1, Math.min(users, PLATFORM_THREADS_LIMIT)));
+    }
+    return Executors.newVirtualThreadPerTaskExecutor();
+  }
+
+  private void runSimulatedUser(int operations, int jdbcIsolation, List<Long> accountIds,
+      Semaphore connectionPermits, SimulationCounters counters) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < operations; i++) {
+      int fromIndex = random.nextInt(accountIds.size());
+      int toIndex = (fromIndex + 1 + random.nextInt(accountIds.size() - 1)) % accountIds.size();
+      Long fromAccountId = accountIds.get(fromIndex);
+      Long toAccountId = accountIds.get(toIndex);
+
+      long waitStart = System.nanoTime();
+      try {
+        connectionPermits.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      long transactionStart = System.nanoTime();
+      counters.permitWaitNanos.add(transactionStart - waitStart);
+      try {
+        transfer(jdbcIsolation, fromAccountId, toAccountId);
+        counters.succeeded.increment();
+      } catch (SQLTimeoutException e) {
+        // Соединение не выдано за db.pool.acquire-timeout-ms: транзакция не начиналась
+        counters.poolTimeouts.increment();
+      } catch (SQLException e) {
+        if ("40P01".equals(e.getSQLState())) {
+          counters.deadlocks.increment();
+        } else if ("40001".equals(e.getSQLState())) {
+          counters.serializationFailures.increment();
+        } else {
+          log.debug("Операция симуляции завершилась ошибкой: {}", e.getMessage());
+        }
+        counters.failed.increment();
+      } finally {
+        counters.transactionNanos.add(System.nanoTime() - transactionStart);
+        connectionPermits.release();
+      }
+    }
+  }
+
+  private void transfer(int jdbcIsolation, Long fromAccountId, Long toAccountId)
+      throws SQLException {
+    try (Connection conn = config.getConnectionProvider().getConnection()) {
+      conn.setAutoCommit(false);
+      conn.setTransactionIsolation(jdbcIsolation);
+      try {
+        if (readBalance(conn, fromAccountId).compareTo(SIMULATION_TRANSFER_AMOUNT) >= 0) {
+          updateBalance(conn, fromAccountId, SIMULATION_TRANSFER_AMOUNT.negate());
+          updateBalance(conn, toAccountId, SIMULATION_TRANSFER_AMOUNT);
+        }
+        conn.commit();
+      } catch (SQLException e) {
+        conn.rollback();
+        throw e;
+      }
+    }
+  }
+
+  private BigDecimal readBalance(Connection conn, Long accountId) throws SQLException {
+    try (PreparedStatement stmt = conn.prepareStatement(SELECT_BALANCE_SQL)) {
+      stmt.setLong(1, accountId);
+      try (ResultSet rs = stmt.executeQuery()) {
+        return rs.next() ? rs.getBigDecimal("balance") : BigDecimal.ZERO;
+      }
+    }
+  }
+
+  private void updateBalance(Connection conn, Long accountId, BigDecimal amount)
+      throws SQLException {
+    try (PreparedStatement stmt = conn.prepareStatement(UPDATE_BALANCE_SQL)) {
+      stmt.setBigDecimal(1, amount);
+      stmt.setLong(2, accountId);
+      stmt.executeUpdate();
+    }
+  }
+
+  private List<Long> loadAccountIds() throws DataAccessException {
+    List<Long> ids = new ArrayList<>();
+    try (Connection conn = config.getConnectionProvider().getConnection();
+        PreparedStatement stmt = conn.prepareStatement(SELECT_ACCOUNT_IDS_SQL);
+        ResultSet rs = stmt.executeQuery()) {
+      while (rs.next()) {
+        ids.add(rs.getLong("id"));
+      }
+      return ids;
+    } catch (SQLException e) {
+      throw new DataAccessException("Ошибка загрузки счетов для симуляции", e);
+    }
+  }
+
+  private int toJdbcIsolation(String isolationLevel) {
+    String normalized = isolationLevel == null ? ""
+        : isolationLevel.trim().toUpperCase().replace('_', ' ');
+    return switch (normalized) {
+      case "READ UNCOMMITTED" -> Connection.TRANSACTION_READ_UNCOMMITTED;
+      case "READ COMMITTED" -> Connection.TRANSACTION_READ_COMMITTED;
+      case "REPEATABLE READ" -> Connection.TRANSACTION_REPEATABLE_READ;
+      case "SERIALIZABLE" -> Connection.TRANSACTION_SERIALIZABLE;
+      default -> throw new IllegalArgumentException(
+          "Неизвестный уровень изоляции: " + isolationLevel);
+    };
+  }
+
+  private static final class SimulationCounters {
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder deadlocks = new LongAdder();
+    private final LongAdder serializationFailures = new LongAdder();
+    private final LongAdder poolTimeouts = new LongAdder();
+    private final LongAdder permitWaitNanos = new LongAdder();
+    private final LongAdder transactionNanos = new LongAdder();
   }
 }
@@ -5,14 +5,29 @@ import ru.mentee.power.exception.DataAccessException;
 import ru.mentee.power.config.ApplicationConfig;
 import ru.mentee.power.config.ConfigFilePath;
 
+import java.math.BigDecimal;
 import java.sql.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
 import ru.mentee.power.repository.interfaces.PerformanceAnalysisRepository;
-
+import ru.mentee.power.utils.CardinalityEstimateAnalyzer;
+import ru.mentee.power.utils.CursorStream;
+import ru.mentee.power.utils.IndexBuildOrchestrator;
+import ru.mentee.power.utils.KeysetToken;
+import ru.mentee.power.utils.PlanCapturePolicy;
+import ru.mentee.power.utils.PlanFingerprint;
+import ru.mentee.power.utils.QueryPlanParser;
+import ru.mentee.power.utils.ResultCache;
+import ru.mentee.power.utils.VisibilityMapAnalyzer;
+
+@Slf4j
 public class PostgresPerformanceAnalysisRepositoryImpl implements PerformanceAnalysisRepository {
 
   private final ApplicationConfig config;
@@ -36,47 +51,118 @@ public class PostgresPerformanceAnalysisRepositoryImpl implements PerformanceAna
         LIMIT 20
         """;
 
+  // Тот же запрос без LIMIT для выгрузки всех пользователей через курсор
+  private static final String USER_ORDERS_EXPORT_QUERY = """
+        SELECT 
+            u.id as user_id,
+            u.name as user_name,
+            u.email,
+            COUNT(o.id) as orders_count,
+            SUM(o.total) as total_spent,
+            AVG(o.total) as avg_order_value
+        FROM users u
+        JOIN orders o ON u.id = o.user_id
+        WHERE u.city = ? 
+          AND o.created_at >= ?
+          AND o.status = 'DELIVERED'
+        GROUP BY u.id, u.name, u.email
+        HAVING COUNT(o.id) > ?
+        ORDER BY total_spent DESC
+        """;
+
+  // Keyset-страница того же запроса. total_spent - агрегат, поэтому позиция проверяется в HAVING:
+  // каждая страница стоит одной агрегации и сортировки top-N по размеру страницы, независимо
+  // от глубины, тогда как OFFSET сортирует и отбрасывает все предыдущие строки. NULL-суммы
+  // сортируются как 0, чтобы сравнение строк (sort_total, user_id) было определено
+  private static final String HEAVY_USERS_PAGE_TEMPLATE = """
+        SELECT
+            u.id as user_id,
+            u.name as user_name,
+            u.email,
+            COUNT(o.id) as orders_count,
+            SUM(o.total) as total_spent,
+            AVG(o.total) as avg_order_value,
+            COALESCE(SUM(o.total), 0) as sort_total
+        FROM users u
+        JOIN orders o ON u.id = o.user_id
+        WHERE u.city = ?
+          AND o.created_at >= ?
+          AND o.status = 'DELIVERED'
+        GROUP BY u.id, u.name, u.email
+        HAVING COUNT(o.id) > ?%s
+        ORDER BY sort_total DESC, u.id DESC
+        LIMIT ?
+        """;
+
+  private static final String HEAVY_USERS_FIRST_PAGE_QUERY =
+      HEAVY_USERS_PAGE_TEMPLATE.formatted("");
+
+  private static final String HEAVY_USERS_NEXT_PAGE_QUERY = HEAVY_USERS_PAGE_TEMPLATE.formatted(
+      "\n   AND (COALESCE(SUM(o.total), 0), u.id) < (?, ?)");
+
+  private static final int HOTSPOTS_LIMIT = 5;
+
+  private static final Set<String> USER_ORDER_STATS_TABLES = Set.of("orders", "users");
+  private static final long CACHED_METRICS_BYTES = 512;
+  private static final long USER_ORDER_STATS_ROW_BYTES = 400;
+
   private static final String EXPLAIN_ANALYZE_WRAPPER = """
         EXPLAIN (ANALYZE, BUFFERS, VERBOSE, FORMAT JSON) %s
         """;
 
-  private static final String CREATE_PERFORMANCE_INDEXES = """
-        DROP INDEX IF EXISTS idx_users_city;
-        DROP INDEX IF EXISTS idx_orders_user_date_status;
-        DROP INDEX IF EXISTS idx_orders_status_date;
-        
-        CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_users_city ON users(city);
-        CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_orders_user_date_status 
-            ON orders(user_id, created_at, status);
-        CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_orders_status_date 
-            ON orders(status, created_at);
-        """;
+  // Индексы по заказам покрывающие: HEAVY_USER_ORDERS_QUERY читает из orders только id и
+  // total, и с ними в INCLUDE соединение идет через Index Only Scan, без случайного чтения
+  // страницы таблицы на каждый заказ
+  private static final List<IndexBuildRequest> PERFORMANCE_INDEXES = List.of(
+      new IndexBuildRequest("idx_users_city", "users", "(city)", null),
+      IndexBuildRequest.builder()
+          .indexName("idx_orders_user_date_status")
+          .tableName("orders")
+          .keySql("(user_id, created_at, status)")
+          .includeColumns(List.of("id", "total"))
+          .build(),
+      new IndexBuildRequest("idx_orders_status_date", "orders", "(status, created_at)", null),
+      // Для постраничной статистики: пользователи города в порядке id и доставленные заказы
+      // пользователя читаются только из индексов, без обращения к таблицам
+      IndexBuildRequest.builder()
+          .indexName("idx_users_city_id")
+          .tableName("users")
+          .keySql("(city, id)")
+          .includeColumns(List.of("name", "email"))
+          .build(),
+      IndexBuildRequest.builder()
+          .indexName("idx_orders_delivered_user_date")
+          .tableName("orders")
+          .keySql("(user_id, created_at)")
+          .includeColumns(List.of("id", "total"))
+          .predicate("status = 'DELIVERED'")
+          .build());
 
   private static final String DROP_PERFORMANCE_INDEXES = """
         DROP INDEX IF EXISTS idx_users_city;
         DROP INDEX IF EXISTS idx_orders_user_date_status;
         DROP INDEX IF EXISTS idx_orders_status_date;
+        DROP INDEX IF EXISTS idx_users_city_id;
+        DROP INDEX IF EXISTS idx_orders_delivered_user_date;
         """;
 
   public PostgresPerformanceAnalysisRepositoryImpl() throws Exception {
-    this.config = new ApplicationConfig(new Properties(), new ConfigFilePath());
+    this(new ApplicationConfig(new Properties(), new ConfigFilePath()));
   }
 
   public PostgresPerformanceAnalysisRepositoryImpl(ApplicationConfig config) {
     this.config = config;
+    config.getConnectionProvider().registerStatements(List.of(
+        HEAVY_USER_ORDERS_QUERY, HEAVY_USERS_FIRST_PAGE_QUERY, HEAVY_USERS_NEXT_PAGE_QUERY));
   }
 
   private Connection getConnection() throws SQLException {
-    return DriverManager.getConnection(
-        config.getUrl(),
-        config.getUsername(),
-        config.getPassword()
-    );
+    return config.getConnectionProvider().getConnection();
   }
 
   private void logSql(String sql) {
     if (config.getShowSql()) {
-      System.out.println("[SQL] " + sql);
+      log.debug("[SQL] {}", sql);
     }
   }
 
@@ -84,25 +170,35 @@ public class PostgresPerformanceAnalysisRepositoryImpl implements PerformanceAna
   public PerformanceMetrics<String> createOptimizationIndexes() throws DataAccessException {
     long startTime = System.nanoTime();
 
-    try (Connection connection = getConnection();
-        Statement statement = connection.createStatement()) {
-
-      logSql(CREATE_PERFORMANCE_INDEXES);
-      statement.execute(CREATE_PERFORMANCE_INDEXES);
-
-      long executionTimeMs = (System.nanoTime() - startTime) / 1_000_000;
-
-      return PerformanceMetrics.<String>builder()
-          .data("Индексы успешно созданы")
-          .executionTimeMs(executionTimeMs)
-          .queryType("CREATE INDEX")
-          .executedAt(LocalDateTime.now())
-          .performanceGrade("EXCELLENT")
-          .build();
+    for (IndexBuildRequest index : PERFORMANCE_INDEXES) {
+      logSql(index.toCreateConcurrentlySql());
+    }
+    List<IndexBuildResult> builds =
+        new IndexBuildOrchestrator(config.getConnectionProvider()).build(PERFORMANCE_INDEXES);
+    config.getPlanCapturePolicy().invalidateAll();
+    if (builds.stream().anyMatch(build -> build.getStatus() == IndexBuildStatus.CREATED)) {
+      invalidateCachedUserOrderStats();
+    }
 
-    } catch (SQLException e) {
-      throw new DataAccessException("Ошибка создания индексов", e);
+    long executionTimeMs = (System.nanoTime() - startTime) / 1_000_000;
+    List<String> failed = builds.stream()
+        .filter(build -> build.getStatus() == IndexBuildStatus.FAILED)
+        .map(IndexBuildResult::getIndexName)
+        .toList();
+    if (failed.size() == builds.size()) {
+      throw new DataAccessException("Ошибка создания индексов: " + String.join(", ", failed));
     }
+
+    return PerformanceMetrics.<String>builder()
+        .data(failed.isEmpty()
+            ? "Индексы успешно созданы"
+            : "Индексы созданы, кроме: " + String.join(", ", failed))
+        .executionTimeMs(executionTimeMs)
+        .queryType("CREATE INDEX CONCURRENTLY")
+        .executedAt(LocalDateTime.now())
+        .performanceGrade(failed.isEmpty() ? "EXCELLENT" : "POOR")
+        .indexBuilds(builds)
+        .build();
   }
 
   @Override
@@ -114,6 +210,8 @@ public class PostgresPerformanceAnalysisRepositoryImpl implements PerformanceAna
 
       logSql(DROP_PERFORMANCE_INDEXES);
       statement.execute(DROP_PERFORMANCE_INDEXES);
+      config.getPlanCapturePolicy().invalidateAll();
+      invalidateCachedUserOrderStats();
 
       long executionTimeMs = (System.nanoTime() - startTime) / 1_000_000;
 
@@ -130,6 +228,24 @@ public class PostgresPerformanceAnalysisRepositoryImpl implements PerformanceAna
     }
   }
 
+  /**
+   * Сбрасывает закэшированную статистику: ее время выполнения и план зависят от индексов.
+   */
+  private void invalidateCachedUserOrderStats() {
+    USER_ORDER_STATS_TABLES.forEach(config.getResultCache()::invalidateTable);
+  }
+
+  private UserOrderStats mapUserOrderStats(ResultSet rs) throws SQLException {
+    return UserOrderStats.builder()
+        .userId(rs.getLong("user_id"))
+        .userName(rs.getString("user_name"))
+        .email(rs.getString("email"))
+        .ordersCount(rs.getInt("orders_count"))
+        .totalSpent(rs.getBigDecimal("total_spent"))
+        .avgOrderValue(rs.getBigDecimal("avg_order_value"))
+        .build();
+  }
+
   private PerformanceMetrics<List<UserOrderStats>> executeUserOrderStatsQuery(
       String city, LocalDate startDate, Integer minOrders, boolean withIndexes)
       throws DataAccessException {
@@ -150,42 +266,66 @@ public class PostgresPerformanceAnalysisRepositoryImpl implements PerformanceAna
 
         try (ResultSet rs = ps.executeQuery()) {
           while (rs.next()) {
-            UserOrderStats stats = UserOrderStats.builder()
-                .userId(rs.getLong("user_id"))
-                .userName(rs.getString("user_name"))
-                .email(rs.getString("email"))
-                .ordersCount(rs.getInt("orders_count"))
-                .totalSpent(rs.getBigDecimal("total_spent"))
-                .avgOrderValue(rs.getBigDecimal("avg_order_value"))
-                .build();
-            result.add(stats);
+            result.add(mapUserOrderStats(rs));
           }
         }
       }
 
       long executionTimeMs = (System.nanoTime() - startTime) / 1_000_000;
 
-      QueryExecutionPlan plan = getExecutionPlanForQuery(city, startDate, minOrders);
+      QueryExecutionPlan plan = resolvePlan(city, startDate, minOrders, executionTimeMs);
 
       String performanceGrade = determinePerformanceGrade(executionTimeMs, plan);
 
-      return PerformanceMetrics.<List<UserOrderStats>>builder()
-          .data(result)
-          .executionTimeMs(executionTimeMs)
-          .planningTimeMs(plan.getPlanningTime() != null ?
-              plan.getPlanningTime().longValue() : 0)
-          .buffersHit(plan.getBuffersHit())
-          .buffersRead(plan.getBuffersRead())
-          .queryType(withIndexes ? "OPTIMIZED_WITH_INDEXES" : "SLOW_WITHOUT_INDEXES")
-          .executedAt(LocalDateTime.now())
-          .performanceGrade(performanceGrade)
-          .build();
+      PerformanceMetrics.PerformanceMetricsBuilder<List<UserOrderStats>> metrics =
+          PerformanceMetrics.<List<UserOrderStats>>builder()
+              .data(result)
+              .executionTimeMs(executionTimeMs)
+              .queryType(withIndexes ? "OPTIMIZED_WITH_INDEXES" : "SLOW_WITHOUT_INDEXES")
+              .executedAt(LocalDateTime.now())
+              .performanceGrade(performanceGrade);
+      if (plan != null) {
+        metrics
+            .planningTimeMs(plan.getPlanningTime() != null ?
+                plan.getPlanningTime().longValue() : 0)
+            .buffersHit(plan.getBuffersHit())
+            .buffersRead(plan.getBuffersRead())
+            .planFingerprint(plan.getPlanFingerprint())
+            .planRegression(plan.getPlanChange() != null && plan.getPlanChange().isRegression()
+                ? plan.getPlanChange().getReason() : null)
+            .planCapturedAt(plan.getCapturedAt());
+      }
+      return metrics.build();
 
     } catch (SQLException e) {
       throw new DataAccessException("Ошибка выполнения запроса статистики", e);
     }
   }
 
+  /**
+   * Снимает план HEAVY_USER_ORDERS_QUERY, если этого требует политика снятия планов,
+   * иначе возвращает последний план из кэша или null, если его нет.
+   */
+  private QueryExecutionPlan resolvePlan(
+      String city, LocalDate startDate, Integer minOrders, long executionTimeMs)
+      throws DataAccessException {
+    PlanCapturePolicy policy = config.getPlanCapturePolicy();
+    String queryKey = PlanFingerprint.normalizeSql(HEAVY_USER_ORDERS_QUERY);
+
+    if (policy.shouldCapture(queryKey, executionTimeMs)) {
+      QueryExecutionPlan plan = getExecutionPlanForQuery(city, startDate, minOrders);
+      plan.setCapturedAt(policy.store(queryKey, plan.getPlanText()).getCapturedAt());
+      return plan;
+    }
+    return policy.getCachedPlan(queryKey)
+        .map(cached -> {
+          QueryExecutionPlan plan = parseExplainAnalyzeJson(cached.getPlanJson(), queryKey, false);
+          plan.setCapturedAt(cached.getCapturedAt());
+          return plan;
+        })
+        .orElse(null);
+  }
+
   private QueryExecutionPlan getExecutionPlanForQuery(
       String city, LocalDate startDate, Integer minOrders) throws DataAccessException {
 
@@ -232,13 +372,102 @@ public class PostgresPerformanceAnalysisRepositoryImpl implements PerformanceAna
   public PerformanceMetrics<List<UserOrderStats>> getFastUserOrderStats(
       String city, LocalDate startDate, Integer minOrders) throws DataAccessException {
 
+    // Индексы проверяются при каждом вызове: после dropOptimizationIndexes попадание в кэш
+    // не должно оставлять базу без них
     createOptimizationIndexes();
 
-    try { Thread.sleep(100); } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
+    return ResultCache.annotate(config.getResultCache().get(
+        ResultCache.key("fastUserOrderStats", city, startDate, minOrders),
+        USER_ORDER_STATS_TABLES,
+        () -> {
+          try { Thread.sleep(100); } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+
+          return executeUserOrderStatsQuery(city, startDate, minOrders, true);
+        },
+        metrics -> CACHED_METRICS_BYTES
+            + metrics.getData().size() * USER_ORDER_STATS_ROW_BYTES));
+  }
+
+  @Override
+  public CursorStream<UserOrderStats> streamUserOrderStats(
+      String city, LocalDate startDate, Integer minOrders, int fetchSize)
+      throws DataAccessException {
+    try {
+      logSql(USER_ORDERS_EXPORT_QUERY);
+      return CursorStream.open(config.getConnectionProvider(), "USER_ORDER_STATS_EXPORT",
+          USER_ORDERS_EXPORT_QUERY, fetchSize,
+          ps -> {
+            ps.setString(1, city);
+            ps.setDate(2, Date.valueOf(startDate));
+            ps.setInt(3, minOrders);
+          },
+          this::mapUserOrderStats);
+    } catch (SQLException e) {
+      throw new DataAccessException("Failed to open user order stats cursor", e);
     }
+  }
+
+  @Override
+  public PerformanceMetrics<KeysetPage<UserOrderStats>> getHeavyUserOrderStatsPage(
+      String city, LocalDate startDate, Integer minOrders, int pageSize, String pageToken)
+      throws DataAccessException {
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException("Размер страницы должен быть положительным: " + pageSize);
+    }
+    String scope = String.join("|", "heavyUsers", city, startDate.toString(),
+        minOrders.toString());
+    KeysetToken.Position after = pageToken != null ? KeysetToken.decode(pageToken, scope) : null;
+    String sql = after != null ? HEAVY_USERS_NEXT_PAGE_QUERY : HEAVY_USERS_FIRST_PAGE_QUERY;
+
+    long startTime = System.nanoTime();
+    List<UserOrderStats> items = new ArrayList<>();
+    KeysetToken.Position last = null;
+
+    try (Connection connection = getConnection();
+        PreparedStatement ps = connection.prepareStatement(sql)) {
+      int index = 1;
+      ps.setString(index++, city);
+      ps.setDate(index++, Date.valueOf(startDate));
+      ps.setInt(index++, minOrders);
+      if (after != null) {
+        ps.setBigDecimal(index++, after.sortValue());
+        ps.setLong(index++, after.id());
+      }
+      // Лишняя строка показывает, есть ли следующая страница
+      ps.setInt(index, pageSize + 1);
+      logSql(sql);
 
-    return executeUserOrderStatsQuery(city, startDate, minOrders, true);
+      boolean hasMore = false;
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          if (items.size() == pageSize) {
+            hasMore = true;
+            break;
+          }
+          items.add(mapUserOrderStats(rs));
+          last = new KeysetToken.Position(rs.getBigDecimal("sort_total"), rs.getLong("user_id"));
+        }
+      }
+
+      long executionTimeMs = (System.nanoTime() - startTime) / 1_000_000;
+      return PerformanceMetrics.<KeysetPage<UserOrderStats>>builder()
+          .data(KeysetPage.<UserOrderStats>builder()
+              .items(items)
+              .pageSize(pageSize)
+              .hasMore(hasMore)
+              .nextPageToken(hasMore ? KeysetToken.encode(scope, last) : null)
+              .build())
+          .executionTimeMs(executionTimeMs)
+          .queryType(after != null ? "KEYSET_NEXT_PAGE" : "KEYSET_FIRST_PAGE")
+          .executedAt(LocalDateTime.now())
+          .performanceGrade(determinePerformanceGrade(executionTimeMs, null))
+          .rowsReturned((long) items.size())
+          .build();
+    } catch (SQLException e) {
+      throw new DataAccessException("Ошибка получения страницы статистики пользователей", e);
+    }
   }
 
   @Override
@@ -256,7 +485,16 @@ public class PostgresPerformanceAnalysisRepositoryImpl implements PerformanceAna
           jsonPlan.append(rs.getString(1));
         }
 
-        return parseExplainAnalyzeJson(jsonPlan.toString(), query);
+        QueryExecutionPlan plan = parseExplainAnalyzeJson(jsonPlan.toString(), query, true);
+        List<IndexOnlyScanReport> indexOnlyScans =
+            VisibilityMapAnalyzer.analyze(connection, plan.getNodes());
+        plan.setIndexOnlyScans(indexOnlyScans);
+        for (IndexOnlyScanReport report : indexOnlyScans) {
+          if (report.isLimitedByVisibilityMap()) {
+            plan.getRecommendations().add(report.getRecommendation());
+          }
+        }
+        return plan;
       }
 
     } catch (SQLException e) {
@@ -265,62 +503,179 @@ public class PostgresPerformanceAnalysisRepositoryImpl implements PerformanceAna
     }
   }
 
-  private QueryExecutionPlan parseExplainAnalyzeJson(String json, String originalQuery) {
-
-    QueryExecutionPlan plan = QueryExecutionPlan.builder()
-        .query(originalQuery)
-        .planText(json)
-        .performanceAnalysis("Для детального анализа требуется JSON парсер")
-        .recommendations(List.of(
-            "Добавьте зависимость Jackson в pom.xml",
-            "Создайте POJO классы для структуры EXPLAIN JSON",
-            "Реализуйте полный парсинг вложенной структуры"
-        ))
+  @Override
+  public CardinalityReport analyzeCardinalityEstimates(String query, double errorFactor)
+      throws DataAccessException {
+    QueryExecutionPlan plan = getExecutionPlan(query);
+    CardinalityEstimateAnalyzer analyzer = new CardinalityEstimateAnalyzer(
+        errorFactor, CardinalityEstimateAnalyzer.DEFAULT_STATISTICS_TARGET);
+    List<CardinalityMisestimate> misestimates = analyzer.analyze(plan.getNodes());
+
+    return CardinalityReport.builder()
+        .query(query)
+        .errorFactorThreshold(errorFactor)
+        .worstErrorFactor(misestimates.isEmpty() ? 1.0 : misestimates.get(0).getErrorFactor())
+        .executionTime(plan.getExecutionTime())
+        .planFingerprint(plan.getPlanFingerprint())
+        .misestimates(misestimates)
+        .proposedStatements(analyzer.proposeStatistics(misestimates))
+        .analyzedAt(LocalDateTime.now())
         .build();
+  }
 
-    extractBasicMetrics(plan, json);
+  @Override
+  public StatisticsTuningResult applyStatisticsAndRemeasure(String query, double errorFactor)
+      throws DataAccessException {
+    CardinalityReport before = analyzeCardinalityEstimates(query, errorFactor);
+    List<String> statements = before.getProposedStatements();
+    if (statements.isEmpty()) {
+      return StatisticsTuningResult.builder()
+          .before(before)
+          .after(before)
+          .appliedStatements(statements)
+          .planChanged(false)
+          .summary("Ошибок оценки с известными колонками не найдено, статистика не менялась")
+          .build();
+    }
 
-    return plan;
+    try (Connection connection = getConnection();
+        Statement statement = connection.createStatement()) {
+      for (String sql : statements) {
+        logSql(sql);
+        statement.execute(sql);
+      }
+    } catch (SQLException e) {
+      throw new DataAccessException("Ошибка применения статистики", e);
+    }
+    // После ANALYZE прежние планы в кэше уже не соответствуют статистике
+    config.getPlanCapturePolicy().invalidateAll();
+
+    CardinalityReport after = analyzeCardinalityEstimates(query, errorFactor);
+    boolean planChanged = !Objects.equals(before.getPlanFingerprint(), after.getPlanFingerprint());
+
+    return StatisticsTuningResult.builder()
+        .before(before)
+        .after(after)
+        .appliedStatements(statements)
+        .planChanged(planChanged)
+        .summary(String.format(
+            "Максимальная ошибка оценки: %.1fx -> %.1fx, время: %s -> %s мс, план %s",
+            before.getWorstErrorFactor(), after.getWorstErrorFactor(),
+            before.getExecutionTime(), after.getExecutionTime(),
+            planChanged ? "изменился" : "не изменился"))
+        .build();
   }
 
-  private void extractBasicMetrics(QueryExecutionPlan plan, String json) {
-    try {
-      int execTimeStart = json.indexOf("\"Execution Time\": ");
-      if (execTimeStart > 0) {
-        int execTimeEnd = json.indexOf(",", execTimeStart);
-        String execTimeStr = json.substring(execTimeStart + 18, execTimeEnd);
-        plan.setExecutionTime(new java.math.BigDecimal(execTimeStr.trim()));
-      }
+  private QueryExecutionPlan parseExplainAnalyzeJson(
+      String json, String originalQuery, boolean recordHistory) {
+    QueryPlanParser parser = new QueryPlanParser(json);
+    PlanNode hottest = parser.getHottestNode();
+    PlanFingerprint fingerprint = PlanFingerprint.of(parser.getRootNode());
+    PlanChange planChange = recordHistory ? recordPlan(originalQuery, fingerprint, parser) : null;
+
+    List<String> recommendations = recommendFor(hottest);
+    if (planChange != null && planChange.isRegression()) {
+      recommendations.add(0, "План запроса изменился и стал хуже (" + planChange.getReason()
+          + "): проверьте статистику таблиц и наличие индексов. Прежний план: "
+          + planChange.getPreviousShape());
+    }
 
-      int planningTimeStart = json.indexOf("\"Planning Time\": ");
-      if (planningTimeStart > 0) {
-        int planningTimeEnd = json.indexOf(",", planningTimeStart);
-        String planningTimeStr = json.substring(planningTimeStart + 17, planningTimeEnd);
-        plan.setPlanningTime(new java.math.BigDecimal(planningTimeStr.trim()));
-      }
+    return QueryExecutionPlan.builder()
+        .query(originalQuery)
+        .planText(json)
+        .totalCost(parser.getTotalCost())
+        .executionTime(parser.getExecutionTime())
+        .planningTime(parser.getPlanningTime())
+        .rootNode(parser.getRootNode())
+        .nodes(parser.getNodes())
+        .hottestNode(hottest)
+        .planFingerprint(fingerprint.getFingerprint())
+        .planChange(planChange)
+        .capturedAt(LocalDateTime.now())
+        .buffersHit(parser.getBuffersHit())
+        .buffersRead(parser.getBuffersRead())
+        .performanceAnalysis(describeHotspots(parser.getNodes(), parser.getExecutionTime()))
+        .recommendations(recommendations)
+        .build();
+  }
 
-      int buffersStart = json.indexOf("\"Buffers\": ");
-      if (buffersStart > 0) {
-        String buffersSection = json.substring(buffersStart);
-        int sharedHitStart = buffersSection.indexOf("\"shared hit\": ");
-        if (sharedHitStart > 0) {
-          int sharedHitEnd = buffersSection.indexOf(",", sharedHitStart);
-          String sharedHitStr = buffersSection.substring(
-              sharedHitStart + 14, sharedHitEnd);
-          plan.setBuffersHit(Long.parseLong(sharedHitStr.trim()));
-        }
+  /**
+   * Сохраняет план в общую историю. Ключ запроса - текст без литералов, поэтому вызовы
+   * с разными параметрами попадают в одну историю.
+   */
+  private PlanChange recordPlan(
+      String query, PlanFingerprint fingerprint, QueryPlanParser parser) {
+    if (parser.getRootNode() == null) {
+      return null;
+    }
+    PlanObservation observation = PlanObservation.builder()
+        .queryKey(PlanFingerprint.normalizeSql(query))
+        .fingerprint(fingerprint.getFingerprint())
+        .planShape(fingerprint.getShape())
+        .executionTimeMs(parser.getExecutionTime() != null
+            ? parser.getExecutionTime().doubleValue() : null)
+        .buffersHit(parser.getBuffersHit())
+        .buffersRead(parser.getBuffersRead())
+        .costEstimate(parser.getTotalCost() != null
+            ? parser.getTotalCost().doubleValue() : null)
+        .observedAt(LocalDateTime.now())
+        .build();
+    return config.getPlanHistoryStore().record(observation).orElse(null);
+  }
 
-        int sharedReadStart = buffersSection.indexOf("\"shared read\": ");
-        if (sharedReadStart > 0) {
-          int sharedReadEnd = buffersSection.indexOf(",", sharedReadStart);
-          String sharedReadStr = buffersSection.substring(
-              sharedReadStart + 15, sharedReadEnd);
-          plan.setBuffersRead(Long.parseLong(sharedReadStr.trim()));
-        }
+  private String describeHotspots(List<PlanNode> nodes, BigDecimal executionTime) {
+    if (nodes.isEmpty()) {
+      return "План выполнения не получен";
+    }
+    List<PlanNode> byExclusiveTime = new ArrayList<>(nodes);
+    byExclusiveTime.sort(Comparator.comparing(PlanNode::getExclusiveTime).reversed());
+
+    StringBuilder analysis = new StringBuilder("Операторы по собственному времени:\n");
+    for (PlanNode node : byExclusiveTime.subList(0, Math.min(HOTSPOTS_LIMIT, nodes.size()))) {
+      analysis.append(String.format("  %s%s: %.3f мс",
+          node.getOperation(),
+          node.getRelation() != null ? " on " + node.getRelation() : "",
+          node.getExclusiveTime()));
+      if (executionTime != null && executionTime.signum() > 0) {
+        analysis.append(String.format(" (%.1f%%)",
+            node.getExclusiveTime().doubleValue() * 100 / executionTime.doubleValue()));
       }
+      analysis.append(String.format(", буферы hit/read: %d/%d, циклов: %d",
+          node.getExclusiveBuffersHit(), node.getExclusiveBuffersRead(), node.getLoops()));
+      if (node.getHeapFetches() != null) {
+        analysis.append(", heap fetches: ").append(node.getHeapFetches());
+      }
+      analysis.append(System.lineSeparator());
+    }
+    return analysis.toString();
+  }
 
-    } catch (Exception e) {
-      System.err.println("Ошибка парсинга JSON плана: " + e.getMessage());
+  private List<String> recommendFor(PlanNode hottest) {
+    List<String> recommendations = new ArrayList<>();
+    if (hottest == null) {
+      return recommendations;
+    }
+    String nodeType = hottest.getNodeType();
+    if ("Seq Scan".equals(nodeType) && hottest.getFilter() != null) {
+      recommendations.add("Seq Scan по " + hottest.getRelation()
+          + " с фильтром " + hottest.getFilter() + ": рассмотрите индекс по колонкам фильтра");
+    }
+    if ("Nested Loop".equals(nodeType) || hottest.getLoops() > 1) {
+      recommendations.add(hottest.getOperation() + " выполняется " + hottest.getLoops()
+          + " раз: проверьте оценку строк внешней стороны и индекс по условию соединения");
+    }
+    if (nodeType != null && (nodeType.contains("Sort") || nodeType.contains("Hash"))) {
+      recommendations.add(hottest.getOperation()
+          + " доминирует по времени: проверьте work_mem и нет ли сброса на диск");
+    }
+    if (hottest.getExclusiveBuffersRead() > hottest.getExclusiveBuffersHit()) {
+      recommendations.add(hottest.getOperation()
+          + " читает с диска больше, чем из shared_buffers: запрос упирается в I/O");
+    }
+    if (recommendations.isEmpty()) {
+      recommendations.add("Самый затратный оператор: " + hottest.getOperation()
+          + (hottest.getRelation() != null ? " on " + hottest.getRelation() : ""));
     }
+    return recommendations;
   }
-}
\ No newline at end of file
+}
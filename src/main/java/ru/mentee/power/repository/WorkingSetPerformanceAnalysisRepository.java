@@ -0,0 +1,118 @@
+package ru.mentee.power.repository;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.config.ApplicationConfig;
+import ru.mentee.power.exception.DataAccessException;
+import ru.mentee.power.model.analytics.CardinalityReport;
+import ru.mentee.power.model.analytics.KeysetPage;
+import ru.mentee.power.model.analytics.PerformanceMetrics;
+import ru.mentee.power.model.analytics.QueryExecutionPlan;
+import ru.mentee.power.model.analytics.StatisticsTuningResult;
+import ru.mentee.power.model.analytics.UserOrderStats;
+import ru.mentee.power.repository.interfaces.PerformanceAnalysisRepository;
+import ru.mentee.power.utils.CursorStream;
+import ru.mentee.power.utils.UserOrderStatsWorkingSet;
+
+/**
+ * Репозиторий, отвечающий на быструю статистику тяжелых пользователей из рабочего набора в
+ * памяти вместо запроса к базе. Остальные методы, включая медленный запрос для сравнения,
+ * выгрузку курсором и постраничный вывод, передаются {@code delegate}.
+ *
+ * <p>При создании рабочий набор и колоночный снимок заказов поднимаются из файла
+ * db.columnar.snapshot-file, если он есть, и дальше дочитывают заказы после водяных знаков
+ * раз в db.columnar.refresh-interval-ms, а раз в db.columnar.reload-interval-ms пересчитываются
+ * целиком, чтобы учесть изменения и удаления старых заказов.
+ */
+@Slf4j
+public class WorkingSetPerformanceAnalysisRepository implements PerformanceAnalysisRepository {
+
+  private final PerformanceAnalysisRepository delegate;
+  private final UserOrderStatsWorkingSet workingSet;
+
+  public WorkingSetPerformanceAnalysisRepository(ApplicationConfig config,
+      PerformanceAnalysisRepository delegate) {
+    this.delegate = delegate;
+    this.workingSet = config.getUserOrderStatsWorkingSet();
+    config.getAnalyticsSnapshotStore().restore();
+    config.getAnalyticsSnapshotStore()
+        .start(Duration.ofMillis(config.getColumnarPersistIntervalMs()));
+    workingSet.start(Duration.ofMillis(config.getColumnarRefreshIntervalMs()));
+  }
+
+  @Override
+  public PerformanceMetrics<List<UserOrderStats>> getSlowUserOrderStats(
+      String city, LocalDate startDate, Integer minOrders) throws DataAccessException {
+    return delegate.getSlowUserOrderStats(city, startDate, minOrders);
+  }
+
+  @Override
+  public PerformanceMetrics<List<UserOrderStats>> getFastUserOrderStats(
+      String city, LocalDate startDate, Integer minOrders) throws DataAccessException {
+    long startTime = System.nanoTime();
+    List<UserOrderStats> results;
+    try {
+      results = workingSet.heavyUsers(city, startDate, minOrders);
+    } catch (SQLException e) {
+      log.error("Error loading user order stats working set", e);
+      throw new DataAccessException("Failed to load user order stats working set", e);
+    }
+    long executionTimeMs = (System.nanoTime() - startTime) / 1_000_000;
+
+    return PerformanceMetrics.<List<UserOrderStats>>builder()
+        .data(results)
+        .executionTimeMs(executionTimeMs)
+        .queryType("working_set")
+        .executedAt(LocalDateTime.now())
+        .performanceGrade(CompositeIndexRepositoryImpl.gradePerformance(executionTimeMs))
+        .scanType("Working Set")
+        .rowsReturned((long) results.size())
+        .optimizationRecommendation("Answered from in-memory user order stats working set")
+        .build();
+  }
+
+  @Override
+  public CursorStream<UserOrderStats> streamUserOrderStats(
+      String city, LocalDate startDate, Integer minOrders, int fetchSize)
+      throws DataAccessException {
+    return delegate.streamUserOrderStats(city, startDate, minOrders, fetchSize);
+  }
+
+  @Override
+  public PerformanceMetrics<KeysetPage<UserOrderStats>> getHeavyUserOrderStatsPage(
+      String city, LocalDate startDate, Integer minOrders, int pageSize, String pageToken)
+      throws DataAccessException {
+    return delegate.getHeavyUserOrderStatsPage(city, startDate, minOrders, pageSize, pageToken);
+  }
+
+  @Override
+  public QueryExecutionPlan getExecutionPlan(String query) throws DataAccessException {
+    return delegate.getExecutionPlan(query);
+  }
+
+  @Override
+  public PerformanceMetrics<String> createOptimizationIndexes() throws DataAccessException {
+    return delegate.createOptimizationIndexes();
+  }
+
+  @Override
+  public PerformanceMetrics<String> dropOptimizationIndexes() throws DataAccessException {
+    return delegate.dropOptimizationIndexes();
+  }
+
+  @Override
+  public CardinalityReport analyzeCardinalityEstimates(String query, double errorFactor)
+      throws DataAccessException {
+    return delegate.analyzeCardinalityEstimates(query, errorFactor);
+  }
+
+  @Override
+  public StatisticsTuningResult applyStatisticsAndRemeasure(String query, double errorFactor)
+      throws DataAccessException {
+    return delegate.applyStatisticsAndRemeasure(query, errorFactor);
+  }
+}
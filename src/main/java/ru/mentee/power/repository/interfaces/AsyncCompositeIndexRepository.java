@@ -0,0 +1,149 @@
+package ru.mentee.power.repository.interfaces;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import ru.mentee.power.model.analytics.ApproximateOrderAnalytics;
+import ru.mentee.power.model.analytics.BrinCandidate;
+import ru.mentee.power.model.analytics.ConfidenceInterval;
+import ru.mentee.power.model.analytics.IndexRecommendation;
+import ru.mentee.power.model.analytics.IndexRedundancyReport;
+import ru.mentee.power.model.analytics.IndexUsageStats;
+import ru.mentee.power.model.analytics.OrderAnalytics;
+import ru.mentee.power.model.analytics.PartitionMaintenanceResult;
+import ru.mentee.power.model.analytics.PartitionPruningReport;
+import ru.mentee.power.model.analytics.PerformanceMetrics;
+import ru.mentee.power.model.analytics.RollupRefreshResult;
+import ru.mentee.power.model.analytics.SampledResult;
+import ru.mentee.power.model.analytics.SamplingSpec;
+import ru.mentee.power.utils.BatchQuery;
+import ru.mentee.power.utils.BatchResult;
+
+/**
+ * Асинхронный вариант {@link CompositeIndexRepository} для одновременного запуска нескольких
+ * отчетов и объединения результатов через {@link CompletableFuture#allOf}. Каждый метод
+ * выполняет одноименный метод синхронного репозитория на отдельном виртуальном потоке.
+ *
+ * <p>Будущее завершается с {@link java.util.concurrent.TimeoutException} по истечении
+ * db.async.timeout-ms или таймаута, заданного через {@link CompletableFuture#orTimeout}.
+ * Таймаут и {@link CompletableFuture#cancel(boolean)} отменяют выполняющийся оператор через
+ * Statement.cancel. Ошибки доступа к данным приходят как DataAccessException внутри
+ * {@link java.util.concurrent.CompletionException}. В PerformanceMetrics дописываются
+ * ожидание до старта и полная задержка вызова (asyncQueueWaitMs, asyncLatencyMs).
+ *
+ * <p>Потоковая выгрузка курсором и построение {@link BatchQuery} остаются синхронными: первая
+ * держит соединение до закрытия потока, второе не обращается к базе.
+ */
+public interface AsyncCompositeIndexRepository {
+
+  /**
+   * Асинхронный {@link CompositeIndexRepository#getOrderAnalyticsWithoutIndex}.
+   */
+  CompletableFuture<PerformanceMetrics<List<OrderAnalytics>>> getOrderAnalyticsWithoutIndex(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate);
+
+  /**
+   * Асинхронный {@link CompositeIndexRepository#getOrderAnalyticsWithIndex}.
+   */
+  CompletableFuture<PerformanceMetrics<List<OrderAnalytics>>> getOrderAnalyticsWithIndex(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate);
+
+  /**
+   * Асинхронный {@link CompositeIndexRepository#getOrderAnalyticsFromRollup}.
+   */
+  CompletableFuture<PerformanceMetrics<List<OrderAnalytics>>> getOrderAnalyticsFromRollup(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate);
+
+  /**
+   * Асинхронный {@link CompositeIndexRepository#refreshOrderRollup}.
+   */
+  CompletableFuture<RollupRefreshResult> refreshOrderRollup();
+
+  /**
+   * Асинхронный {@link CompositeIndexRepository#getOrderAnalyticsParallel}. Запросы по
+   * подынтервалам отменяются вместе с вызовом.
+   */
+  CompletableFuture<PerformanceMetrics<List<OrderAnalytics>>> getOrderAnalyticsParallel(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate,
+      int parallelism);
+
+  /**
+   * Асинхронный {@link CompositeIndexRepository#getOrderAnalyticsApproximate}.
+   */
+  CompletableFuture<PerformanceMetrics<SampledResult<List<ApproximateOrderAnalytics>>>>
+      getOrderAnalyticsApproximate(
+          List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate,
+          SamplingSpec spec);
+
+  /**
+   * Асинхронный {@link CompositeIndexRepository#measureQueryWithoutIndex}.
+   */
+  CompletableFuture<PerformanceMetrics<Long>> measureQueryWithoutIndex(
+      Long categoryId, BigDecimal minPrice, BigDecimal maxPrice);
+
+  /**
+   * Асинхронный {@link CompositeIndexRepository#measureQueryWithIndex}.
+   */
+  CompletableFuture<PerformanceMetrics<Long>> measureQueryWithIndex(
+      Long categoryId, BigDecimal minPrice, BigDecimal maxPrice);
+
+  /**
+   * Асинхронный {@link CompositeIndexRepository#measureQueryApproximate}.
+   */
+  CompletableFuture<PerformanceMetrics<SampledResult<ConfidenceInterval>>>
+      measureQueryApproximate(
+          Long categoryId, BigDecimal minPrice, BigDecimal maxPrice, SamplingSpec spec);
+
+  /**
+   * Асинхронный {@link CompositeIndexRepository#executeBatch}: весь пакет выполняется одним
+   * вызовом на одном соединении.
+   */
+  CompletableFuture<BatchResult> executeBatch(List<BatchQuery<?>> queries);
+
+  /**
+   * Асинхронный {@link CompositeIndexRepository#createCompositeIndexes}.
+   */
+  CompletableFuture<PerformanceMetrics<String>> createCompositeIndexes();
+
+  /**
+   * Асинхронный {@link CompositeIndexRepository#dropCompositeIndexes}.
+   */
+  CompletableFuture<PerformanceMetrics<String>> dropCompositeIndexes();
+
+  /**
+   * Асинхронный {@link CompositeIndexRepository#findBrinCandidates}.
+   */
+  CompletableFuture<List<BrinCandidate>> findBrinCandidates();
+
+  /**
+   * Асинхронный {@link CompositeIndexRepository#createBrinIndexes}.
+   */
+  CompletableFuture<PerformanceMetrics<String>> createBrinIndexes(Integer pagesPerRange);
+
+  /**
+   * Асинхронный {@link CompositeIndexRepository#analyzeCompositeIndexUsage}.
+   */
+  CompletableFuture<List<IndexUsageStats>> analyzeCompositeIndexUsage();
+
+  /**
+   * Асинхронный {@link CompositeIndexRepository#findRedundantIndexes}.
+   */
+  CompletableFuture<IndexRedundancyReport> findRedundantIndexes();
+
+  /**
+   * Асинхронный {@link CompositeIndexRepository#checkPartitionPruning}.
+   */
+  CompletableFuture<List<PartitionPruningReport>> checkPartitionPruning(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate);
+
+  /**
+   * Асинхронный {@link CompositeIndexRepository#maintainOrderPartitions}.
+   */
+  CompletableFuture<PartitionMaintenanceResult> maintainOrderPartitions();
+
+  /**
+   * Асинхронный {@link CompositeIndexRepository#recommendIndexes}.
+   */
+  CompletableFuture<List<IndexRecommendation>> recommendIndexes(String query);
+}
@@ -0,0 +1,50 @@
+package ru.mentee.power.repository.interfaces;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import ru.mentee.power.model.ConcurrencyAnomalyResult;
+import ru.mentee.power.model.MoneyTransferResult;
+
+/**
+ * Асинхронный вариант {@link ConcurrencyProblemsRepository}. Таймауты, отмена и метрики
+ * задержки те же, что в {@link AsyncCompositeIndexRepository}. Обе транзакции демонстрации
+ * выполняются в потоке вызова, поэтому отмена прерывает операторы на обоих соединениях, а
+ * незавершенные транзакции откатывает пул при возврате соединений.
+ */
+public interface AsyncConcurrencyProblemsRepository {
+
+  /**
+   * Асинхронный {@link ConcurrencyProblemsRepository#demonstrateDirtyRead}.
+   */
+  CompletableFuture<ConcurrencyAnomalyResult> demonstrateDirtyRead(
+      Long accountId, BigDecimal amountToChange);
+
+  /**
+   * Асинхронный {@link ConcurrencyProblemsRepository#demonstrateNonRepeatableRead}.
+   */
+  CompletableFuture<ConcurrencyAnomalyResult> demonstrateNonRepeatableRead(
+      Long accountId, BigDecimal amountToChange);
+
+  /**
+   * Асинхронный {@link ConcurrencyProblemsRepository#demonstratePhantomRead}.
+   */
+  CompletableFuture<ConcurrencyAnomalyResult> demonstratePhantomRead(
+      Long accountId, BigDecimal thresholdAmount, BigDecimal newTransactionAmount);
+
+  /**
+   * Асинхронный {@link ConcurrencyProblemsRepository#demonstrateLostUpdate}.
+   */
+  CompletableFuture<ConcurrencyAnomalyResult> demonstrateLostUpdate(
+      Long accountId, BigDecimal firstAmount, BigDecimal secondAmount);
+
+  /**
+   * Асинхронный {@link ConcurrencyProblemsRepository#safeMoneyTransfer}.
+   */
+  CompletableFuture<MoneyTransferResult> safeMoneyTransfer(
+      Long fromAccountId, Long toAccountId, BigDecimal amount);
+
+  /**
+   * Асинхронный {@link ConcurrencyProblemsRepository#getCurrentIsolationLevelInfo}.
+   */
+  CompletableFuture<String> getCurrentIsolationLevelInfo();
+}
@@ -0,0 +1,64 @@
+package ru.mentee.power.repository.interfaces;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import ru.mentee.power.model.analytics.CardinalityReport;
+import ru.mentee.power.model.analytics.KeysetPage;
+import ru.mentee.power.model.analytics.PerformanceMetrics;
+import ru.mentee.power.model.analytics.QueryExecutionPlan;
+import ru.mentee.power.model.analytics.StatisticsTuningResult;
+import ru.mentee.power.model.analytics.UserOrderStats;
+
+/**
+ * Асинхронный вариант {@link PerformanceAnalysisRepository}. Таймауты, отмена и метрики
+ * задержки те же, что в {@link AsyncCompositeIndexRepository}; выгрузка курсором остается
+ * синхронной.
+ */
+public interface AsyncPerformanceAnalysisRepository {
+
+  /**
+   * Асинхронный {@link PerformanceAnalysisRepository#getSlowUserOrderStats}.
+   */
+  CompletableFuture<PerformanceMetrics<List<UserOrderStats>>> getSlowUserOrderStats(
+      String city, LocalDate startDate, Integer minOrders);
+
+  /**
+   * Асинхронный {@link PerformanceAnalysisRepository#getFastUserOrderStats}.
+   */
+  CompletableFuture<PerformanceMetrics<List<UserOrderStats>>> getFastUserOrderStats(
+      String city, LocalDate startDate, Integer minOrders);
+
+  /**
+   * Асинхронный {@link PerformanceAnalysisRepository#getHeavyUserOrderStatsPage}.
+   */
+  CompletableFuture<PerformanceMetrics<KeysetPage<UserOrderStats>>> getHeavyUserOrderStatsPage(
+      String city, LocalDate startDate, Integer minOrders, int pageSize, String pageToken);
+
+  /**
+   * Асинхронный {@link PerformanceAnalysisRepository#getExecutionPlan}.
+   */
+  CompletableFuture<QueryExecutionPlan> getExecutionPlan(String query);
+
+  /**
+   * Асинхронный {@link PerformanceAnalysisRepository#createOptimizationIndexes}.
+   */
+  CompletableFuture<PerformanceMetrics<String>> createOptimizationIndexes();
+
+  /**
+   * Асинхронный {@link PerformanceAnalysisRepository#dropOptimizationIndexes}.
+   */
+  CompletableFuture<PerformanceMetrics<String>> dropOptimizationIndexes();
+
+  /**
+   * Асинхронный {@link PerformanceAnalysisRepository#analyzeCardinalityEstimates}.
+   */
+  CompletableFuture<CardinalityReport> analyzeCardinalityEstimates(
+      String query, double errorFactor);
+
+  /**
+   * Асинхронный {@link PerformanceAnalysisRepository#applyStatisticsAndRemeasure}.
+   */
+  CompletableFuture<StatisticsTuningResult> applyStatisticsAndRemeasure(
+      String query, double errorFactor);
+}
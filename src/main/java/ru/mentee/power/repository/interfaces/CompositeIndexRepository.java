@@ -4,11 +4,26 @@ package ru.mentee.power.repository.interfaces;
 import ru.mentee.power.exception.DataAccessException;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
+import ru.mentee.power.model.analytics.ApproximateOrderAnalytics;
+import ru.mentee.power.model.analytics.BrinCandidate;
+import ru.mentee.power.model.analytics.ConfidenceInterval;
+import ru.mentee.power.model.analytics.IndexRecommendation;
+import ru.mentee.power.model.analytics.IndexRedundancyReport;
+import ru.mentee.power.model.analytics.IndexUsageRate;
 import ru.mentee.power.model.analytics.IndexUsageStats;
 import ru.mentee.power.model.analytics.OrderAnalytics;
+import ru.mentee.power.model.analytics.PartitionMaintenanceResult;
+import ru.mentee.power.model.analytics.PartitionPruningReport;
 import ru.mentee.power.model.analytics.PerformanceMetrics;
+import ru.mentee.power.model.analytics.RollupRefreshResult;
+import ru.mentee.power.model.analytics.SampledResult;
+import ru.mentee.power.model.analytics.SamplingSpec;
+import ru.mentee.power.utils.BatchQuery;
+import ru.mentee.power.utils.BatchResult;
+import ru.mentee.power.utils.CursorStream;
 
 /**
  * Repository для демонстрации составных и функциональных индексов.
@@ -44,6 +59,87 @@ public interface CompositeIndexRepository {
       List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate
   ) throws DataAccessException;
 
+  /**
+   * Выполняет ту же аналитику заказов по дневным агрегатам order_daily_rollup. Полные дни,
+   * покрытые агрегатами, берутся из них, а края диапазона и дни после водяного знака - из
+   * orders, поэтому результат совпадает с {@link #getOrderAnalyticsWithIndex}.
+   *
+   * @param regions список регионов для анализа
+   * @param statuses список статусов заказов
+   * @param startDate начальная дата периода
+   * @param endDate конечная дата периода
+   * @return результаты аналитики с метриками производительности
+   * @throws DataAccessException при ошибках доступа к данным
+   */
+  PerformanceMetrics<List<OrderAnalytics>> getOrderAnalyticsFromRollup(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate
+  ) throws DataAccessException;
+
+  /**
+   * Добавляет в order_daily_rollup заказы, созданные после водяного знака, и сдвигает водяной
+   * знак. Обрабатываются только полные дни, закончившиеся не меньше часа назад. Изменения уже учтенных
+   * заказов (смена статуса, суммы, удаление, поздняя вставка) переносит в агрегаты триггер
+   * orders_rollup_sync, поэтому повторная обработка дней не нужна.
+   *
+   * @return обработанный интервал и число обновленных групп
+   * @throws DataAccessException при ошибках обновления агрегатов
+   */
+  RollupRefreshResult refreshOrderRollup() throws DataAccessException;
+
+  /**
+   * Выполняет аналитику заказов с индексом и отдает строки через серверный курсор, не
+   * загружая результат в память. Поток держит соединение до закрытия, поэтому его нужно
+   * открывать в try-with-resources.
+   *
+   * @param regions список регионов для анализа
+   * @param statuses список статусов заказов
+   * @param startDate начальная дата периода
+   * @param endDate конечная дата периода
+   * @param fetchSize число строк, получаемых за одно обращение к серверу
+   * @return поток строк с метриками чтения
+   * @throws DataAccessException при ошибках выполнения запроса
+   */
+  CursorStream<OrderAnalytics> streamOrderAnalytics(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate,
+      int fetchSize
+  ) throws DataAccessException;
+
+  /**
+   * Выполняет аналитику заказов, разбивая период на подынтервалы, которые считаются
+   * одновременно на отдельных соединениях пула. Частичные агрегаты объединяются в Java,
+   * результат совпадает с {@link #getOrderAnalyticsWithIndex}.
+   *
+   * @param regions список регионов для анализа
+   * @param statuses список статусов заказов
+   * @param startDate начальная дата периода
+   * @param endDate конечная дата периода
+   * @param parallelism число подынтервалов, не больше размера пула
+   * @return результаты аналитики с метриками производительности
+   * @throws DataAccessException при ошибках выполнения запросов
+   */
+  PerformanceMetrics<List<OrderAnalytics>> getOrderAnalyticsParallel(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate,
+      int parallelism
+  ) throws DataAccessException;
+
+  /**
+   * Приближенная аналитика заказов по выборке TABLESAMPLE. Количество и выручка пересчитываются
+   * на всю таблицу, к каждой строке прилагаются доверительные интервалы. Если в {@code spec}
+   * заданы цели по задержке или погрешности, доля выборки подбирается по пробному запросу.
+   *
+   * @param regions список регионов для анализа
+   * @param statuses список статусов заказов
+   * @param startDate начальная дата периода
+   * @param endDate конечная дата периода
+   * @param spec метод, доля выборки или цели для ее подбора; null - значения из конфигурации
+   * @return оценки с интервалами и параметрами выборки
+   * @throws DataAccessException при ошибках выполнения запроса
+   */
+  PerformanceMetrics<SampledResult<List<ApproximateOrderAnalytics>>> getOrderAnalyticsApproximate(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate,
+      SamplingSpec spec
+  ) throws DataAccessException;
+
   /**
    * Тестирует производительность поиска по различным колонкам без индекса.
    *
@@ -68,6 +164,69 @@ public interface CompositeIndexRepository {
   PerformanceMetrics<Long> measureQueryWithIndex(Long categoryId, BigDecimal minPrice, BigDecimal maxPrice)
       throws DataAccessException;
 
+  /**
+   * Оценивает число товаров по тем же условиям по выборке TABLESAMPLE.
+   *
+   * @param categoryId идентификатор категории
+   * @param minPrice минимальная цена
+   * @param maxPrice максимальная цена
+   * @param spec метод, доля выборки или цели для ее подбора; null - значения из конфигурации
+   * @return оценка числа товаров с доверительным интервалом и параметрами выборки
+   * @throws DataAccessException при ошибках доступа к данным
+   */
+  PerformanceMetrics<SampledResult<ConfidenceInterval>> measureQueryApproximate(
+      Long categoryId, BigDecimal minPrice, BigDecimal maxPrice, SamplingSpec spec)
+      throws DataAccessException;
+
+  /**
+   * Запрос аналитики заказов из {@link #getOrderAnalyticsWithIndex} для
+   * {@link #executeBatch(List)}.
+   *
+   * @param regions список регионов для анализа
+   * @param statuses список статусов заказов
+   * @param startDate начальная дата периода
+   * @param endDate конечная дата периода
+   * @return запрос пакета
+   */
+  BatchQuery<List<OrderAnalytics>> orderAnalyticsQuery(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate);
+
+  /**
+   * Запрос числа товаров из {@link #measureQueryWithIndex} для {@link #executeBatch(List)}.
+   *
+   * @param categoryId идентификатор категории
+   * @param minPrice минимальная цена
+   * @param maxPrice максимальная цена
+   * @return запрос пакета
+   */
+  BatchQuery<Long> productCountQuery(Long categoryId, BigDecimal minPrice, BigDecimal maxPrice);
+
+  /**
+   * Запрос поиска товаров по JSON атрибутам для {@link #executeBatch(List)}.
+   *
+   * @param brand бренд
+   * @param color цвет
+   * @param minPrice минимальная цена
+   * @param maxPrice максимальная цена
+   * @return запрос пакета
+   */
+  BatchQuery<Long> jsonSearchQuery(
+      String brand, String color, BigDecimal minPrice, BigDecimal maxPrice);
+
+  /**
+   * Выполняет запросы одним обращением к серверу на одном соединении, поэтому задержка
+   * страницы близка к самому долгому запросу плюс одна задержка сети, а не к их сумме.
+   * Ошибка любого запроса отменяет весь пакет. Планы запросов пакета не снимаются, время
+   * измеряется только для пакета целиком: у метрик запросов executionTimeMs пуст, а оценка
+   * NOT_MEASURED.
+   *
+   * @param queries запросы, собранные методами *Query этого репозитория
+   * @return метрики каждого запроса, доступные через {@link BatchResult#get(BatchQuery)}, и
+   *     время пакета в {@link BatchResult#getTotalTimeMs()}
+   * @throws DataAccessException при ошибке любого запроса пакета
+   */
+  BatchResult executeBatch(List<BatchQuery<?>> queries) throws DataAccessException;
+
   /**
    * Создает составные и функциональные индексы для оптимизации.
    *
@@ -84,6 +243,25 @@ public interface CompositeIndexRepository {
    */
   PerformanceMetrics<String> dropCompositeIndexes() throws DataAccessException;
 
+  /**
+   * Проверяет колонки дат и времени на пригодность для BRIN: корреляция физического порядка
+   * строк с порядком значений берется из pg_stats. BRIN рекомендуется, если |корреляция| не
+   * ниже db.brin.min-correlation и таблица достаточно велика для нескольких диапазонов.
+   *
+   * @return колонки с корреляцией, вердиктом и командой создания для рекомендованных
+   * @throws DataAccessException при ошибках чтения статистики
+   */
+  List<BrinCandidate> findBrinCandidates() throws DataAccessException;
+
+  /**
+   * Создает BRIN индексы на колонках, рекомендованных {@link #findBrinCandidates()}.
+   *
+   * @param pagesPerRange число страниц таблицы в одном диапазоне; null - db.brin.pages-per-range
+   * @return результат создания индексов с результатами построения по каждому
+   * @throws DataAccessException при ошибках чтения статистики
+   */
+  PerformanceMetrics<String> createBrinIndexes(Integer pagesPerRange) throws DataAccessException;
+
   /**
    * Анализирует эффективность составных индексов.
    *
@@ -91,4 +269,61 @@ public interface CompositeIndexRepository {
    * @throws DataAccessException при ошибках запроса статистики
    */
   List<IndexUsageStats> analyzeCompositeIndexUsage() throws DataAccessException;
-}
\ No newline at end of file
+
+  /**
+   * Возвращает скорости использования индексов по снимкам фонового сборщика статистики.
+   * Пока сборщик не запущен или снят только один снимок, список пуст.
+   *
+   * @param window окно, за которое считаются скорости; null - все снимки в буфере
+   * @return скорости сканирования и вердикты по индексам
+   */
+  List<IndexUsageRate> getIndexUsageRates(Duration window);
+
+  /**
+   * Ищет избыточные индексы: точные дубли, индексы-префиксы, частичные индексы, покрытые
+   * полными, и неиспользуемые индексы. Польза индекса (сканирования) сравнивается со
+   * стоимостью записи (вставки и не-HOT обновления таблицы). Если фоновый сборщик статистики
+   * наблюдал индексы не меньше суток, используются приращения за его окно.
+   *
+   * @return кандидаты на удаление и оценка прироста скорости вставки по таблицам
+   * @throws DataAccessException при ошибках чтения каталога
+   */
+  IndexRedundancyReport findRedundantIndexes() throws DataAccessException;
+
+  /**
+   * Проверяет, что запросы аналитики заказов отсекают лишние секции orders: для каждого
+   * запроса снимается EXPLAIN ANALYZE и число просканированных секций сравнивается с числом
+   * существующих. Для несекционированной таблицы отчеты содержат вердикт об этом.
+   *
+   * @param regions список регионов для анализа
+   * @param statuses список статусов заказов
+   * @param startDate начальная дата периода
+   * @param endDate конечная дата периода
+   * @return отчеты по запросам: основному, по подынтервалу и по выборке
+   * @throws DataAccessException при ошибках получения планов
+   */
+  List<PartitionPruningReport> checkPartitionPruning(
+      List<String> regions, List<String> statuses, LocalDate startDate, LocalDate endDate
+  ) throws DataAccessException;
+
+  /**
+   * Однократно обслуживает секции orders: создает секции на месяцы вперед и отсоединяет или
+   * удаляет секции старше срока хранения по настройкам db.partition.*.
+   *
+   * @return созданные, отсоединенные и удаленные секции
+   * @throws DataAccessException при ошибках чтения каталога
+   */
+  PartitionMaintenanceResult maintainOrderPartitions() throws DataAccessException;
+
+  /**
+   * Подбирает индексы для запроса по его плану: кандидаты строятся по Seq Scan с фильтром,
+   * каждый проверяется через EXPLAIN с гипотетическим индексом (hypopg) или, без hypopg, с
+   * индексом на временной копии выборки таблицы. Схема и рабочие таблицы не меняются и не
+   * блокируются для записи.
+   *
+   * @param query SQL запрос с подставленными значениями
+   * @return рекомендации, отсортированные по снижению стоимости плана
+   * @throws DataAccessException при ошибках получения плана
+   */
+  List<IndexRecommendation> recommendIndexes(String query) throws DataAccessException;
+}
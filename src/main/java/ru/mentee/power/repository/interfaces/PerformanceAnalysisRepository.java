@@ -1,9 +1,13 @@
 package ru.mentee.power.repository.interfaces;
 
+import ru.mentee.power.model.analytics.CardinalityReport;
+import ru.mentee.power.model.analytics.KeysetPage;
 import ru.mentee.power.model.analytics.PerformanceMetrics;
 import ru.mentee.power.model.analytics.QueryExecutionPlan;
+import ru.mentee.power.model.analytics.StatisticsTuningResult;
 import ru.mentee.power.model.analytics.UserOrderStats;
 import ru.mentee.power.exception.DataAccessException;
+import ru.mentee.power.utils.CursorStream;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -41,7 +45,44 @@ public interface PerformanceAnalysisRepository {
   ) throws DataAccessException;
 
   /**
-   * Получает план выполнения для конкретного запроса.
+   * Выгружает статистику всех подходящих пользователей (тот же запрос без LIMIT) через
+   * серверный курсор, не загружая результат в память. Поток держит соединение до закрытия,
+   * поэтому его нужно открывать в try-with-resources.
+   *
+   * @param city город для фильтрации пользователей
+   * @param startDate начальная дата заказов
+   * @param minOrders минимальное количество заказов
+   * @param fetchSize число строк, получаемых за одно обращение к серверу
+   * @return поток строк с метриками чтения
+   * @throws DataAccessException при ошибках выполнения запроса
+   */
+  CursorStream<UserOrderStats> streamUserOrderStats(
+      String city, LocalDate startDate, Integer minOrders, int fetchSize
+  ) throws DataAccessException;
+
+  /**
+   * Возвращает страницу статистики пользователей в порядке убывания суммы покупок. Следующая
+   * страница начинается после позиции (total_spent, user_id) из токена, а не по OFFSET,
+   * поэтому глубокие страницы не дороже первой. Индексы под запрос создает
+   * {@link #createOptimizationIndexes()}.
+   *
+   * @param city город для фильтрации пользователей
+   * @param startDate начальная дата заказов
+   * @param minOrders минимальное количество заказов
+   * @param pageSize число строк на странице
+   * @param pageToken токен из предыдущей страницы или null для первой
+   * @return страница с токеном следующей страницы и метриками производительности
+   * @throws DataAccessException при ошибках доступа к данным
+   * @throws IllegalArgumentException если токен поврежден или выдан для других параметров
+   */
+  PerformanceMetrics<KeysetPage<UserOrderStats>> getHeavyUserOrderStatsPage(
+      String city, LocalDate startDate, Integer minOrders, int pageSize, String pageToken
+  ) throws DataAccessException;
+
+  /**
+   * Получает план выполнения для конкретного запроса. Для узлов Index Only Scan план
+   * дополняется проверкой карты видимости: если сканирование часто обращается к таблице
+   * (Heap Fetches), в рекомендации попадает VACUUM таблицы.
    *
    * @param query SQL запрос для анализа
    * @return детальный план выполнения с EXPLAIN ANALYZE
@@ -50,7 +91,8 @@ public interface PerformanceAnalysisRepository {
   QueryExecutionPlan getExecutionPlan(String query) throws DataAccessException;
 
   /**
-   * Создает необходимые индексы для оптимизации.
+   * Создает необходимые индексы для оптимизации. Индексы по заказам покрывающие (INCLUDE):
+   * существующий индекс с тем же именем без колонок INCLUDE перестраивается.
    *
    * @return результат создания индексов с временными метриками
    * @throws DataAccessException при ошибках создания индексов
@@ -64,4 +106,27 @@ public interface PerformanceAnalysisRepository {
    * @throws DataAccessException при ошибках удаления индексов
    */
   PerformanceMetrics<String> dropOptimizationIndexes() throws DataAccessException;
-}
\ No newline at end of file
+
+  /**
+   * Находит узлы плана, где оценка строк планировщика расходится с фактом.
+   *
+   * @param query SQL запрос для анализа
+   * @param errorFactor во сколько раз оценка должна отличаться от факта, чтобы узел попал в отчет
+   * @return узлы с ошибкой оценки и предложенные команды статистики
+   * @throws DataAccessException при ошибках выполнения
+   */
+  CardinalityReport analyzeCardinalityEstimates(String query, double errorFactor)
+      throws DataAccessException;
+
+  /**
+   * Применяет предложенную статистику (CREATE STATISTICS / SET STATISTICS и ANALYZE)
+   * и повторно измеряет запрос, например фильтр по users.region и account_status.
+   *
+   * @param query SQL запрос для анализа
+   * @param errorFactor порог ошибки оценки
+   * @return отчеты до и после применения статистики
+   * @throws DataAccessException при ошибках выполнения
+   */
+  StatisticsTuningResult applyStatisticsAndRemeasure(String query, double errorFactor)
+      throws DataAccessException;
+}
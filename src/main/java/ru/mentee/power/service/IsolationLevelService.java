@@ -31,7 +31,25 @@ public interface IsolationLevelService {
 
   /**
    * Запускает симуляцию высокой конкурентности для анализа производительности.
+   * Каждый пользователь выполняется в отдельном виртуальном потоке; одновременно транзакции
+   * выполняют не больше пользователей, чем соединений в пуле. Таймауты получения соединения
+   * считаются отдельно от ошибок транзакций, ожидание очереди к пулу - отдельно от времени
+   * транзакции.
    */
   ConcurrencySimulationResult simulateHighConcurrency(
       Integer users, Integer operations, String isolationLevel);
+
+  /**
+   * Запускает симуляцию высокой конкурентности в заданной модели потоков.
+   */
+  ConcurrencySimulationResult simulateHighConcurrency(
+      Integer users, Integer operations, String isolationLevel, SimulationExecutionMode mode);
+
+  /**
+   * Прогоняет одну и ту же нагрузку на виртуальных и платформенных потоках и сравнивает
+   * пропускную способность, ожидание очереди к пулу и время транзакций. Оба режима
+   * ограничены размером пула, поэтому их пропускная способность почти одинакова.
+   */
+  ExecutionModeComparison compareExecutionModes(
+      Integer users, Integer operations, String isolationLevel);
 }
\ No newline at end of file
@@ -0,0 +1,222 @@
+package ru.mentee.power.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.connection.ConnectionProvider;
+
+/**
+ * Сохраняет колоночный снимок заказов и рабочий набор статистики пользователей в файл
+ * {@link SnapshotFile} и поднимает их из файла при старте. После перезапуска аналитика
+ * отвечает из памяти сразу после восстановления, а из базы дочитываются только строки после
+ * водяных знаков, записанных в файл.
+ *
+ * <p>Файл пишется во временный рядом и заменяет прежний атомарным переименованием, поэтому
+ * падение во время записи оставляет предыдущий файл целым. Файл отбрасывается, если с момента
+ * записи в журнал Liquibase добавились или изменились наборы изменений ({@link SchemaFingerprint}),
+ * если не совпала версия формата или контрольная сумма. Если схема поменялась, пока приложение
+ * работает, файл не перезаписывается: данные в памяти могли быть загружены при старой схеме.
+ */
+@Slf4j
+public class AnalyticsSnapshotStore implements AutoCloseable {
+
+  private final ConnectionProvider connectionProvider;
+  private final Path path;
+  private final OrderColumnarSnapshot orders;
+  private final UserOrderStatsWorkingSet userStats;
+  private final ReentrantLock lock = new ReentrantLock();
+  private boolean restoreAttempted;
+  private String loadedFingerprint;
+  private ScheduledExecutorService scheduler;
+  private Thread shutdownHook;
+
+  /**
+   * @param path файл снимка; null - сохранение выключено
+   */
+  public AnalyticsSnapshotStore(ConnectionProvider connectionProvider, Path path,
+      OrderColumnarSnapshot orders, UserOrderStatsWorkingSet userStats) {
+    this.connectionProvider = connectionProvider;
+    this.path = path;
+    this.orders = orders;
+    this.userStats = userStats;
+  }
+
+  /**
+   * Один раз за жизнь хранилища восстанавливает снимки из файла и дочитывает изменения после
+   * водяных знаков. Поврежденный или устаревший файл удаляется, снимки тогда загружаются из
+   * базы при первом обращении.
+   *
+   * @return true, если хотя бы один снимок поднят из файла
+   */
+  public boolean restore() {
+    lock.lock();
+    try {
+      if (restoreAttempted || path == null) {
+        return false;
+      }
+      restoreAttempted = true;
+      try {
+        loadedFingerprint = currentFingerprint();
+      } catch (SQLException e) {
+        log.warn("Снимок аналитики не восстановлен: отпечаток схемы недоступен: {}",
+            e.getMessage());
+        return false;
+      }
+      if (!Files.exists(path)) {
+        log.info("Файл снимка аналитики {} не найден, снимки загрузятся из базы", path);
+        return false;
+      }
+
+      long start = System.nanoTime();
+      boolean restored;
+      try (SnapshotFile.Reader reader = SnapshotFile.open(path, loadedFingerprint)) {
+        restored = orders.restore(reader) | userStats.restore(reader);
+      } catch (IOException e) {
+        log.warn("Файл снимка аналитики {} отброшен: {}", path, e.getMessage());
+        deleteQuietly(path);
+        return false;
+      }
+      long restoredMs = (System.nanoTime() - start) / 1_000_000;
+
+      try {
+        long ordersDelta = orders.isLoaded() ? orders.refresh() : 0;
+        long userStatsDelta = userStats.refresh();
+        log.info("Снимок аналитики восстановлен из {} за {} мс, дочитано заказов: {} в снимок, "
+                + "{} в статистику пользователей за {} мс", path, restoredMs, ordersDelta,
+            userStatsDelta, (System.nanoTime() - start) / 1_000_000 - restoredMs);
+      } catch (SQLException | RuntimeException e) {
+        log.warn("Изменения после снимка аналитики не дочитаны, повтор при обновлении: {}",
+            e.getMessage());
+      }
+      return restored;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Записывает снимки в файл. Незагруженные снимки пропускаются.
+   *
+   * @return false, если сохранение выключено или схема изменилась после загрузки
+   */
+  public boolean persist() throws IOException, SQLException {
+    lock.lock();
+    try {
+      if (path == null) {
+        return false;
+      }
+      String fingerprint;
+      try {
+        fingerprint = currentFingerprint();
+      } catch (SQLException e) {
+        // При остановке пул может быть уже закрыт: схема сверялась при загрузке
+        if (loadedFingerprint == null) {
+          throw e;
+        }
+        fingerprint = loadedFingerprint;
+      }
+      if (loadedFingerprint == null) {
+        loadedFingerprint = fingerprint;
+      } else if (!loadedFingerprint.equals(fingerprint)) {
+        log.warn("Схема изменилась после загрузки снимков, файл {} не перезаписан", path);
+        deleteQuietly(path);
+        return false;
+      }
+
+      long start = System.nanoTime();
+      Path parent = path.toAbsolutePath().getParent();
+      if (parent != null) {
+        Files.createDirectories(parent);
+      }
+      Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+      try (SnapshotFile.Writer writer = SnapshotFile.create(temp)) {
+        orders.writeTo(writer);
+        userStats.writeTo(writer);
+        writer.finish(fingerprint);
+      } catch (IOException | RuntimeException e) {
+        deleteQuietly(temp);
+        throw e;
+      }
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      log.info("Снимок аналитики записан в {}: {} КБ за {} мс", path, Files.size(path) / 1024,
+          (System.nanoTime() - start) / 1_000_000);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Запускает периодическую запись файла и запись при остановке JVM. Повторный вызов ничего
+   * не делает.
+   */
+  public void start(Duration interval) {
+    lock.lock();
+    try {
+      if (scheduler != null || path == null) {
+        return;
+      }
+      scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "analytics-snapshot-persist");
+        thread.setDaemon(true);
+        return thread;
+      });
+      scheduler.scheduleWithFixedDelay(this::persistQuietly,
+          interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+      shutdownHook = new Thread(this::persistQuietly, "analytics-snapshot-shutdown");
+      Runtime.getRuntime().addShutdownHook(shutdownHook);
+      log.info("Запись снимка аналитики в {} запущена: интервал {}", path, interval);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private String currentFingerprint() throws SQLException {
+    try (Connection conn = connectionProvider.getConnection()) {
+      return SchemaFingerprint.of(conn);
+    }
+  }
+
+  private void persistQuietly() {
+    try {
+      persist();
+    } catch (IOException | SQLException | RuntimeException e) {
+      log.warn("Снимок аналитики не записан в {}: {}", path, e.getMessage());
+    }
+  }
+
+  private static void deleteQuietly(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      log.warn("Не удалось удалить {}: {}", file, e.getMessage());
+    }
+  }
+
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      if (scheduler != null) {
+        scheduler.shutdownNow();
+        scheduler = null;
+      }
+      if (shutdownHook != null) {
+        Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        shutdownHook = null;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,189 @@
+package ru.mentee.power.utils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.connection.QueryCancellation;
+import ru.mentee.power.model.analytics.AsyncCallMetrics;
+import ru.mentee.power.model.analytics.PerformanceMetrics;
+
+/**
+ * Выполняет блокирующие вызовы репозиториев на виртуальных потоках и возвращает
+ * {@link CompletableFuture}. Каждый вызов получает свой виртуальный поток, поэтому N отчетов,
+ * запущенных одновременно, выполняются за время самого долгого, пока хватает соединений пула;
+ * сверх размера пула вызовы ждут соединение, не занимая потоков платформы.
+ *
+ * <p>Будущее завершается с {@link TimeoutException} через db.async.timeout-ms; вызывающий код
+ * может задать меньший таймаут через {@link CompletableFuture#orTimeout}. При таймауте или
+ * {@link CompletableFuture#cancel(boolean)} выполняющийся JDBC-оператор вызова отменяется
+ * через {@link QueryCancellation}. Отмена производного будущего (thenApply и т.п.) исходный
+ * вызов не отменяет.
+ *
+ * <p>По каждой операции копятся число вызовов и исходов, ожидание до старта и задержка от
+ * постановки до завершения будущего ({@link #getMetrics()}). Для результатов
+ * {@link PerformanceMetrics} задержка вызова дописывается в asyncQueueWaitMs и asyncLatencyMs.
+ */
+@Slf4j
+public class AsyncQueryExecutor implements AutoCloseable {
+
+  private final ExecutorService executor =
+      Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("async-query-", 0).factory());
+  private final Duration timeout;
+  private final Map<String, CallStats> stats = new ConcurrentHashMap<>();
+
+  public AsyncQueryExecutor(Duration timeout) {
+    this.timeout = timeout;
+  }
+
+  /**
+   * Запускает вызов на отдельном виртуальном потоке.
+   *
+   * @param operation имя операции для метрик
+   */
+  public <T> CompletableFuture<T> submit(String operation, Callable<T> call) {
+    return execute(operation, call, false);
+  }
+
+  /**
+   * То же, что {@link #submit}, и дописывает в результат ожидание до старта и задержку вызова.
+   */
+  public <T> CompletableFuture<PerformanceMetrics<T>> submitMetrics(
+      String operation, Callable<PerformanceMetrics<T>> call) {
+    return execute(operation, call, true);
+  }
+
+  /**
+   * Возвращает метрики по операциям, начиная с самых медленных в среднем.
+   */
+  public List<AsyncCallMetrics> getMetrics() {
+    LocalDateTime now = LocalDateTime.now();
+    return stats.entrySet().stream()
+        .map(entry -> entry.getValue().toMetrics(entry.getKey(), now))
+        .sorted(Comparator.comparing(AsyncCallMetrics::getAverageLatencyMs).reversed())
+        .toList();
+  }
+
+  private <T> CompletableFuture<T> execute(String operation, Callable<T> call,
+      boolean annotate) {
+    CallStats callStats = stats.computeIfAbsent(operation, name -> new CallStats());
+    QueryCancellation cancellation = new QueryCancellation();
+    CompletableFuture<T> result = new CompletableFuture<>();
+    long submittedAt = System.nanoTime();
+    callStats.inFlight.increment();
+
+    try {
+      executor.execute(() -> run(call, annotate, cancellation, result, callStats, submittedAt));
+    } catch (RejectedExecutionException e) {
+      result.completeExceptionally(e);
+    }
+    result.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    result.whenComplete((value, error) -> {
+      callStats.record(System.nanoTime() - submittedAt, error);
+      if (error != null && !cancellation.isFinished()) {
+        // Statement.cancel открывает отдельное соединение с сервером: не держим поток таймера
+        cancelQuietly(operation, cancellation);
+      }
+    });
+    return result;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> void run(Callable<T> call, boolean annotate, QueryCancellation cancellation,
+      CompletableFuture<T> result, CallStats callStats, long submittedAt) {
+    long startedAt = System.nanoTime();
+    callStats.queueWaitNanos.add(startedAt - submittedAt);
+    try (QueryCancellation.Binding binding = cancellation.bind()) {
+      if (result.isDone()) {
+        return;
+      }
+      T value = call.call();
+      if (annotate && value instanceof PerformanceMetrics<?> metrics) {
+        value = (T) metrics.toBuilder()
+            .asyncQueueWaitMs(TimeUnit.NANOSECONDS.toMillis(startedAt - submittedAt))
+            .asyncLatencyMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submittedAt))
+            .build();
+      }
+      result.complete(value);
+    } catch (Exception e) {
+      result.completeExceptionally(e);
+    } finally {
+      cancellation.finish();
+    }
+  }
+
+  private void cancelQuietly(String operation, QueryCancellation cancellation) {
+    try {
+      executor.execute(cancellation::cancel);
+      log.debug("Асинхронный вызов {} отменяется", operation);
+    } catch (RejectedExecutionException e) {
+      cancellation.cancel();
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  private static final class CallStats {
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    private void record(long latency, Throwable error) {
+      Throwable cause = error instanceof CompletionException && error.getCause() != null
+          ? error.getCause() : error;
+      if (cause == null) {
+        succeeded.increment();
+      } else if (cause instanceof TimeoutException) {
+        timedOut.increment();
+      } else if (cause instanceof CancellationException) {
+        cancelled.increment();
+      } else {
+        failed.increment();
+      }
+      calls.increment();
+      inFlight.decrement();
+      latencyNanos.add(latency);
+      maxLatencyNanos.accumulateAndGet(latency, Math::max);
+    }
+
+    private AsyncCallMetrics toMetrics(String operation, LocalDateTime capturedAt) {
+      long count = calls.sum();
+      return AsyncCallMetrics.builder()
+          .operation(operation)
+          .calls(count)
+          .succeeded(succeeded.sum())
+          .failed(failed.sum())
+          .timedOut(timedOut.sum())
+          .cancelled(cancelled.sum())
+          .inFlight(inFlight.sum())
+          .averageQueueWaitMs(count == 0 ? 0.0 : queueWaitNanos.sum() / 1_000_000.0 / count)
+          .averageLatencyMs(count == 0 ? 0.0 : latencyNanos.sum() / 1_000_000.0 / count)
+          .maxLatencyMs(maxLatencyNanos.get() / 1_000_000.0)
+          .capturedAt(capturedAt)
+          .build();
+    }
+  }
+}
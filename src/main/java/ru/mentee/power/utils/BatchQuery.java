@@ -0,0 +1,51 @@
+package ru.mentee.power.utils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import lombok.Getter;
+
+/**
+ * Один запрос пакета {@link PipelinedBatch}: текст с параметрами ? и разбор его результата.
+ * Параметры подставляются через setObject; массив передается как {@link SqlArray}, потому что
+ * создать его можно только на соединении, на котором выполняется пакет.
+ */
+@Getter
+public final class BatchQuery<T> {
+
+  /**
+   * Преобразование всего результата запроса.
+   */
+  @FunctionalInterface
+  public interface ResultMapper<T> {
+    T map(ResultSet rs) throws SQLException;
+  }
+
+  /**
+   * Параметр-массив с типом элементов для Connection.createArrayOf.
+   */
+  public record SqlArray(String elementType, Object[] elements) {
+  }
+
+  private final String name;
+  private final String sql;
+  private final List<Object> parameters;
+  private final ResultMapper<T> mapper;
+
+  private BatchQuery(String name, String sql, List<Object> parameters, ResultMapper<T> mapper) {
+    this.name = name;
+    this.sql = sql;
+    this.parameters = parameters;
+    this.mapper = mapper;
+  }
+
+  public static <T> BatchQuery<T> of(
+      String name, String sql, ResultMapper<T> mapper, Object... parameters) {
+    return new BatchQuery<>(name, sql, Arrays.asList(parameters), mapper);
+  }
+
+  public static SqlArray varcharArray(List<String> values) {
+    return new SqlArray("VARCHAR", values.toArray());
+  }
+}
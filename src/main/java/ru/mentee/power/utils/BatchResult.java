@@ -0,0 +1,41 @@
+package ru.mentee.power.utils;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import lombok.Getter;
+import ru.mentee.power.model.analytics.PerformanceMetrics;
+
+/**
+ * Результаты пакета {@link PipelinedBatch}: метрики каждого запроса доступны по самому
+ * запросу, с его типом данных.
+ */
+public final class BatchResult {
+
+  private final Map<BatchQuery<?>, PerformanceMetrics<?>> metrics = new IdentityHashMap<>();
+  @Getter
+  private final long totalTimeMs;
+  @Getter
+  private final int roundTrips;
+
+  public BatchResult(long totalTimeMs, int roundTrips) {
+    this.totalTimeMs = totalTimeMs;
+    this.roundTrips = roundTrips;
+  }
+
+  public <T> void put(BatchQuery<T> query, PerformanceMetrics<T> queryMetrics) {
+    metrics.put(query, queryMetrics);
+  }
+
+  @SuppressWarnings("unchecked")
+  public <T> PerformanceMetrics<T> get(BatchQuery<T> query) {
+    PerformanceMetrics<?> queryMetrics = metrics.get(query);
+    if (queryMetrics == null) {
+      throw new IllegalArgumentException("Query " + query.getName() + " is not in the batch");
+    }
+    return (PerformanceMetrics<T>) queryMetrics;
+  }
+
+  public int size() {
+    return metrics.size();
+  }
+}
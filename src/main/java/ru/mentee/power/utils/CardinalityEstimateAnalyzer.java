@@ -0,0 +1,166 @@
+package ru.mentee.power.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import ru.mentee.power.model.analytics.CardinalityMisestimate;
+import ru.mentee.power.model.analytics.PlanNode;
+
+/**
+ * Сравнивает оценку строк планировщика (Plan Rows) с фактическим числом строк (Actual Rows)
+ * в каждом узле плана и предлагает статистику, которая может исправить оценку.
+ *
+ * <p>Обе величины в EXPLAIN указаны за один цикл, поэтому сравниваются напрямую. Ошибка
+ * считается как отношение большего значения к меньшему, нули заменяются единицей. Для таблиц,
+ * где ошибка затрагивает несколько колонок условия, предлагается расширенная статистика
+ * CREATE STATISTICS (dependencies, ndistinct, mcv): планировщик по умолчанию считает колонки
+ * независимыми и перемножает их селективности. Для одной колонки предлагается поднять
+ * statistics target, чтобы увеличить MCV-список и гистограмму.
+ */
+public class CardinalityEstimateAnalyzer {
+
+  public static final double DEFAULT_ERROR_FACTOR = 10.0;
+  public static final int DEFAULT_STATISTICS_TARGET = 1000;
+  private static final int MAX_IDENTIFIER_LENGTH = 63;
+
+  private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+  private static final Pattern TYPE_CAST = Pattern.compile(
+      "::(?:character varying|timestamp with(?:out)? time zone|double precision|[a-z_]+)"
+          + "(?:\\[\\])?");
+  private static final Pattern IDENTIFIER = Pattern.compile(
+      "(?<![\\w$.])(?:([a-z_][a-z0-9_]*)\\.)?([a-z_][a-z0-9_]*)\\b(?!\\s*\\()");
+  private static final Set<String> KEYWORDS = Set.of(
+      "and", "or", "not", "null", "is", "in", "any", "all", "some", "true", "false",
+      "like", "ilike", "between", "array", "distinct", "from", "subplan", "hashed",
+      "initplan", "returns");
+
+  private final double errorFactor;
+  private final int statisticsTarget;
+
+  public CardinalityEstimateAnalyzer() {
+    this(DEFAULT_ERROR_FACTOR, DEFAULT_STATISTICS_TARGET);
+  }
+
+  public CardinalityEstimateAnalyzer(double errorFactor, int statisticsTarget) {
+    this.errorFactor = errorFactor;
+    this.statisticsTarget = statisticsTarget;
+  }
+
+  /**
+   * Возвращает узлы, в которых оценка строк отличается от факта больше чем в errorFactor раз,
+   * в порядке убывания ошибки. Узлы, которые ни разу не выполнялись, пропускаются.
+   */
+  public List<CardinalityMisestimate> analyze(List<PlanNode> nodes) {
+    List<CardinalityMisestimate> result = new ArrayList<>();
+    for (PlanNode node : nodes) {
+      if (node.getPlanRows() == null || node.getRows() == null
+          || node.getLoops() == null || node.getLoops() == 0) {
+        continue;
+      }
+      long estimated = node.getPlanRows();
+      long actual = node.getRows();
+      double error = (double) Math.max(Math.max(estimated, actual), 1L)
+          / Math.max(Math.min(estimated, actual), 1L);
+      if (error < errorFactor) {
+        continue;
+      }
+      String condition = joinConditions(node.getFilter(), node.getCondition());
+      result.add(CardinalityMisestimate.builder()
+          .operation(node.getOperation())
+          .relation(node.getRelation())
+          .depth(node.getDepth())
+          .estimatedRows(estimated)
+          .actualRows(actual)
+          .loops(node.getLoops())
+          .errorFactor(error)
+          .underestimated(actual > estimated)
+          .condition(condition)
+          .columns(extractColumns(condition, node.getAlias()))
+          .build());
+    }
+    result.sort((a, b) -> Double.compare(b.getErrorFactor(), a.getErrorFactor()));
+    return result;
+  }
+
+  /**
+   * Формирует SQL для исправления оценок: по одной рекомендации на таблицу и ANALYZE после нее.
+   * Узлы без таблицы (соединения, агрегаты) наследуют ошибку от дочерних сканов и сами
+   * рекомендаций не дают.
+   */
+  public List<String> proposeStatistics(List<CardinalityMisestimate> misestimates) {
+    Map<String, Set<String>> columnsByRelation = new LinkedHashMap<>();
+    for (CardinalityMisestimate misestimate : misestimates) {
+      if (misestimate.getRelation() == null || misestimate.getColumns().isEmpty()) {
+        continue;
+      }
+      columnsByRelation
+          .computeIfAbsent(misestimate.getRelation(), relation -> new LinkedHashSet<>())
+          .addAll(misestimate.getColumns());
+    }
+
+    List<String> statements = new ArrayList<>();
+    columnsByRelation.forEach((relation, columns) -> {
+      if (columns.size() > 1) {
+        statements.add(String.format(
+            "CREATE STATISTICS IF NOT EXISTS %s (dependencies, ndistinct, mcv) ON %s FROM %s",
+            statisticsName(relation, columns), String.join(", ", columns), relation));
+      } else {
+        statements.add(String.format("ALTER TABLE %s ALTER COLUMN %s SET STATISTICS %d",
+            relation, columns.iterator().next(), statisticsTarget));
+      }
+      statements.add("ANALYZE " + relation);
+    });
+    return statements;
+  }
+
+  public double getErrorFactor() {
+    return errorFactor;
+  }
+
+  /**
+   * Извлекает имена колонок из условия узла плана, например
+   * {@code ((region)::text = 'MOSCOW'::text)} дает {@code region}. Колонки с псевдонимом другой
+   * таблицы (вторая сторона условия соединения) пропускаются.
+   */
+  static List<String> extractColumns(String condition, String alias) {
+    if (condition == null || condition.isBlank()) {
+      return List.of();
+    }
+    String stripped = STRING_LITERAL.matcher(condition).replaceAll(" ");
+    stripped = TYPE_CAST.matcher(stripped).replaceAll(" ");
+
+    Set<String> columns = new LinkedHashSet<>();
+    Matcher matcher = IDENTIFIER.matcher(stripped);
+    while (matcher.find()) {
+      String qualifier = matcher.group(1);
+      String column = matcher.group(2);
+      if (qualifier != null && alias != null && !qualifier.equals(alias)) {
+        continue;
+      }
+      if (!KEYWORDS.contains(column)) {
+        columns.add(column);
+      }
+    }
+    return new ArrayList<>(columns);
+  }
+
+  private static String joinConditions(String filter, String condition) {
+    if (filter == null || filter.equals(condition)) {
+      return condition;
+    }
+    if (condition == null) {
+      return filter;
+    }
+    return filter + " AND " + condition;
+  }
+
+  private static String statisticsName(String relation, Set<String> columns) {
+    String name = "stx_" + relation + "_" + String.join("_", columns);
+    return name.length() > MAX_IDENTIFIER_LENGTH ? name.substring(0, MAX_IDENTIFIER_LENGTH) : name;
+  }
+}
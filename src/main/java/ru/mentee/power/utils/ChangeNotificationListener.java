@@ -0,0 +1,93 @@
+package ru.mentee.power.utils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import ru.mentee.power.connection.ConnectionProvider;
+
+/**
+ * Слушает канал table_changes, в который триггеры на orders и users отправляют имя измененной
+ * таблицы, и сбрасывает зависящие от нее записи {@link ResultCache}.
+ *
+ * <p>LISTEN действует только в своей сессии, поэтому слушатель держит отдельное соединение
+ * вне пула, которое передает вызывающий. Пока подписки нет, кэш не отдает результаты; при
+ * обрыве соединения уведомления за время простоя теряются, поэтому кэш сбрасывается целиком.
+ */
+@Slf4j
+public class ChangeNotificationListener implements AutoCloseable {
+
+  public static final String CHANNEL = "table_changes";
+  private static final int POLL_TIMEOUT_MS = 1_000;
+  private static final long INITIAL_BACKOFF_MS = 1_000;
+  private static final long MAX_BACKOFF_MS = 30_000;
+
+  private final ConnectionProvider dedicatedConnections;
+  private final ResultCache cache;
+  private final Thread thread;
+  private volatile boolean running = true;
+
+  /**
+   * @param dedicatedConnections поставщик физических соединений без пула
+   * @param cache кэш, который сбрасывается по уведомлениям
+   */
+  public ChangeNotificationListener(ConnectionProvider dedicatedConnections, ResultCache cache) {
+    this.dedicatedConnections = dedicatedConnections;
+    this.cache = cache;
+    this.thread = new Thread(this::listenLoop, "change-notification-listener");
+    this.thread.setDaemon(true);
+  }
+
+  public void start() {
+    thread.start();
+  }
+
+  private void listenLoop() {
+    long backoffMs = INITIAL_BACKOFF_MS;
+    while (running) {
+      try (Connection conn = dedicatedConnections.getConnection()) {
+        try (Statement stmt = conn.createStatement()) {
+          stmt.execute("LISTEN " + CHANNEL);
+        }
+        cache.invalidateAll();
+        cache.setNotificationsActive(true);
+        log.info("Подписка на канал {} установлена", CHANNEL);
+        backoffMs = INITIAL_BACKOFF_MS;
+
+        PGConnection pgConnection = conn.unwrap(PGConnection.class);
+        while (running) {
+          PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MS);
+          if (notifications == null) {
+            continue;
+          }
+          for (PGNotification notification : notifications) {
+            cache.invalidateTable(notification.getParameter());
+          }
+        }
+      } catch (SQLException e) {
+        cache.setNotificationsActive(false);
+        if (!running) {
+          break;
+        }
+        log.warn("Соединение слушателя {} потеряно, повтор через {} мс: {}",
+            CHANNEL, backoffMs, e.getMessage());
+        try {
+          Thread.sleep(backoffMs);
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+        backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    cache.setNotificationsActive(false);
+    thread.interrupt();
+  }
+}
@@ -0,0 +1,206 @@
+package ru.mentee.power.utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.connection.ConnectionProvider;
+import ru.mentee.power.exception.DataAccessException;
+import ru.mentee.power.model.analytics.StreamingMetrics;
+
+/**
+ * Результат запроса, который читается через серверный курсор порциями по {@code fetchSize}
+ * строк, а не загружается в память целиком.
+ *
+ * <p>Драйвер PostgreSQL использует курсор только при выключенном autocommit и ненулевом
+ * fetchSize, поэтому на время чтения соединение держит открытую транзакцию. Соединение,
+ * оператор и транзакция освобождаются в {@link #close()}, которое вызывается и при закрытии
+ * потока из {@link #stream()}, и автоматически после последней строки. Поток нужно открывать
+ * в try-with-resources: брошенный недочитанным, он держит соединение пула.
+ */
+@Slf4j
+public final class CursorStream<T> implements AutoCloseable, Iterator<T> {
+
+  /**
+   * Подстановка параметров запроса.
+   */
+  @FunctionalInterface
+  public interface StatementBinder {
+    void bind(PreparedStatement stmt) throws SQLException;
+  }
+
+  /**
+   * Преобразование текущей строки результата.
+   */
+  @FunctionalInterface
+  public interface RowMapper<T> {
+    T map(ResultSet rs) throws SQLException;
+  }
+
+  private final String queryType;
+  private final int fetchSize;
+  private final RowMapper<T> mapper;
+  private final Connection connection;
+  private final boolean autoCommit;
+  private final PreparedStatement statement;
+  private final ResultSet resultSet;
+  private final long startNanos;
+  private final LocalDateTime startedAt;
+  private final AtomicBoolean closed = new AtomicBoolean();
+
+  private long rows;
+  private long firstRowNanos;
+  private long endNanos;
+  private boolean completed;
+  private Boolean hasNext;
+
+  private CursorStream(String queryType, int fetchSize, RowMapper<T> mapper,
+      Connection connection, boolean autoCommit, PreparedStatement statement,
+      ResultSet resultSet, long startNanos, LocalDateTime startedAt) {
+    this.queryType = queryType;
+    this.fetchSize = fetchSize;
+    this.mapper = mapper;
+    this.connection = connection;
+    this.autoCommit = autoCommit;
+    this.statement = statement;
+    this.resultSet = resultSet;
+    this.startNanos = startNanos;
+    this.startedAt = startedAt;
+  }
+
+  /**
+   * Выполняет запрос и открывает курсор. Ошибка выполнения запроса выбрасывается сразу,
+   * а не при первом чтении.
+   */
+  public static <T> CursorStream<T> open(ConnectionProvider connectionProvider, String queryType,
+      String sql, int fetchSize, StatementBinder binder, RowMapper<T> mapper)
+      throws SQLException {
+    long startNanos = System.nanoTime();
+    LocalDateTime startedAt = LocalDateTime.now();
+    Connection conn = connectionProvider.getConnection();
+    boolean autoCommit = true;
+    PreparedStatement stmt = null;
+    try {
+      autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+      stmt = conn.prepareStatement(sql);
+      stmt.setFetchSize(fetchSize);
+      binder.bind(stmt);
+      ResultSet rs = stmt.executeQuery();
+      return new CursorStream<>(queryType, fetchSize, mapper, conn, autoCommit, stmt, rs,
+          startNanos, startedAt);
+    } catch (SQLException | RuntimeException e) {
+      if (stmt != null) {
+        stmt.close();
+      }
+      conn.rollback();
+      conn.setAutoCommit(autoCommit);
+      conn.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Последовательный поток строк; закрытие потока закрывает курсор.
+   */
+  public Stream<T> stream() {
+    return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL),
+            false)
+        .onClose(this::close);
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (hasNext == null) {
+      if (closed.get()) {
+        return false;
+      }
+      try {
+        hasNext = resultSet.next();
+      } catch (SQLException e) {
+        close();
+        throw new DataAccessException("Ошибка чтения курсора " + queryType, e);
+      }
+      if (hasNext && rows == 0) {
+        firstRowNanos = System.nanoTime();
+      }
+      if (!hasNext) {
+        completed = true;
+        close();
+      }
+    }
+    return hasNext;
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    hasNext = null;
+    try {
+      T row = mapper.map(resultSet);
+      rows++;
+      return row;
+    } catch (SQLException e) {
+      close();
+      throw new DataAccessException("Ошибка чтения строки курсора " + queryType, e);
+    }
+  }
+
+  public StreamingMetrics getMetrics() {
+    long end = endNanos != 0 ? endNanos : System.nanoTime();
+    long elapsedNanos = end - startNanos;
+    return StreamingMetrics.builder()
+        .queryType(queryType)
+        .fetchSize(fetchSize)
+        .rowsStreamed(rows)
+        .timeToFirstRowMs(firstRowNanos != 0
+            ? TimeUnit.NANOSECONDS.toMillis(firstRowNanos - startNanos) : null)
+        .elapsedMs(TimeUnit.NANOSECONDS.toMillis(elapsedNanos))
+        .rowsPerSecond(elapsedNanos == 0 ? 0.0 : rows * 1_000_000_000.0 / elapsedNanos)
+        .completed(completed)
+        .startedAt(startedAt)
+        .build();
+  }
+
+  @Override
+  public void close() {
+    if (!closed.compareAndSet(false, true)) {
+      return;
+    }
+    endNanos = System.nanoTime();
+    try {
+      resultSet.close();
+      statement.close();
+      // Курсор только читал данные, фиксировать нечего
+      connection.rollback();
+      connection.setAutoCommit(autoCommit);
+    } catch (SQLException e) {
+      log.warn("Ошибка закрытия курсора {}: {}", queryType, e.getMessage());
+    } finally {
+      try {
+        connection.close();
+      } catch (SQLException e) {
+        log.warn("Ошибка возврата соединения после курсора {}", queryType, e);
+      }
+    }
+
+    StreamingMetrics metrics = getMetrics();
+    log.info("Потоковое чтение {}: {} строк за {} мс ({} строк/с), первая строка через {} мс{}",
+        queryType, metrics.getRowsStreamed(), metrics.getElapsedMs(),
+        String.format("%.0f", metrics.getRowsPerSecond()), metrics.getTimeToFirstRowMs(),
+        completed ? "" : ", прервано до конца");
+  }
+}
@@ -0,0 +1,522 @@
+package ru.mentee.power.utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.connection.ConnectionProvider;
+import ru.mentee.power.exception.DataAccessException;
+import ru.mentee.power.model.analytics.IndexBuildProgress;
+import ru.mentee.power.model.analytics.IndexBuildRequest;
+import ru.mentee.power.model.analytics.IndexBuildResult;
+import ru.mentee.power.model.analytics.IndexBuildStatus;
+import ru.mentee.power.model.analytics.PartitionInfo;
+
+/**
+ * Строит индексы через CREATE INDEX CONCURRENTLY, не блокируя запись в таблицы.
+ *
+ * <p>CONCURRENTLY нельзя выполнять в транзакции и в многооператорной строке, поэтому каждый
+ * индекс строится отдельной командой в режиме autocommit на своем соединении. Два построения
+ * CONCURRENTLY на одной таблице конфликтуют по блокировке SHARE UPDATE EXCLUSIVE и все равно
+ * выполнились бы по очереди, поэтому индексы группируются по таблицам: таблицы обрабатываются
+ * параллельно (не больше {@code parallelism} одновременно), индексы одной таблицы - по очереди.
+ *
+ * <p>Прерванное построение оставляет индекс в состоянии INVALID, который не используется
+ * планировщиком, но обновляется при каждой записи. Такие остатки удаляются через
+ * DROP INDEX CONCURRENTLY перед построением и после неудачной попытки, после чего построение
+ * повторяется. Прогресс читается из pg_stat_progress_create_index отдельным соединением.
+ *
+ * <p>На секционированной таблице CONCURRENTLY не поддерживается, поэтому индекс создается
+ * на самой таблице через ON ONLY (мгновенно, без данных и в состоянии INVALID), на каждой
+ * секции строится конкурентно как на отдельной таблице, и готовые индексы секций
+ * присоединяются через ALTER INDEX ... ATTACH PARTITION. Когда присоединены индексы всех
+ * секций, индекс таблицы становится валидным, а новые секции получают его автоматически.
+ *
+ * <p>Если индекс с тем же именем уже есть, но в нем меньше колонок INCLUDE, чем в запросе
+ * (например, он был создан до того, как стал покрывающим), рядом строится замена, старый
+ * индекс удаляется и замена получает его имя. Запросы все это время обслуживаются старым
+ * индексом.
+ */
+@Slf4j
+public class IndexBuildOrchestrator {
+
+  public static final int DEFAULT_PARALLELISM = 3;
+  public static final int DEFAULT_MAX_ATTEMPTS = 2;
+  private static final long PROGRESS_POLL_INTERVAL_MS = 1_000;
+
+  private static final String BACKEND_PID_SQL = "SELECT pg_backend_pid()";
+  private static final String INDEX_VALIDITY_SQL = """
+        SELECT i.indisvalid
+        FROM pg_index i
+        JOIN pg_class c ON c.oid = i.indexrelid
+        WHERE c.relname = ?
+          AND pg_catalog.pg_table_is_visible(c.oid)
+        """;
+  private static final String INCLUDED_COLUMNS_SQL = """
+        SELECT i.indnatts - i.indnkeyatts
+        FROM pg_index i
+        JOIN pg_class c ON c.oid = i.indexrelid
+        WHERE c.relname = ?
+          AND pg_catalog.pg_table_is_visible(c.oid)
+        """;
+  private static final String REPLACEMENT_SUFFIX = "_ccnew";
+  private static final String INDEX_SIZE_SQL = "SELECT pg_relation_size(?::regclass)";
+  private static final String ATTACHED_PARTITIONS_SQL = """
+        SELECT t.relname
+        FROM pg_inherits i
+        JOIN pg_index x ON x.indexrelid = i.inhrelid
+        JOIN pg_class t ON t.oid = x.indrelid
+        WHERE i.inhparent = to_regclass(?)
+        """;
+  private static final int MAX_IDENTIFIER_LENGTH = 63;
+  private static final String PROGRESS_SQL = """
+        SELECT pid, phase, blocks_done, blocks_total, tuples_done, tuples_total
+        FROM pg_stat_progress_create_index
+        """;
+
+  private final ConnectionProvider connectionProvider;
+  private final int parallelism;
+  private final int maxAttempts;
+  private final Consumer<IndexBuildProgress> progressListener;
+  private final Map<Integer, String> activeBuilds = new ConcurrentHashMap<>();
+
+  public IndexBuildOrchestrator(ConnectionProvider connectionProvider) {
+    this(connectionProvider, DEFAULT_PARALLELISM, DEFAULT_MAX_ATTEMPTS,
+        progress -> log.info("Индекс {}: {} ({}%)", progress.getIndexName(),
+            progress.getPhase(), String.format("%.1f", progress.getPercent())));
+  }
+
+  public IndexBuildOrchestrator(ConnectionProvider connectionProvider, int parallelism,
+      int maxAttempts, Consumer<IndexBuildProgress> progressListener) {
+    this.connectionProvider = connectionProvider;
+    this.parallelism = Math.max(1, parallelism);
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.progressListener = progressListener;
+  }
+
+  /**
+   * Строит индексы и возвращает результат по каждому в порядке запросов.
+   */
+  public List<IndexBuildResult> build(List<IndexBuildRequest> requests)
+      throws DataAccessException {
+    Map<IndexBuildRequest, List<IndexBuildRequest>> partitioned = new LinkedHashMap<>();
+    List<IndexBuildRequest> expanded = new ArrayList<>();
+    try (Connection conn = connectionProvider.getConnection()) {
+      conn.setAutoCommit(true);
+      for (IndexBuildRequest request : requests) {
+        if (PartitionCatalog.isPartitioned(conn, request.getTableName())) {
+          List<IndexBuildRequest> children = preparePartitioned(conn, request);
+          partitioned.put(request, children);
+          expanded.addAll(children);
+        } else {
+          expanded.add(request);
+        }
+      }
+    } catch (SQLException e) {
+      throw new DataAccessException("Ошибка подготовки индексов секционированных таблиц", e);
+    }
+
+    Map<String, IndexBuildResult> results = buildAll(expanded);
+
+    List<IndexBuildResult> ordered = new ArrayList<>();
+    for (IndexBuildRequest request : requests) {
+      List<IndexBuildRequest> children = partitioned.get(request);
+      ordered.add(children != null
+          ? attachPartitions(request, children, results)
+          : results.get(request.getIndexName()));
+    }
+    return ordered;
+  }
+
+  private Map<String, IndexBuildResult> buildAll(List<IndexBuildRequest> requests) {
+    Map<String, List<IndexBuildRequest>> byTable = new LinkedHashMap<>();
+    for (IndexBuildRequest request : requests) {
+      byTable.computeIfAbsent(request.getTableName(), table -> new ArrayList<>()).add(request);
+    }
+
+    Map<String, IndexBuildResult> results = new ConcurrentHashMap<>();
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.min(parallelism, Math.max(1, byTable.size())));
+    ScheduledExecutorService progressPoller = Executors.newSingleThreadScheduledExecutor();
+    ProgressMonitor monitor = new ProgressMonitor();
+    try {
+      progressPoller.scheduleWithFixedDelay(monitor::poll,
+          PROGRESS_POLL_INTERVAL_MS, PROGRESS_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+      List<Future<?>> futures = new ArrayList<>();
+      for (List<IndexBuildRequest> tableRequests : byTable.values()) {
+        futures.add(executor.submit(() -> {
+          for (IndexBuildRequest request : tableRequests) {
+            results.put(request.getIndexName(), buildWithRetry(request));
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DataAccessException("Построение индексов прервано");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw new DataAccessException("Ошибка построения индексов: " + e.getCause());
+    } finally {
+      progressPoller.shutdownNow();
+      executor.shutdownNow();
+      monitor.close();
+    }
+    return results;
+  }
+
+  /**
+   * Создает индекс на самой секционированной таблице через ON ONLY и возвращает запросы на
+   * построение индексов секций, к которым индекс таблицы еще не присоединен.
+   */
+  private List<IndexBuildRequest> preparePartitioned(Connection conn, IndexBuildRequest request)
+      throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE INDEX IF NOT EXISTS " + request.getIndexName()
+          + " ON ONLY " + request.getTableName() + " " + request.toDefinitionSql());
+    }
+
+    Set<String> attached = new HashSet<>();
+    try (PreparedStatement stmt = conn.prepareStatement(ATTACHED_PARTITIONS_SQL)) {
+      stmt.setString(1, request.getIndexName());
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          attached.add(rs.getString(1));
+        }
+      }
+    }
+
+    List<IndexBuildRequest> children = new ArrayList<>();
+    for (PartitionInfo partition
+        : PartitionCatalog.listPartitions(conn, request.getTableName())) {
+      if (!attached.contains(partition.getPartitionName())) {
+        children.add(request.toBuilder()
+            .indexName(partitionIndexName(request, partition.getPartitionName()))
+            .tableName(partition.getPartitionName())
+            .build());
+      }
+    }
+    return children;
+  }
+
+  /**
+   * Присоединяет построенные индексы секций к индексу таблицы и сводит результаты в один.
+   */
+  private IndexBuildResult attachPartitions(IndexBuildRequest request,
+      List<IndexBuildRequest> children, Map<String, IndexBuildResult> results) {
+    List<IndexBuildResult> partitionBuilds = new ArrayList<>();
+    List<String> errors = new ArrayList<>();
+    boolean created = false;
+    int attempts = 0;
+    int dropped = 0;
+    long buildTimeMs = 0;
+    long sizeBytes = 0;
+
+    try (Connection conn = connectionProvider.getConnection();
+        Statement stmt = conn.createStatement()) {
+      conn.setAutoCommit(true);
+      for (IndexBuildRequest child : children) {
+        IndexBuildResult build = results.get(child.getIndexName());
+        partitionBuilds.add(build);
+        attempts = Math.max(attempts, build.getAttempts());
+        dropped += build.getInvalidLeftoversDropped();
+        buildTimeMs += build.getBuildTimeMs() != null ? build.getBuildTimeMs() : 0;
+        sizeBytes += build.getSizeBytes() != null ? build.getSizeBytes() : 0;
+        if (build.getStatus() == IndexBuildStatus.FAILED) {
+          errors.add(child.getTableName() + ": " + build.getError());
+          continue;
+        }
+        created |= build.getStatus() == IndexBuildStatus.CREATED;
+        try {
+          stmt.execute("ALTER INDEX " + request.getIndexName()
+              + " ATTACH PARTITION " + child.getIndexName());
+        } catch (SQLException e) {
+          errors.add(child.getTableName() + ": " + e.getMessage());
+        }
+      }
+      if (errors.isEmpty() && !Boolean.TRUE.equals(indexValidity(conn, request.getIndexName()))) {
+        errors.add("index is still invalid after attaching partitions");
+      }
+    } catch (SQLException e) {
+      errors.add(e.getMessage());
+    }
+
+    if (errors.isEmpty()) {
+      log.info("Индекс {} готов на {} секциях {}", request.getIndexName(), children.size(),
+          request.getTableName());
+    } else {
+      log.warn("Индекс {} построен не на всех секциях: {}", request.getIndexName(), errors);
+    }
+    return IndexBuildResult.builder()
+        .indexName(request.getIndexName())
+        .tableName(request.getTableName())
+        .status(!errors.isEmpty() ? IndexBuildStatus.FAILED
+            : created ? IndexBuildStatus.CREATED : IndexBuildStatus.ALREADY_EXISTS)
+        .attempts(attempts)
+        .invalidLeftoversDropped(dropped)
+        .buildTimeMs(buildTimeMs)
+        .sizeBytes(sizeBytes)
+        .error(errors.isEmpty() ? null : String.join("; ", errors))
+        .partitionBuilds(partitionBuilds)
+        .build();
+  }
+
+  /**
+   * Имя индекса секции: имя индекса таблицы и суффикс секции (orders_p202401 - _p202401),
+   * укороченные до предельной длины идентификатора.
+   */
+  private static String partitionIndexName(IndexBuildRequest request, String partitionName) {
+    String suffix = partitionName.startsWith(request.getTableName() + "_")
+        ? partitionName.substring(request.getTableName().length())
+        : "_" + partitionName;
+    String base = request.getIndexName();
+    return base.substring(0, Math.min(base.length(), MAX_IDENTIFIER_LENGTH - suffix.length()))
+        + suffix;
+  }
+
+  private IndexBuildResult buildWithRetry(IndexBuildRequest request) {
+    IndexBuildResult.IndexBuildResultBuilder result = IndexBuildResult.builder()
+        .indexName(request.getIndexName())
+        .tableName(request.getTableName());
+    int dropped = 0;
+    String lastError = null;
+
+    try (Connection conn = connectionProvider.getConnection()) {
+      conn.setAutoCommit(true);
+      int pid = backendPid(conn);
+
+      for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+        Boolean valid = indexValidity(conn, request.getIndexName());
+        if (Boolean.TRUE.equals(valid)) {
+          if (attempt == 1 && lacksIncludedColumns(conn, request)) {
+            return replace(conn, pid, request, result);
+          }
+          if (attempt == 1) {
+            return result.status(IndexBuildStatus.ALREADY_EXISTS).attempts(0)
+                .sizeBytes(indexSize(conn, request.getIndexName())).build();
+          }
+          break;
+        }
+        if (Boolean.FALSE.equals(valid)) {
+          log.warn("Индекс {} в состоянии INVALID, удаляется перед построением",
+              request.getIndexName());
+          dropConcurrently(conn, request.getIndexName());
+          dropped++;
+        }
+
+        long start = System.nanoTime();
+        activeBuilds.put(pid, request.getIndexName());
+        try (Statement stmt = conn.createStatement()) {
+          stmt.execute(request.toCreateConcurrentlySql());
+          long buildTimeMs = (System.nanoTime() - start) / 1_000_000;
+          log.info("Индекс {} построен за {} мс", request.getIndexName(), buildTimeMs);
+          return result.status(IndexBuildStatus.CREATED)
+              .attempts(attempt)
+              .invalidLeftoversDropped(dropped)
+              .buildTimeMs(buildTimeMs)
+              .sizeBytes(indexSize(conn, request.getIndexName()))
+              .build();
+        } catch (SQLException e) {
+          lastError = e.getMessage();
+          log.warn("Попытка {} построения {} не удалась: {}",
+              attempt, request.getIndexName(), e.getMessage());
+        } finally {
+          activeBuilds.remove(pid);
+        }
+      }
+
+      if (Boolean.FALSE.equals(indexValidity(conn, request.getIndexName()))) {
+        dropConcurrently(conn, request.getIndexName());
+        dropped++;
+      }
+    } catch (SQLException e) {
+      lastError = e.getMessage();
+      log.error("Ошибка построения индекса {}", request.getIndexName(), e);
+    }
+
+    return result.status(IndexBuildStatus.FAILED)
+        .attempts(maxAttempts)
+        .invalidLeftoversDropped(dropped)
+        .error(lastError)
+        .build();
+  }
+
+  /**
+   * Строит рядом индекс с полным определением и подменяет им существующий.
+   */
+  private IndexBuildResult replace(Connection conn, int pid, IndexBuildRequest request,
+      IndexBuildResult.IndexBuildResultBuilder result) throws SQLException {
+    String base = request.getIndexName();
+    IndexBuildRequest replacement = request.toBuilder()
+        .indexName(base.substring(0,
+            Math.min(base.length(), MAX_IDENTIFIER_LENGTH - REPLACEMENT_SUFFIX.length()))
+            + REPLACEMENT_SUFFIX)
+        .build();
+    log.info("Индекс {} без колонок INCLUDE {}, строится замена {}",
+        base, request.getIncludeColumns(), replacement.getIndexName());
+    int dropped = indexValidity(conn, replacement.getIndexName()) != null ? 1 : 0;
+    dropConcurrently(conn, replacement.getIndexName());
+
+    long start = System.nanoTime();
+    activeBuilds.put(pid, replacement.getIndexName());
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute(replacement.toCreateConcurrentlySql());
+      dropConcurrently(conn, base);
+      stmt.execute("ALTER INDEX " + replacement.getIndexName() + " RENAME TO " + base);
+      long buildTimeMs = (System.nanoTime() - start) / 1_000_000;
+      log.info("Индекс {} перестроен за {} мс", base, buildTimeMs);
+      return result.status(IndexBuildStatus.CREATED)
+          .attempts(1)
+          .invalidLeftoversDropped(dropped)
+          .buildTimeMs(buildTimeMs)
+          .sizeBytes(indexSize(conn, base))
+          .build();
+    } catch (SQLException e) {
+      log.warn("Замена индекса {} не удалась: {}", base, e.getMessage());
+      // Если старый индекс уже удален, замена остается под временным именем
+      if (indexValidity(conn, base) != null) {
+        dropConcurrently(conn, replacement.getIndexName());
+      }
+      return result.status(IndexBuildStatus.FAILED)
+          .attempts(1)
+          .invalidLeftoversDropped(dropped)
+          .error(e.getMessage())
+          .build();
+    } finally {
+      activeBuilds.remove(pid);
+    }
+  }
+
+  private boolean lacksIncludedColumns(Connection conn, IndexBuildRequest request)
+      throws SQLException {
+    if (request.getIncludeColumns() == null || request.getIncludeColumns().isEmpty()) {
+      return false;
+    }
+    try (PreparedStatement stmt = conn.prepareStatement(INCLUDED_COLUMNS_SQL)) {
+      stmt.setString(1, request.getIndexName());
+      try (ResultSet rs = stmt.executeQuery()) {
+        return rs.next() && rs.getInt(1) < request.getIncludeColumns().size();
+      }
+    }
+  }
+
+  private int backendPid(Connection conn) throws SQLException {
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(BACKEND_PID_SQL)) {
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+
+  /**
+   * Возвращает валидность индекса или null, если индекса нет.
+   */
+  private Boolean indexValidity(Connection conn, String indexName) throws SQLException {
+    try (PreparedStatement stmt = conn.prepareStatement(INDEX_VALIDITY_SQL)) {
+      stmt.setString(1, indexName);
+      try (ResultSet rs = stmt.executeQuery()) {
+        return rs.next() ? rs.getBoolean(1) : null;
+      }
+    }
+  }
+
+  private long indexSize(Connection conn, String indexName) throws SQLException {
+    try (PreparedStatement stmt = conn.prepareStatement(INDEX_SIZE_SQL)) {
+      stmt.setString(1, indexName);
+      try (ResultSet rs = stmt.executeQuery()) {
+        return rs.next() ? rs.getLong(1) : 0L;
+      }
+    }
+  }
+
+  private void dropConcurrently(Connection conn, String indexName) throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("DROP INDEX CONCURRENTLY IF EXISTS " + indexName);
+    }
+  }
+
+  /**
+   * Опрашивает pg_stat_progress_create_index на отдельном соединении, которое берется
+   * при первом опросе. Если соединение получить не удалось, прогресс не публикуется.
+   */
+  private final class ProgressMonitor implements AutoCloseable {
+    private final ReentrantLock lock = new ReentrantLock();
+    private Connection connection;
+    private boolean disabled;
+
+    private void poll() {
+      lock.lock();
+      try {
+        if (!disabled && !activeBuilds.isEmpty()) {
+          publishProgress();
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void publishProgress() {
+      try {
+        if (connection == null) {
+          connection = connectionProvider.getConnection();
+        }
+        try (Statement stmt = connection.createStatement();
+            ResultSet rs = stmt.executeQuery(PROGRESS_SQL)) {
+          while (rs.next()) {
+            String indexName = activeBuilds.get(rs.getInt("pid"));
+            if (indexName != null) {
+              progressListener.accept(IndexBuildProgress.builder()
+                  .indexName(indexName)
+                  .phase(rs.getString("phase"))
+                  .blocksDone(rs.getLong("blocks_done"))
+                  .blocksTotal(rs.getLong("blocks_total"))
+                  .tuplesDone(rs.getLong("tuples_done"))
+                  .tuplesTotal(rs.getLong("tuples_total"))
+                  .build());
+            }
+          }
+        }
+      } catch (SQLException | RuntimeException e) {
+        log.warn("Прогресс построения индексов недоступен: {}", e.getMessage());
+        disabled = true;
+      }
+    }
+
+    @Override
+    public void close() {
+      lock.lock();
+      try {
+        disabled = true;
+        if (connection != null) {
+          connection.close();
+        }
+      } catch (SQLException e) {
+        log.warn("Ошибка закрытия соединения мониторинга", e);
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+}
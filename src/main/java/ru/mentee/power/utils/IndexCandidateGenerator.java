@@ -0,0 +1,156 @@
+package ru.mentee.power.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import ru.mentee.power.model.analytics.IndexCandidate;
+import ru.mentee.power.model.analytics.PlanNode;
+
+/**
+ * Строит кандидатов в индексы по узлам Seq Scan с фильтром.
+ *
+ * <p>Фильтр разбивается на условия верхнего уровня, соединенные AND. Колонки с равенством
+ * (= и = ANY) идут в начало составного индекса, затем одна колонка с диапазоном, как требует
+ * B-tree. Условие на булеву колонку (например, is_active) выносится в предикат частичного
+ * индекса. Условия с OR и выражениями над несколькими колонками пропускаются.
+ */
+public class IndexCandidateGenerator {
+
+  private static final int MAX_IDENTIFIER_LENGTH = 63;
+  private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+  private static final Pattern EQUALITY = Pattern.compile("(?<![<>!])=(?!\\s*false)");
+  private static final Pattern RANGE = Pattern.compile("[<>]");
+  private static final Pattern BOOLEAN_TRUE = Pattern.compile(
+      "^\\(*\\s*(?:[a-z_][a-z0-9_]*\\.)?[a-z_][a-z0-9_]*\\s*\\)*(?:\\s*=\\s*true\\s*\\)*)?$");
+
+  /**
+   * Возвращает кандидатов по всем Seq Scan с фильтром, без дублей.
+   */
+  public List<IndexCandidate> generate(List<PlanNode> nodes) {
+    Map<String, IndexCandidate> candidates = new LinkedHashMap<>();
+    for (PlanNode node : nodes) {
+      if (!"Seq Scan".equals(node.getNodeType())
+          || node.getRelation() == null || node.getFilter() == null) {
+        continue;
+      }
+      for (IndexCandidate candidate : candidatesFor(node)) {
+        candidates.putIfAbsent(candidate.toCreateSql(), candidate);
+      }
+    }
+    return new ArrayList<>(candidates.values());
+  }
+
+  private List<IndexCandidate> candidatesFor(PlanNode node) {
+    Set<String> equalityColumns = new LinkedHashSet<>();
+    Set<String> rangeColumns = new LinkedHashSet<>();
+    List<String> predicates = new ArrayList<>();
+
+    for (String conjunct : splitConjuncts(node.getFilter())) {
+      String stripped = STRING_LITERAL.matcher(conjunct).replaceAll("''");
+      if (stripped.toLowerCase().contains(" or ") || stripped.contains("<>")) {
+        continue;
+      }
+      List<String> columns = CardinalityEstimateAnalyzer.extractColumns(
+          stripped, node.getAlias());
+      if (columns.size() != 1) {
+        continue;
+      }
+      String column = columns.get(0);
+      if (BOOLEAN_TRUE.matcher(stripped.trim()).matches()) {
+        predicates.add(column);
+      } else if (EQUALITY.matcher(stripped).find() && !RANGE.matcher(stripped).find()) {
+        equalityColumns.add(column);
+      } else if (RANGE.matcher(stripped).find()) {
+        rangeColumns.add(column);
+      }
+    }
+
+    List<String> keyColumns = new ArrayList<>(equalityColumns);
+    rangeColumns.stream()
+        .filter(column -> !equalityColumns.contains(column))
+        .findFirst()
+        .ifPresent(keyColumns::add);
+    if (keyColumns.isEmpty()) {
+      return List.of();
+    }
+    String predicate = predicates.isEmpty() ? null : String.join(" AND ", predicates);
+
+    List<IndexCandidate> result = new ArrayList<>();
+    result.add(candidate(node, keyColumns, null));
+    if (predicate != null) {
+      result.add(candidate(node, keyColumns, predicate));
+    }
+    if (keyColumns.size() > 1) {
+      result.add(candidate(node, keyColumns.subList(0, 1), predicate));
+    }
+    return result;
+  }
+
+  private IndexCandidate candidate(PlanNode node, List<String> columns, String predicate) {
+    String name = "idx_" + node.getRelation() + "_" + String.join("_", columns)
+        + (predicate != null ? "_partial" : "");
+    if (name.length() > MAX_IDENTIFIER_LENGTH) {
+      name = name.substring(0, MAX_IDENTIFIER_LENGTH);
+    }
+    return IndexCandidate.builder()
+        .indexName(name)
+        .tableName(node.getRelation())
+        .columns(List.copyOf(columns))
+        .predicate(predicate)
+        .sourceFilter(node.getFilter())
+        .build();
+  }
+
+  /**
+   * Делит условие на части, соединенные AND на верхнем уровне скобок.
+   * PostgreSQL оборачивает весь фильтр в скобки, поэтому внешняя пара снимается.
+   */
+  static List<String> splitConjuncts(String filter) {
+    String condition = filter.trim();
+    while (condition.startsWith("(") && condition.endsWith(")")
+        && matchingParen(condition, 0) == condition.length() - 1) {
+      condition = condition.substring(1, condition.length() - 1).trim();
+    }
+
+    List<String> parts = new ArrayList<>();
+    int depth = 0;
+    boolean quoted = false;
+    int start = 0;
+    for (int i = 0; i < condition.length(); i++) {
+      char c = condition.charAt(i);
+      if (c == '\'') {
+        quoted = !quoted;
+      } else if (!quoted && c == '(') {
+        depth++;
+      } else if (!quoted && c == ')') {
+        depth--;
+      } else if (!quoted && depth == 0 && condition.startsWith(" AND ", i)) {
+        parts.add(condition.substring(start, i).trim());
+        start = i + " AND ".length();
+        i = start - 1;
+      }
+    }
+    parts.add(condition.substring(start).trim());
+    return parts;
+  }
+
+  private static int matchingParen(String text, int open) {
+    int depth = 0;
+    boolean quoted = false;
+    for (int i = open; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '\'') {
+        quoted = !quoted;
+      } else if (!quoted && c == '(') {
+        depth++;
+      } else if (!quoted && c == ')' && --depth == 0) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
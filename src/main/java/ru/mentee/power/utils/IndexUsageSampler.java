@@ -0,0 +1,394 @@
+package ru.mentee.power.utils;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.connection.ConnectionProvider;
+import ru.mentee.power.model.analytics.IndexUsageRate;
+import ru.mentee.power.model.analytics.TableActivityRate;
+
+/**
+ * Периодически снимает счетчики pg_stat_user_indexes и pg_stat_user_tables в кольцевой буфер
+ * в памяти и считает по нему скорости за окно: сканирования и кортежи в секунду, рост размера.
+ *
+ * <p>Счетчики статистики накопительные и обнуляются через pg_stat_reset или при сбросе
+ * статистики после аварийного перезапуска, поэтому одно чтение не говорит, как часто индекс
+ * используется сейчас. Разность двух снимков дает фактическую скорость; если счетчик между
+ * снимками уменьшился, считается, что он был сброшен, и приращением считается новое значение.
+ * Индексы и таблицы различаются по OID, так что пересозданный индекс с тем же именем
+ * учитывается только с момента появления.
+ *
+ * <p>Вердикт «RARELY USED» выдается только если индекс наблюдался не меньше
+ * {@code minVerdictWindow} и за это время сканировался реже {@code rareScansPerDay} раз в сутки.
+ */
+@Slf4j
+public class IndexUsageSampler implements AutoCloseable {
+
+  public static final Duration DEFAULT_INTERVAL = Duration.ofMinutes(5);
+  public static final int DEFAULT_CAPACITY = 2_016;
+  public static final Duration DEFAULT_MIN_VERDICT_WINDOW = Duration.ofDays(1);
+  public static final double DEFAULT_RARE_SCANS_PER_DAY = 1.0;
+  private static final double LOW_SELECTIVITY_THRESHOLD = 0.1;
+  private static final double SECONDS_PER_DAY = 86_400.0;
+
+  public static final String VERDICT_INSUFFICIENT_HISTORY = "INSUFFICIENT HISTORY - KEEP SAMPLING";
+  public static final String VERDICT_RARELY_USED = "RARELY USED - CONSIDER DROPPING";
+  public static final String VERDICT_LOW_SELECTIVITY = "LOW SELECTIVITY - REVIEW NEEDED";
+  public static final String VERDICT_HEALTHY = "HEALTHY - KEEP USING";
+
+  private static final String INDEX_COUNTERS_SQL = """
+        SELECT s.indexrelid,
+               s.schemaname || '.' || s.indexrelname AS index_name,
+               s.relname AS table_name,
+               s.idx_scan,
+               s.idx_tup_read,
+               s.idx_tup_fetch,
+               pg_relation_size(s.indexrelid) AS size_bytes
+        FROM pg_stat_user_indexes s
+        """;
+  private static final String TABLE_COUNTERS_SQL = """
+        SELECT t.relid,
+               t.relname AS table_name,
+               t.seq_scan,
+               COALESCE(t.idx_scan, 0) AS idx_scan,
+               t.n_tup_ins,
+               t.n_tup_upd,
+               t.n_tup_hot_upd,
+               t.n_tup_del,
+               t.n_live_tup,
+               pg_table_size(t.relid) AS size_bytes
+        FROM pg_stat_user_tables t
+        """;
+
+  private final ConnectionProvider connectionProvider;
+  private final Duration interval;
+  private final Duration minVerdictWindow;
+  private final double rareScansPerDay;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Snapshot[] buffer;
+  private int head;
+  private int size;
+  private ScheduledExecutorService scheduler;
+
+  public IndexUsageSampler(ConnectionProvider connectionProvider) {
+    this(connectionProvider, DEFAULT_INTERVAL, DEFAULT_CAPACITY,
+        DEFAULT_MIN_VERDICT_WINDOW, DEFAULT_RARE_SCANS_PER_DAY);
+  }
+
+  public IndexUsageSampler(ConnectionProvider connectionProvider, Duration interval,
+      int capacity, Duration minVerdictWindow, double rareScansPerDay) {
+    this.connectionProvider = connectionProvider;
+    this.interval = interval;
+    this.buffer = new Snapshot[Math.max(2, capacity)];
+    this.minVerdictWindow = minVerdictWindow;
+    this.rareScansPerDay = rareScansPerDay;
+  }
+
+  /**
+   * Запускает фоновое снятие снимков. Первый снимок снимается сразу. Повторный вызов
+   * ничего не делает.
+   */
+  public void start() {
+    lock.lock();
+    try {
+      if (scheduler != null) {
+        return;
+      }
+      scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "index-usage-sampler");
+        thread.setDaemon(true);
+        return thread;
+      });
+      scheduler.scheduleAtFixedRate(this::sampleQuietly,
+          0, interval.toMillis(), TimeUnit.MILLISECONDS);
+      log.info("Сбор статистики индексов запущен: интервал {}, буфер {} снимков",
+          interval, buffer.length);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public boolean isRunning() {
+    lock.lock();
+    try {
+      return scheduler != null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Снимает снимок немедленно, не дожидаясь расписания.
+   */
+  public void sample() throws SQLException {
+    Map<Long, IndexCounters> indexes = new HashMap<>();
+    Map<Long, TableCounters> tables = new HashMap<>();
+    try (Connection conn = connectionProvider.getConnection();
+        Statement stmt = conn.createStatement()) {
+      try (ResultSet rs = stmt.executeQuery(INDEX_COUNTERS_SQL)) {
+        while (rs.next()) {
+          indexes.put(rs.getLong("indexrelid"), new IndexCounters(
+              rs.getString("index_name"),
+              rs.getString("table_name"),
+              rs.getLong("idx_scan"),
+              rs.getLong("idx_tup_read"),
+              rs.getLong("idx_tup_fetch"),
+              rs.getLong("size_bytes")));
+        }
+      }
+      try (ResultSet rs = stmt.executeQuery(TABLE_COUNTERS_SQL)) {
+        while (rs.next()) {
+          tables.put(rs.getLong("relid"), new TableCounters(
+              rs.getString("table_name"),
+              rs.getLong("seq_scan"),
+              rs.getLong("idx_scan"),
+              rs.getLong("n_tup_ins"),
+              rs.getLong("n_tup_upd"),
+              rs.getLong("n_tup_hot_upd"),
+              rs.getLong("n_tup_del"),
+              rs.getLong("n_live_tup"),
+              rs.getLong("size_bytes")));
+        }
+      }
+    }
+    add(new Snapshot(System.nanoTime(), LocalDateTime.now(), indexes, tables));
+  }
+
+  private void sampleQuietly() {
+    try {
+      sample();
+    } catch (SQLException | RuntimeException e) {
+      log.warn("Не удалось снять статистику индексов: {}", e.getMessage());
+    }
+  }
+
+  private void add(Snapshot snapshot) {
+    lock.lock();
+    try {
+      buffer[(head + size) % buffer.length] = snapshot;
+      if (size < buffer.length) {
+        size++;
+      } else {
+        head = (head + 1) % buffer.length;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getSampleCount() {
+    lock.lock();
+    try {
+      return size;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Возвращает отрезок времени, который покрывают снимки в буфере.
+   */
+  public Duration getObservedWindow() {
+    List<Snapshot> snapshots = snapshotsWithin(null);
+    if (snapshots.size() < 2) {
+      return Duration.ZERO;
+    }
+    return Duration.ofNanos(snapshots.get(snapshots.size() - 1).nanos - snapshots.get(0).nanos);
+  }
+
+  /**
+   * Скорости использования индексов за последние {@code window} (null - за весь буфер),
+   * по убыванию числа сканирований в секунду. Индексы, которые попали меньше чем в два
+   * снимка окна, не возвращаются.
+   */
+  public List<IndexUsageRate> getIndexRates(Duration window) {
+    List<Snapshot> snapshots = snapshotsWithin(window);
+    if (snapshots.size() < 2) {
+      return new ArrayList<>();
+    }
+    Snapshot last = snapshots.get(snapshots.size() - 1);
+
+    List<IndexUsageRate> rates = new ArrayList<>();
+    for (Map.Entry<Long, IndexCounters> entry : last.indexes.entrySet()) {
+      Snapshot first = firstContaining(snapshots, s -> s.indexes.containsKey(entry.getKey()));
+      if (first == last) {
+        continue;
+      }
+      IndexCounters from = first.indexes.get(entry.getKey());
+      IndexCounters to = entry.getValue();
+      double seconds = (last.nanos - first.nanos) / 1_000_000_000.0;
+      long scans = delta(from.scans, to.scans);
+      long tuplesRead = delta(from.tuplesRead, to.tuplesRead);
+      long tuplesFetched = delta(from.tuplesFetched, to.tuplesFetched);
+
+      rates.add(IndexUsageRate.builder()
+          .indexName(to.indexName)
+          .tableName(to.tableName)
+          .scansPerSecond(scans / seconds)
+          .tuplesReadPerSecond(tuplesRead / seconds)
+          .tuplesFetchedPerSecond(tuplesFetched / seconds)
+          .sizeGrowthBytesPerHour((to.sizeBytes - from.sizeBytes) / seconds * 3_600)
+          .sizeBytes(to.sizeBytes)
+          .windowSeconds(Math.round(seconds))
+          .sampleCount(countContaining(snapshots, entry.getKey()))
+          .verdict(verdict(seconds, scans, tuplesFetched))
+          .build());
+    }
+    rates.sort((a, b) -> Double.compare(b.getScansPerSecond(), a.getScansPerSecond()));
+    return rates;
+  }
+
+  /**
+   * Скорости чтения и записи по таблицам за последние {@code window} (null - за весь буфер),
+   * по убыванию числа изменяемых строк в секунду.
+   */
+  public List<TableActivityRate> getTableRates(Duration window) {
+    List<Snapshot> snapshots = snapshotsWithin(window);
+    if (snapshots.size() < 2) {
+      return new ArrayList<>();
+    }
+    Snapshot last = snapshots.get(snapshots.size() - 1);
+
+    List<TableActivityRate> rates = new ArrayList<>();
+    for (Map.Entry<Long, TableCounters> entry : last.tables.entrySet()) {
+      Snapshot first = firstContaining(snapshots, s -> s.tables.containsKey(entry.getKey()));
+      if (first == last) {
+        continue;
+      }
+      TableCounters from = first.tables.get(entry.getKey());
+      TableCounters to = entry.getValue();
+      double seconds = (last.nanos - first.nanos) / 1_000_000_000.0;
+
+      rates.add(TableActivityRate.builder()
+          .tableName(to.tableName)
+          .seqScansPerSecond(delta(from.seqScans, to.seqScans) / seconds)
+          .indexScansPerSecond(delta(from.indexScans, to.indexScans) / seconds)
+          .insertsPerSecond(delta(from.inserts, to.inserts) / seconds)
+          .updatesPerSecond(delta(from.updates, to.updates) / seconds)
+          .hotUpdatesPerSecond(delta(from.hotUpdates, to.hotUpdates) / seconds)
+          .deletesPerSecond(delta(from.deletes, to.deletes) / seconds)
+          .sizeGrowthBytesPerHour((to.sizeBytes - from.sizeBytes) / seconds * 3_600)
+          .liveTuples(to.liveTuples)
+          .windowSeconds(Math.round(seconds))
+          .build());
+    }
+    rates.sort((a, b) -> Double.compare(
+        b.getInsertsPerSecond() + b.getUpdatesPerSecond() + b.getDeletesPerSecond(),
+        a.getInsertsPerSecond() + a.getUpdatesPerSecond() + a.getDeletesPerSecond()));
+    return rates;
+  }
+
+  private String verdict(double seconds, long scans, long tuplesFetched) {
+    if (seconds < minVerdictWindow.toSeconds()) {
+      return VERDICT_INSUFFICIENT_HISTORY;
+    }
+    if (scans / seconds * SECONDS_PER_DAY < rareScansPerDay) {
+      return VERDICT_RARELY_USED;
+    }
+    if ((double) tuplesFetched / scans < LOW_SELECTIVITY_THRESHOLD) {
+      return VERDICT_LOW_SELECTIVITY;
+    }
+    return VERDICT_HEALTHY;
+  }
+
+  /**
+   * Приращение накопительного счетчика. Уменьшение означает сброс статистики, и тогда
+   * приращением считается значение после сброса.
+   */
+  private static long delta(long from, long to) {
+    return to >= from ? to - from : to;
+  }
+
+  private List<Snapshot> snapshotsWithin(Duration window) {
+    lock.lock();
+    try {
+      List<Snapshot> result = new ArrayList<>(size);
+      if (size == 0) {
+        return result;
+      }
+      long newest = buffer[(head + size - 1) % buffer.length].nanos;
+      long from = window != null ? newest - window.toNanos() : Long.MIN_VALUE;
+      for (int i = 0; i < size; i++) {
+        Snapshot snapshot = buffer[(head + i) % buffer.length];
+        if (snapshot.nanos >= from) {
+          result.add(snapshot);
+        }
+      }
+      return result;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static Snapshot firstContaining(
+      List<Snapshot> snapshots, Predicate<Snapshot> contains) {
+    for (Snapshot snapshot : snapshots) {
+      if (contains.test(snapshot)) {
+        return snapshot;
+      }
+    }
+    return snapshots.get(snapshots.size() - 1);
+  }
+
+  private static int countContaining(List<Snapshot> snapshots, long indexOid) {
+    int count = 0;
+    for (Snapshot snapshot : snapshots) {
+      if (snapshot.indexes.containsKey(indexOid)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Время последнего снимка или null, если снимков еще нет.
+   */
+  public LocalDateTime getLastSampledAt() {
+    lock.lock();
+    try {
+      return size == 0 ? null : buffer[(head + size - 1) % buffer.length].capturedAt;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      if (scheduler != null) {
+        scheduler.shutdownNow();
+        scheduler = null;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private record Snapshot(long nanos, LocalDateTime capturedAt,
+      Map<Long, IndexCounters> indexes, Map<Long, TableCounters> tables) {
+  }
+
+  private record IndexCounters(String indexName, String tableName, long scans,
+      long tuplesRead, long tuplesFetched, long sizeBytes) {
+  }
+
+  private record TableCounters(String tableName, long seqScans, long indexScans,
+      long inserts, long updates, long hotUpdates, long deletes, long liveTuples,
+      long sizeBytes) {
+  }
+}
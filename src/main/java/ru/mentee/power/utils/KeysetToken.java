@@ -0,0 +1,65 @@
+package ru.mentee.power.utils;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.CRC32;
+
+/**
+ * Непрозрачный токен продолжения для keyset-пагинации: позиция последней строки страницы
+ * (значение сортировки и id) и отпечаток фильтров запроса. Отпечаток не дает продолжить
+ * выборку с другими параметрами, на которых позиция не имеет смысла.
+ */
+public final class KeysetToken {
+
+  private static final String VERSION = "v1";
+  private static final String SEPARATOR = "|";
+
+  private KeysetToken() {
+  }
+
+  /**
+   * Позиция, после которой начинается следующая страница.
+   */
+  public record Position(BigDecimal sortValue, long id) {
+  }
+
+  public static String encode(String scope, Position position) {
+    String raw = String.join(SEPARATOR, VERSION, fingerprint(scope),
+        position.sortValue().toPlainString(), Long.toString(position.id()));
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Разбирает токен, выданный для того же {@code scope}.
+   *
+   * @throws IllegalArgumentException если токен поврежден или выдан для других параметров
+   */
+  public static Position decode(String token, String scope) {
+    String[] parts;
+    try {
+      parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8)
+          .split("\\" + SEPARATOR);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Некорректный токен страницы", e);
+    }
+    if (parts.length != 4 || !VERSION.equals(parts[0])) {
+      throw new IllegalArgumentException("Некорректный токен страницы");
+    }
+    if (!fingerprint(scope).equals(parts[1])) {
+      throw new IllegalArgumentException("Токен страницы выдан для других параметров запроса");
+    }
+    try {
+      return new Position(new BigDecimal(parts[2]), Long.parseLong(parts[3]));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Некорректный токен страницы", e);
+    }
+  }
+
+  private static String fingerprint(String scope) {
+    CRC32 crc = new CRC32();
+    crc.update(scope.getBytes(StandardCharsets.UTF_8));
+    return Long.toHexString(crc.getValue());
+  }
+}
@@ -0,0 +1,121 @@
+package ru.mentee.power.utils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import ru.mentee.power.model.analytics.OrderAnalytics;
+
+/**
+ * Складывает частичные агрегаты заказов, посчитанные по непересекающимся подынтервалам дат,
+ * в результат, совпадающий с одним запросом по всему интервалу.
+ *
+ * <p>COUNT и SUM складываются, MIN и MAX берутся по частям. AVG пересчитывается как
+ * SUM / COUNT(total_amount): AVG в PostgreSQL не учитывает NULL, поэтому делитель - число
+ * непустых сумм, а не строк. Масштаб частного выбирается так же, как в numeric_div
+ * PostgreSQL (select_div_scale), поэтому среднее совпадает и по числу знаков.
+ */
+public final class OrderAnalyticsMerger {
+
+  private static final int NUMERIC_MIN_SIG_DIGITS = 16;
+  private static final int NUMERIC_MAX_DISPLAY_SCALE = 1000;
+  private static final int DEC_DIGITS = 4;
+  private static final BigInteger NBASE = BigInteger.valueOf(10_000);
+
+  private OrderAnalyticsMerger() {
+  }
+
+  /**
+   * Частичный агрегат одной пары (region, status) на одном подынтервале.
+   */
+  public record Partial(String region, String status, long ordersCount, long amountCount,
+      BigDecimal totalRevenue, LocalDateTime firstOrder, LocalDateTime lastOrder) {
+  }
+
+  /**
+   * Объединяет частичные агрегаты и сортирует результат по (region, status), как
+   * ORDER BY исходного запроса.
+   */
+  public static List<OrderAnalytics> merge(List<Partial> partials) {
+    Map<String, Partial> merged = new LinkedHashMap<>();
+    for (Partial partial : partials) {
+      merged.merge(partial.region() + '\u0000' + partial.status(), partial,
+          OrderAnalyticsMerger::combine);
+    }
+
+    List<OrderAnalytics> result = new ArrayList<>(merged.size());
+    for (Partial total : merged.values()) {
+      result.add(OrderAnalytics.builder()
+          .region(total.region())
+          .status(total.status())
+          .ordersCount(total.ordersCount())
+          .totalRevenue(total.totalRevenue())
+          .avgOrderValue(total.totalRevenue() == null || total.amountCount() == 0
+              ? null : average(total.totalRevenue(), total.amountCount()))
+          .firstOrder(total.firstOrder())
+          .lastOrder(total.lastOrder())
+          .build());
+    }
+    result.sort(Comparator.comparing(OrderAnalytics::getRegion)
+        .thenComparing(OrderAnalytics::getStatus));
+    return result;
+  }
+
+  private static Partial combine(Partial a, Partial b) {
+    return new Partial(a.region(), a.status(),
+        a.ordersCount() + b.ordersCount(),
+        a.amountCount() + b.amountCount(),
+        a.totalRevenue() == null ? b.totalRevenue()
+            : b.totalRevenue() == null ? a.totalRevenue() : a.totalRevenue().add(b.totalRevenue()),
+        min(a.firstOrder(), b.firstOrder()),
+        max(a.lastOrder(), b.lastOrder()));
+  }
+
+  /**
+   * Делит сумму на количество с масштабом, который выбрал бы PostgreSQL для numeric / bigint,
+   * и округлением половины от нуля.
+   */
+  static BigDecimal average(BigDecimal sum, long count) {
+    BigDecimal divisor = BigDecimal.valueOf(count);
+    int qweight = weight(sum) - weight(divisor);
+    if (firstDigit(sum) <= firstDigit(divisor)) {
+      qweight--;
+    }
+    int rscale = NUMERIC_MIN_SIG_DIGITS - qweight * DEC_DIGITS;
+    rscale = Math.max(rscale, Math.max(sum.scale(), 0));
+    rscale = Math.min(rscale, NUMERIC_MAX_DISPLAY_SCALE);
+    return sum.divide(divisor, rscale, RoundingMode.HALF_UP);
+  }
+
+  /**
+   * Вес старшей цифры числа в системе счисления по основанию 10000, как в типе numeric.
+   */
+  private static int weight(BigDecimal value) {
+    if (value.signum() == 0) {
+      return 0;
+    }
+    int exponent = value.precision() - value.scale() - 1;
+    return Math.floorDiv(exponent, DEC_DIGITS);
+  }
+
+  private static int firstDigit(BigDecimal value) {
+    if (value.signum() == 0) {
+      return 0;
+    }
+    BigDecimal shifted = value.abs().movePointLeft(weight(value) * DEC_DIGITS);
+    return shifted.toBigInteger().mod(NBASE).intValue();
+  }
+
+  private static LocalDateTime min(LocalDateTime a, LocalDateTime b) {
+    return a == null ? b : b == null || a.isBefore(b) ? a : b;
+  }
+
+  private static LocalDateTime max(LocalDateTime a, LocalDateTime b) {
+    return a == null ? b : b == null || a.isAfter(b) ? a : b;
+  }
+}
@@ -0,0 +1,714 @@
+package ru.mentee.power.utils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyOut;
+import ru.mentee.power.connection.ConnectionProvider;
+import ru.mentee.power.model.analytics.OrderAnalytics;
+
+/**
+ * Колоночный снимок заказов в памяти JVM для аналитики по (region, status) без обращения к базе.
+ * Регион и статус хранятся кодами словаря в short[], created_at - микросекундами эпохи в long[],
+ * total_amount - копейками в long[]. NULL кодируется значением, которое не проходит ни один
+ * фильтр, поэтому результат совпадает с ORDER_ANALYTICS_BASE_SQL вплоть до масштаба AVG.
+ *
+ * <p>Снимок загружается целиком через COPY и дальше обновляется приращениями: перечитываются
+ * строки с id больше водяного знака и строки, созданные не раньше чем за {@code lateRowWindow}
+ * до самого позднего created_at снимка. Второе условие подбирает заказы, закоммиченные позже
+ * заказов с большими id, смену статуса или суммы у недавних заказов и перенос created_at
+ * старого заказа в окно. Прочие изменения и удаления более старых заказов приращения не
+ * видят, поэтому не реже чем раз в {@code reloadInterval} обновление перечитывает таблицу
+ * целиком ({@link #reload()}): такие изменения отражаются в снимке не позже чем через
+ * reloadInterval плюс интервал обновления и время загрузки. Время последней полной загрузки
+ * сохраняется в файле снимка, поэтому восстановление из файла этот срок не продлевает.
+ *
+ * <p>Агрегация идет параллельно по блокам строк в общем ForkJoinPool под блокировкой чтения.
+ * Обновление читает строки из базы без блокировки и применяет их под блокировкой записи.
+ */
+@Slf4j
+public class OrderColumnarSnapshot implements AutoCloseable {
+
+  private static final int AMOUNT_SCALE = 2;
+  private static final long NULL_VALUE = Long.MIN_VALUE;
+  private static final short NULL_CODE = -1;
+  private static final int INITIAL_CAPACITY = 1 << 16;
+  private static final int SCAN_BLOCK_ROWS = 1 << 16;
+  private static final long MICROS_PER_SECOND = 1_000_000;
+
+  private static final String SECTION_META = "orders.meta";
+  private static final String SECTION_REGIONS = "orders.regions";
+  private static final String SECTION_STATUSES = "orders.statuses";
+  private static final String SECTION_IDS = "orders.id";
+  private static final String SECTION_CREATED_AT = "orders.created_at";
+  private static final String SECTION_AMOUNTS = "orders.total_amount";
+  private static final String SECTION_REGION_CODES = "orders.region";
+  private static final String SECTION_STATUS_CODES = "orders.status";
+
+  // created_at отдается микросекундами эпохи: это точность timestamp в PostgreSQL, поэтому
+  // MIN/MAX и границы BETWEEN совпадают с базой без округления
+  private static final String COPY_SQL = """
+        COPY (
+            SELECT id,
+                   (extract(epoch FROM created_at) * 1000000)::bigint,
+                   total_amount,
+                   region,
+                   status
+            FROM %s%s
+        ) TO STDOUT (FORMAT csv)
+        """;
+
+  private final ConnectionProvider connectionProvider;
+  private final String tableName;
+  private final long lateRowWindowMicros;
+  private final long reloadIntervalMillis;
+  private final ReentrantReadWriteLock dataLock = new ReentrantReadWriteLock();
+  private final ReentrantLock refreshLock = new ReentrantLock();
+  private ScheduledExecutorService scheduler;
+
+  // Меняются только под refreshLock
+  private Dictionary regionDictionary = new Dictionary("region");
+  private Dictionary statusDictionary = new Dictionary("status");
+
+  // Публикуются под блокировкой записи
+  private Columns columns = new Columns(0);
+  private String[] regionNames = new String[0];
+  private String[] statusNames = new String[0];
+  private int amountScale;
+  private long maxId = NULL_VALUE;
+  private long maxCreatedAt = NULL_VALUE;
+  // Время начала последней полной загрузки, миллисекунды эпохи; меняется под refreshLock
+  private long reloadedAtMillis;
+  private volatile LocalDateTime refreshedAt;
+
+  /**
+   * @param lateRowWindow насколько раньше самого позднего created_at перечитываются строки
+   * @param reloadInterval как часто обновление перечитывает таблицу целиком
+   */
+  public OrderColumnarSnapshot(ConnectionProvider connectionProvider, String tableName,
+      Duration lateRowWindow, Duration reloadInterval) {
+    this.connectionProvider = connectionProvider;
+    this.tableName = tableName;
+    this.lateRowWindowMicros = lateRowWindow.toNanos() / 1_000;
+    this.reloadIntervalMillis = reloadInterval.toMillis();
+  }
+
+  /**
+   * Запускает обновление по расписанию. Первый проход выполняется сразу и загружает снимок,
+   * если он еще пуст. Повторный вызов ничего не делает.
+   */
+  public void start(Duration interval) {
+    refreshLock.lock();
+    try {
+      if (scheduler != null) {
+        return;
+      }
+      scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "columnar-snapshot-refresh");
+        thread.setDaemon(true);
+        return thread;
+      });
+      scheduler.scheduleWithFixedDelay(this::refreshQuietly,
+          0, interval.toMillis(), TimeUnit.MILLISECONDS);
+      log.info("Обновление колоночного снимка {} запущено: интервал {}", tableName, interval);
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  public boolean isLoaded() {
+    return refreshedAt != null;
+  }
+
+  public LocalDateTime getRefreshedAt() {
+    return refreshedAt;
+  }
+
+  public int size() {
+    dataLock.readLock().lock();
+    try {
+      return columns.size;
+    } finally {
+      dataLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Полностью перечитывает таблицу. Запросы до конца загрузки отвечают по прежнему снимку.
+   *
+   * @return число загруженных строк
+   */
+  public long reload() throws SQLException {
+    refreshLock.lock();
+    try {
+      long start = System.nanoTime();
+      long startedAtMillis = System.currentTimeMillis();
+      Dictionary regions = new Dictionary("region");
+      Dictionary statuses = new Dictionary("status");
+      Columns loaded = new Columns(INITIAL_CAPACITY);
+      int scale = copy(null, null, loaded, regions, statuses);
+      loaded.trim();
+      long loadedMaxId = NULL_VALUE;
+      long loadedMaxCreatedAt = NULL_VALUE;
+      for (int i = 0; i < loaded.size; i++) {
+        loadedMaxId = Math.max(loadedMaxId, loaded.ids[i]);
+        loadedMaxCreatedAt = Math.max(loadedMaxCreatedAt, loaded.createdAt[i]);
+      }
+
+      dataLock.writeLock().lock();
+      try {
+        regionDictionary = regions;
+        statusDictionary = statuses;
+        columns = loaded;
+        amountScale = scale;
+        maxId = loadedMaxId;
+        maxCreatedAt = loadedMaxCreatedAt;
+        reloadedAtMillis = startedAtMillis;
+        publish();
+      } finally {
+        dataLock.writeLock().unlock();
+      }
+      log.info("Колоночный снимок {} загружен: {} строк, {} МБ за {} мс", tableName,
+          loaded.size, loaded.sizeBytes() / (1024 * 1024), (System.nanoTime() - start) / 1_000_000);
+      return loaded.size;
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  /**
+   * Дочитывает строки после водяного знака. Пустой снимок, а также снимок, полностью
+   * загруженный больше {@code reloadInterval} назад, загружается целиком.
+   *
+   * @return число добавленных и обновленных строк
+   */
+  public long refresh() throws SQLException {
+    refreshLock.lock();
+    try {
+      if (!isLoaded()
+          || System.currentTimeMillis() - reloadedAtMillis >= reloadIntervalMillis) {
+        return reload();
+      }
+      // maxId и maxCreatedAt меняет только этот поток, блокировка чтения для них не нужна
+      long windowStart = maxCreatedAt == NULL_VALUE
+          ? Long.MAX_VALUE : maxCreatedAt - lateRowWindowMicros;
+      Columns delta = new Columns(1_024);
+      int scale = copy(maxId == NULL_VALUE ? null : maxId, toDateTime(windowStart), delta,
+          regionDictionary, statusDictionary);
+
+      // Строки приращения ищутся по всему снимку, а не только в окне: заказ, у которого
+      // created_at перенесли в окно, уже есть в снимке со старой датой. Индекс строится по
+      // приращению, а снимок просматривается один раз, чтобы не держать индекс по всем id
+      Columns current = columns;
+      Map<Long, Integer> deltaRows = new HashMap<>();
+      for (int i = 0; i < delta.size; i++) {
+        deltaRows.put(delta.ids[i], i);
+      }
+      int[] currentRows = new int[delta.size];
+      Arrays.fill(currentRows, -1);
+      for (int i = 0; i < current.size && !deltaRows.isEmpty(); i++) {
+        Integer deltaRow = deltaRows.get(current.ids[i]);
+        if (deltaRow != null) {
+          currentRows[deltaRow] = i;
+        }
+      }
+
+      int appended = 0;
+      dataLock.writeLock().lock();
+      try {
+        for (int i = 0; i < delta.size; i++) {
+          if (currentRows[i] >= 0) {
+            current.set(currentRows[i], delta, i);
+          } else {
+            current.append(delta, i);
+            appended++;
+          }
+          maxId = Math.max(maxId, delta.ids[i]);
+          maxCreatedAt = Math.max(maxCreatedAt, delta.createdAt[i]);
+        }
+        amountScale = Math.max(amountScale, scale);
+        publish();
+      } finally {
+        dataLock.writeLock().unlock();
+      }
+      log.debug("Колоночный снимок {} обновлен: {} новых, {} перечитанных строк", tableName,
+          appended, delta.size - appended);
+      return delta.size;
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  /**
+   * Пишет загруженный снимок в секции orders.* файла. Обновление на время записи
+   * приостанавливается, запросы выполняются.
+   */
+  public void writeTo(SnapshotFile.Writer writer) throws IOException {
+    refreshLock.lock();
+    try {
+      if (!isLoaded()) {
+        return;
+      }
+      Columns data = columns;
+      writer.longs(SECTION_META,
+          new long[] {data.size, maxId, maxCreatedAt, amountScale, reloadedAtMillis}, 5);
+      writer.strings(SECTION_REGIONS, List.of(regionNames));
+      writer.strings(SECTION_STATUSES, List.of(statusNames));
+      writer.longs(SECTION_IDS, data.ids, data.size);
+      writer.longs(SECTION_CREATED_AT, data.createdAt, data.size);
+      writer.longs(SECTION_AMOUNTS, data.amounts, data.size);
+      writer.shorts(SECTION_REGION_CODES, data.regions, data.size);
+      writer.shorts(SECTION_STATUS_CODES, data.statuses, data.size);
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  /**
+   * Восстанавливает снимок из файла вместе с водяными знаками, так что следующий
+   * {@link #refresh()} дочитывает только строки после записи файла.
+   *
+   * @return false, если в файле нет снимка заказов
+   * @throws IOException если секции повреждены или не согласованы
+   */
+  public boolean restore(SnapshotFile.Reader reader) throws IOException {
+    if (!reader.has(SECTION_META)) {
+      return false;
+    }
+    refreshLock.lock();
+    try {
+      long start = System.nanoTime();
+      long[] meta = reader.longs(SECTION_META);
+      Dictionary regions = Dictionary.of("region", reader.strings(SECTION_REGIONS));
+      Dictionary statuses = Dictionary.of("status", reader.strings(SECTION_STATUSES));
+      Columns restored = new Columns(reader.longs(SECTION_IDS),
+          reader.longs(SECTION_CREATED_AT), reader.longs(SECTION_AMOUNTS),
+          reader.shorts(SECTION_REGION_CODES), reader.shorts(SECTION_STATUS_CODES));
+      if (restored.size != meta[0]) {
+        throw new IOException("Columnar snapshot has " + restored.size
+            + " rows in columns but " + meta[0] + " in metadata");
+      }
+
+      dataLock.writeLock().lock();
+      try {
+        regionDictionary = regions;
+        statusDictionary = statuses;
+        columns = restored;
+        maxId = meta[1];
+        maxCreatedAt = meta[2];
+        amountScale = (int) meta[3];
+        // В файлах без времени загрузки снимок считается устаревшим
+        reloadedAtMillis = meta.length > 4 ? meta[4] : 0;
+        publish();
+      } finally {
+        dataLock.writeLock().unlock();
+      }
+      log.info("Колоночный снимок {} восстановлен из файла: {} строк за {} мс", tableName,
+          restored.size, (System.nanoTime() - start) / 1_000_000);
+      return true;
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  /**
+   * Считает аналитику заказов так же, как ORDER_ANALYTICS_BASE_SQL: created_at BETWEEN
+   * startDate AND endDate по полуночам дат, группировка и сортировка по (region, status).
+   *
+   * @throws IllegalStateException если снимок еще не загружен
+   */
+  public List<OrderAnalytics> aggregate(List<String> regions, List<String> statuses,
+      LocalDate startDate, LocalDate endDate) {
+    if (!isLoaded()) {
+      throw new IllegalStateException("Columnar snapshot of " + tableName + " is not loaded");
+    }
+    long from = toMicros(startDate.atStartOfDay());
+    long to = toMicros(endDate.atStartOfDay());
+
+    dataLock.readLock().lock();
+    try {
+      boolean[] regionMask = mask(regionNames, regions);
+      boolean[] statusMask = mask(statusNames, statuses);
+      Columns data = columns;
+      int size = data.size;
+      int statusCount = statusNames.length;
+      int groups = regionNames.length * statusCount;
+      int blocks = (size + SCAN_BLOCK_ROWS - 1) / SCAN_BLOCK_ROWS;
+
+      GroupTotals totals = IntStream.range(0, blocks).parallel()
+          .mapToObj(block -> scan(data, block * SCAN_BLOCK_ROWS,
+              Math.min(size, (block + 1) * SCAN_BLOCK_ROWS),
+              regionMask, statusMask, statusCount, groups, from, to))
+          .reduce(GroupTotals::merge)
+          .orElseGet(() -> new GroupTotals(groups));
+      return toAnalytics(totals, statusCount);
+    } finally {
+      dataLock.readLock().unlock();
+    }
+  }
+
+  private static GroupTotals scan(Columns data, int from, int to, boolean[] regionMask,
+      boolean[] statusMask, int statusCount, int groups, long startMicros, long endMicros) {
+    GroupTotals totals = new GroupTotals(groups);
+    long[] createdAt = data.createdAt;
+    long[] amounts = data.amounts;
+    short[] regionCodes = data.regions;
+    short[] statusCodes = data.statuses;
+
+    for (int i = from; i < to; i++) {
+      long created = createdAt[i];
+      if (created < startMicros || created > endMicros) {
+        continue;
+      }
+      int region = regionCodes[i];
+      int status = statusCodes[i];
+      if (region < 0 || status < 0 || !regionMask[region] || !statusMask[status]) {
+        continue;
+      }
+      int group = region * statusCount + status;
+      totals.counts[group]++;
+      long amount = amounts[i];
+      if (amount != NULL_VALUE) {
+        totals.amountCounts[group]++;
+        totals.sums[group] += amount;
+      }
+      if (created < totals.firstOrders[group]) {
+        totals.firstOrders[group] = created;
+      }
+      if (created > totals.lastOrders[group]) {
+        totals.lastOrders[group] = created;
+      }
+    }
+    return totals;
+  }
+
+  private List<OrderAnalytics> toAnalytics(GroupTotals totals, int statusCount) {
+    List<OrderAnalytics> result = new ArrayList<>();
+    for (int group = 0; group < totals.counts.length; group++) {
+      if (totals.counts[group] == 0) {
+        continue;
+      }
+      // Сумма значений с масштабом не больше amountScale точно представима в этом масштабе
+      BigDecimal revenue = totals.amountCounts[group] == 0 ? null
+          : BigDecimal.valueOf(totals.sums[group], AMOUNT_SCALE).setScale(amountScale);
+      result.add(OrderAnalytics.builder()
+          .region(regionNames[group / statusCount])
+          .status(statusNames[group % statusCount])
+          .ordersCount(totals.counts[group])
+          .totalRevenue(revenue)
+          .avgOrderValue(revenue == null
+              ? null : OrderAnalyticsMerger.average(revenue, totals.amountCounts[group]))
+          .firstOrder(toDateTime(totals.firstOrders[group]))
+          .lastOrder(toDateTime(totals.lastOrders[group]))
+          .build());
+    }
+    result.sort(Comparator.comparing(OrderAnalytics::getRegion)
+        .thenComparing(OrderAnalytics::getStatus));
+    return result;
+  }
+
+  private static boolean[] mask(String[] names, List<String> values) {
+    boolean[] mask = new boolean[names.length];
+    for (int code = 0; code < names.length; code++) {
+      mask[code] = values.contains(names[code]);
+    }
+    return mask;
+  }
+
+  /**
+   * Читает строки в {@code target}, кодируя регион и статус словарями.
+   *
+   * @return наибольший масштаб total_amount среди прочитанных строк
+   */
+  private int copy(Long afterId, LocalDateTime createdFrom, Columns target, Dictionary regions,
+      Dictionary statuses) throws SQLException {
+    int[] scale = new int[1];
+    String[] fields = new String[5];
+    readRows(afterId, createdFrom, line -> {
+      splitCsv(line, fields);
+      long amount = NULL_VALUE;
+      if (fields[2] != null) {
+        BigDecimal value = new BigDecimal(fields[2]);
+        if (value.scale() > AMOUNT_SCALE) {
+          throw new IllegalStateException("total_amount " + value + " has more than "
+              + AMOUNT_SCALE + " decimal places and cannot be stored as cents");
+        }
+        scale[0] = Math.max(scale[0], value.scale());
+        amount = value.movePointRight(AMOUNT_SCALE).longValueExact();
+      }
+      target.add(Long.parseLong(fields[0]),
+          fields[1] != null ? Long.parseLong(fields[1]) : NULL_VALUE,
+          amount, regions.code(fields[3]), statuses.code(fields[4]));
+    });
+    return scale[0];
+  }
+
+  /**
+   * Читает строки таблицы через COPY_SQL и передает их по одной в формате csv. Без
+   * {@code afterId} читается вся таблица, иначе строки с id больше него и, если задан
+   * {@code createdFrom}, созданные не раньше. Доступен в пакете, чтобы тесты подставляли
+   * строки без базы.
+   */
+  void readRows(Long afterId, LocalDateTime createdFrom, Consumer<String> rows)
+      throws SQLException {
+    String where;
+    if (afterId == null) {
+      where = "";
+    } else if (createdFrom == null) {
+      where = " WHERE id > " + afterId;
+    } else {
+      where = String.format(" WHERE id > %d OR created_at >= '%s'", afterId, createdFrom);
+    }
+    try (Connection conn = connectionProvider.getConnection()) {
+      CopyOut copyOut = conn.unwrap(PGConnection.class).getCopyAPI()
+          .copyOut(String.format(COPY_SQL, tableName, where));
+      byte[] row;
+      while ((row = copyOut.readFromCopy()) != null) {
+        rows.accept(new String(row, StandardCharsets.UTF_8));
+      }
+    }
+  }
+
+  /**
+   * Разбирает строку COPY в формате csv: пустое значение без кавычек - NULL, значение в
+   * кавычках может содержать запятые и удвоенные кавычки.
+   */
+  private static void splitCsv(String line, String[] fields) {
+    int end = line.length();
+    while (end > 0 && (line.charAt(end - 1) == '\n' || line.charAt(end - 1) == '\r')) {
+      end--;
+    }
+    int pos = 0;
+    for (int field = 0; field < fields.length; field++) {
+      if (pos < end && line.charAt(pos) == '"') {
+        StringBuilder value = new StringBuilder();
+        pos++;
+        while (pos < end) {
+          char c = line.charAt(pos++);
+          if (c != '"') {
+            value.append(c);
+          } else if (pos < end && line.charAt(pos) == '"') {
+            value.append('"');
+            pos++;
+          } else {
+            break;
+          }
+        }
+        fields[field] = value.toString();
+      } else {
+        int comma = line.indexOf(',', pos);
+        int fieldEnd = comma < 0 || comma > end ? end : comma;
+        fields[field] = fieldEnd == pos ? null : line.substring(pos, fieldEnd);
+        pos = fieldEnd;
+      }
+      pos++;
+    }
+  }
+
+  private void publish() {
+    regionNames = regionDictionary.names();
+    statusNames = statusDictionary.names();
+    refreshedAt = LocalDateTime.now();
+  }
+
+  private void refreshQuietly() {
+    try {
+      refresh();
+    } catch (SQLException | RuntimeException e) {
+      log.warn("Колоночный снимок {} не обновлен: {}", tableName, e.getMessage());
+    }
+  }
+
+  private static long toMicros(LocalDateTime dateTime) {
+    return dateTime.toEpochSecond(ZoneOffset.UTC) * MICROS_PER_SECOND + dateTime.getNano() / 1_000;
+  }
+
+  private static LocalDateTime toDateTime(long micros) {
+    if (micros == NULL_VALUE || micros == Long.MAX_VALUE) {
+      return null;
+    }
+    return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, MICROS_PER_SECOND),
+        (int) Math.floorMod(micros, MICROS_PER_SECOND) * 1_000, ZoneOffset.UTC);
+  }
+
+  @Override
+  public void close() {
+    refreshLock.lock();
+    try {
+      if (scheduler != null) {
+        scheduler.shutdownNow();
+        scheduler = null;
+      }
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  /**
+   * Колонки снимка. Массивы растут удвоением, заполнены первые {@code size} элементов.
+   */
+  private static final class Columns {
+    private long[] ids;
+    private long[] createdAt;
+    private long[] amounts;
+    private short[] regions;
+    private short[] statuses;
+    private int size;
+
+    private Columns(int capacity) {
+      ids = new long[capacity];
+      createdAt = new long[capacity];
+      amounts = new long[capacity];
+      regions = new short[capacity];
+      statuses = new short[capacity];
+    }
+
+    private Columns(long[] ids, long[] createdAt, long[] amounts, short[] regions,
+        short[] statuses) throws IOException {
+      if (createdAt.length != ids.length || amounts.length != ids.length
+          || regions.length != ids.length || statuses.length != ids.length) {
+        throw new IOException("Columnar snapshot columns have different lengths");
+      }
+      this.ids = ids;
+      this.createdAt = createdAt;
+      this.amounts = amounts;
+      this.regions = regions;
+      this.statuses = statuses;
+      this.size = ids.length;
+    }
+
+    private void add(long id, long created, long amount, short region, short status) {
+      if (size == ids.length) {
+        resize(Math.max(INITIAL_CAPACITY, ids.length * 2));
+      }
+      ids[size] = id;
+      createdAt[size] = created;
+      amounts[size] = amount;
+      regions[size] = region;
+      statuses[size] = status;
+      size++;
+    }
+
+    private void append(Columns source, int row) {
+      add(source.ids[row], source.createdAt[row], source.amounts[row],
+          source.regions[row], source.statuses[row]);
+    }
+
+    private void set(int row, Columns source, int sourceRow) {
+      createdAt[row] = source.createdAt[sourceRow];
+      amounts[row] = source.amounts[sourceRow];
+      regions[row] = source.regions[sourceRow];
+      statuses[row] = source.statuses[sourceRow];
+    }
+
+    private void trim() {
+      resize(size);
+    }
+
+    private void resize(int capacity) {
+      ids = Arrays.copyOf(ids, capacity);
+      createdAt = Arrays.copyOf(createdAt, capacity);
+      amounts = Arrays.copyOf(amounts, capacity);
+      regions = Arrays.copyOf(regions, capacity);
+      statuses = Arrays.copyOf(statuses, capacity);
+    }
+
+    private long sizeBytes() {
+      return (long) ids.length * (3 * Long.BYTES + 2 * Short.BYTES);
+    }
+  }
+
+  /**
+   * Словарь значений колонки: код - позиция значения в порядке первого появления.
+   */
+  private static final class Dictionary {
+    private final String column;
+    private final Map<String, Short> codes = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    private Dictionary(String column) {
+      this.column = column;
+    }
+
+    private static Dictionary of(String column, List<String> names) {
+      Dictionary dictionary = new Dictionary(column);
+      names.forEach(dictionary::code);
+      return dictionary;
+    }
+
+    private short code(String value) {
+      if (value == null) {
+        return NULL_CODE;
+      }
+      Short code = codes.get(value);
+      if (code != null) {
+        return code;
+      }
+      if (names.size() == Short.MAX_VALUE) {
+        throw new IllegalStateException("Too many distinct values of " + column
+            + " for a dictionary-encoded column");
+      }
+      short created = (short) names.size();
+      codes.put(value, created);
+      names.add(value);
+      return created;
+    }
+
+    private String[] names() {
+      return names.toArray(new String[0]);
+    }
+  }
+
+  /**
+   * Агрегаты по группам (region, status) одного блока строк.
+   */
+  private static final class GroupTotals {
+    private final long[] counts;
+    private final long[] amountCounts;
+    private final long[] sums;
+    private final long[] firstOrders;
+    private final long[] lastOrders;
+
+    private GroupTotals(int groups) {
+      counts = new long[groups];
+      amountCounts = new long[groups];
+      sums = new long[groups];
+      firstOrders = new long[groups];
+      lastOrders = new long[groups];
+      Arrays.fill(firstOrders, Long.MAX_VALUE);
+      Arrays.fill(lastOrders, NULL_VALUE);
+    }
+
+    private GroupTotals merge(GroupTotals other) {
+      for (int group = 0; group < counts.length; group++) {
+        counts[group] += other.counts[group];
+        amountCounts[group] += other.amountCounts[group];
+        sums[group] += other.sums[group];
+        firstOrders[group] = Math.min(firstOrders[group], other.firstOrders[group]);
+        lastOrders[group] = Math.max(lastOrders[group], other.lastOrders[group]);
+      }
+      return this;
+    }
+  }
+}
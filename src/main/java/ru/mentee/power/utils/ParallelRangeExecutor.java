@@ -0,0 +1,121 @@
+package ru.mentee.power.utils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import ru.mentee.power.connection.ConnectionProvider;
+import ru.mentee.power.connection.QueryCancellation;
+import ru.mentee.power.exception.DataAccessException;
+
+/**
+ * Делит интервал времени на подынтервалы и выполняет запрос по каждому на отдельном
+ * соединении пула одновременно. Каждый запрос обслуживает свой серверный процесс, поэтому
+ * длинный отчет загружает несколько ядер базы, даже когда планировщик не выбирает
+ * параллельный план.
+ *
+ * <p>Части выполняются в виртуальных потоках и привязывают общую {@link QueryCancellation},
+ * дочернюю к области вызывающего потока, если она есть. Ошибка одной части отменяет запросы
+ * остальных на сервере, а отмена вызывающего асинхронного вызова отменяет все части.
+ */
+public class ParallelRangeExecutor {
+
+  private final ConnectionProvider connectionProvider;
+
+  public ParallelRangeExecutor(ConnectionProvider connectionProvider) {
+    this.connectionProvider = connectionProvider;
+  }
+
+  /**
+   * Полуоткрытый интервал [from, toExclusive).
+   */
+  public record TimeRange(LocalDateTime from, LocalDateTime toExclusive) {
+  }
+
+  /**
+   * Запрос по одному подынтервалу.
+   */
+  @FunctionalInterface
+  public interface RangeTask<T> {
+    T run(Connection conn, TimeRange range) throws SQLException;
+  }
+
+  /**
+   * Делит [from, toExclusive) на {@code parts} подынтервалов равной длины с точностью до
+   * микросекунды (точность timestamp в PostgreSQL). Подынтервалы не пересекаются и вместе
+   * покрывают исходный интервал. Пустой интервал дает один подынтервал.
+   */
+  public static List<TimeRange> split(LocalDateTime from, LocalDateTime toExclusive, int parts) {
+    long totalMicros = ChronoUnit.MICROS.between(from, toExclusive);
+    int count = (int) Math.max(1, Math.min(parts, totalMicros));
+    List<TimeRange> ranges = new ArrayList<>(count);
+    LocalDateTime start = from;
+    for (int i = 1; i <= count; i++) {
+      LocalDateTime end = i == count
+          ? toExclusive
+          : from.plus(Duration.of(totalMicros / count * i, ChronoUnit.MICROS));
+      ranges.add(new TimeRange(start, end));
+      start = end;
+    }
+    return ranges;
+  }
+
+  /**
+   * Выполняет задачу по каждому подынтервалу и возвращает результаты в порядке подынтервалов.
+   * Первая же ошибка части отменяет остальные и возвращается, не дожидаясь их завершения.
+   */
+  public <T> List<T> execute(List<TimeRange> ranges, RangeTask<T> task)
+      throws DataAccessException {
+    QueryCancellation caller = QueryCancellation.current();
+    QueryCancellation parts = caller != null ? caller.child() : new QueryCancellation();
+    // Потоки частей не прерываются: прерывание в сокетном чтении закрыло бы соединение
+    ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    boolean completed = false;
+    try {
+      CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+      List<T> results = new ArrayList<>(ranges.size());
+      for (int i = 0; i < ranges.size(); i++) {
+        results.add(null);
+        int part = i;
+        completion.submit(() -> {
+          try (QueryCancellation.Binding binding = parts.bind();
+              Connection conn = connectionProvider.getConnection()) {
+            results.set(part, task.run(conn, ranges.get(part)));
+          }
+          return null;
+        });
+      }
+      for (int i = 0; i < ranges.size(); i++) {
+        completion.take().get();
+      }
+      completed = true;
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DataAccessException("Параллельное выполнение по подынтервалам прервано");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof SQLException sqlException) {
+        throw new DataAccessException("Ошибка запроса по подынтервалу", sqlException);
+      }
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw new DataAccessException("Ошибка запроса по подынтервалу: " + e.getCause());
+    } finally {
+      if (completed) {
+        parts.finish();
+      } else {
+        parts.cancel();
+      }
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package ru.mentee.power.utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import ru.mentee.power.model.analytics.PartitionInfo;
+
+/**
+ * Читает секции таблицы из системного каталога. Границы диапазона разбираются из
+ * pg_get_expr(relpartbound); для MINVALUE/MAXVALUE и секции DEFAULT они равны null.
+ */
+public final class PartitionCatalog {
+
+  private static final String IS_PARTITIONED_SQL = """
+        SELECT relkind = 'p'
+        FROM pg_class
+        WHERE oid = to_regclass(?)
+        """;
+
+  private static final String PARTITIONS_SQL = """
+        SELECT
+            c.relname as partition_name,
+            pg_get_expr(c.relpartbound, c.oid) as bound,
+            GREATEST(c.reltuples, 0)::bigint as estimated_rows,
+            pg_relation_size(c.oid) as size_bytes
+        FROM pg_inherits i
+        JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = to_regclass(?)
+        ORDER BY c.relname
+        """;
+
+  private static final Pattern RANGE_BOUND =
+      Pattern.compile("FROM \\((?:'([^']+)'|MINVALUE)\\) TO \\((?:'([^']+)'|MAXVALUE)\\)");
+
+  private PartitionCatalog() {
+  }
+
+  public static boolean isPartitioned(Connection conn, String tableName) throws SQLException {
+    try (PreparedStatement stmt = conn.prepareStatement(IS_PARTITIONED_SQL)) {
+      stmt.setString(1, tableName);
+      try (ResultSet rs = stmt.executeQuery()) {
+        return rs.next() && rs.getBoolean(1);
+      }
+    }
+  }
+
+  /**
+   * Возвращает секции таблицы первого уровня или пустой список, если таблица не секционирована.
+   */
+  public static List<PartitionInfo> listPartitions(Connection conn, String tableName)
+      throws SQLException {
+    List<PartitionInfo> partitions = new ArrayList<>();
+    try (PreparedStatement stmt = conn.prepareStatement(PARTITIONS_SQL)) {
+      stmt.setString(1, tableName);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          String bound = rs.getString("bound");
+          Matcher range = bound != null ? RANGE_BOUND.matcher(bound) : null;
+          boolean hasRange = range != null && range.find();
+          partitions.add(PartitionInfo.builder()
+              .partitionName(rs.getString("partition_name"))
+              .rangeFrom(hasRange ? parseBound(range.group(1)) : null)
+              .rangeTo(hasRange ? parseBound(range.group(2)) : null)
+              .defaultPartition("DEFAULT".equals(bound))
+              .estimatedRows(rs.getLong("estimated_rows"))
+              .sizeBytes(rs.getLong("size_bytes"))
+              .build());
+        }
+      }
+    }
+    return partitions;
+  }
+
+  private static LocalDateTime parseBound(String value) {
+    if (value == null) {
+      return null;
+    }
+    try {
+      return LocalDateTime.parse(value.replace(' ', 'T'));
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,217 @@
+package ru.mentee.power.utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.connection.ConnectionProvider;
+import ru.mentee.power.model.PartitionRetentionAction;
+import ru.mentee.power.model.analytics.PartitionInfo;
+import ru.mentee.power.model.analytics.PartitionMaintenanceResult;
+
+/**
+ * Обслуживает помесячные секции таблицы: заранее создает секции на {@code premakeMonths}
+ * месяцев вперед и выводит из хранения секции старше {@code retentionMonths} месяцев.
+ *
+ * <p>Новая секция, в диапазон которой уже попали строки секции DEFAULT, не создается: PostgreSQL
+ * отклоняет ее, и ошибка попадает в отчет, чтобы строки перенесли вручную. Поэтому секции
+ * создаются заранее. Устаревшие секции отсоединяются через DETACH PARTITION CONCURRENTLY, который
+ * не блокирует запросы к таблице; при наличии секции DEFAULT он недоступен, и используется
+ * обычный DETACH. Секция с нижней границей MINVALUE (orders_legacy после миграции 008) покрывает
+ * все месяцы до своей верхней границы и выводится из хранения целиком. Одновременный запуск из
+ * нескольких экземпляров приложения исключается advisory-блокировкой.
+ */
+@Slf4j
+public class PartitionMaintenance implements AutoCloseable {
+
+  public static final Duration DEFAULT_INTERVAL = Duration.ofHours(6);
+  private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+  private static final String TRY_LOCK_SQL = "SELECT pg_try_advisory_lock(hashtext(?))";
+  private static final String UNLOCK_SQL = "SELECT pg_advisory_unlock(hashtext(?))";
+
+  private final ConnectionProvider connectionProvider;
+  private final String tableName;
+  private final int premakeMonths;
+  private final int retentionMonths;
+  private final PartitionRetentionAction retentionAction;
+  private final ReentrantLock lock = new ReentrantLock();
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * @param retentionMonths сколько полных месяцев хранить до текущего; 0 - хранить все
+   */
+  public PartitionMaintenance(ConnectionProvider connectionProvider, String tableName,
+      int premakeMonths, int retentionMonths, PartitionRetentionAction retentionAction) {
+    this.connectionProvider = connectionProvider;
+    this.tableName = tableName;
+    this.premakeMonths = Math.max(0, premakeMonths);
+    this.retentionMonths = Math.max(0, retentionMonths);
+    this.retentionAction = retentionAction;
+  }
+
+  /**
+   * Запускает обслуживание по расписанию. Первый проход выполняется сразу. Повторный вызов
+   * ничего не делает.
+   */
+  public void start(Duration interval) {
+    lock.lock();
+    try {
+      if (scheduler != null) {
+        return;
+      }
+      scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "partition-maintenance");
+        thread.setDaemon(true);
+        return thread;
+      });
+      scheduler.scheduleWithFixedDelay(this::runQuietly,
+          0, interval.toMillis(), TimeUnit.MILLISECONDS);
+      log.info("Обслуживание секций {} запущено: интервал {}", tableName, interval);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Выполняет один проход обслуживания.
+   */
+  public PartitionMaintenanceResult run() throws SQLException {
+    long start = System.nanoTime();
+    PartitionMaintenanceResult result = PartitionMaintenanceResult.builder()
+        .tableName(tableName)
+        .created(new ArrayList<>())
+        .detached(new ArrayList<>())
+        .dropped(new ArrayList<>())
+        .failures(new ArrayList<>())
+        .ranAt(LocalDateTime.now())
+        .build();
+
+    try (Connection conn = connectionProvider.getConnection()) {
+      boolean autoCommit = conn.getAutoCommit();
+      // DETACH CONCURRENTLY нельзя выполнять в транзакции
+      conn.setAutoCommit(true);
+      try {
+        if (!PartitionCatalog.isPartitioned(conn, tableName)) {
+          result.setSkippedReason(tableName + " is not partitioned");
+        } else if (!advisoryLock(conn, TRY_LOCK_SQL)) {
+          result.setSkippedReason("maintenance is running in another session");
+        } else {
+          try {
+            maintain(conn, result);
+          } finally {
+            advisoryLock(conn, UNLOCK_SQL);
+          }
+        }
+        result.setPartitionsTotal(PartitionCatalog.listPartitions(conn, tableName).size());
+      } finally {
+        conn.setAutoCommit(autoCommit);
+      }
+    }
+
+    result.setDurationMs((System.nanoTime() - start) / 1_000_000);
+    return result;
+  }
+
+  private void maintain(Connection conn, PartitionMaintenanceResult result) throws SQLException {
+    List<PartitionInfo> partitions = PartitionCatalog.listPartitions(conn, tableName);
+    boolean hasDefault = partitions.stream().anyMatch(PartitionInfo::isDefaultPartition);
+    LocalDateTime currentMonth = LocalDate.now().withDayOfMonth(1).atStartOfDay();
+
+    for (int i = 0; i <= premakeMonths; i++) {
+      LocalDateTime from = currentMonth.plusMonths(i);
+      LocalDateTime to = from.plusMonths(1);
+      // Граница MINVALUE или MAXVALUE (null) покрывает все месяцы со своей стороны
+      boolean covered = partitions.stream().anyMatch(partition ->
+          !partition.isDefaultPartition()
+              && (partition.getRangeFrom() != null || partition.getRangeTo() != null)
+              && (partition.getRangeFrom() == null || !partition.getRangeFrom().isAfter(from))
+              && (partition.getRangeTo() == null || !partition.getRangeTo().isBefore(to)));
+      if (covered) {
+        continue;
+      }
+      String name = tableName + "_p" + from.format(PARTITION_SUFFIX);
+      execute(conn, result, name, String.format(
+          "CREATE TABLE IF NOT EXISTS %s PARTITION OF %s FOR VALUES FROM ('%s') TO ('%s')",
+          name, tableName, from, to), result.getCreated());
+    }
+
+    if (retentionMonths == 0) {
+      return;
+    }
+    LocalDateTime cutoff = currentMonth.minusMonths(retentionMonths);
+    for (PartitionInfo partition : partitions) {
+      if (partition.getRangeTo() == null || partition.getRangeTo().isAfter(cutoff)) {
+        continue;
+      }
+      String name = partition.getPartitionName();
+      boolean detached = execute(conn, result, name, String.format(
+          "ALTER TABLE %s DETACH PARTITION %s%s", tableName, name,
+          hasDefault ? "" : " CONCURRENTLY"), result.getDetached());
+      if (detached && retentionAction == PartitionRetentionAction.DROP) {
+        result.getDetached().remove(name);
+        execute(conn, result, name, "DROP TABLE " + name, result.getDropped());
+      }
+    }
+  }
+
+  private boolean execute(Connection conn, PartitionMaintenanceResult result, String partition,
+      String sql, List<String> onSuccess) {
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute(sql);
+      onSuccess.add(partition);
+      log.info("Секции {}: {}", tableName, sql);
+      return true;
+    } catch (SQLException e) {
+      result.getFailures().add(partition + ": " + e.getMessage());
+      log.warn("Не удалось выполнить {}: {}", sql, e.getMessage());
+      return false;
+    }
+  }
+
+  private boolean advisoryLock(Connection conn, String sql) throws SQLException {
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      stmt.setString(1, "partition-maintenance:" + tableName);
+      try (ResultSet rs = stmt.executeQuery()) {
+        return rs.next() && rs.getBoolean(1);
+      }
+    }
+  }
+
+  private void runQuietly() {
+    try {
+      PartitionMaintenanceResult result = run();
+      if (!result.getFailures().isEmpty()) {
+        log.warn("Обслуживание секций {} завершено с ошибками: {}",
+            tableName, result.getFailures());
+      }
+    } catch (SQLException | RuntimeException e) {
+      log.warn("Обслуживание секций {} не выполнено: {}", tableName, e.getMessage());
+    }
+  }
+
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      if (scheduler != null) {
+        scheduler.shutdownNow();
+        scheduler = null;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+}
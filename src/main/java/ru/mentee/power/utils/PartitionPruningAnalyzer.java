@@ -0,0 +1,68 @@
+package ru.mentee.power.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import ru.mentee.power.model.analytics.PartitionInfo;
+import ru.mentee.power.model.analytics.PartitionPruningReport;
+import ru.mentee.power.model.analytics.PlanNode;
+
+/**
+ * Сравнивает секции, которые есть у таблицы, с секциями в плане запроса. Секция считается
+ * попавшей в план, если в дереве есть узел сканирования по ней, и просканированной, если этот
+ * узел выполнялся хотя бы раз (Actual Loops > 0; без ANALYZE все узлы плана считаются
+ * выполненными).
+ */
+public final class PartitionPruningAnalyzer {
+
+  private PartitionPruningAnalyzer() {
+  }
+
+  public static PartitionPruningReport analyze(String queryName, String tableName,
+      List<PartitionInfo> partitions, QueryPlanParser plan) {
+    Set<String> partitionNames = new LinkedHashSet<>();
+    for (PartitionInfo partition : partitions) {
+      partitionNames.add(partition.getPartitionName());
+    }
+
+    Set<String> inPlan = new LinkedHashSet<>();
+    Set<String> scanned = new LinkedHashSet<>();
+    long subplansRemoved = 0;
+    for (PlanNode node : plan.getNodes()) {
+      if (node.getSubplansRemoved() != null) {
+        subplansRemoved += node.getSubplansRemoved();
+      }
+      if (node.getRelation() != null && partitionNames.contains(node.getRelation())) {
+        inPlan.add(node.getRelation());
+        if (node.getLoops() == null || node.getLoops() > 0) {
+          scanned.add(node.getRelation());
+        }
+      }
+    }
+
+    int total = partitionNames.size();
+    boolean pruned = total > 0 && scanned.size() < total;
+    String verdict;
+    if (total == 0) {
+      verdict = tableName + " is not partitioned";
+    } else if (pruned) {
+      verdict = String.format("Pruned: %d of %d partitions scanned", scanned.size(), total);
+    } else {
+      verdict = String.format("NOT PRUNED: all %d partitions scanned, check that the filter on"
+          + " the partition key is a plain comparison with constants or parameters", total);
+    }
+
+    return PartitionPruningReport.builder()
+        .queryName(queryName)
+        .tableName(tableName)
+        .partitionsTotal(total)
+        .partitionsInPlan(inPlan.size())
+        .partitionsScanned(scanned.size())
+        .subplansRemoved(subplansRemoved)
+        .scannedPartitions(new ArrayList<>(scanned))
+        .pruned(pruned)
+        .verdict(verdict)
+        .build();
+  }
+}
@@ -0,0 +1,70 @@
+package ru.mentee.power.utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Выполняет несколько запросов за одно обращение к серверу.
+ *
+ * <p>Запросы склеиваются через ';' в один PreparedStatement. Драйвер PostgreSQL разбивает
+ * такой текст на отдельные операторы и отправляет Parse/Bind/Execute всех операторов подряд
+ * с одним Sync в конце, то есть конвейером: задержка сети оплачивается один раз, а не на
+ * каждый запрос. Результаты приходят по порядку и читаются через getMoreResults.
+ *
+ * <p>Операторы до Sync выполняются в одной неявной транзакции: ошибка в любом из них
+ * отменяет весь пакет, и исключение получает вызывающий.
+ */
+public final class PipelinedBatch {
+
+  private PipelinedBatch() {
+  }
+
+  /**
+   * Выполняет пакет и возвращает разобранные результаты в порядке запросов.
+   */
+  public static List<Object> execute(Connection conn, List<BatchQuery<?>> queries)
+      throws SQLException {
+    String sql = queries.stream()
+        .map(query -> stripTerminator(query.getSql()))
+        .collect(Collectors.joining(";\n"));
+
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      int index = 1;
+      for (BatchQuery<?> query : queries) {
+        for (Object parameter : query.getParameters()) {
+          if (parameter instanceof BatchQuery.SqlArray array) {
+            stmt.setArray(index++, conn.createArrayOf(array.elementType(), array.elements()));
+          } else {
+            stmt.setObject(index++, parameter);
+          }
+        }
+      }
+
+      List<Object> results = new ArrayList<>(queries.size());
+      boolean hasResultSet = stmt.execute();
+      for (BatchQuery<?> query : queries) {
+        while (!hasResultSet) {
+          if (stmt.getUpdateCount() == -1) {
+            throw new SQLException("Batch returned no result set for query " + query.getName());
+          }
+          hasResultSet = stmt.getMoreResults();
+        }
+        try (ResultSet rs = stmt.getResultSet()) {
+          results.add(query.getMapper().map(rs));
+        }
+        hasResultSet = stmt.getMoreResults();
+      }
+      return results;
+    }
+  }
+
+  private static String stripTerminator(String sql) {
+    String trimmed = sql.strip();
+    return trimmed.endsWith(";") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+  }
+}
@@ -0,0 +1,127 @@
+package ru.mentee.power.utils;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.config.PlanCaptureConfig;
+import ru.mentee.power.model.PlanCaptureMode;
+import ru.mentee.power.model.analytics.CapturedPlan;
+
+/**
+ * Решает, нужно ли снимать EXPLAIN (ANALYZE) для очередного вызова измеряемого запроса, и
+ * хранит последний снятый план по каждому запросу с ограниченным временем жизни.
+ *
+ * <p>Запрос сначала выполняется сам, и только затем, если политика требует, снимается план.
+ * В остальных вызовах метрики плана берутся из кэша, поэтому запрос выполняется один раз.
+ * Кэш сбрасывается через {@link #invalidateAll()} после DDL над индексами, так как
+ * сохраненные планы после этого уже не отражают реальный выбор планировщика.
+ */
+@Slf4j
+public class PlanCapturePolicy {
+
+  private final PlanCaptureMode mode;
+  private final int sampleRate;
+  private final long slowThresholdMs;
+  private final long cacheTtlNanos;
+
+  private final Map<String, CapturedPlan> cache = new ConcurrentHashMap<>();
+  private final Map<String, AtomicLong> callCounters = new ConcurrentHashMap<>();
+  private final LongAdder captures = new LongAdder();
+  private final LongAdder cacheHits = new LongAdder();
+
+  public PlanCapturePolicy(PlanCaptureConfig config) {
+    this(config.getPlanCaptureMode(), config.getPlanCaptureSampleRate(),
+        config.getPlanCaptureSlowThresholdMs(), config.getPlanCaptureCacheTtlMs());
+  }
+
+  public PlanCapturePolicy(
+      PlanCaptureMode mode, int sampleRate, long slowThresholdMs, long cacheTtlMs) {
+    this.mode = mode;
+    this.sampleRate = Math.max(1, sampleRate);
+    this.slowThresholdMs = slowThresholdMs;
+    this.cacheTtlNanos = TimeUnit.MILLISECONDS.toNanos(cacheTtlMs);
+  }
+
+  public PlanCaptureMode getMode() {
+    return mode;
+  }
+
+  /**
+   * Определяет, нужно ли снять план после вызова запроса с ключом {@code queryKey},
+   * который выполнялся {@code executionTimeMs} миллисекунд.
+   */
+  public boolean shouldCapture(String queryKey, long executionTimeMs) {
+    long call = callCounters.computeIfAbsent(queryKey, key -> new AtomicLong())
+        .incrementAndGet();
+    return switch (mode) {
+      case ALWAYS -> true;
+      case NEVER -> false;
+      case SLOW_ONLY -> executionTimeMs >= slowThresholdMs;
+      case SAMPLED -> (call - 1) % sampleRate == 0 || lookup(queryKey) == null;
+    };
+  }
+
+  /**
+   * Сохраняет только что снятый план как последний для запроса.
+   */
+  public CapturedPlan store(String queryKey, String planJson) {
+    CapturedPlan plan = CapturedPlan.builder()
+        .queryKey(queryKey)
+        .planJson(planJson)
+        .capturedAt(LocalDateTime.now())
+        .capturedAtNanos(System.nanoTime())
+        .fresh(true)
+        .build();
+    cache.put(queryKey, plan);
+    captures.increment();
+    return plan;
+  }
+
+  /**
+   * Возвращает последний снятый план запроса, если он еще не устарел.
+   */
+  public Optional<CapturedPlan> getCachedPlan(String queryKey) {
+    CapturedPlan plan = lookup(queryKey);
+    if (plan == null) {
+      return Optional.empty();
+    }
+    cacheHits.increment();
+    return Optional.of(CapturedPlan.builder()
+        .queryKey(plan.getQueryKey())
+        .planJson(plan.getPlanJson())
+        .capturedAt(plan.getCapturedAt())
+        .capturedAtNanos(plan.getCapturedAtNanos())
+        .fresh(false)
+        .build());
+  }
+
+  private CapturedPlan lookup(String queryKey) {
+    CapturedPlan plan = cache.get(queryKey);
+    if (plan != null && System.nanoTime() - plan.getCapturedAtNanos() > cacheTtlNanos) {
+      cache.remove(queryKey, plan);
+      return null;
+    }
+    return plan;
+  }
+
+  public void invalidateAll() {
+    int size = cache.size();
+    cache.clear();
+    if (size > 0) {
+      log.info("Кэш планов сброшен после изменения индексов ({} планов)", size);
+    }
+  }
+
+  public long getCaptureCount() {
+    return captures.sum();
+  }
+
+  public long getCacheHitCount() {
+    return cacheHits.sum();
+  }
+}
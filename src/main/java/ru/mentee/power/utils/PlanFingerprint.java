@@ -0,0 +1,96 @@
+package ru.mentee.power.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+import ru.mentee.power.model.analytics.PlanNode;
+
+/**
+ * Структурный отпечаток плана выполнения.
+ *
+ * <p>В форму плана попадают только типы узлов, таблицы и индексы с сохранением вложенности,
+ * например {@code Aggregate(Index Scan[orders|idx_orders_region_status_date])}. Стоимости,
+ * оценки строк, тайминги и литералы условий в форму не входят, поэтому один и тот же план
+ * с другими параметрами дает тот же отпечаток, а смена индекса на Seq Scan - другой.
+ */
+public final class PlanFingerprint {
+
+  private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+  private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  private final StringBuilder shape = new StringBuilder();
+
+  public void enterNode(String nodeType, String relation, String indexName) {
+    if (shape.length() > 0 && shape.charAt(shape.length() - 1) != '(') {
+      shape.append(',');
+    }
+    shape.append(nodeType);
+    if (relation != null || indexName != null) {
+      shape.append('[').append(relation != null ? relation : "");
+      if (indexName != null) {
+        shape.append('|').append(indexName);
+      }
+      shape.append(']');
+    }
+  }
+
+  public void beginChildren() {
+    shape.append('(');
+  }
+
+  public void endChildren() {
+    shape.append(')');
+  }
+
+  public String getShape() {
+    return shape.toString();
+  }
+
+  public String getFingerprint() {
+    return hash(getShape());
+  }
+
+  /**
+   * Строит форму плана по готовому дереву узлов.
+   */
+  public static PlanFingerprint of(PlanNode root) {
+    PlanFingerprint fingerprint = new PlanFingerprint();
+    if (root != null) {
+      fingerprint.append(root);
+    }
+    return fingerprint;
+  }
+
+  public static String hash(String shape) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256")
+          .digest(shape.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(digest, 0, 8);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 недоступен", e);
+    }
+  }
+
+  /**
+   * Приводит SQL к ключу запроса: литералы заменяются на ?, пробелы схлопываются.
+   */
+  public static String normalizeSql(String sql) {
+    String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+    normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+    return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+  }
+
+  private void append(PlanNode node) {
+    enterNode(node.getNodeType(), node.getRelation(), node.getIndexName());
+    if (node.getChildren() != null && !node.getChildren().isEmpty()) {
+      beginChildren();
+      for (PlanNode child : node.getChildren()) {
+        append(child);
+      }
+      endChildren();
+    }
+  }
+}
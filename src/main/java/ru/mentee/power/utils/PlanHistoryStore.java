@@ -0,0 +1,200 @@
+package ru.mentee.power.utils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.model.analytics.PlanChange;
+import ru.mentee.power.model.analytics.PlanObservation;
+
+/**
+ * Хранит историю планов по каждому запросу, сгруппированную по структурному отпечатку
+ * ({@link PlanFingerprint}). Когда у запроса меняется отпечаток, фиксируется {@link PlanChange}:
+ * новый план сравнивается со средними показателями предыдущего, и если он медленнее или читает
+ * больше буферов больше чем в заданное число раз, изменение помечается как регрессия.
+ */
+@Slf4j
+public class PlanHistoryStore {
+
+  public static final double DEFAULT_SLOWDOWN_FACTOR = 1.2;
+  public static final double DEFAULT_BUFFERS_FACTOR = 1.2;
+  private static final int MAX_CHANGES = 1_000;
+
+  private final double slowdownFactor;
+  private final double buffersFactor;
+  private final Map<String, QueryHistory> histories = new ConcurrentHashMap<>();
+  private final ConcurrentLinkedDeque<PlanChange> changes = new ConcurrentLinkedDeque<>();
+  private final List<Consumer<PlanChange>> regressionListeners = new CopyOnWriteArrayList<>();
+
+  public PlanHistoryStore() {
+    this(DEFAULT_SLOWDOWN_FACTOR, DEFAULT_BUFFERS_FACTOR);
+  }
+
+  public PlanHistoryStore(double slowdownFactor, double buffersFactor) {
+    this.slowdownFactor = slowdownFactor;
+    this.buffersFactor = buffersFactor;
+  }
+
+  /**
+   * Учитывает наблюдение плана. Возвращает изменение плана, если отпечаток запроса
+   * отличается от предыдущего наблюдения.
+   */
+  public Optional<PlanChange> record(PlanObservation observation) {
+    if (observation.getQueryKey() == null || observation.getFingerprint() == null) {
+      return Optional.empty();
+    }
+    QueryHistory history = histories.computeIfAbsent(
+        observation.getQueryKey(), key -> new QueryHistory());
+
+    PlanChange change = null;
+    history.lock.lock();
+    try {
+      PlanStats previous = history.current;
+      PlanStats stats = history.plans.computeIfAbsent(
+          observation.getFingerprint(), fp -> new PlanStats(fp, observation.getPlanShape()));
+      if (previous != null && previous != stats) {
+        change = compare(observation, previous);
+      }
+      stats.add(observation);
+      history.current = stats;
+    } finally {
+      history.lock.unlock();
+    }
+
+    if (change != null) {
+      publish(change);
+    }
+    return Optional.ofNullable(change);
+  }
+
+  public void addRegressionListener(Consumer<PlanChange> listener) {
+    regressionListeners.add(listener);
+  }
+
+  public List<PlanChange> getChanges() {
+    return new ArrayList<>(changes);
+  }
+
+  public List<PlanChange> getRegressions() {
+    return changes.stream().filter(PlanChange::isRegression).toList();
+  }
+
+  /**
+   * Возвращает текущий отпечаток плана запроса или null, если запрос еще не наблюдался.
+   */
+  public String getCurrentFingerprint(String queryKey) {
+    QueryHistory history = histories.get(queryKey);
+    if (history == null) {
+      return null;
+    }
+    history.lock.lock();
+    try {
+      return history.current != null ? history.current.fingerprint : null;
+    } finally {
+      history.lock.unlock();
+    }
+  }
+
+  /**
+   * Возвращает количество различных планов, которые наблюдались у запроса.
+   */
+  public int getPlanCount(String queryKey) {
+    QueryHistory history = histories.get(queryKey);
+    return history != null ? history.plans.size() : 0;
+  }
+
+  private PlanChange compare(PlanObservation observation, PlanStats previous) {
+    double baselineTime = previous.averageExecutionTimeMs();
+    long baselineBuffers = previous.averageBuffers();
+    double executionTime = observation.getExecutionTimeMs() != null
+        ? observation.getExecutionTimeMs() : 0.0;
+    long buffers = observation.getTotalBuffers();
+
+    List<String> reasons = new ArrayList<>();
+    if (executionTime > Math.max(baselineTime, 1.0) * slowdownFactor) {
+      reasons.add(String.format("время %.2f мс против %.2f мс", executionTime, baselineTime));
+    }
+    if (buffers > Math.max(baselineBuffers, 1L) * buffersFactor) {
+      reasons.add(String.format("буферы %d против %d", buffers, baselineBuffers));
+    }
+
+    return PlanChange.builder()
+        .queryKey(observation.getQueryKey())
+        .previousFingerprint(previous.fingerprint)
+        .newFingerprint(observation.getFingerprint())
+        .previousShape(previous.shape)
+        .newShape(observation.getPlanShape())
+        .baselineExecutionTimeMs(baselineTime)
+        .executionTimeMs(executionTime)
+        .baselineBuffers(baselineBuffers)
+        .buffers(buffers)
+        .regression(!reasons.isEmpty())
+        .reason(reasons.isEmpty() ? null : String.join("; ", reasons))
+        .detectedAt(LocalDateTime.now())
+        .build();
+  }
+
+  private void publish(PlanChange change) {
+    changes.addLast(change);
+    while (changes.size() > MAX_CHANGES) {
+      changes.pollFirst();
+    }
+
+    if (!change.isRegression()) {
+      log.info("План запроса изменился: {} -> {} ({})",
+          change.getPreviousFingerprint(), change.getNewFingerprint(), change.getQueryKey());
+      return;
+    }
+    log.warn("Регрессия плана запроса {}: {} -> {}, {}. Было: {}. Стало: {}",
+        change.getQueryKey(), change.getPreviousFingerprint(), change.getNewFingerprint(),
+        change.getReason(), change.getPreviousShape(), change.getNewShape());
+    for (Consumer<PlanChange> listener : regressionListeners) {
+      try {
+        listener.accept(change);
+      } catch (RuntimeException e) {
+        log.error("Ошибка обработчика регрессии плана", e);
+      }
+    }
+  }
+
+  private static final class QueryHistory {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, PlanStats> plans = new ConcurrentHashMap<>();
+    private PlanStats current;
+  }
+
+  private static final class PlanStats {
+    private final String fingerprint;
+    private final String shape;
+    private long observations;
+    private double totalExecutionTimeMs;
+    private long totalBuffers;
+
+    private PlanStats(String fingerprint, String shape) {
+      this.fingerprint = fingerprint;
+      this.shape = shape;
+    }
+
+    private void add(PlanObservation observation) {
+      observations++;
+      totalExecutionTimeMs += observation.getExecutionTimeMs() != null
+          ? observation.getExecutionTimeMs() : 0.0;
+      totalBuffers += observation.getTotalBuffers();
+    }
+
+    private double averageExecutionTimeMs() {
+      return observations == 0 ? 0.0 : totalExecutionTimeMs / observations;
+    }
+
+    private long averageBuffers() {
+      return observations == 0 ? 0L : totalBuffers / observations;
+    }
+  }
+}
@@ -1,19 +1,45 @@
 package ru.mentee.power.utils;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.model.analytics.PlanNode;
 
+import java.io.IOException;
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+/**
+ * Разбирает EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) за один потоковый проход: строит полное
+ * дерево {@link PlanNode}, сводные метрики запроса и структурный отпечаток плана
+ * ({@link PlanFingerprint}). План можно передать исходной JSON-строкой или готовым деревом
+ * {@link JsonNode}, которое читается тем же проходом.
+ *
+ * <p>Время узла в EXPLAIN указано за один цикл и включает дочерние узлы, поэтому в
+ * {@code actualTime} записывается Actual Total Time * Actual Loops, а собственное
+ * (exclusive) время получается вычитанием суммарного времени детей. Счетчики буферов уже
+ * суммарные по всем циклам и тоже включают детей. Для параллельных узлов время суммируется
+ * по всем воркерам, поэтому может превышать wall-clock время запроса.
+ */
 @Slf4j
 @Data
 @AllArgsConstructor
 public class QueryPlanParser {
 
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+  private static final JsonFactory JSON_FACTORY = OBJECT_MAPPER.getFactory();
+
   private final JsonNode planNode;
   private final ObjectMapper objectMapper;
 
@@ -23,96 +49,257 @@ public class QueryPlanParser {
   private Long rowsScanned;
   private Long rowsReturned;
   private Long planningTimeMs;
+  private Double executionTimeMs;
   private Double costEstimate;
   private List<String> indexesUsed;
+  private String planShape;
+  private String planFingerprint;
+  private BigDecimal planningTime;
+  private BigDecimal executionTime;
+  /** Стоимость корневого узла, или null, если план не разобран. */
+  private BigDecimal totalCost;
+  @ToString.Exclude
+  @EqualsAndHashCode.Exclude
+  private PlanNode rootNode;
+
+  /** Узлы плана в порядке обхода сверху вниз. */
+  @ToString.Exclude
+  @EqualsAndHashCode.Exclude
+  private final List<PlanNode> nodes = new ArrayList<>();
+
+  @Getter(AccessLevel.NONE)
+  @ToString.Exclude
+  @EqualsAndHashCode.Exclude
+  private final PlanFingerprint shapeBuilder = new PlanFingerprint();
 
   public QueryPlanParser(JsonNode planNode) {
     this.planNode = planNode;
-    this.objectMapper = new ObjectMapper();
+    this.objectMapper = OBJECT_MAPPER;
+    resetMetrics();
+    if (planNode == null) {
+      log.warn("Empty or invalid plan node");
+    } else {
+      parsePlan(planNode.traverse(OBJECT_MAPPER));
+    }
+    completeFingerprint();
+  }
+
+  public QueryPlanParser(String planJson) {
+    this.planNode = null;
+    this.objectMapper = OBJECT_MAPPER;
+    resetMetrics();
+    if (planJson == null || planJson.isBlank()) {
+      log.warn("Empty or invalid plan node");
+    } else {
+      try {
+        parsePlan(JSON_FACTORY.createParser(planJson));
+      } catch (IOException e) {
+        log.error("Error parsing query plan", e);
+      }
+    }
+    completeFingerprint();
+  }
+
+  /**
+   * Возвращает узел с наибольшим собственным временем, то есть оператор,
+   * который действительно тратит время запроса.
+   */
+  public PlanNode getHottestNode() {
+    PlanNode hottest = null;
+    for (PlanNode node : nodes) {
+      if (hottest == null || node.getExclusiveTime().compareTo(hottest.getExclusiveTime()) > 0) {
+        hottest = node;
+      }
+    }
+    return hottest;
+  }
+
+  private void resetMetrics() {
     this.buffersHit = 0L;
     this.buffersRead = 0L;
     this.rowsScanned = 0L;
     this.rowsReturned = 0L;
     this.indexesUsed = new ArrayList<>();
     this.planningTimeMs = 0L;
+    this.executionTimeMs = 0.0;
     this.costEstimate = 0.0;
-    parsePlan();
   }
 
-  private void parsePlan() {
-    try {
-      if (planNode == null || !planNode.isArray() || planNode.size() == 0) {
+  private void completeFingerprint() {
+    this.planShape = shapeBuilder.getShape();
+    this.planFingerprint = shapeBuilder.getFingerprint();
+  }
+
+  private void parsePlan(JsonParser source) {
+    try (JsonParser parser = source) {
+      if (parser.nextToken() != JsonToken.START_ARRAY
+          || parser.nextToken() != JsonToken.START_OBJECT) {
         log.warn("Empty or invalid plan node");
         return;
       }
 
-      JsonNode root = planNode.get(0);
-
-      if (root.has("Planning Time")) {
-        planningTimeMs = (long) (root.get("Planning Time").asDouble() * 1000);
-      }
-
-      JsonNode plan = root.get("Plan");
-      if (plan != null) {
-        parseNode(plan);
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if ("Plan".equals(field) && value == JsonToken.START_OBJECT) {
+          rootNode = parseNode(parser, 0);
+          // Счетчики буферов в EXPLAIN включают дочерние узлы, итог запроса - у корня
+          totalCost = rootNode.getCost();
+          buffersHit = rootNode.getBuffersHit();
+          buffersRead = rootNode.getBuffersRead();
+        } else if ("Planning Time".equals(field)) {
+          planningTime = parser.getDecimalValue();
+          planningTimeMs = Math.round(planningTime.doubleValue());
+        } else if ("Execution Time".equals(field)) {
+          executionTime = parser.getDecimalValue();
+          executionTimeMs = executionTime.doubleValue();
+        } else {
+          parser.skipChildren();
+        }
       }
 
-    } catch (Exception e) {
+    } catch (IOException e) {
       log.error("Error parsing query plan", e);
     }
   }
 
-  private void parseNode(JsonNode node) {
-    if (node == null) return;
+  /**
+   * Разбирает один объект узла плана, парсер стоит на его START_OBJECT. PostgreSQL выводит
+   * "Plans" последним полем узла, поэтому узел учитывается в сводных метриках и отпечатке
+   * до спуска в дочерние узлы, в порядке обхода сверху вниз.
+   */
+  private PlanNode parseNode(JsonParser parser, int depth) throws IOException {
+    PlanNode node = PlanNode.builder()
+        .depth(depth)
+        .buffersHit(0L)
+        .buffersRead(0L)
+        .loops(1L)
+        .children(Collections.emptyList())
+        .build();
+    // Узел добавляется до детей, чтобы nodes шел в порядке обхода сверху вниз
+    nodes.add(node);
+    boolean applied = false;
 
-    if (node.has("Node Type")) {
-      String nodeType = node.get("Node Type").asText();
+    BigDecimal timePerLoop = null;
+    String joinType = null;
+    String strategy = null;
+    String filter = null;
+    String condition = null;
 
-      if (scanType == null && nodeType.contains("Scan")) {
-        scanType = nodeType;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      switch (field) {
+        case "Node Type" -> node.setNodeType(parser.getText());
+        case "Relation Name" -> node.setRelation(parser.getText());
+        case "Alias" -> node.setAlias(parser.getText());
+        case "Index Name" -> node.setIndexName(parser.getText());
+        case "Join Type" -> joinType = parser.getText();
+        case "Strategy" -> strategy = parser.getText();
+        case "Filter" -> filter = parser.getText();
+        case "Join Filter", "Hash Cond", "Merge Cond", "Index Cond", "Recheck Cond" -> {
+          if (condition == null) {
+            condition = parser.getText();
+          }
+        }
+        case "Total Cost" -> node.setCost(parser.getDecimalValue());
+        case "Actual Total Time" -> timePerLoop = parser.getDecimalValue();
+        case "Plan Rows" -> node.setPlanRows(parser.getValueAsLong());
+        case "Actual Rows" -> node.setRows(parser.getValueAsLong());
+        case "Actual Loops" -> node.setLoops(parser.getValueAsLong());
+        case "Subplans Removed" -> node.setSubplansRemoved(parser.getValueAsLong());
+        case "Heap Fetches" -> node.setHeapFetches(parser.getValueAsLong());
+        case "Shared Hit Blocks" -> node.setBuffersHit(parser.getValueAsLong());
+        case "Shared Read Blocks" -> node.setBuffersRead(parser.getValueAsLong());
+        case "Plans" -> {
+          if (!applied) {
+            applyNode(node);
+            applied = true;
+          }
+          if (value == JsonToken.START_ARRAY) {
+            List<PlanNode> children = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+              if (children.isEmpty()) {
+                shapeBuilder.beginChildren();
+              }
+              children.add(parseNode(parser, depth + 1));
+            }
+            if (!children.isEmpty()) {
+              shapeBuilder.endChildren();
+            }
+            node.setChildren(children);
+          } else {
+            parser.skipChildren();
+          }
+        }
+        default -> parser.skipChildren();
+      }
+    }
+
+    if (!applied) {
+      applyNode(node);
+    }
+    node.setOperation(describeOperation(node.getNodeType(), joinType, strategy));
+    node.setFilter(filter != null ? filter : condition);
+    node.setCondition(condition);
+    node.setActualTime(timePerLoop == null ? BigDecimal.ZERO
+        : timePerLoop.multiply(BigDecimal.valueOf(node.getLoops())));
+    computeExclusive(node);
+    return node;
+  }
+
+  /**
+   * Учитывает узел плана в сводных метриках и отпечатке.
+   */
+  private void applyNode(PlanNode node) {
+    if (node.getNodeType() != null) {
+      shapeBuilder.enterNode(node.getNodeType(), node.getRelation(), node.getIndexName());
 
-        if (node.has("Index Name")) {
-          String indexName = node.get("Index Name").asText();
-          indexesUsed.add(indexName);
+      if (scanType == null && node.getNodeType().contains("Scan")) {
+        scanType = node.getNodeType();
+
+        if (node.getIndexName() != null) {
+          indexesUsed.add(node.getIndexName());
         }
       }
 
-      if (node.has("Plan Rows")) {
-        rowsScanned += node.get("Plan Rows").asLong();
+      if (node.getPlanRows() != null) {
+        rowsScanned += node.getPlanRows();
       }
-      if (node.has("Actual Rows")) {
-        rowsReturned += node.get("Actual Rows").asLong();
+      if (node.getRows() != null) {
+        rowsReturned += node.getRows();
       }
 
-      if (node.has("Total Cost")) {
-        double nodeCost = node.get("Total Cost").asDouble();
-        if (costEstimate == null || nodeCost > costEstimate) {
-          costEstimate = nodeCost;
-        }
+      if (node.getCost() != null && node.getCost().doubleValue() > costEstimate) {
+        costEstimate = node.getCost().doubleValue();
       }
     }
+  }
 
-    if (node.has("Buffers")) {
-      JsonNode buffers = node.get("Buffers");
-      if (buffers.has("shared")) {
-        JsonNode shared = buffers.get("shared");
-        if (shared.has("hit")) {
-          buffersHit += shared.get("hit").asLong();
-        }
-        if (shared.has("read")) {
-          buffersRead += shared.get("read").asLong();
-        }
-      }
+  private void computeExclusive(PlanNode node) {
+    BigDecimal childrenTime = BigDecimal.ZERO;
+    long childrenHit = 0;
+    long childrenRead = 0;
+    for (PlanNode child : node.getChildren()) {
+      childrenTime = childrenTime.add(child.getActualTime());
+      childrenHit += child.getBuffersHit();
+      childrenRead += child.getBuffersRead();
     }
+    node.setExclusiveTime(node.getActualTime().subtract(childrenTime).max(BigDecimal.ZERO));
+    node.setExclusiveBuffersHit(Math.max(0, node.getBuffersHit() - childrenHit));
+    node.setExclusiveBuffersRead(Math.max(0, node.getBuffersRead() - childrenRead));
+  }
 
-    if (node.has("Plans")) {
-      JsonNode plans = node.get("Plans");
-      if (plans.isArray()) {
-        for (JsonNode child : plans) {
-          parseNode(child);
-        }
-      }
+  private String describeOperation(String nodeType, String joinType, String strategy) {
+    if (nodeType == null) {
+      return null;
+    }
+    if (joinType != null) {
+      return nodeType + " (" + joinType + ")";
     }
+    if (strategy != null) {
+      return nodeType + " (" + strategy + ")";
+    }
+    return nodeType;
   }
-
-}
\ No newline at end of file
+}
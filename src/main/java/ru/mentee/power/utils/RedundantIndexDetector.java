@@ -0,0 +1,236 @@
+package ru.mentee.power.utils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import ru.mentee.power.model.analytics.DropCandidate;
+import ru.mentee.power.model.analytics.IndexDefinition;
+import ru.mentee.power.model.analytics.IndexRedundancyReport;
+import ru.mentee.power.model.analytics.RedundancyReason;
+import ru.mentee.power.model.analytics.TableWriteCost;
+
+/**
+ * Ищет индексы, которые можно удалить без потери планов: точные дубли, индексы, ключ которых
+ * является началом ключа другого индекса, частичные индексы, покрытые полным, и индексы
+ * без сканирований.
+ *
+ * <p>Каждый индекс обновляется при вставке строки и при обновлении, которое не прошло как HOT,
+ * поэтому стоимость записи индекса считается как n_tup_ins + (n_tup_upd - n_tup_hot_upd) его
+ * таблицы, а польза - как число сканирований. Индекс, колонки которого есть в другом индексе,
+ * предлагается удалить, если записей на одно сканирование больше {@code overlapWritesPerScan}.
+ * Уникальные индексы и первичные ключи не предлагаются: они обеспечивают ограничения.
+ *
+ * <p>Прирост скорости вставки оценивается грубо: вставка стоит одну запись в кучу и по одной
+ * записи в каждый индекс таблицы, так что удаление k из n индексов дает (1 + n) / (1 + n - k).
+ */
+public class RedundantIndexDetector {
+
+  public static final double DEFAULT_OVERLAP_WRITES_PER_SCAN = 1_000.0;
+  private static final String BTREE = "btree";
+
+  private final double overlapWritesPerScan;
+
+  public RedundantIndexDetector() {
+    this(DEFAULT_OVERLAP_WRITES_PER_SCAN);
+  }
+
+  public RedundantIndexDetector(double overlapWritesPerScan) {
+    this.overlapWritesPerScan = overlapWritesPerScan;
+  }
+
+  /**
+   * Строит отчет по индексам и счетчикам записи их таблиц. В {@code tables} должны быть
+   * заполнены inserts, nonHotUpdates и hotUpdates; остальные поля заполняет детектор.
+   */
+  public IndexRedundancyReport detect(
+      List<IndexDefinition> indexes, Map<String, TableWriteCost> tables, boolean fromSampler) {
+    Map<String, List<IndexDefinition>> byTable = new LinkedHashMap<>();
+    for (IndexDefinition index : indexes) {
+      byTable.computeIfAbsent(index.getTableName(), table -> new ArrayList<>()).add(index);
+    }
+
+    List<DropCandidate> candidates = new ArrayList<>();
+    List<TableWriteCost> tableCosts = new ArrayList<>();
+    long reclaimable = 0;
+    for (Map.Entry<String, List<IndexDefinition>> entry : byTable.entrySet()) {
+      TableWriteCost cost = tables.getOrDefault(entry.getKey(), TableWriteCost.builder()
+          .tableName(entry.getKey()).inserts(0L).nonHotUpdates(0L).hotUpdates(0L).build());
+      long indexWrites = cost.getInserts() + cost.getNonHotUpdates();
+
+      List<DropCandidate> tableCandidates = detectForTable(entry.getValue(), indexWrites);
+      long tableReclaimable = tableCandidates.stream().mapToLong(DropCandidate::getSizeBytes).sum();
+      int indexCount = entry.getValue().size();
+      int dropped = tableCandidates.size();
+
+      cost.setIndexCount(indexCount);
+      cost.setDropCandidateCount(dropped);
+      cost.setReclaimableBytes(tableReclaimable);
+      cost.setEstimatedInsertGainPercent(
+          ((1.0 + indexCount) / (1.0 + indexCount - dropped) - 1.0) * 100.0);
+      tableCosts.add(cost);
+      candidates.addAll(tableCandidates);
+      reclaimable += tableReclaimable;
+    }
+
+    candidates.sort(Comparator.comparing(DropCandidate::getWritesPerScan).reversed());
+    tableCosts.sort(Comparator.comparing(TableWriteCost::getEstimatedInsertGainPercent)
+        .reversed());
+    return IndexRedundancyReport.builder()
+        .dropCandidates(candidates)
+        .tables(tableCosts)
+        .reclaimableBytes(reclaimable)
+        .usageFromSampler(fromSampler)
+        .generatedAt(LocalDateTime.now())
+        .build();
+  }
+
+  private List<DropCandidate> detectForTable(List<IndexDefinition> indexes, long indexWrites) {
+    List<DropCandidate> result = new ArrayList<>();
+    Set<IndexDefinition> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // Точные дубли: остается первичный ключ, затем уникальный, затем самый используемый
+    Map<String, List<IndexDefinition>> bySignature = new LinkedHashMap<>();
+    for (IndexDefinition index : indexes) {
+      bySignature.computeIfAbsent(signature(index), key -> new ArrayList<>()).add(index);
+    }
+    for (List<IndexDefinition> group : bySignature.values()) {
+      if (group.size() < 2) {
+        continue;
+      }
+      group.sort(Comparator.comparing(IndexDefinition::isPrimary)
+          .thenComparing(IndexDefinition::isUnique)
+          .thenComparing(IndexDefinition::getScans)
+          .reversed()
+          .thenComparing(IndexDefinition::getIndexName));
+      IndexDefinition keeper = group.get(0);
+      for (IndexDefinition duplicate : group.subList(1, group.size())) {
+        if (!duplicate.isPrimary()) {
+          removed.add(duplicate);
+          result.add(candidate(duplicate, RedundancyReason.EXACT_DUPLICATE, keeper, indexWrites));
+        }
+      }
+    }
+
+    // Длинные ключи проверяются первыми, чтобы индекс не ссылался на удаляемый
+    List<IndexDefinition> ordered = new ArrayList<>(indexes);
+    ordered.sort(Comparator.comparing((IndexDefinition index) -> index.getKeyColumns().size())
+        .reversed());
+    for (IndexDefinition index : ordered) {
+      if (removed.contains(index) || index.isUnique() || index.isPrimary()) {
+        continue;
+      }
+      RedundancyReason reason = null;
+      IndexDefinition coveredBy = findPrefixCover(index, indexes, removed);
+      if (coveredBy != null) {
+        reason = RedundancyReason.PREFIX_DUPLICATE;
+      } else if (index.getPredicate() != null
+          && (coveredBy = findFullCover(index, indexes, removed)) != null) {
+        reason = RedundancyReason.SUBSUMED;
+      } else if (index.getScans() == 0) {
+        reason = index.getPredicate() != null
+            ? RedundancyReason.UNUSED_PARTIAL : RedundancyReason.UNUSED;
+      } else if ((double) indexWrites / index.getScans() > overlapWritesPerScan
+          && (coveredBy = findColumnOverlap(index, indexes, removed)) != null) {
+        reason = RedundancyReason.LOW_BENEFIT_OVERLAP;
+      }
+      if (reason != null) {
+        removed.add(index);
+        result.add(candidate(index, reason, coveredBy, indexWrites));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * B-tree с тем же предикатом, ключ которого начинается с ключа индекса и длиннее его.
+   */
+  private IndexDefinition findPrefixCover(
+      IndexDefinition index, List<IndexDefinition> indexes, Set<IndexDefinition> removed) {
+    for (IndexDefinition other : indexes) {
+      if (other != index && !removed.contains(other) && isBtree(index) && isBtree(other)
+          && Objects.equals(index.getPredicate(), other.getPredicate())
+          && other.getKeyColumns().size() > index.getKeyColumns().size()
+          && startsWith(other.getKeyColumns(), index.getKeyColumns())
+          && allColumns(other).containsAll(index.getIncludeColumns())) {
+        return other;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Полный B-tree, ключ которого начинается с ключа частичного индекса.
+   */
+  private IndexDefinition findFullCover(
+      IndexDefinition index, List<IndexDefinition> indexes, Set<IndexDefinition> removed) {
+    for (IndexDefinition other : indexes) {
+      if (other != index && !removed.contains(other) && isBtree(index) && isBtree(other)
+          && other.getPredicate() == null
+          && startsWith(other.getKeyColumns(), index.getKeyColumns())
+          && allColumns(other).containsAll(index.getIncludeColumns())) {
+        return other;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Индекс, в котором есть все колонки данного индекса в любом порядке.
+   */
+  private IndexDefinition findColumnOverlap(
+      IndexDefinition index, List<IndexDefinition> indexes, Set<IndexDefinition> removed) {
+    for (IndexDefinition other : indexes) {
+      if (other != index && !removed.contains(other)
+          && Objects.equals(index.getAccessMethod(), other.getAccessMethod())
+          && (other.getPredicate() == null
+              || Objects.equals(index.getPredicate(), other.getPredicate()))
+          && allColumns(other).containsAll(allColumns(index))) {
+        return other;
+      }
+    }
+    return null;
+  }
+
+  private DropCandidate candidate(IndexDefinition index, RedundancyReason reason,
+      IndexDefinition coveredBy, long indexWrites) {
+    return DropCandidate.builder()
+        .indexName(index.getIndexName())
+        .tableName(index.getTableName())
+        .reason(reason)
+        .coveredBy(coveredBy != null ? coveredBy.getIndexName() : null)
+        .definition(index.getDefinition())
+        .scans(index.getScans())
+        .indexWrites(indexWrites)
+        .writesPerScan((double) indexWrites / Math.max(index.getScans(), 1L))
+        .sizeBytes(index.getSizeBytes())
+        .dropStatement("DROP INDEX CONCURRENTLY IF EXISTS " + index.getIndexName())
+        .build();
+  }
+
+  private static String signature(IndexDefinition index) {
+    return index.getAccessMethod() + "|" + index.getKeyColumns() + "|"
+        + new HashSet<>(index.getIncludeColumns()) + "|" + index.getPredicate();
+  }
+
+  private static boolean isBtree(IndexDefinition index) {
+    return BTREE.equals(index.getAccessMethod());
+  }
+
+  private static boolean startsWith(List<String> columns, List<String> prefix) {
+    return columns.size() >= prefix.size() && columns.subList(0, prefix.size()).equals(prefix);
+  }
+
+  private static Set<String> allColumns(IndexDefinition index) {
+    Set<String> columns = new HashSet<>(index.getKeyColumns());
+    columns.addAll(index.getIncludeColumns());
+    return columns;
+  }
+}
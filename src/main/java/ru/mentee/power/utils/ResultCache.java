@@ -0,0 +1,395 @@
+package ru.mentee.power.utils;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.config.ResultCacheConfig;
+import ru.mentee.power.exception.DataAccessException;
+import ru.mentee.power.model.ResultCacheMode;
+import ru.mentee.power.model.analytics.CacheStats;
+import ru.mentee.power.model.analytics.PerformanceMetrics;
+
+/**
+ * Кэш результатов аналитических запросов, ограниченный по объему в байтах, с вытеснением
+ * давно не использованных записей (LRU).
+ *
+ * <p>Каждая запись знает таблицы, из которых построен результат. Изменение таблицы приходит
+ * через {@link #invalidateTable(String)} от {@link ChangeNotificationListener}: в режиме
+ * INVALIDATE зависимые записи удаляются, в режиме STALE_WHILE_REFRESH помечаются устаревшими,
+ * отдаются вызывающим и обновляются в фоне, не больше одного обновления на ключ одновременно.
+ * У каждой таблицы есть номер версии, поэтому результат, загрузка которого пересеклась с
+ * изменением таблицы, сохраняется сразу устаревшим.
+ *
+ * <p>Объем записи оценивается функцией, которую передает вызывающий; запись больше всего
+ * кэша не сохраняется.
+ */
+@Slf4j
+public class ResultCache implements AutoCloseable {
+
+  private static final int REFRESH_THREADS = 2;
+
+  private final ResultCacheMode mode;
+  private final long maxBytes;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final LinkedHashMap<String, Entry<?>> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<String, Long> tableVersions = new HashMap<>();
+  private long globalVersion;
+  private final ExecutorService refresher;
+  private long sizeBytes;
+  private volatile boolean notificationsActive;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder staleHits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+  private final LongAdder refreshes = new LongAdder();
+  private final LongAdder refreshFailures = new LongAdder();
+  private final LongAdder servedStalenessMs = new LongAdder();
+  private final LongAccumulator maxServedStalenessMs = new LongAccumulator(Math::max, 0L);
+
+  public ResultCache(ResultCacheConfig config) {
+    this(config.getResultCacheMode(), config.getResultCacheMaxBytes());
+  }
+
+  public ResultCache(ResultCacheMode mode, long maxBytes) {
+    this.mode = mode;
+    this.maxBytes = maxBytes;
+    this.refresher = Executors.newFixedThreadPool(REFRESH_THREADS, runnable -> {
+      Thread thread = new Thread(runnable, "result-cache-refresh");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  public ResultCacheMode getMode() {
+    return mode;
+  }
+
+  /**
+   * Загрузка результата при промахе и при фоновом обновлении.
+   */
+  @FunctionalInterface
+  public interface Loader<T> {
+    T load() throws DataAccessException;
+  }
+
+  /**
+   * Результат обращения к кэшу: значение и признаки попадания и устаревания.
+   */
+  public record Lookup<T>(T value, boolean hit, boolean stale, long ageMs) {
+  }
+
+  /**
+   * Возвращает результат по ключу или загружает его. {@code tables} - таблицы, изменение
+   * которых делает результат неактуальным, {@code weigher} - оценка объема результата в байтах.
+   */
+  public <T> Lookup<T> get(String key, Set<String> tables, Loader<T> loader,
+      ToLongFunction<T> weigher) throws DataAccessException {
+    if (mode == ResultCacheMode.DISABLED) {
+      return new Lookup<>(loader.load(), false, false, 0L);
+    }
+    if (!notificationsActive) {
+      misses.increment();
+      return new Lookup<>(loader.load(), false, false, 0L);
+    }
+
+    Map<String, Long> versions;
+    lock.lock();
+    try {
+      @SuppressWarnings("unchecked")
+      Entry<T> entry = (Entry<T>) entries.get(key);
+      if (entry != null) {
+        long now = System.nanoTime();
+        long ageMs = TimeUnit.NANOSECONDS.toMillis(now - entry.loadedAtNanos);
+        if (!entry.stale) {
+          hits.increment();
+          return new Lookup<>(entry.value, true, false, ageMs);
+        }
+        if (mode == ResultCacheMode.STALE_WHILE_REFRESH) {
+          long stalenessMs = TimeUnit.NANOSECONDS.toMillis(now - entry.staleSinceNanos);
+          staleHits.increment();
+          servedStalenessMs.add(stalenessMs);
+          maxServedStalenessMs.accumulate(stalenessMs);
+          if (!entry.refreshing) {
+            entry.refreshing = true;
+            scheduleRefresh(key, entry, loader, weigher);
+          }
+          return new Lookup<>(entry.value, true, true, ageMs);
+        }
+      }
+      misses.increment();
+      versions = versionsOf(tables);
+    } finally {
+      lock.unlock();
+    }
+
+    T value = loader.load();
+    put(key, tables, versions, value, weigher.applyAsLong(value));
+    return new Lookup<>(value, false, false, 0L);
+  }
+
+  private <T> void scheduleRefresh(
+      String key, Entry<T> stale, Loader<T> loader, ToLongFunction<T> weigher) {
+    Map<String, Long> versions = versionsOf(stale.tables);
+    refresher.execute(() -> {
+      try {
+        T value = loader.load();
+        put(key, stale.tables, versions, value, weigher.applyAsLong(value));
+        refreshes.increment();
+      } catch (RuntimeException e) {
+        refreshFailures.increment();
+        log.warn("Фоновое обновление кэша для {} не удалось: {}", key, e.getMessage());
+        lock.lock();
+        try {
+          stale.refreshing = false;
+        } finally {
+          lock.unlock();
+        }
+      }
+    });
+  }
+
+  private <T> void put(String key, Set<String> tables, Map<String, Long> versions,
+      T value, long weight) {
+    if (weight > maxBytes) {
+      lock.lock();
+      try {
+        remove(key);
+      } finally {
+        lock.unlock();
+      }
+      return;
+    }
+
+    lock.lock();
+    try {
+      Entry<T> entry = new Entry<>(value, tables, weight, System.nanoTime());
+      // Таблица изменилась, пока шла загрузка: результат мог не увидеть изменение
+      if (!versions.equals(versionsOf(tables))) {
+        if (mode != ResultCacheMode.STALE_WHILE_REFRESH) {
+          remove(key);
+          return;
+        }
+        entry.stale = true;
+        entry.staleSinceNanos = entry.loadedAtNanos;
+      }
+      remove(key);
+      entries.put(key, entry);
+      sizeBytes += weight;
+
+      Iterator<Map.Entry<String, Entry<?>>> eldest = entries.entrySet().iterator();
+      while (sizeBytes > maxBytes && eldest.hasNext()) {
+        Map.Entry<String, Entry<?>> next = eldest.next();
+        if (next.getKey().equals(key)) {
+          continue;
+        }
+        sizeBytes -= next.getValue().weight;
+        eldest.remove();
+        evictions.increment();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void remove(String key) {
+    Entry<?> removed = entries.remove(key);
+    if (removed != null) {
+      sizeBytes -= removed.weight;
+    }
+  }
+
+  /**
+   * Включает или выключает выдачу из кэша. Без подписки на уведомления об изменениях
+   * кэш не может узнать об устаревании, поэтому, пока слушатель не подключен, все вызовы
+   * идут в базу, а при потере подписки записи сбрасываются.
+   */
+  public void setNotificationsActive(boolean active) {
+    if (!active) {
+      invalidateAll();
+    }
+    notificationsActive = active;
+  }
+
+  public boolean isNotificationsActive() {
+    return notificationsActive;
+  }
+
+  /**
+   * Реагирует на изменение таблицы: удаляет зависимые записи или помечает их устаревшими.
+   */
+  public void invalidateTable(String table) {
+    lock.lock();
+    try {
+      tableVersions.merge(table, 1L, Long::sum);
+      int affected = invalidateWhere(entry -> entry.tables.contains(table));
+      if (affected > 0) {
+        log.debug("Изменение {}: затронуто {} записей кэша", table, affected);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Делает неактуальными все записи. Вызывается, когда уведомления могли быть потеряны,
+   * например после переподключения слушателя.
+   */
+  public void invalidateAll() {
+    lock.lock();
+    try {
+      globalVersion++;
+      invalidateWhere(entry -> true);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private int invalidateWhere(Predicate<Entry<?>> affected) {
+    int count = 0;
+    long now = System.nanoTime();
+    Iterator<Entry<?>> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      Entry<?> entry = iterator.next();
+      if (!affected.test(entry)) {
+        continue;
+      }
+      count++;
+      if (mode == ResultCacheMode.STALE_WHILE_REFRESH) {
+        if (!entry.stale) {
+          entry.stale = true;
+          entry.staleSinceNanos = now;
+        }
+      } else {
+        sizeBytes -= entry.weight;
+        iterator.remove();
+      }
+    }
+    invalidations.add(count);
+    return count;
+  }
+
+  private Map<String, Long> versionsOf(Set<String> tables) {
+    Map<String, Long> versions = new HashMap<>();
+    versions.put("*", globalVersion);
+    for (String table : tables) {
+      versions.put(table, tableVersions.getOrDefault(table, 0L));
+    }
+    return versions;
+  }
+
+  public CacheStats getStats() {
+    lock.lock();
+    try {
+      long now = System.nanoTime();
+      int stale = 0;
+      long oldestStaleNanos = 0;
+      for (Entry<?> entry : entries.values()) {
+        if (entry.stale) {
+          stale++;
+          oldestStaleNanos = Math.max(oldestStaleNanos, now - entry.staleSinceNanos);
+        }
+      }
+      long hitCount = hits.sum();
+      long staleHitCount = staleHits.sum();
+      long missCount = misses.sum();
+      long requests = hitCount + staleHitCount + missCount;
+      return CacheStats.builder()
+          .mode(mode.name())
+          .hits(hitCount)
+          .staleHits(staleHitCount)
+          .misses(missCount)
+          .hitRatio(requests == 0 ? 0.0 : (double) (hitCount + staleHitCount) / requests)
+          .evictions(evictions.sum())
+          .invalidations(invalidations.sum())
+          .backgroundRefreshes(refreshes.sum())
+          .refreshFailures(refreshFailures.sum())
+          .entries(entries.size())
+          .staleEntries(stale)
+          .sizeBytes(sizeBytes)
+          .maxBytes(maxBytes)
+          .oldestStaleAgeMs(TimeUnit.NANOSECONDS.toMillis(oldestStaleNanos))
+          .maxServedStalenessMs(maxServedStalenessMs.get())
+          .avgServedStalenessMs(staleHitCount == 0
+              ? 0.0 : (double) servedStalenessMs.sum() / staleHitCount)
+          .capturedAt(LocalDateTime.now())
+          .build();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Строит ключ из имени запроса и параметров. Коллекции приводятся к отсортированному набору
+   * без повторов и лишних пробелов: запросы фильтруют через = ANY и сортируют результат сами,
+   * поэтому порядок и повторы значений на результат не влияют.
+   */
+  public static String key(String query, Object... params) {
+    StringBuilder key = new StringBuilder(query);
+    for (Object param : params) {
+      key.append('|');
+      if (param instanceof Collection<?> values) {
+        TreeSet<String> normalized = new TreeSet<>();
+        for (Object value : values) {
+          normalized.add(String.valueOf(value).trim());
+        }
+        key.append(normalized);
+      } else {
+        key.append(param instanceof String text ? text.trim() : param);
+      }
+    }
+    return key.toString();
+  }
+
+  /**
+   * Переносит признаки попадания в метрики результата. Метрики выполнения при попадании
+   * остаются от исходного запроса.
+   */
+  public static <T> PerformanceMetrics<T> annotate(Lookup<PerformanceMetrics<T>> lookup) {
+    if (!lookup.hit()) {
+      return lookup.value().toBuilder().cacheHit(false).build();
+    }
+    return lookup.value().toBuilder()
+        .cacheHit(true)
+        .cacheStale(lookup.stale())
+        .cacheAgeMs(lookup.ageMs())
+        .build();
+  }
+
+  @Override
+  public void close() {
+    refresher.shutdownNow();
+  }
+
+  private static final class Entry<T> {
+    private final T value;
+    private final Set<String> tables;
+    private final long weight;
+    private final long loadedAtNanos;
+    private boolean stale;
+    private long staleSinceNanos;
+    private boolean refreshing;
+
+    private Entry(T value, Set<String> tables, long weight, long loadedAtNanos) {
+      this.value = value;
+      this.tables = tables;
+      this.weight = weight;
+      this.loadedAtNanos = loadedAtNanos;
+    }
+  }
+}
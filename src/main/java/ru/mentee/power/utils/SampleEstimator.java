@@ -0,0 +1,146 @@
+package ru.mentee.power.utils;
+
+import ru.mentee.power.model.analytics.ConfidenceInterval;
+
+/**
+ * Оценки по выборке TABLESAMPLE и их доверительные интервалы.
+ *
+ * <p>Единица выборки - строка для BERNOULLI и страница для SYSTEM; каждая единица попадает в
+ * выборку с вероятностью f = percent / 100. Итог по таблице оценивается как сумма по выборке,
+ * деленная на f (оценка Хорвица-Томпсона), с дисперсией (1 - f) / f^2 * сумма квадратов
+ * итогов единиц. Для SYSTEM итоги считаются по страницам, то есть по парам (tableoid, номер
+ * блока): номера блоков повторяются в каждой секции секционированной таблицы. Корреляция строк
+ * одной страницы поэтому расширяет интервал, а не теряется. Среднее - отношение двух оценок,
+ * его дисперсия берется линеаризацией. Интервалы нормальные, поэтому для групп с единицами
+ * строк в выборке они занижены.
+ */
+public final class SampleEstimator {
+
+  public static final double MAX_PERCENT = 100.0;
+
+  private SampleEstimator() {
+  }
+
+  /**
+   * Оценка итога по таблице. Нижняя граница не опускается ниже наблюдаемого в выборке итога.
+   *
+   * @param sampleTotal сумма значений по выборке
+   * @param sumOfSquares сумма квадратов итогов единиц выборки
+   * @param percent доля выборки в процентах
+   * @param z квантиль нормального распределения для уровня доверия
+   */
+  public static ConfidenceInterval total(
+      double sampleTotal, double sumOfSquares, double percent, double z) {
+    double f = percent / MAX_PERCENT;
+    double estimate = sampleTotal / f;
+    double standardError = Math.sqrt(Math.max(0.0, (1.0 - f) / (f * f) * sumOfSquares));
+    return interval(estimate, standardError, z, Math.min(sampleTotal, estimate));
+  }
+
+  /**
+   * Оценка отношения двух итогов, например средней суммы заказа: SUM(amount) / COUNT(amount).
+   *
+   * @param numerator сумма числителя по выборке
+   * @param denominator сумма знаменателя по выборке
+   * @param numeratorSq сумма квадратов числителя по единицам
+   * @param denominatorSq сумма квадратов знаменателя по единицам
+   * @param cross сумма произведений числителя и знаменателя по единицам
+   */
+  public static ConfidenceInterval ratio(double numerator, double denominator,
+      double numeratorSq, double denominatorSq, double cross, double percent, double z) {
+    if (denominator == 0) {
+      return null;
+    }
+    double f = percent / MAX_PERCENT;
+    double estimate = numerator / denominator;
+    double residual = numeratorSq - 2 * estimate * cross + estimate * estimate * denominatorSq;
+    double standardError =
+        Math.sqrt(Math.max(0.0, (1.0 - f) * residual) / (denominator * denominator));
+    return interval(estimate, standardError, z, Double.NEGATIVE_INFINITY);
+  }
+
+  /**
+   * Доля выборки, при которой относительная погрешность станет не больше целевой. Погрешность
+   * пропорциональна sqrt((1 - f) / f), поэтому пересчитывается из погрешности пробного запроса.
+   */
+  public static double percentForError(
+      double pilotPercent, double pilotRelativeError, double targetRelativeError) {
+    if (pilotRelativeError <= targetRelativeError) {
+      return pilotPercent;
+    }
+    if (targetRelativeError <= 0 || Double.isInfinite(pilotRelativeError)) {
+      return MAX_PERCENT;
+    }
+    double f0 = pilotPercent / MAX_PERCENT;
+    double ratio = targetRelativeError / pilotRelativeError;
+    double odds = (1.0 - f0) / f0 * ratio * ratio;
+    return Math.min(MAX_PERCENT, MAX_PERCENT / (1.0 + odds));
+  }
+
+  /**
+   * Доля выборки, укладывающаяся в целевую задержку, при времени, пропорциональном доле.
+   * Для SYSTEM это близко к правде; BERNOULLI читает всю таблицу при любой доле, и
+   * оценка для него осторожная.
+   */
+  public static double percentForLatency(double pilotPercent, long pilotMs, long targetMs) {
+    if (pilotMs <= 0) {
+      return MAX_PERCENT;
+    }
+    return Math.min(MAX_PERCENT, pilotPercent * targetMs / pilotMs);
+  }
+
+  /**
+   * Двусторонний квантиль нормального распределения: для уровня 0.95 возвращает 1.96.
+   */
+  public static double zScore(double confidence) {
+    if (confidence <= 0 || confidence >= 1) {
+      throw new IllegalArgumentException("Уровень доверия должен быть в (0, 1): " + confidence);
+    }
+    return inverseNormal(0.5 + confidence / 2);
+  }
+
+  private static ConfidenceInterval interval(
+      double estimate, double standardError, double z, double lowerBound) {
+    double margin = z * standardError;
+    double relativeError = estimate != 0 ? margin / Math.abs(estimate)
+        : margin == 0 ? 0.0 : Double.POSITIVE_INFINITY;
+    return ConfidenceInterval.builder()
+        .estimate(estimate)
+        .low(Math.max(lowerBound, estimate - margin))
+        .high(estimate + margin)
+        .standardError(standardError)
+        .relativeError(relativeError)
+        .build();
+  }
+
+  /**
+   * Обратная функция нормального распределения (рациональное приближение Акклама,
+   * относительная погрешность около 1e-9).
+   */
+  private static double inverseNormal(double p) {
+    final double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+        1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+    final double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+        6.680131188771972e+01, -1.328068155288572e+01};
+    final double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+        -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+    final double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+        3.754408661907416e+00};
+    final double low = 0.02425;
+
+    if (p < low) {
+      double q = Math.sqrt(-2 * Math.log(p));
+      return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+          / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+    }
+    if (p > 1 - low) {
+      double q = Math.sqrt(-2 * Math.log(1 - p));
+      return -(((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+          / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+    }
+    double q = p - 0.5;
+    double r = q * q;
+    return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+        / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+  }
+}
@@ -0,0 +1,69 @@
+package ru.mentee.power.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HexFormat;
+
+/**
+ * Отпечаток схемы базы по журналу Liquibase: SHA-256 от примененных наборов изменений в порядке
+ * применения вместе с их контрольными суммами. Новая миграция или правка уже примененной
+ * меняют отпечаток, поэтому по нему отбрасываются снимки данных, записанные при старой схеме.
+ * В отпечаток входят имя базы и текущая схема: снимок другой базы или схемы с тем же журналом
+ * тоже отбрасывается.
+ */
+public final class SchemaFingerprint {
+
+  private static final String CHANGELOG_SQL = """
+        SELECT id, author, filename, md5sum
+        FROM databasechangelog
+        ORDER BY orderexecuted
+        """;
+
+  private static final String DATABASE_SQL = "SELECT current_database(), current_schema()";
+
+  private static final String UNDEFINED_TABLE = "42P01";
+  private static final String NO_CHANGELOG = "no-changelog";
+
+  private SchemaFingerprint() {
+  }
+
+  /**
+   * @return отпечаток схемы; если таблицы журнала нет, no-changelog с отпечатком базы и схемы
+   */
+  public static String of(Connection conn) throws SQLException {
+    MessageDigest digest = sha256();
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(DATABASE_SQL)) {
+      rs.next();
+      digest.update((rs.getString(1) + '|' + rs.getString(2) + '\n')
+          .getBytes(StandardCharsets.UTF_8));
+    }
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(CHANGELOG_SQL)) {
+      while (rs.next()) {
+        String changeSet = String.join("|", rs.getString("id"), rs.getString("author"),
+            rs.getString("filename"), String.valueOf(rs.getString("md5sum"))) + '\n';
+        digest.update(changeSet.getBytes(StandardCharsets.UTF_8));
+      }
+    } catch (SQLException e) {
+      if (UNDEFINED_TABLE.equals(e.getSQLState())) {
+        return NO_CHANGELOG + ':' + HexFormat.of().formatHex(digest.digest());
+      }
+      throw e;
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+}
@@ -0,0 +1,345 @@
+package ru.mentee.power.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Двоичный файл снимка из именованных секций. Секции пишутся потоком по мере готовности, а
+ * каталог секций с контрольными суммами и отпечатком схемы - в конце файла, поэтому писатель
+ * не держит весь снимок в памяти.
+ *
+ * <pre>
+ * MAGIC, FORMAT_VERSION                  8 байт
+ * секции, каждая выровнена на 8 байт
+ * каталог: отпечаток схемы, время записи, [имя, смещение, длина, CRC32C] по секциям
+ * хвост: смещение каталога, CRC32C каталога, MAGIC   16 байт
+ * </pre>
+ *
+ * <p>Числа записываются в little-endian, как на x86 и ARM, чтобы чтение массивов из
+ * отображенного файла было копированием памяти. Читатель отображает каждую секцию через
+ * {@link FileChannel#map} отдельно и проверяет CRC32C секции перед чтением. Одно отображение
+ * ограничено 2 ГБ: файл может быть больше, но каждая секция и каталог должны быть меньше 2 ГБ,
+ * иначе чтение завершается {@link IOException}. Файл другой версии формата, с другим
+ * отпечатком схемы или с неверной контрольной суммой тоже отклоняется с {@link IOException}.
+ */
+public final class SnapshotFile {
+
+  public static final int FORMAT_VERSION = 1;
+  private static final int MAGIC = 0x4D50534E;
+  private static final int HEADER_BYTES = 8;
+  private static final int TRAILER_BYTES = 16;
+  private static final int CHUNK_BYTES = 1 << 20;
+
+  private SnapshotFile() {
+  }
+
+  public static Writer create(Path path) throws IOException {
+    return new Writer(path);
+  }
+
+  public static Reader open(Path path, String schemaFingerprint) throws IOException {
+    return new Reader(path, schemaFingerprint);
+  }
+
+  /**
+   * Пишет секции по одной. Файл пригоден для чтения только после {@link #finish(String)}.
+   */
+  public static final class Writer implements AutoCloseable {
+    private final FileChannel channel;
+    private final ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_BYTES)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    private final List<SectionEntry> sections = new ArrayList<>();
+
+    private Writer(Path path) throws IOException {
+      channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING);
+      chunk.putInt(MAGIC).putInt(FORMAT_VERSION);
+      flush();
+    }
+
+    public void longs(String name, long[] values, int length) throws IOException {
+      Section section = begin(name);
+      for (int i = 0; i < length; i++) {
+        ensure(section, Long.BYTES);
+        chunk.putLong(values[i]);
+      }
+      end(section);
+    }
+
+    public void shorts(String name, short[] values, int length) throws IOException {
+      Section section = begin(name);
+      for (int i = 0; i < length; i++) {
+        ensure(section, Short.BYTES);
+        chunk.putShort(values[i]);
+      }
+      end(section);
+    }
+
+    public void bytes(String name, byte[] values) throws IOException {
+      Section section = begin(name);
+      int offset = 0;
+      while (offset < values.length) {
+        ensure(section, 1);
+        int length = Math.min(chunk.remaining(), values.length - offset);
+        chunk.put(values, offset, length);
+        offset += length;
+      }
+      end(section);
+    }
+
+    /**
+     * Пишет строки как длину в байтах UTF-8 и сами байты; NULL - длина -1.
+     */
+    public void strings(String name, List<String> values) throws IOException {
+      List<byte[]> encoded = new ArrayList<>(values.size());
+      int size = 0;
+      for (String value : values) {
+        byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+        encoded.add(bytes);
+        size += Integer.BYTES + (bytes != null ? bytes.length : 0);
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+      for (byte[] bytes : encoded) {
+        buffer.putInt(bytes != null ? bytes.length : -1);
+        if (bytes != null) {
+          buffer.put(bytes);
+        }
+      }
+      bytes(name, buffer.array());
+    }
+
+    /**
+     * Записывает каталог секций и хвост и сбрасывает файл на диск.
+     */
+    public void finish(String schemaFingerprint) throws IOException {
+      long footerOffset = channel.position();
+      ByteBuffer footer = encodeFooter(schemaFingerprint);
+      CRC32C crc = new CRC32C();
+      crc.update(footer.duplicate());
+      write(footer);
+      write(ByteBuffer.allocate(TRAILER_BYTES).order(ByteOrder.LITTLE_ENDIAN)
+          .putLong(footerOffset).putInt((int) crc.getValue()).putInt(MAGIC).flip());
+      channel.force(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+
+    private Section begin(String name) throws IOException {
+      long offset = channel.position();
+      int padding = (int) (-offset & (Long.BYTES - 1));
+      if (padding > 0) {
+        write(ByteBuffer.allocate(padding));
+      }
+      return new Section(name, channel.position(), new CRC32C());
+    }
+
+    private void ensure(Section section, int bytes) throws IOException {
+      if (chunk.remaining() < bytes) {
+        flush(section);
+      }
+    }
+
+    private void end(Section section) throws IOException {
+      flush(section);
+      sections.add(new SectionEntry(section.name, section.offset,
+          channel.position() - section.offset, (int) section.crc.getValue()));
+    }
+
+    private void flush(Section section) throws IOException {
+      chunk.flip();
+      section.crc.update(chunk.duplicate());
+      write(chunk);
+      chunk.clear();
+    }
+
+    private void flush() throws IOException {
+      chunk.flip();
+      write(chunk);
+      chunk.clear();
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+
+    private ByteBuffer encodeFooter(String schemaFingerprint) {
+      byte[] fingerprint = schemaFingerprint.getBytes(StandardCharsets.UTF_8);
+      int size = Integer.BYTES + fingerprint.length + Long.BYTES + Integer.BYTES;
+      List<byte[]> names = new ArrayList<>();
+      for (SectionEntry section : sections) {
+        byte[] name = section.name().getBytes(StandardCharsets.UTF_8);
+        names.add(name);
+        size += Integer.BYTES + name.length + 2 * Long.BYTES + Integer.BYTES;
+      }
+      ByteBuffer footer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+      footer.putInt(fingerprint.length).put(fingerprint)
+          .putLong(System.currentTimeMillis())
+          .putInt(sections.size());
+      for (int i = 0; i < sections.size(); i++) {
+        SectionEntry section = sections.get(i);
+        footer.putInt(names.get(i).length).put(names.get(i))
+            .putLong(section.offset()).putLong(section.length()).putInt(section.crc());
+      }
+      return footer.flip();
+    }
+
+    private record Section(String name, long offset, CRC32C crc) {
+    }
+  }
+
+  /**
+   * Открытый файл снимка с проверенными заголовком, каталогом и отпечатком схемы.
+   */
+  public static final class Reader implements AutoCloseable {
+    private final FileChannel channel;
+    private final Map<String, SectionEntry> sections = new LinkedHashMap<>();
+    private final long writtenAtMillis;
+
+    private Reader(Path path, String schemaFingerprint) throws IOException {
+      channel = FileChannel.open(path, StandardOpenOption.READ);
+      try {
+        long size = channel.size();
+        if (size < HEADER_BYTES + TRAILER_BYTES) {
+          throw new IOException("Snapshot file is truncated: " + size + " bytes");
+        }
+        ByteBuffer header = map(0, HEADER_BYTES);
+        if (header.getInt() != MAGIC) {
+          throw new IOException("Not a snapshot file: " + path);
+        }
+        int version = header.getInt();
+        if (version != FORMAT_VERSION) {
+          throw new IOException("Snapshot format version " + version
+              + " does not match " + FORMAT_VERSION);
+        }
+
+        ByteBuffer trailer = map(size - TRAILER_BYTES, TRAILER_BYTES);
+        long footerOffset = trailer.getLong();
+        int footerCrc = trailer.getInt();
+        if (trailer.getInt() != MAGIC || footerOffset < HEADER_BYTES
+            || footerOffset > size - TRAILER_BYTES) {
+          throw new IOException("Snapshot file is truncated or was not finished");
+        }
+        ByteBuffer footer = map(footerOffset, size - TRAILER_BYTES - footerOffset);
+        verify("catalog", footer, footerCrc);
+
+        String fingerprint = readString(footer);
+        if (!fingerprint.equals(schemaFingerprint)) {
+          throw new IOException("Schema changed since the snapshot was written");
+        }
+        writtenAtMillis = footer.getLong();
+        int count = footer.getInt();
+        for (int i = 0; i < count; i++) {
+          String name = readString(footer);
+          sections.put(name, new SectionEntry(name, footer.getLong(), footer.getLong(),
+              footer.getInt()));
+        }
+      } catch (IOException | RuntimeException e) {
+        channel.close();
+        throw e instanceof IOException io ? io : new IOException("Corrupt snapshot file", e);
+      }
+    }
+
+    public long getWrittenAtMillis() {
+      return writtenAtMillis;
+    }
+
+    public boolean has(String name) {
+      return sections.containsKey(name);
+    }
+
+    public long[] longs(String name) throws IOException {
+      ByteBuffer buffer = section(name);
+      long[] values = new long[buffer.remaining() / Long.BYTES];
+      buffer.asLongBuffer().get(values);
+      return values;
+    }
+
+    public short[] shorts(String name) throws IOException {
+      ByteBuffer buffer = section(name);
+      short[] values = new short[buffer.remaining() / Short.BYTES];
+      buffer.asShortBuffer().get(values);
+      return values;
+    }
+
+    public byte[] bytes(String name) throws IOException {
+      ByteBuffer buffer = section(name);
+      byte[] values = new byte[buffer.remaining()];
+      buffer.get(values);
+      return values;
+    }
+
+    public List<String> strings(String name) throws IOException {
+      ByteBuffer buffer = section(name);
+      List<String> values = new ArrayList<>();
+      while (buffer.hasRemaining()) {
+        int length = buffer.getInt();
+        if (length < 0) {
+          values.add(null);
+          continue;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        values.add(new String(bytes, StandardCharsets.UTF_8));
+      }
+      return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+
+    private ByteBuffer section(String name) throws IOException {
+      SectionEntry section = sections.get(name);
+      if (section == null) {
+        throw new IOException("Snapshot file has no section " + name);
+      }
+      ByteBuffer buffer = map(section.offset(), section.length());
+      verify(name, buffer, section.crc());
+      return buffer;
+    }
+
+    private ByteBuffer map(long offset, long length) throws IOException {
+      if (length > Integer.MAX_VALUE) {
+        throw new IOException("Snapshot section at offset " + offset + " has " + length
+            + " bytes, more than one mapping can hold");
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+      return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void verify(String name, ByteBuffer buffer, int expectedCrc)
+        throws IOException {
+      CRC32C crc = new CRC32C();
+      crc.update(buffer.duplicate());
+      if ((int) crc.getValue() != expectedCrc) {
+        throw new IOException("Checksum mismatch in snapshot section " + name);
+      }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+      byte[] bytes = new byte[buffer.getInt()];
+      buffer.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  }
+
+  private record SectionEntry(String name, long offset, long length, int crc) {
+  }
+}
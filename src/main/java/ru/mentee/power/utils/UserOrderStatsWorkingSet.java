@@ -0,0 +1,566 @@
+package ru.mentee.power.utils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToLongFunction;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.connection.ConnectionProvider;
+import ru.mentee.power.model.analytics.UserOrderStats;
+
+/**
+ * Рабочий набор статистики тяжелых пользователей из HEAVY_USER_ORDERS_QUERY. Для каждой пары
+ * (город, начальная дата), по которой уже спрашивали, хранятся агрегаты доставленных заказов
+ * всех пользователей города; порог числа заказов, сортировка и LIMIT применяются в памяти.
+ * Новые заказы дочитываются по водяному знаку id и добавляются к агрегатам.
+ *
+ * <p>Приращение не видит заказов, закоммиченных позже заказов с большими id, перехода старых
+ * заказов в DELIVERED и обратно, удалений и изменений пользователей. Поэтому не реже чем раз в
+ * {@code reloadInterval} обновление пересчитывает все пары запросом к базе: такие изменения
+ * отражаются в ответах не позже чем через reloadInterval плюс интервал обновления. Время
+ * пересчета сохраняется в файле снимка вместе с парами, так что восстановление из файла этот
+ * срок не продлевает. Пар хранится не больше {@code MAX_ENTRIES}, вытесняется дольше всех не
+ * использованная.
+ */
+@Slf4j
+public class UserOrderStatsWorkingSet implements AutoCloseable {
+
+  private static final int MAX_ENTRIES = 64;
+  private static final int TOP_USERS = 20;
+  private static final long NO_WATERMARK = -1;
+
+  private static final String MAX_ORDER_ID_SQL = "SELECT COALESCE(MAX(id), 0) FROM orders";
+
+  private static final String ENTRY_SQL = """
+        SELECT
+            u.id as user_id,
+            u.name as user_name,
+            u.email,
+            COUNT(o.id) as orders_count,
+            COUNT(o.total) as amount_count,
+            SUM(o.total) as total_spent
+        FROM users u
+        JOIN orders o ON u.id = o.user_id
+        WHERE u.city = ?
+          AND o.created_at >= ?
+          AND o.status = 'DELIVERED'
+          AND o.id <= ?
+        GROUP BY u.id, u.name, u.email
+        """;
+
+  private static final String DELTA_SQL = """
+        SELECT
+            u.id as user_id,
+            u.name as user_name,
+            u.email,
+            u.city,
+            o.created_at,
+            o.total
+        FROM orders o
+        JOIN users u ON u.id = o.user_id
+        WHERE o.id > ? AND o.id <= ?
+          AND o.status = 'DELIVERED'
+        """;
+
+  private static final String SECTION_META = "user_stats.meta";
+  private static final String SECTION_CITIES = "user_stats.city";
+  private static final String SECTION_START_DATES = "user_stats.start_date";
+  private static final String SECTION_ENTRY_SIZES = "user_stats.entry_size";
+  private static final String SECTION_USER_IDS = "user_stats.user_id";
+  private static final String SECTION_NAMES = "user_stats.user_name";
+  private static final String SECTION_EMAILS = "user_stats.email";
+  private static final String SECTION_ORDERS = "user_stats.orders_count";
+  private static final String SECTION_AMOUNTS = "user_stats.amount_count";
+  private static final String SECTION_TOTAL_UNSCALED = "user_stats.total_unscaled";
+  private static final String SECTION_TOTAL_SCALE = "user_stats.total_scale";
+
+  private final ConnectionProvider connectionProvider;
+  private final long reloadIntervalMillis;
+  private final ReentrantReadWriteLock dataLock = new ReentrantReadWriteLock();
+  private final ReentrantLock refreshLock = new ReentrantLock();
+  private ScheduledExecutorService scheduler;
+
+  // Меняются под блокировкой записи
+  private final Map<Key, Entry> entries = new HashMap<>();
+  private long watermark = NO_WATERMARK;
+  // Время начала последнего пересчета всех пар, миллисекунды эпохи; меняется под refreshLock
+  private long reloadedAtMillis;
+
+  /**
+   * @param reloadInterval как часто обновление пересчитывает все пары из базы
+   */
+  public UserOrderStatsWorkingSet(ConnectionProvider connectionProvider,
+      Duration reloadInterval) {
+    this.connectionProvider = connectionProvider;
+    this.reloadIntervalMillis = reloadInterval.toMillis();
+  }
+
+  /**
+   * Запускает дочитывание новых заказов по расписанию. Повторный вызов ничего не делает.
+   */
+  public void start(Duration interval) {
+    refreshLock.lock();
+    try {
+      if (scheduler != null) {
+        return;
+      }
+      scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "user-stats-refresh");
+        thread.setDaemon(true);
+        return thread;
+      });
+      scheduler.scheduleWithFixedDelay(this::refreshQuietly,
+          interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+      log.info("Обновление рабочего набора статистики пользователей запущено: интервал {}",
+          interval);
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  /**
+   * Возвращает до 20 пользователей города с числом доставленных заказов с {@code startDate}
+   * больше {@code minOrders}, по убыванию суммы, как HEAVY_USER_ORDERS_QUERY. Пара (город,
+   * дата), которой еще нет в наборе, загружается из базы.
+   */
+  public List<UserOrderStats> heavyUsers(String city, LocalDate startDate, int minOrders)
+      throws SQLException {
+    Key key = new Key(city, startDate);
+    Entry entry;
+    dataLock.readLock().lock();
+    try {
+      entry = entries.get(key);
+    } finally {
+      dataLock.readLock().unlock();
+    }
+    if (entry == null) {
+      entry = load(key);
+    }
+    entry.lastUsedNanos = System.nanoTime();
+
+    dataLock.readLock().lock();
+    try {
+      return entry.users.values().stream()
+          .filter(user -> user.ordersCount > minOrders)
+          .sorted(Comparator.comparing((UserTotals user) -> user.totalSpent,
+                  Comparator.nullsFirst(Comparator.<BigDecimal>reverseOrder()))
+              .thenComparing(user -> user.userId))
+          .limit(TOP_USERS)
+          .map(UserTotals::toStats)
+          .toList();
+    } finally {
+      dataLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Добавляет к загруженным парам доставленные заказы после водяного знака. Если пары
+   * пересчитывались больше {@code reloadInterval} назад, пересчитывает их целиком.
+   *
+   * @return число прочитанных заказов или, при пересчете, пользователей
+   */
+  public long refresh() throws SQLException {
+    refreshLock.lock();
+    try {
+      if (watermark == NO_WATERMARK) {
+        return 0;
+      }
+      if (System.currentTimeMillis() - reloadedAtMillis >= reloadIntervalMillis) {
+        return reload();
+      }
+      List<DeliveredOrder> delta = new ArrayList<>();
+      long upper;
+      try (Connection conn = connectionProvider.getConnection()) {
+        upper = maxOrderId(conn);
+        if (upper <= watermark) {
+          return 0;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(DELTA_SQL)) {
+          stmt.setLong(1, watermark);
+          stmt.setLong(2, upper);
+          try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+              Timestamp createdAt = rs.getTimestamp("created_at");
+              if (createdAt == null) {
+                continue;
+              }
+              delta.add(new DeliveredOrder(rs.getLong("user_id"), rs.getString("user_name"),
+                  rs.getString("email"), rs.getString("city"), createdAt.toLocalDateTime(),
+                  rs.getBigDecimal("total")));
+            }
+          }
+        }
+      }
+
+      dataLock.writeLock().lock();
+      try {
+        for (DeliveredOrder order : delta) {
+          for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+            Key key = entry.getKey();
+            if (key.city().equals(order.city())
+                && !order.createdAt().isBefore(key.startDate().atStartOfDay())) {
+              entry.getValue().users
+                  .computeIfAbsent(order.userId(),
+                      id -> new UserTotals(id, order.userName(), order.email()))
+                  .add(order.total());
+            }
+          }
+        }
+        watermark = upper;
+      } finally {
+        dataLock.writeLock().unlock();
+      }
+      return delta.size();
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  /**
+   * Пересчитывает все загруженные пары по заказам до текущего максимального id. Пока идут
+   * запросы, ответы строятся по прежним агрегатам.
+   *
+   * @return число прочитанных пользователей
+   */
+  public long reload() throws SQLException {
+    refreshLock.lock();
+    try {
+      long start = System.nanoTime();
+      long startedAtMillis = System.currentTimeMillis();
+      List<Key> keys;
+      dataLock.readLock().lock();
+      try {
+        keys = new ArrayList<>(entries.keySet());
+      } finally {
+        dataLock.readLock().unlock();
+      }
+
+      Map<Key, Entry> reloaded = new HashMap<>();
+      long upper;
+      long users = 0;
+      try (Connection conn = connectionProvider.getConnection()) {
+        upper = maxOrderId(conn);
+        for (Key key : keys) {
+          Entry entry = readEntry(conn, key, upper);
+          users += entry.users.size();
+          reloaded.put(key, entry);
+        }
+      }
+
+      dataLock.writeLock().lock();
+      try {
+        for (Map.Entry<Key, Entry> entry : reloaded.entrySet()) {
+          Entry previous = entries.get(entry.getKey());
+          if (previous != null) {
+            entry.getValue().lastUsedNanos = previous.lastUsedNanos;
+          }
+        }
+        entries.clear();
+        entries.putAll(reloaded);
+        watermark = upper;
+        reloadedAtMillis = startedAtMillis;
+      } finally {
+        dataLock.writeLock().unlock();
+      }
+      log.info("Рабочий набор статистики пользователей пересчитан: {} пар, {} пользователей "
+          + "за {} мс", reloaded.size(), users, (System.nanoTime() - start) / 1_000_000);
+      return users;
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  /**
+   * Сбрасывает все пары; следующие запросы загрузят их из базы заново.
+   */
+  public void clear() {
+    refreshLock.lock();
+    try {
+      dataLock.writeLock().lock();
+      try {
+        entries.clear();
+        watermark = NO_WATERMARK;
+      } finally {
+        dataLock.writeLock().unlock();
+      }
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  /**
+   * Пишет пары, водяной знак и время пересчета в секции user_stats.* файла.
+   */
+  public void writeTo(SnapshotFile.Writer writer) throws IOException {
+    refreshLock.lock();
+    try {
+      if (watermark == NO_WATERMARK) {
+        return;
+      }
+      List<String> cities = new ArrayList<>();
+      List<Long> startDates = new ArrayList<>();
+      List<Long> sizes = new ArrayList<>();
+      List<UserTotals> users = new ArrayList<>();
+      for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+        cities.add(entry.getKey().city());
+        startDates.add(entry.getKey().startDate().toEpochDay());
+        sizes.add((long) entry.getValue().users.size());
+        users.addAll(entry.getValue().users.values());
+      }
+
+      writer.longs(SECTION_META, new long[] {watermark, entries.size(), reloadedAtMillis}, 3);
+      writer.strings(SECTION_CITIES, cities);
+      writer.longs(SECTION_START_DATES, toArray(startDates), startDates.size());
+      writer.longs(SECTION_ENTRY_SIZES, toArray(sizes), sizes.size());
+      writer.longs(SECTION_USER_IDS, toArray(users, user -> user.userId), users.size());
+      writer.strings(SECTION_NAMES, users.stream().map(user -> user.userName).toList());
+      writer.strings(SECTION_EMAILS, users.stream().map(user -> user.email).toList());
+      writer.longs(SECTION_ORDERS, toArray(users, user -> user.ordersCount), users.size());
+      writer.longs(SECTION_AMOUNTS, toArray(users, user -> user.amountCount), users.size());
+      writer.longs(SECTION_TOTAL_UNSCALED, toArray(users, user -> user.totalSpent == null
+          ? 0 : user.totalSpent.unscaledValue().longValueExact()), users.size());
+      writer.longs(SECTION_TOTAL_SCALE, toArray(users, user -> user.totalSpent == null
+          ? -1 : user.totalSpent.scale()), users.size());
+    } catch (ArithmeticException e) {
+      throw new IOException("User order stats total does not fit into the snapshot format", e);
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  /**
+   * Восстанавливает пары и водяной знак из файла, так что следующий {@link #refresh()}
+   * дочитывает только заказы после записи файла.
+   *
+   * @return false, если в файле нет рабочего набора
+   * @throws IOException если секции повреждены или не согласованы
+   */
+  public boolean restore(SnapshotFile.Reader reader) throws IOException {
+    if (!reader.has(SECTION_META)) {
+      return false;
+    }
+    refreshLock.lock();
+    try {
+      long[] meta = reader.longs(SECTION_META);
+      List<String> cities = reader.strings(SECTION_CITIES);
+      long[] startDates = reader.longs(SECTION_START_DATES);
+      long[] sizes = reader.longs(SECTION_ENTRY_SIZES);
+      long[] userIds = reader.longs(SECTION_USER_IDS);
+      List<String> names = reader.strings(SECTION_NAMES);
+      List<String> emails = reader.strings(SECTION_EMAILS);
+      long[] orders = reader.longs(SECTION_ORDERS);
+      long[] amounts = reader.longs(SECTION_AMOUNTS);
+      long[] unscaled = reader.longs(SECTION_TOTAL_UNSCALED);
+      long[] scales = reader.longs(SECTION_TOTAL_SCALE);
+      if (cities.size() != meta[1] || startDates.length != meta[1] || sizes.length != meta[1]
+          || names.size() != userIds.length || emails.size() != userIds.length
+          || orders.length != userIds.length || amounts.length != userIds.length
+          || unscaled.length != userIds.length || scales.length != userIds.length) {
+        throw new IOException("User order stats sections have inconsistent lengths");
+      }
+
+      Map<Key, Entry> restored = new HashMap<>();
+      int user = 0;
+      for (int i = 0; i < cities.size(); i++) {
+        Entry entry = new Entry();
+        for (long j = 0; j < sizes[i]; j++, user++) {
+          if (user >= userIds.length) {
+            throw new IOException("User order stats entry sizes exceed the number of users");
+          }
+          UserTotals totals = new UserTotals(userIds[user], names.get(user), emails.get(user));
+          totals.ordersCount = orders[user];
+          totals.amountCount = amounts[user];
+          totals.totalSpent = scales[user] < 0 ? null
+              : new BigDecimal(BigInteger.valueOf(unscaled[user]), (int) scales[user]);
+          entry.users.put(totals.userId, totals);
+        }
+        restored.put(new Key(cities.get(i), LocalDate.ofEpochDay(startDates[i])), entry);
+      }
+
+      dataLock.writeLock().lock();
+      try {
+        entries.clear();
+        entries.putAll(restored);
+        watermark = meta[0];
+        // В файлах без времени пересчета пары считаются устаревшими
+        reloadedAtMillis = meta.length > 2 ? meta[2] : 0;
+      } finally {
+        dataLock.writeLock().unlock();
+      }
+      log.info("Рабочий набор статистики пользователей восстановлен из файла: {} пар, {} "
+          + "пользователей", restored.size(), userIds.length);
+      return true;
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  private Entry load(Key key) throws SQLException {
+    refreshLock.lock();
+    try {
+      dataLock.readLock().lock();
+      try {
+        Entry existing = entries.get(key);
+        if (existing != null) {
+          return existing;
+        }
+      } finally {
+        dataLock.readLock().unlock();
+      }
+
+      long startedAtMillis = System.currentTimeMillis();
+      try (Connection conn = connectionProvider.getConnection()) {
+        boolean first = watermark == NO_WATERMARK;
+        long upper = first ? maxOrderId(conn) : watermark;
+        Entry entry = readEntry(conn, key, upper);
+
+        dataLock.writeLock().lock();
+        try {
+          if (entries.size() >= MAX_ENTRIES) {
+            entries.entrySet().stream()
+                .min(Comparator.comparingLong(candidate -> candidate.getValue().lastUsedNanos))
+                .ifPresent(evicted -> entries.remove(evicted.getKey()));
+          }
+          entries.put(key, entry);
+          watermark = upper;
+          if (first) {
+            reloadedAtMillis = startedAtMillis;
+          }
+        } finally {
+          dataLock.writeLock().unlock();
+        }
+        return entry;
+      }
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  private static Entry readEntry(Connection conn, Key key, long upper) throws SQLException {
+    Entry entry = new Entry();
+    try (PreparedStatement stmt = conn.prepareStatement(ENTRY_SQL)) {
+      stmt.setString(1, key.city());
+      stmt.setDate(2, Date.valueOf(key.startDate()));
+      stmt.setLong(3, upper);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          UserTotals totals = new UserTotals(rs.getLong("user_id"),
+              rs.getString("user_name"), rs.getString("email"));
+          totals.ordersCount = rs.getLong("orders_count");
+          totals.amountCount = rs.getLong("amount_count");
+          totals.totalSpent = rs.getBigDecimal("total_spent");
+          entry.users.put(totals.userId, totals);
+        }
+      }
+    }
+    return entry;
+  }
+
+  private static long maxOrderId(Connection conn) throws SQLException {
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(MAX_ORDER_ID_SQL)) {
+      rs.next();
+      return rs.getLong(1);
+    }
+  }
+
+  private static long[] toArray(List<Long> values) {
+    return values.stream().mapToLong(Long::longValue).toArray();
+  }
+
+  private static long[] toArray(List<UserTotals> users, ToLongFunction<UserTotals> field) {
+    return users.stream().mapToLong(field).toArray();
+  }
+
+  private void refreshQuietly() {
+    try {
+      refresh();
+    } catch (SQLException | RuntimeException e) {
+      log.warn("Рабочий набор статистики пользователей не обновлен: {}", e.getMessage());
+    }
+  }
+
+  @Override
+  public void close() {
+    refreshLock.lock();
+    try {
+      if (scheduler != null) {
+        scheduler.shutdownNow();
+        scheduler = null;
+      }
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  private record Key(String city, LocalDate startDate) {
+  }
+
+  private record DeliveredOrder(long userId, String userName, String email, String city,
+      LocalDateTime createdAt, BigDecimal total) {
+  }
+
+  private static final class Entry {
+    private final Map<Long, UserTotals> users = new HashMap<>();
+    private volatile long lastUsedNanos = System.nanoTime();
+  }
+
+  /**
+   * Агрегаты доставленных заказов одного пользователя. AVG не хранится: он пересчитывается
+   * из суммы и числа непустых сумм с масштабом PostgreSQL.
+   */
+  private static final class UserTotals {
+    private final long userId;
+    private final String userName;
+    private final String email;
+    private long ordersCount;
+    private long amountCount;
+    private BigDecimal totalSpent;
+
+    private UserTotals(long userId, String userName, String email) {
+      this.userId = userId;
+      this.userName = userName;
+      this.email = email;
+    }
+
+    private void add(BigDecimal total) {
+      ordersCount++;
+      if (total != null) {
+        amountCount++;
+        totalSpent = totalSpent == null ? total : totalSpent.add(total);
+      }
+    }
+
+    private UserOrderStats toStats() {
+      return UserOrderStats.builder()
+          .userId(userId)
+          .userName(userName)
+          .email(email)
+          .ordersCount((int) ordersCount)
+          .totalSpent(totalSpent)
+          .avgOrderValue(totalSpent == null || amountCount == 0
+              ? null : OrderAnalyticsMerger.average(totalSpent, amountCount))
+          .build();
+    }
+  }
+}
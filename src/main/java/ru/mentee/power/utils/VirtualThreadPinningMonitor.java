@@ -0,0 +1,89 @@
+package ru.mentee.power.utils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Фиксирует события jdk.VirtualThreadPinned через JFR, пока монитор открыт.
+ * Виртуальный поток "прикрепляется" к carrier-потоку, если блокируется внутри synchronized
+ * или нативного кадра, и тогда перестает освобождать carrier для других задач.
+ */
+@Slf4j
+public class VirtualThreadPinningMonitor implements AutoCloseable {
+
+  private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+  private static final int MAX_SOURCES = 10;
+
+  private final RecordingStream stream;
+  private final LongAdder pinnedEvents = new LongAdder();
+  private final Map<String, LongAdder> sources = new ConcurrentHashMap<>();
+
+  public VirtualThreadPinningMonitor() {
+    RecordingStream recording = null;
+    try {
+      recording = new RecordingStream();
+      recording.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+      recording.onEvent(PINNED_EVENT, this::onPinned);
+      recording.startAsync();
+    } catch (RuntimeException e) {
+      log.warn("JFR недоступен, события pinning не будут собраны: {}", e.getMessage());
+      if (recording != null) {
+        recording.close();
+      }
+      recording = null;
+    }
+    this.stream = recording;
+  }
+
+  public long getPinnedEventCount() {
+    return pinnedEvents.sum();
+  }
+
+  /**
+   * Возвращает самые частые источники pinning в формате "класс.метод: количество".
+   */
+  public List<String> getPinningSources() {
+    List<String> result = new ArrayList<>();
+    sources.entrySet().stream()
+        .sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+        .limit(MAX_SOURCES)
+        .forEach(e -> result.add(e.getKey() + ": " + e.getValue().sum()));
+    return result;
+  }
+
+  @Override
+  public void close() {
+    if (stream != null) {
+      stream.stop();
+      stream.close();
+    }
+  }
+
+  private void onPinned(RecordedEvent event) {
+    pinnedEvents.increment();
+    sources.computeIfAbsent(topFrame(event), key -> new LongAdder()).increment();
+  }
+
+  private String topFrame(RecordedEvent event) {
+    RecordedStackTrace stackTrace = event.getStackTrace();
+    if (stackTrace == null) {
+      return "unknown";
+    }
+    for (RecordedFrame frame : stackTrace.getFrames()) {
+      if (frame.isJavaFrame() && !frame.getMethod().getType().getName().startsWith("java.")
+          && !frame.getMethod().getType().getName().startsWith("jdk.")) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName();
+      }
+    }
+    return "jdk-internal";
+  }
+}
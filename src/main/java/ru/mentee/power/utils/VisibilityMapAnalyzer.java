@@ -0,0 +1,96 @@
+package ru.mentee.power.utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import ru.mentee.power.model.analytics.IndexOnlyScanReport;
+import ru.mentee.power.model.analytics.PlanNode;
+
+/**
+ * Проверяет, не теряет ли Index Only Scan преимущество из-за карты видимости.
+ *
+ * <p>Index Only Scan читает строку только из индекса, если страница таблицы отмечена в карте
+ * видимости как all-visible; иначе видимость проверяется в самой таблице, и каждая такая
+ * строка - случайное чтение страницы, учтенное в Heap Fetches. Отметки ставит VACUUM, поэтому
+ * на таблице, которую давно не очищали или в которую только вставляют, сканирование только
+ * индекса работает как обычное Index Scan.
+ */
+public final class VisibilityMapAnalyzer {
+
+  /** Доля строк с обращением к таблице, начиная с которой нужен VACUUM. */
+  public static final double HEAP_FETCH_RATIO_THRESHOLD = 0.1;
+
+  private static final String TABLE_VISIBILITY_SQL = """
+        SELECT c.relpages, c.relallvisible, s.n_dead_tup,
+               GREATEST(s.last_vacuum, s.last_autovacuum) AS last_vacuum
+        FROM pg_class c
+        LEFT JOIN pg_stat_all_tables s ON s.relid = c.oid
+        WHERE c.oid = to_regclass(?)
+        """;
+
+  private VisibilityMapAnalyzer() {
+  }
+
+  /**
+   * Строит отчет по каждому узлу Index Only Scan плана.
+   */
+  public static List<IndexOnlyScanReport> analyze(Connection conn, List<PlanNode> nodes)
+      throws SQLException {
+    List<IndexOnlyScanReport> reports = new ArrayList<>();
+    for (PlanNode node : nodes) {
+      if (!"Index Only Scan".equals(node.getNodeType()) || node.getRelation() == null) {
+        continue;
+      }
+      long rowsReturned = (node.getRows() != null ? node.getRows() : 0L) * node.getLoops();
+      long heapFetches = node.getHeapFetches() != null ? node.getHeapFetches() : 0L;
+      double heapFetchRatio = rowsReturned > 0 ? (double) heapFetches / rowsReturned : 0.0;
+
+      IndexOnlyScanReport.IndexOnlyScanReportBuilder report = IndexOnlyScanReport.builder()
+          .relation(node.getRelation())
+          .indexName(node.getIndexName())
+          .rowsReturned(rowsReturned)
+          .heapFetches(heapFetches)
+          .heapFetchRatio(heapFetchRatio);
+
+      Double allVisibleRatio = null;
+      try (PreparedStatement stmt = conn.prepareStatement(TABLE_VISIBILITY_SQL)) {
+        stmt.setString(1, node.getRelation());
+        try (ResultSet rs = stmt.executeQuery()) {
+          if (rs.next()) {
+            long pages = rs.getLong("relpages");
+            long allVisible = rs.getLong("relallvisible");
+            Timestamp lastVacuum = rs.getTimestamp("last_vacuum");
+            allVisibleRatio = pages > 0 ? Math.min(1.0, (double) allVisible / pages) : null;
+            report.tablePages(pages)
+                .allVisiblePages(allVisible)
+                .allVisibleRatio(allVisibleRatio)
+                .deadTuples(rs.getLong("n_dead_tup"))
+                .lastVacuum(lastVacuum != null ? lastVacuum.toLocalDateTime() : null);
+          }
+        }
+      }
+
+      boolean limited = heapFetches > 0 && heapFetchRatio >= HEAP_FETCH_RATIO_THRESHOLD;
+      report.limitedByVisibilityMap(limited);
+      if (limited) {
+        report.recommendation(String.format(
+            "Index Only Scan по %s обращается к таблице %s за %.0f%% строк (Heap Fetches: %d),"
+                + " all-visible %s страниц: выполните VACUUM %s. Если в таблицу в основном"
+                + " вставляют, снизьте для нее autovacuum_vacuum_insert_scale_factor",
+            node.getIndexName(), node.getRelation(), heapFetchRatio * 100, heapFetches,
+            allVisibleRatio != null ? String.format("%.0f%%", allVisibleRatio * 100) : "0",
+            node.getRelation()));
+      } else {
+        report.recommendation(String.format(
+            "Index Only Scan по %s читает только индекс: Heap Fetches %d на %d строк",
+            node.getIndexName(), heapFetches, rowsReturned));
+      }
+      reports.add(report.build());
+    }
+    return reports;
+  }
+}
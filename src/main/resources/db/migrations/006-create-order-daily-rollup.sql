@@ -0,0 +1,29 @@
+--liquibase formatted sql
+
+--changeset mentee:006-create-order-daily-rollup
+-- Дневные агрегаты заказов по региону и статусу. Хранятся сумма и количество, а не среднее,
+-- чтобы агрегаты можно было складывать при инкрементальном обновлении и объединении дней
+CREATE TABLE IF NOT EXISTS order_daily_rollup (
+    region VARCHAR(50) NOT NULL,
+    status VARCHAR(50) NOT NULL,
+    day DATE NOT NULL,
+    orders_count BIGINT NOT NULL,
+    total_revenue NUMERIC(18,2) NOT NULL,
+    first_order TIMESTAMP NOT NULL,
+    last_order TIMESTAMP NOT NULL,
+    PRIMARY KEY (region, status, day)
+);
+
+-- Водяной знак: агрегаты покрывают все заказы с created_at < covered_until
+CREATE TABLE IF NOT EXISTS order_rollup_watermark (
+    rollup_name VARCHAR(50) PRIMARY KEY,
+    covered_from TIMESTAMP,
+    covered_until TIMESTAMP,
+    refreshed_at TIMESTAMP
+);
+
+INSERT INTO order_rollup_watermark (rollup_name) VALUES ('order_daily_rollup')
+ON CONFLICT (rollup_name) DO NOTHING;
+
+--rollback DROP TABLE IF EXISTS order_rollup_watermark;
+--rollback DROP TABLE IF EXISTS order_daily_rollup;
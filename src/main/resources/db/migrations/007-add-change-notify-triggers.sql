@@ -0,0 +1,23 @@
+--liquibase formatted sql
+
+--changeset mentee:007-add-change-notify-function splitStatements:false
+-- Сообщает слушателям кэша результатов имя измененной таблицы. Триггер срабатывает один раз
+-- на оператор, а pg_notify доставляет сообщение только после фиксации транзакции
+CREATE OR REPLACE FUNCTION notify_table_change() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('table_changes', TG_TABLE_NAME);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+--rollback DROP FUNCTION IF EXISTS notify_table_change();
+
+--changeset mentee:007-add-change-notify-triggers
+CREATE TRIGGER orders_notify_change
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON orders
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_table_change();
+
+CREATE TRIGGER users_notify_change
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON users
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_table_change();
+--rollback DROP TRIGGER IF EXISTS users_notify_change ON users;
+--rollback DROP TRIGGER IF EXISTS orders_notify_change ON orders;
@@ -0,0 +1,298 @@
+--liquibase formatted sql
+
+-- Переводит orders на помесячные диапазонные секции по created_at без копирования данных:
+-- существующая таблица присоединяется к новой секционированной orders как секция orders_legacy
+-- с диапазоном от MINVALUE до границы orders_partition_bound, после нее идут секции
+-- orders_pYYYYMM на три месяца вперед и секция orders_default. Дальше секции создает и выводит
+-- из хранения PartitionMaintenance; orders_legacy выводится из хранения целиком, когда ее граница
+-- становится старше срока хранения.
+--
+-- Долгие шаги выполняются без блокировки записи: проверка границы (VALIDATE CONSTRAINT) и
+-- уникальный индекс (id, created_at) (CREATE INDEX CONCURRENTLY). Под ACCESS EXCLUSIVE остается
+-- только перестановка в 008-swap-partitioned-orders: благодаря проверенному CHECK и готовому
+-- индексу ни SET NOT NULL, ни ATTACH PARTITION, ни первичный ключ таблицу не читают.
+--
+-- Вторичные индексы orders переименовываются в *_legacy и становятся секциями индексов родителя:
+-- на секционированной orders создается такой же индекс ON ONLY с прежним именем, к нему
+-- присоединяется индекс orders_legacy, а новые секции получают свои копии при создании. Так
+-- индекс не перестраивается. Уникальные индексы без created_at и индексы ограничений UNIQUE и
+-- EXCLUDE на родителе невозможны: они остаются только на orders_legacy, миграция выводит их
+-- предупреждением, и для новых секций их нужно заменить вручную.
+--
+-- Ручной шаг: ключ секционирования должен входить в первичный ключ, поэтому ключ становится
+-- (id, created_at), и внешние ключи других таблиц на orders(id) станут невозможны. Если такие
+-- ключи есть, миграция останавливается с ошибкой и их перечнем. Их нужно пересоздать на
+-- orders (id, created_at), добавив created_at в ссылающиеся таблицы, или удалить, после чего
+-- запустить миграцию снова.
+--
+-- Граница orders_partition_bound лежит через месяц после последнего заказа или текущего месяца
+-- и до присоединения запрещает заказы позже нее. Если перестановка не прошла, обновление нужно
+-- повторить до этой даты: при повторе граница за неделю до срока сдвигается.
+
+--changeset mentee:008-partition-orders-bound runAlways:true splitStatements:false
+DO $$
+DECLARE
+    refs TEXT;
+    bound TIMESTAMP;
+BEGIN
+    IF (SELECT relkind FROM pg_class WHERE oid = 'orders'::regclass) = 'p' THEN
+        RETURN;
+    END IF;
+
+    SELECT string_agg(format('%s.%I', conrelid::regclass, conname), ', ')
+    INTO refs
+    FROM pg_constraint
+    WHERE contype = 'f' AND confrelid = 'orders'::regclass;
+    IF refs IS NOT NULL THEN
+        RAISE EXCEPTION 'Foreign keys reference orders(id) and block partitioning: %', refs
+            USING HINT = 'Re-create them on orders (id, created_at) with created_at added to '
+                || 'the referencing tables, or drop them, then rerun the migration';
+    END IF;
+
+    SELECT obj_description(oid, 'pg_constraint')::timestamp
+    INTO bound
+    FROM pg_constraint
+    WHERE conrelid = 'orders'::regclass AND conname = 'orders_partition_bound';
+    IF bound > LOCALTIMESTAMP + INTERVAL '7 days' THEN
+        RETURN;
+    END IF;
+
+    SELECT date_trunc('month', GREATEST(MAX(created_at), LOCALTIMESTAMP)) + INTERVAL '2 months'
+    INTO bound
+    FROM orders;
+    -- NOT VALID: существующие строки проверит следующий changeset без блокировки записи
+    ALTER TABLE orders DROP CONSTRAINT IF EXISTS orders_partition_bound;
+    EXECUTE format('ALTER TABLE orders ADD CONSTRAINT orders_partition_bound '
+                   'CHECK (created_at IS NOT NULL AND created_at < %L) NOT VALID', bound);
+    EXECUTE format('COMMENT ON CONSTRAINT orders_partition_bound ON orders IS %L', bound);
+END;
+$$;
+--rollback ALTER TABLE orders DROP CONSTRAINT IF EXISTS orders_partition_bound;
+
+--changeset mentee:008-partition-orders-validate-bound runAlways:true splitStatements:false
+-- VALIDATE CONSTRAINT читает таблицу под SHARE UPDATE EXCLUSIVE и не мешает записи
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint
+                   WHERE conrelid = 'orders'::regclass
+                     AND conname = 'orders_partition_bound' AND NOT convalidated) THEN
+        RETURN;
+    END IF;
+    ALTER TABLE orders VALIDATE CONSTRAINT orders_partition_bound;
+EXCEPTION WHEN check_violation THEN
+    RAISE EXCEPTION 'orders has rows with NULL created_at or created_at past the partition bound'
+        USING HINT = 'Fill created_at, drop orders_partition_bound and rerun the migration';
+END;
+$$;
+--rollback SELECT 1;
+
+--changeset mentee:008-partition-orders-key-index runInTransaction:false
+--preconditions onFail:MARK_RAN
+--precondition-sql-check expectedResult:r SELECT relkind FROM pg_class WHERE oid = 'orders'::regclass
+-- Будущий первичный ключ (id, created_at) строится заранее без блокировки записи
+CREATE UNIQUE INDEX CONCURRENTLY IF NOT EXISTS orders_id_created_at_key ON orders (id, created_at);
+--rollback DROP INDEX IF EXISTS orders_id_created_at_key;
+
+--changeset mentee:008-swap-partitioned-orders splitStatements:false
+DO $$
+DECLARE
+    rec RECORD;
+    refs TEXT;
+    bound TIMESTAMP;
+    pk_name TEXT;
+    id_identity "char";
+    next_id BIGINT;
+    seq TEXT;
+    month_start TIMESTAMP;
+    last_month TIMESTAMP;
+    index_names TEXT[] := '{}';
+    legacy_names TEXT[] := '{}';
+    legacy_index OID;
+    is_unique BOOLEAN;
+    has_key BOOLEAN;
+    is_constraint BOOLEAN;
+BEGIN
+    IF (SELECT relkind FROM pg_class WHERE oid = 'orders'::regclass) = 'p' THEN
+        RETURN;
+    END IF;
+
+    -- Ожидание блокировки за долгими транзакциями ограничено, чтобы не остановить запись
+    PERFORM set_config('lock_timeout', '10s', true);
+    LOCK TABLE orders IN ACCESS EXCLUSIVE MODE;
+
+    SELECT string_agg(format('%s.%I', conrelid::regclass, conname), ', ')
+    INTO refs
+    FROM pg_constraint
+    WHERE contype = 'f' AND confrelid = 'orders'::regclass;
+    IF refs IS NOT NULL THEN
+        RAISE EXCEPTION 'Foreign keys reference orders(id) and block partitioning: %', refs
+            USING HINT = 'Re-create them on orders (id, created_at) with created_at added to '
+                || 'the referencing tables, or drop them, then rerun the migration';
+    END IF;
+
+    SELECT CASE WHEN convalidated THEN obj_description(oid, 'pg_constraint')::timestamp END
+    INTO bound
+    FROM pg_constraint
+    WHERE conrelid = 'orders'::regclass AND conname = 'orders_partition_bound';
+    IF bound IS NULL THEN
+        RAISE EXCEPTION 'orders_partition_bound is missing or not validated'
+            USING HINT = 'Rerun the migration';
+    END IF;
+    IF NOT EXISTS (SELECT 1 FROM pg_index
+                   WHERE indexrelid = to_regclass('orders_id_created_at_key') AND indisvalid) THEN
+        RAISE EXCEPTION 'Index orders_id_created_at_key is missing or invalid'
+            USING HINT = 'DROP INDEX CONCURRENTLY orders_id_created_at_key and rerun the migration';
+    END IF;
+
+    -- Проверенный CHECK доказывает NOT NULL, и таблица не сканируется
+    ALTER TABLE orders ALTER COLUMN created_at SET NOT NULL;
+    DROP TRIGGER IF EXISTS orders_notify_change ON orders;
+    SELECT conname INTO pk_name
+    FROM pg_constraint
+    WHERE conrelid = 'orders'::regclass AND contype = 'p';
+    IF pk_name IS NOT NULL THEN
+        EXECUTE format('ALTER TABLE orders DROP CONSTRAINT %I', pk_name);
+    END IF;
+    ALTER TABLE orders ADD CONSTRAINT orders_legacy_pkey
+        PRIMARY KEY USING INDEX orders_id_created_at_key;
+
+    ALTER TABLE orders RENAME TO orders_legacy;
+    FOR rec IN
+        SELECT c.relname
+        FROM pg_index i
+        JOIN pg_class c ON c.oid = i.indexrelid
+        WHERE i.indrelid = 'orders_legacy'::regclass AND c.relname <> 'orders_legacy_pkey'
+    LOOP
+        EXECUTE format('ALTER INDEX %I RENAME TO %I',
+                       rec.relname, left(rec.relname, 56) || '_legacy');
+        index_names := index_names || rec.relname::TEXT;
+        legacy_names := legacy_names || (left(rec.relname, 56) || '_legacy');
+    END LOOP;
+
+    CREATE TABLE orders (LIKE orders_legacy
+        INCLUDING DEFAULTS INCLUDING IDENTITY INCLUDING STORAGE INCLUDING COMMENTS)
+        PARTITION BY RANGE (created_at);
+    ALTER TABLE orders ADD CONSTRAINT orders_pkey PRIMARY KEY (id, created_at);
+    -- Внешние ключи и CHECK родителя совпадают с ограничениями секции, поэтому при
+    -- присоединении переиспользуются без проверки строк
+    FOR rec IN
+        SELECT conname, pg_get_constraintdef(oid) AS definition
+        FROM pg_constraint
+        WHERE conrelid = 'orders_legacy'::regclass
+          AND contype IN ('f', 'c') AND conname <> 'orders_partition_bound'
+    LOOP
+        EXECUTE format('ALTER TABLE orders ADD CONSTRAINT %I %s', rec.conname, rec.definition);
+    END LOOP;
+
+    -- Секция не может иметь свою identity-колонку: значения дальше выдает последовательность
+    -- родителя; последовательность serial переходит к родителю
+    SELECT attidentity INTO id_identity
+    FROM pg_attribute
+    WHERE attrelid = 'orders_legacy'::regclass AND attname = 'id';
+    IF id_identity <> '' THEN
+        SELECT COALESCE(MAX(id), 0) + 1 INTO next_id FROM orders_legacy;
+        ALTER TABLE orders_legacy ALTER COLUMN id DROP IDENTITY;
+        PERFORM setval(pg_get_serial_sequence('orders', 'id'), next_id, false);
+    ELSE
+        seq := pg_get_serial_sequence('orders_legacy', 'id');
+        IF seq IS NOT NULL THEN
+            EXECUTE format('ALTER SEQUENCE %s OWNED BY orders.id', seq);
+        END IF;
+    END IF;
+
+    EXECUTE format('ALTER TABLE orders ATTACH PARTITION orders_legacy '
+                   'FOR VALUES FROM (MINVALUE) TO (%L)', bound);
+    ALTER TABLE orders_legacy DROP CONSTRAINT orders_partition_bound;
+
+    -- Индексы родителя создаются до новых секций, чтобы те получили их при создании.
+    -- ON ONLY не строит индекс, а присоединенный индекс orders_legacy уже готов
+    FOR i IN 1 .. coalesce(array_length(legacy_names, 1), 0) LOOP
+        legacy_index := to_regclass(legacy_names[i]);
+        SELECT ix.indisunique,
+               EXISTS (SELECT 1 FROM pg_attribute a
+                       WHERE a.attrelid = ix.indrelid AND a.attname = 'created_at'
+                         AND a.attnum = ANY (ix.indkey::SMALLINT[])),
+               EXISTS (SELECT 1 FROM pg_constraint c WHERE c.conindid = ix.indexrelid)
+        INTO is_unique, has_key, is_constraint
+        FROM pg_index ix
+        WHERE ix.indexrelid = legacy_index;
+        IF is_constraint OR (is_unique AND NOT has_key) THEN
+            RAISE WARNING 'Index % stays on orders_legacy only: partitioned orders cannot have it',
+                legacy_names[i];
+            CONTINUE;
+        END IF;
+        EXECUTE format('CREATE %sINDEX %I ON ONLY orders USING %s',
+                       CASE WHEN is_unique THEN 'UNIQUE ' ELSE '' END, index_names[i],
+                       substring(pg_get_indexdef(legacy_index) FROM ' USING (.*)$'));
+        EXECUTE format('ALTER INDEX %I ATTACH PARTITION %I', index_names[i], legacy_names[i]);
+    END LOOP;
+
+    month_start := bound;
+    last_month := date_trunc('month', LOCALTIMESTAMP) + INTERVAL '3 months';
+    WHILE month_start <= last_month LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF orders FOR VALUES FROM (%L) TO (%L)',
+                       'orders_p' || to_char(month_start, 'YYYYMM'),
+                       month_start, month_start + INTERVAL '1 month');
+        month_start := month_start + INTERVAL '1 month';
+    END LOOP;
+    CREATE TABLE orders_default PARTITION OF orders DEFAULT;
+
+    CREATE TRIGGER orders_notify_change
+        AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON orders
+        FOR EACH STATEMENT EXECUTE FUNCTION notify_table_change();
+END;
+$$;
+--rollback DO $$
+--rollback DECLARE
+--rollback     rec RECORD;
+--rollback     id_identity "char";
+--rollback     next_id BIGINT;
+--rollback     seq TEXT;
+--rollback BEGIN
+--rollback     IF (SELECT relkind FROM pg_class WHERE oid = 'orders'::regclass) <> 'p'
+--rollback         OR to_regclass('orders_legacy') IS NULL THEN
+--rollback         RETURN;
+--rollback     END IF;
+--rollback     LOCK TABLE orders IN ACCESS EXCLUSIVE MODE;
+--rollback     DROP TRIGGER IF EXISTS orders_notify_change ON orders;
+--rollback     SELECT attidentity INTO id_identity
+--rollback     FROM pg_attribute
+--rollback     WHERE attrelid = 'orders'::regclass AND attname = 'id';
+--rollback     ALTER TABLE orders DETACH PARTITION orders_legacy;
+--rollback     -- Заказы, записанные в новые секции, возвращаются в исходную таблицу
+--rollback     INSERT INTO orders_legacy SELECT * FROM orders;
+--rollback     SELECT COALESCE(MAX(id), 0) + 1 INTO next_id FROM orders_legacy;
+--rollback     IF id_identity = '' THEN
+--rollback         seq := pg_get_serial_sequence('orders', 'id');
+--rollback         IF seq IS NOT NULL THEN
+--rollback             EXECUTE format('ALTER SEQUENCE %s OWNED BY orders_legacy.id', seq);
+--rollback         END IF;
+--rollback     END IF;
+--rollback     DROP TABLE orders;
+--rollback     IF id_identity <> '' THEN
+--rollback         EXECUTE format('ALTER TABLE orders_legacy ALTER COLUMN id ADD GENERATED %s AS IDENTITY',
+--rollback                        CASE id_identity WHEN 'a' THEN 'ALWAYS' ELSE 'BY DEFAULT' END);
+--rollback         PERFORM setval(pg_get_serial_sequence('orders_legacy', 'id'), next_id, false);
+--rollback     END IF;
+--rollback     ALTER TABLE orders_legacy RENAME TO orders;
+--rollback     ALTER TABLE orders DROP CONSTRAINT orders_legacy_pkey;
+--rollback     FOR rec IN
+--rollback         SELECT c.relname
+--rollback         FROM pg_index i
+--rollback         JOIN pg_class c ON c.oid = i.indexrelid
+--rollback         WHERE i.indrelid = 'orders'::regclass AND c.relname LIKE '%\_legacy'
+--rollback     LOOP
+--rollback         EXECUTE format('ALTER INDEX %I RENAME TO %I',
+--rollback                        rec.relname, regexp_replace(rec.relname, '_legacy$', ''));
+--rollback     END LOOP;
+--rollback     ALTER TABLE orders ADD CONSTRAINT orders_pkey PRIMARY KEY (id);
+--rollback     CREATE TRIGGER orders_notify_change
+--rollback         AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON orders
+--rollback         FOR EACH STATEMENT EXECUTE FUNCTION notify_table_change();
+--rollback END;
+--rollback $$;
+
+--changeset mentee:008-analyze-partitioned-orders
+-- Статистика родителя собирается отдельно, уже без блокировки записи
+ANALYZE orders;
+--rollback SELECT 1;
@@ -0,0 +1,132 @@
+--liquibase formatted sql
+
+--changeset mentee:009-add-rollup-amount-count
+-- Число заказов с непустой суммой: по нему считается среднее, как AVG(total_amount) в
+-- исходном запросе, который пропускает NULL. Накопленные агрегаты не знают этого числа,
+-- поэтому сбрасываются и пересобираются следующим обновлением
+ALTER TABLE order_daily_rollup ADD COLUMN IF NOT EXISTS amount_count BIGINT NOT NULL DEFAULT 0;
+
+TRUNCATE order_daily_rollup;
+
+UPDATE order_rollup_watermark
+SET covered_from = NULL, covered_until = NULL, refreshed_at = NULL
+WHERE rollup_name = 'order_daily_rollup';
+--rollback ALTER TABLE order_daily_rollup DROP COLUMN IF EXISTS amount_count;
+
+--changeset mentee:009-add-rollup-sync-function splitStatements:false
+-- Переносит в дневные агрегаты изменения заказов, уже покрытых водяным знаком: обновление
+-- агрегатов двигает водяной знак только вперед, и без этого смена статуса, удаление или
+-- поздняя вставка в покрытый день навсегда оставляли бы старые значения.
+--
+-- Строка водяного знака читается FOR SHARE: обновление агрегатов держит ее FOR UPDATE, поэтому
+-- триггер либо видит новый водяной знак после фиксации обновления (а обновление не видело
+-- незафиксированную строку), либо успевает раньше, и тогда обновление ждет фиксации заказа и
+-- учитывает его само. Вставка заказа моложе ROLLUP_SAFETY_LAG не может попасть в покрытые дни,
+-- поэтому обычная вставка нового заказа блокировку не берет.
+CREATE OR REPLACE FUNCTION order_daily_rollup_apply(
+    p_region VARCHAR, p_status VARCHAR, p_created_at TIMESTAMP, p_amount NUMERIC, p_sign INT
+) RETURNS void AS $$
+DECLARE
+    v_day DATE := p_created_at::date;
+    v_count BIGINT;
+    v_first TIMESTAMP;
+    v_last TIMESTAMP;
+BEGIN
+    IF p_sign > 0 THEN
+        INSERT INTO order_daily_rollup AS r
+            (region, status, day, orders_count, total_revenue, amount_count, first_order, last_order)
+        VALUES (p_region, p_status, v_day, 1, COALESCE(p_amount, 0),
+                CASE WHEN p_amount IS NULL THEN 0 ELSE 1 END, p_created_at, p_created_at)
+        ON CONFLICT (region, status, day) DO UPDATE SET
+            orders_count = r.orders_count + 1,
+            total_revenue = r.total_revenue + EXCLUDED.total_revenue,
+            amount_count = r.amount_count + EXCLUDED.amount_count,
+            first_order = LEAST(r.first_order, EXCLUDED.first_order),
+            last_order = GREATEST(r.last_order, EXCLUDED.last_order);
+        RETURN;
+    END IF;
+
+    UPDATE order_daily_rollup
+    SET orders_count = orders_count - 1,
+        total_revenue = total_revenue - COALESCE(p_amount, 0),
+        amount_count = amount_count - CASE WHEN p_amount IS NULL THEN 0 ELSE 1 END
+    WHERE region = p_region AND status = p_status AND day = v_day
+    RETURNING orders_count, first_order, last_order INTO v_count, v_first, v_last;
+
+    IF NOT FOUND THEN
+        RETURN;
+    ELSIF v_count <= 0 THEN
+        DELETE FROM order_daily_rollup
+        WHERE region = p_region AND status = p_status AND day = v_day;
+    ELSIF p_created_at = v_first OR p_created_at = v_last THEN
+        -- Удаленный заказ был крайним в дне: границы пересчитываются по оставшимся заказам
+        UPDATE order_daily_rollup r
+        SET first_order = b.first_order, last_order = b.last_order
+        FROM (
+            SELECT MIN(o.created_at) as first_order, MAX(o.created_at) as last_order
+            FROM orders o
+            WHERE o.region = p_region AND o.status = p_status
+              AND o.created_at >= v_day AND o.created_at < v_day + 1
+        ) b
+        WHERE r.region = p_region AND r.status = p_status AND r.day = v_day
+          AND b.first_order IS NOT NULL;
+    END IF;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION order_daily_rollup_sync() RETURNS trigger AS $$
+DECLARE
+    v_from TIMESTAMP;
+    v_until TIMESTAMP;
+BEGIN
+    IF TG_OP = 'TRUNCATE' THEN
+        TRUNCATE order_daily_rollup;
+        UPDATE order_rollup_watermark
+        SET covered_from = NULL, covered_until = NULL
+        WHERE rollup_name = 'order_daily_rollup';
+        RETURN NULL;
+    END IF;
+
+    IF TG_OP = 'INSERT' AND NEW.created_at >= LOCALTIMESTAMP - interval '1 hour' THEN
+        RETURN NULL;
+    END IF;
+
+    SELECT covered_from, covered_until INTO v_from, v_until
+    FROM order_rollup_watermark
+    WHERE rollup_name = 'order_daily_rollup'
+    FOR SHARE;
+
+    IF v_until IS NULL THEN
+        RETURN NULL;
+    END IF;
+
+    IF TG_OP IN ('UPDATE', 'DELETE')
+        AND OLD.region IS NOT NULL AND OLD.status IS NOT NULL
+        AND OLD.created_at >= v_from AND OLD.created_at < v_until THEN
+        PERFORM order_daily_rollup_apply(OLD.region, OLD.status, OLD.created_at, OLD.total_amount, -1);
+    END IF;
+
+    IF TG_OP IN ('INSERT', 'UPDATE')
+        AND NEW.region IS NOT NULL AND NEW.status IS NOT NULL
+        AND NEW.created_at >= v_from AND NEW.created_at < v_until THEN
+        PERFORM order_daily_rollup_apply(NEW.region, NEW.status, NEW.created_at, NEW.total_amount, 1);
+    END IF;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+--rollback DROP FUNCTION IF EXISTS order_daily_rollup_sync();
+--rollback DROP FUNCTION IF EXISTS order_daily_rollup_apply(VARCHAR, VARCHAR, TIMESTAMP, NUMERIC, INT);
+
+--changeset mentee:009-add-rollup-sync-triggers
+-- Строчный триггер на секционированной orders наследуется всеми секциями, в том числе
+-- созданными обслуживанием секций позже
+CREATE TRIGGER orders_rollup_sync
+    AFTER INSERT OR DELETE OR UPDATE OF region, status, created_at, total_amount ON orders
+    FOR EACH ROW EXECUTE FUNCTION order_daily_rollup_sync();
+
+CREATE TRIGGER orders_rollup_sync_truncate
+    AFTER TRUNCATE ON orders
+    FOR EACH STATEMENT EXECUTE FUNCTION order_daily_rollup_sync();
+--rollback DROP TRIGGER IF EXISTS orders_rollup_sync_truncate ON orders;
+--rollback DROP TRIGGER IF EXISTS orders_rollup_sync ON orders;
@@ -0,0 +1,96 @@
+package ru.mentee.power.connection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class QueryCancellationTest {
+
+  @Test
+  void cancelsStatementWhileItExecutes() throws Exception {
+    QueryCancellation cancellation = new QueryCancellation();
+    FakeStatement fake = new FakeStatement();
+    PreparedStatement statement = fake.trackedBy(cancellation);
+
+    CompletableFuture<Boolean> execution = CompletableFuture.supplyAsync(() -> {
+      try {
+        return statement.execute();
+      } catch (SQLException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    assertThat(fake.executing.await(5, TimeUnit.SECONDS)).isTrue();
+    cancellation.cancel();
+    fake.release.countDown();
+    execution.get(5, TimeUnit.SECONDS);
+
+    assertThat(fake.cancels).hasValue(1);
+    assertThat(cancellation.isCancelled()).isTrue();
+  }
+
+  @Test
+  void doesNotCancelStatementOutsideExecute() throws Exception {
+    QueryCancellation cancellation = new QueryCancellation();
+    FakeStatement fake = new FakeStatement();
+    fake.release.countDown();
+    PreparedStatement statement = fake.trackedBy(cancellation);
+    statement.execute();
+
+    cancellation.cancel();
+
+    assertThat(fake.cancels).hasValue(0);
+    assertThatThrownBy(statement::executeQuery)
+        .isInstanceOf(SQLException.class)
+        .extracting(e -> ((SQLException) e).getSQLState())
+        .isEqualTo("57014");
+  }
+
+  @Test
+  void ignoresCancelAfterFinish() throws Exception {
+    QueryCancellation cancellation = new QueryCancellation();
+    FakeStatement fake = new FakeStatement();
+    fake.release.countDown();
+    PreparedStatement statement = fake.trackedBy(cancellation);
+
+    cancellation.finish();
+    cancellation.cancel();
+
+    assertThat(fake.cancels).hasValue(0);
+    assertThat(cancellation.track(statement, PreparedStatement.class)).isSameAs(statement);
+  }
+
+  /**
+   * Оператор, у которого execute* ждет release, а cancel() только считается.
+   */
+  private static final class FakeStatement {
+    private final CountDownLatch executing = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger cancels = new AtomicInteger();
+
+    private PreparedStatement trackedBy(QueryCancellation cancellation) {
+      Statement raw = (Statement) Proxy.newProxyInstance(
+          PreparedStatement.class.getClassLoader(),
+          new Class<?>[] {PreparedStatement.class},
+          (proxy, method, args) -> {
+            if (method.getName().equals("cancel")) {
+              cancels.incrementAndGet();
+            } else if (method.getName().startsWith("execute")) {
+              executing.countDown();
+              release.await(5, TimeUnit.SECONDS);
+              return method.getReturnType() == boolean.class ? false : null;
+            }
+            return null;
+          });
+      return (PreparedStatement) cancellation.track(raw, PreparedStatement.class);
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package ru.mentee.power.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Properties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.mentee.power.config.ApplicationConfig;
+import ru.mentee.power.config.ConfigFilePath;
+import ru.mentee.power.config.ConnectionPoolConfig;
+import ru.mentee.power.config.DatabaseConfig;
+import ru.mentee.power.config.ResultCacheConfig;
+import ru.mentee.power.model.ResultCacheMode;
+import ru.mentee.power.model.analytics.OrderAnalytics;
+import ru.mentee.power.test.BaseIntegrationTest;
+
+/**
+ * Агрегаты order_daily_rollup должны давать тот же результат, что исходный запрос по orders,
+ * и после изменений заказов в уже покрытых днях.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class OrderRollupConsistencyTest extends BaseIntegrationTest {
+
+  private static final List<String> REGIONS = List.of("MOSCOW", "SPB");
+  private static final List<String> STATUSES = List.of("PENDING", "SHIPPED", "CANCELLED");
+  private static final LocalDate TODAY = LocalDate.now();
+
+  private ApplicationConfig config;
+  private CompositeIndexRepositoryImpl repository;
+
+  @BeforeEach
+  void createSchema() throws Exception {
+    try (Connection conn = getTestConnection(); Statement stmt = conn.createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS orders, order_daily_rollup, order_rollup_watermark");
+      stmt.execute("""
+          CREATE TABLE orders (
+              id BIGSERIAL PRIMARY KEY,
+              user_id BIGINT,
+              region VARCHAR(50),
+              status VARCHAR(50),
+              total_amount NUMERIC(12,2),
+              created_at TIMESTAMP NOT NULL
+          )
+          """);
+      stmt.execute(migration("006-create-order-daily-rollup.sql"));
+      stmt.execute(migration("009-sync-order-daily-rollup.sql"));
+    }
+
+    Properties properties = new Properties();
+    properties.setProperty(DatabaseConfig.DB_URL, postgres.getJdbcUrl());
+    properties.setProperty(DatabaseConfig.DB_USERNAME, postgres.getUsername());
+    properties.setProperty(DatabaseConfig.DB_PASSWORD, postgres.getPassword());
+    config = new ApplicationConfig(properties, new ConfigFilePath());
+    properties.setProperty(ConnectionPoolConfig.DB_POOL_INIT_SQL, "SET search_path TO public");
+    properties.setProperty(ResultCacheConfig.DB_RESULT_CACHE_MODE,
+        ResultCacheMode.DISABLED.name());
+    repository = new CompositeIndexRepositoryImpl(config, new ObjectMapper());
+  }
+
+  @AfterEach
+  void closePool() {
+    config.getConnectionProvider().close();
+  }
+
+  @Test
+  void rollupMatchesBaseQueryAfterRefresh() throws SQLException {
+    insertOrders();
+
+    repository.refreshOrderRollup();
+
+    assertRollupMatchesBaseQuery();
+  }
+
+  @Test
+  void rollupMatchesBaseQueryAfterChangesInCoveredDays() throws SQLException {
+    insertOrders();
+    repository.refreshOrderRollup();
+
+    try (Connection conn = getTestConnection(); Statement stmt = conn.createStatement()) {
+      stmt.executeUpdate("""
+          UPDATE orders SET status = 'CANCELLED'
+          WHERE id IN (SELECT id FROM orders WHERE status = 'PENDING' ORDER BY id LIMIT 3)
+          """);
+      stmt.executeUpdate("""
+          DELETE FROM orders
+          WHERE id = (SELECT id FROM orders WHERE region = 'SPB' ORDER BY created_at LIMIT 1)
+          """);
+      stmt.executeUpdate("""
+          UPDATE orders SET total_amount = NULL
+          WHERE id = (SELECT id FROM orders WHERE region = 'MOSCOW' ORDER BY id DESC LIMIT 1)
+          """);
+    }
+    insertOrder("SPB", "SHIPPED", "42.10", TODAY.minusDays(5).atTime(12, 30));
+
+    assertRollupMatchesBaseQuery();
+
+    repository.refreshOrderRollup();
+    assertRollupMatchesBaseQuery();
+  }
+
+  private void assertRollupMatchesBaseQuery() {
+    LocalDate start = TODAY.minusDays(12);
+    LocalDate end = TODAY.minusDays(2);
+    List<OrderAnalytics> expected =
+        repository.getOrderAnalyticsWithoutIndex(REGIONS, STATUSES, start, end).getData();
+    List<OrderAnalytics> actual =
+        repository.getOrderAnalyticsFromRollup(REGIONS, STATUSES, start, end).getData();
+
+    assertThat(expected).isNotEmpty();
+    assertThat(actual).isEqualTo(expected);
+  }
+
+  private void insertOrders() throws SQLException {
+    for (int day = 3; day <= 10; day++) {
+      for (int i = 0; i < 6; i++) {
+        String region = REGIONS.get(i % REGIONS.size());
+        String status = STATUSES.get(i / 2 % 2);
+        String amount = i == 5 ? null : (100 + day * 10 + i) + ".25";
+        insertOrder(region, status, amount, TODAY.minusDays(day).atTime(8 + i, 15));
+      }
+    }
+  }
+
+  private void insertOrder(String region, String status, String amount, LocalDateTime createdAt)
+      throws SQLException {
+    try (Connection conn = getTestConnection();
+        PreparedStatement stmt = conn.prepareStatement("""
+            INSERT INTO orders (user_id, region, status, total_amount, created_at)
+            VALUES (1, ?, ?, ?::numeric, ?)
+            """)) {
+      stmt.setString(1, region);
+      stmt.setString(2, status);
+      stmt.setString(3, amount);
+      stmt.setTimestamp(4, Timestamp.valueOf(createdAt));
+      stmt.executeUpdate();
+    }
+  }
+
+  private static String migration(String name) throws IOException {
+    try (InputStream in = OrderRollupConsistencyTest.class
+        .getResourceAsStream("/db/migrations/" + name)) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package ru.mentee.power.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.utils.KeysetToken.Position;
+
+class KeysetTokenTest {
+
+  private static final String SCOPE = "heavy_users|MOSCOW|2025-01-01|min=5";
+
+  @Test
+  void decodesEncodedPosition() {
+    Position position = new Position(new BigDecimal("12345.67"), 42L);
+
+    String token = KeysetToken.encode(SCOPE, position);
+
+    assertThat(KeysetToken.decode(token, SCOPE)).isEqualTo(position);
+  }
+
+  @Test
+  void keepsSortValueScaleAndLargeNumbers() {
+    Position position = new Position(new BigDecimal("1E+3"), Long.MAX_VALUE);
+
+    Position decoded = KeysetToken.decode(KeysetToken.encode(SCOPE, position), SCOPE);
+
+    assertThat(decoded.sortValue()).isEqualByComparingTo("1000");
+    assertThat(decoded.id()).isEqualTo(Long.MAX_VALUE);
+  }
+
+  @Test
+  void tokenIsUrlSafe() {
+    String token = KeysetToken.encode(SCOPE, new Position(new BigDecimal("-0.01"), 7L));
+
+    assertThat(token).matches("[A-Za-z0-9_-]+");
+  }
+
+  @Test
+  void rejectsTokenIssuedForOtherScope() {
+    String token = KeysetToken.encode(SCOPE, new Position(BigDecimal.TEN, 1L));
+
+    assertThatThrownBy(() -> KeysetToken.decode(token, SCOPE.replace("MOSCOW", "SPB")))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("других параметров");
+  }
+
+  @Test
+  void rejectsMalformedTokens() {
+    assertThatThrownBy(() -> KeysetToken.decode("not base64!", SCOPE))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> KeysetToken.decode(encodeRaw("v1|abc"), SCOPE))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> KeysetToken.decode(encodeRaw("v2|0|1|1"), SCOPE))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void rejectsTokenWithBrokenPosition() {
+    String token = KeysetToken.encode(SCOPE, new Position(BigDecimal.ONE, 5L));
+    String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+
+    assertThatThrownBy(() -> KeysetToken.decode(encodeRaw(raw.replace("|5", "|five")), SCOPE))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Некорректный токен страницы");
+  }
+
+  private static String encodeRaw(String raw) {
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,84 @@
+package ru.mentee.power.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.model.analytics.OrderAnalytics;
+import ru.mentee.power.utils.OrderAnalyticsMerger.Partial;
+
+class OrderAnalyticsMergerTest {
+
+  private static final LocalDateTime JAN_1 = LocalDateTime.of(2025, 1, 1, 10, 0);
+  private static final LocalDateTime JAN_15 = LocalDateTime.of(2025, 1, 15, 12, 30);
+  private static final LocalDateTime FEB_1 = LocalDateTime.of(2025, 2, 1, 9, 0);
+
+  @Test
+  void combinesPartialsOfSameGroup() {
+    List<OrderAnalytics> result = OrderAnalyticsMerger.merge(List.of(
+        new Partial("MOSCOW", "PAID", 2, 2, new BigDecimal("300.75"), JAN_15, JAN_15),
+        new Partial("MOSCOW", "PAID", 3, 2, new BigDecimal("99.25"), JAN_1, FEB_1)));
+
+    assertThat(result).hasSize(1);
+    OrderAnalytics analytics = result.get(0);
+    assertThat(analytics.getOrdersCount()).isEqualTo(5L);
+    assertThat(analytics.getTotalRevenue()).isEqualTo(new BigDecimal("400.00"));
+    // AVG не учитывает заказы без суммы: делитель 4, а не 5
+    assertThat(analytics.getAvgOrderValue()).isEqualTo(new BigDecimal("100.0000000000000000"));
+    assertThat(analytics.getFirstOrder()).isEqualTo(JAN_1);
+    assertThat(analytics.getLastOrder()).isEqualTo(FEB_1);
+  }
+
+  @Test
+  void sortsGroupsByRegionAndStatus() {
+    List<OrderAnalytics> result = OrderAnalyticsMerger.merge(List.of(
+        new Partial("SPB", "PAID", 1, 1, BigDecimal.ONE, JAN_1, JAN_1),
+        new Partial("MOSCOW", "SHIPPED", 1, 1, BigDecimal.ONE, JAN_1, JAN_1),
+        new Partial("MOSCOW", "CANCELLED", 1, 1, BigDecimal.ONE, JAN_1, JAN_1)));
+
+    assertThat(result).extracting(a -> a.getRegion() + "/" + a.getStatus())
+        .containsExactly("MOSCOW/CANCELLED", "MOSCOW/SHIPPED", "SPB/PAID");
+  }
+
+  @Test
+  void keepsRevenueOfPartWithAmounts() {
+    List<OrderAnalytics> result = OrderAnalyticsMerger.merge(List.of(
+        new Partial("MOSCOW", "PAID", 1, 0, null, null, null),
+        new Partial("MOSCOW", "PAID", 1, 1, new BigDecimal("10.00"), JAN_15, JAN_15)));
+
+    OrderAnalytics analytics = result.get(0);
+    assertThat(analytics.getOrdersCount()).isEqualTo(2L);
+    assertThat(analytics.getTotalRevenue()).isEqualTo(new BigDecimal("10.00"));
+    assertThat(analytics.getFirstOrder()).isEqualTo(JAN_15);
+    assertThat(analytics.getLastOrder()).isEqualTo(JAN_15);
+  }
+
+  @Test
+  void leavesAverageEmptyWithoutAmounts() {
+    List<OrderAnalytics> result = OrderAnalyticsMerger.merge(List.of(
+        new Partial("MOSCOW", "PAID", 3, 0, null, JAN_1, FEB_1)));
+
+    assertThat(result.get(0).getTotalRevenue()).isNull();
+    assertThat(result.get(0).getAvgOrderValue()).isNull();
+  }
+
+  @Test
+  void averageUsesPostgresDivisionScale() {
+    // Ожидаемые значения - результаты numeric / bigint в PostgreSQL
+    assertThat(OrderAnalyticsMerger.average(new BigDecimal("10.00"), 3))
+        .isEqualTo(new BigDecimal("3.3333333333333333"));
+    assertThat(OrderAnalyticsMerger.average(new BigDecimal("1.00"), 3))
+        .isEqualTo(new BigDecimal("0.33333333333333333333"));
+    assertThat(OrderAnalyticsMerger.average(new BigDecimal("123456.78"), 3))
+        .isEqualTo(new BigDecimal("41152.260000000000"));
+    assertThat(OrderAnalyticsMerger.average(new BigDecimal("300.75"), 2))
+        .isEqualTo(new BigDecimal("150.3750000000000000"));
+  }
+
+  @Test
+  void mergesEmptyInput() {
+    assertThat(OrderAnalyticsMerger.merge(List.of())).isEmpty();
+  }
+}
@@ -0,0 +1,259 @@
+package ru.mentee.power.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mentee.power.model.analytics.OrderAnalytics;
+
+class OrderColumnarSnapshotTest {
+
+  private static final LocalDate START = LocalDate.of(2025, 3, 1);
+  private static final LocalDate END = LocalDate.of(2025, 3, 10);
+  private static final List<String> REGIONS = List.of("MOSCOW", "SPB", "NORTH, \"FAR\"");
+  private static final List<String> STATUSES = List.of("PAID", "SHIPPED");
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void rejectsQueriesBeforeLoad() {
+    InMemorySnapshot snapshot = new InMemorySnapshot();
+
+    assertThatThrownBy(() -> snapshot.aggregate(REGIONS, STATUSES, START, END))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void filtersCreatedAtLikeBetweenOfMidnights() throws Exception {
+    InMemorySnapshot snapshot = new InMemorySnapshot();
+    snapshot.add(1, START.atStartOfDay(), "10.00", "MOSCOW", "PAID");
+    snapshot.add(2, START.atStartOfDay().minusNanos(1_000), "20.00", "MOSCOW", "PAID");
+    snapshot.add(3, END.atStartOfDay(), "30.00", "MOSCOW", "PAID");
+    snapshot.add(4, END.atStartOfDay().plusNanos(1_000), "40.00", "MOSCOW", "PAID");
+    snapshot.reload();
+
+    OrderAnalytics analytics = single(snapshot.aggregate(REGIONS, STATUSES, START, END));
+
+    assertThat(analytics.getOrdersCount()).isEqualTo(2L);
+    assertThat(analytics.getTotalRevenue()).isEqualTo(new BigDecimal("40.00"));
+    assertThat(analytics.getFirstOrder()).isEqualTo(START.atStartOfDay());
+    assertThat(analytics.getLastOrder()).isEqualTo(END.atStartOfDay());
+  }
+
+  @Test
+  void countsNullAmountsLikeSqlAggregates() throws Exception {
+    InMemorySnapshot snapshot = new InMemorySnapshot();
+    snapshot.add(1, day(2, 9), "10.00", "MOSCOW", "PAID");
+    snapshot.add(2, day(2, 10), null, "MOSCOW", "PAID");
+    snapshot.add(3, day(3, 11), "5.50", "MOSCOW", "PAID");
+    snapshot.add(4, day(4, 12), null, "SPB", "SHIPPED");
+    snapshot.reload();
+
+    List<OrderAnalytics> result = snapshot.aggregate(REGIONS, STATUSES, START, END);
+
+    assertThat(result).hasSize(2);
+    OrderAnalytics moscow = result.get(0);
+    assertThat(moscow.getOrdersCount()).isEqualTo(3L);
+    assertThat(moscow.getTotalRevenue()).isEqualTo(new BigDecimal("15.50"));
+    // AVG пропускает NULL: 15.50 / 2
+    assertThat(moscow.getAvgOrderValue())
+        .isEqualTo(OrderAnalyticsMerger.average(new BigDecimal("15.50"), 2));
+    OrderAnalytics spb = result.get(1);
+    assertThat(spb.getOrdersCount()).isEqualTo(1L);
+    assertThat(spb.getTotalRevenue()).isNull();
+    assertThat(spb.getAvgOrderValue()).isNull();
+  }
+
+  @Test
+  void filtersAndSortsGroupsLikeSql() throws Exception {
+    InMemorySnapshot snapshot = new InMemorySnapshot();
+    snapshot.add(1, day(2, 9), "1.00", "SPB", "PAID");
+    snapshot.add(2, day(2, 9), "2.00", "NORTH, \"FAR\"", "SHIPPED");
+    snapshot.add(3, day(2, 9), "3.00", "MOSCOW", "SHIPPED");
+    snapshot.add(4, day(2, 9), "4.00", "MOSCOW", "CANCELLED");
+    snapshot.add(5, day(2, 9), "5.00", null, "PAID");
+    snapshot.add(6, day(2, 9), "6.00", "MOSCOW", null);
+    snapshot.add(7, day(2, 9), "7.00", "KAZAN", "PAID");
+    snapshot.reload();
+
+    List<OrderAnalytics> result = snapshot.aggregate(REGIONS, STATUSES, START, END);
+
+    assertThat(result).extracting(a -> a.getRegion() + "/" + a.getStatus())
+        .containsExactly("MOSCOW/SHIPPED", "NORTH, \"FAR\"/SHIPPED", "SPB/PAID");
+    assertThat(snapshot.aggregate(List.of("KAZAN"), STATUSES, START, END))
+        .extracting(OrderAnalytics::getTotalRevenue)
+        .containsExactly(new BigDecimal("7.00"));
+  }
+
+  @Test
+  void refreshAppendsNewAndLateRows() throws Exception {
+    InMemorySnapshot snapshot = new InMemorySnapshot();
+    snapshot.add(1, day(2, 9), "10.00", "MOSCOW", "PAID");
+    snapshot.add(3, day(5, 9), "30.00", "MOSCOW", "PAID");
+    snapshot.reload();
+
+    // id 2 закоммичен позже id 3, но создан внутри окна поздних строк
+    snapshot.add(2, day(5, 8), "20.00", "MOSCOW", "PAID");
+    snapshot.add(4, day(6, 9), "40.00", "MOSCOW", "PAID");
+    snapshot.refresh();
+
+    assertThat(snapshot.size()).isEqualTo(4);
+    OrderAnalytics analytics = single(snapshot.aggregate(REGIONS, STATUSES, START, END));
+    assertThat(analytics.getOrdersCount()).isEqualTo(4L);
+    assertThat(analytics.getTotalRevenue()).isEqualTo(new BigDecimal("100.00"));
+  }
+
+  @Test
+  void refreshUpdatesRowMovedIntoWindowInPlace() throws Exception {
+    InMemorySnapshot snapshot = new InMemorySnapshot();
+    snapshot.add(1, day(2, 9), "10.00", "MOSCOW", "PAID");
+    snapshot.add(2, day(5, 9), "20.00", "MOSCOW", "PAID");
+    snapshot.reload();
+
+    snapshot.update(1, day(5, 10), "15.00", "MOSCOW", "SHIPPED");
+    snapshot.refresh();
+    snapshot.refresh();
+
+    assertThat(snapshot.size()).isEqualTo(2);
+    List<OrderAnalytics> result = snapshot.aggregate(REGIONS, STATUSES, START, END);
+    assertThat(result).extracting(OrderAnalytics::getStatus).containsExactly("PAID", "SHIPPED");
+    assertThat(result).extracting(OrderAnalytics::getOrdersCount).containsExactly(1L, 1L);
+    assertThat(result.get(1).getTotalRevenue()).isEqualTo(new BigDecimal("15.00"));
+  }
+
+  @Test
+  void refreshReloadsSnapshotAfterReloadInterval() throws Exception {
+    InMemorySnapshot snapshot = new InMemorySnapshot(Duration.ZERO);
+    snapshot.add(1, day(2, 9), "10.00", "MOSCOW", "PAID");
+    snapshot.add(2, day(3, 9), "20.00", "MOSCOW", "PAID");
+    snapshot.add(3, day(9, 9), "30.00", "MOSCOW", "PAID");
+    snapshot.reload();
+
+    // Обе строки старше окна поздних строк: приращение их не видит
+    snapshot.update(1, day(2, 9), "10.00", "MOSCOW", "SHIPPED");
+    snapshot.delete(2);
+    snapshot.refresh();
+
+    assertThat(snapshot.size()).isEqualTo(2);
+    List<OrderAnalytics> result = snapshot.aggregate(REGIONS, STATUSES, START, END);
+    assertThat(result).extracting(OrderAnalytics::getStatus).containsExactly("PAID", "SHIPPED");
+    assertThat(result).extracting(OrderAnalytics::getTotalRevenue)
+        .containsExactly(new BigDecimal("30.00"), new BigDecimal("10.00"));
+  }
+
+  @Test
+  void restoresWrittenSnapshot() throws Exception {
+    InMemorySnapshot snapshot = new InMemorySnapshot();
+    snapshot.add(1, day(2, 9), "10.00", "MOSCOW", "PAID");
+    snapshot.add(2, day(3, 9), null, "SPB", "SHIPPED");
+    snapshot.add(3, day(4, 9), "2.25", "NORTH, \"FAR\"", "PAID");
+    snapshot.reload();
+    Path path = dir.resolve("orders.snapshot");
+    try (SnapshotFile.Writer writer = SnapshotFile.create(path)) {
+      snapshot.writeTo(writer);
+      writer.finish("schema");
+    }
+
+    InMemorySnapshot restored = new InMemorySnapshot();
+    try (SnapshotFile.Reader reader = SnapshotFile.open(path, "schema")) {
+      assertThat(restored.restore(reader)).isTrue();
+    }
+
+    assertThat(restored.size()).isEqualTo(3);
+    assertThat(restored.aggregate(REGIONS, STATUSES, START, END))
+        .isEqualTo(snapshot.aggregate(REGIONS, STATUSES, START, END));
+  }
+
+  @Test
+  void restoreSkipsFileWithoutOrders() throws IOException {
+    Path path = dir.resolve("empty.snapshot");
+    try (SnapshotFile.Writer writer = SnapshotFile.create(path)) {
+      writer.finish("schema");
+    }
+
+    try (SnapshotFile.Reader reader = SnapshotFile.open(path, "schema")) {
+      assertThat(new InMemorySnapshot().restore(reader)).isFalse();
+    }
+  }
+
+  private static LocalDateTime day(int dayOfMonth, int hour) {
+    return START.withDayOfMonth(dayOfMonth).atTime(hour, 0);
+  }
+
+  private static OrderAnalytics single(List<OrderAnalytics> result) {
+    assertThat(result).hasSize(1);
+    return result.get(0);
+  }
+
+  /**
+   * Снимок поверх таблицы в памяти: строки отдаются в том же csv, что и COPY_SQL.
+   */
+  private static final class InMemorySnapshot extends OrderColumnarSnapshot {
+    private final List<Row> table = new ArrayList<>();
+
+    private InMemorySnapshot() {
+      this(Duration.ofDays(1));
+    }
+
+    private InMemorySnapshot(Duration reloadInterval) {
+      super(null, "orders", Duration.ofDays(1), reloadInterval);
+    }
+
+    private void add(long id, LocalDateTime createdAt, String amount, String region,
+        String status) {
+      table.add(new Row(id, createdAt, amount, region, status));
+    }
+
+    private void update(long id, LocalDateTime createdAt, String amount, String region,
+        String status) {
+      table.replaceAll(row -> row.id() == id
+          ? new Row(id, createdAt, amount, region, status) : row);
+    }
+
+    private void delete(long id) {
+      table.removeIf(row -> row.id() == id);
+    }
+
+    @Override
+    void readRows(Long afterId, LocalDateTime createdFrom, Consumer<String> rows) {
+      for (Row row : table) {
+        boolean selected = afterId == null || row.id() > afterId
+            || createdFrom != null && !row.createdAt().isBefore(createdFrom);
+        if (selected) {
+          rows.accept(row.toCsv());
+        }
+      }
+    }
+  }
+
+  private record Row(long id, LocalDateTime createdAt, String amount, String region,
+      String status) {
+
+    private String toCsv() {
+      long micros = createdAt.toEpochSecond(ZoneOffset.UTC) * 1_000_000
+          + createdAt.getNano() / 1_000;
+      return String.join(",", Long.toString(id), Long.toString(micros),
+          amount != null ? amount : "", quote(region), quote(status)) + "\n";
+    }
+
+    private static String quote(String value) {
+      if (value == null) {
+        return "";
+      }
+      return value.contains(",") || value.contains("\"")
+          ? '"' + value.replace("\"", "\"\"") + '"' : value;
+    }
+  }
+}
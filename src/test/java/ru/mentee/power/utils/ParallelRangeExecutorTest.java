@@ -0,0 +1,152 @@
+package ru.mentee.power.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.connection.ConnectionProvider;
+import ru.mentee.power.connection.QueryCancellation;
+import ru.mentee.power.exception.DataAccessException;
+import ru.mentee.power.model.PoolMetrics;
+import ru.mentee.power.utils.ParallelRangeExecutor.TimeRange;
+
+class ParallelRangeExecutorTest {
+
+  private static final LocalDateTime FROM = LocalDateTime.of(2025, 1, 1, 0, 0);
+  private static final LocalDateTime TO = LocalDateTime.of(2025, 1, 5, 0, 0);
+
+  private final ParallelRangeExecutor executor = new ParallelRangeExecutor(new FakeProvider());
+
+  @Test
+  void splitCoversIntervalWithoutGaps() {
+    List<TimeRange> ranges = ParallelRangeExecutor.split(FROM, TO, 4);
+
+    assertThat(ranges).hasSize(4);
+    assertThat(ranges.get(0).from()).isEqualTo(FROM);
+    assertThat(ranges.get(3).toExclusive()).isEqualTo(TO);
+    for (int i = 1; i < ranges.size(); i++) {
+      assertThat(ranges.get(i).from()).isEqualTo(ranges.get(i - 1).toExclusive());
+    }
+    assertThat(ParallelRangeExecutor.split(FROM, FROM, 4)).hasSize(1);
+  }
+
+  @Test
+  void returnsResultsInRangeOrder() throws Exception {
+    List<TimeRange> ranges = ParallelRangeExecutor.split(FROM, TO, 4);
+
+    List<LocalDateTime> starts = executor.execute(ranges, (conn, range) -> {
+      // Первые части завершаются последними
+      pause(ranges.size() * 10L - range.from().getDayOfMonth() * 10L);
+      return range.from();
+    });
+
+    assertThat(starts).containsExactlyElementsOf(ranges.stream().map(TimeRange::from).toList());
+  }
+
+  @Test
+  void failedPartCancelsSiblings() {
+    List<TimeRange> ranges = ParallelRangeExecutor.split(FROM, TO, 3);
+    AtomicInteger cancelledSiblings = new AtomicInteger();
+
+    assertThatThrownBy(() -> executor.execute(ranges, (conn, range) -> {
+      if (range.from().equals(FROM)) {
+        throw new SQLException("boom");
+      }
+      if (awaitCancellation()) {
+        cancelledSiblings.incrementAndGet();
+      }
+      return range;
+    })).isInstanceOf(DataAccessException.class);
+
+    awaitCount(cancelledSiblings, 2);
+    assertThat(cancelledSiblings).hasValue(2);
+  }
+
+  @Test
+  void callerCancellationReachesParts() throws Exception {
+    QueryCancellation caller = new QueryCancellation();
+    CountDownLatch started = new CountDownLatch(3);
+    List<TimeRange> ranges = ParallelRangeExecutor.split(FROM, TO, 3);
+
+    CompletableFuture<List<Boolean>> call = CompletableFuture.supplyAsync(() -> {
+      try (QueryCancellation.Binding binding = caller.bind()) {
+        return executor.execute(ranges, (conn, range) -> {
+          started.countDown();
+          return awaitCancellation();
+        });
+      } catch (DataAccessException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    caller.cancel();
+
+    assertThat(call.get(5, TimeUnit.SECONDS)).containsExactly(true, true, true);
+  }
+
+  @Test
+  void rethrowsRuntimeExceptionOfPart() {
+    List<TimeRange> ranges = ParallelRangeExecutor.split(FROM, TO, 2);
+
+    assertThatThrownBy(() -> executor.execute(ranges, (conn, range) -> {
+      throw new IllegalArgumentException("bad range");
+    })).isInstanceOf(IllegalArgumentException.class).hasMessage("bad range");
+  }
+
+  private static boolean awaitCancellation() throws SQLException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (System.nanoTime() < deadline) {
+      if (QueryCancellation.current().isCancelled()) {
+        return true;
+      }
+      pause(5);
+    }
+    return false;
+  }
+
+  private static void pause(long millis) throws SQLException {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException(e);
+    }
+  }
+
+  private static void awaitCount(AtomicInteger counter, int expected) {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (counter.get() < expected && System.nanoTime() < deadline) {
+      Thread.onSpinWait();
+    }
+  }
+
+  /**
+   * Выдает соединения-заглушки: задачам тестов они не нужны.
+   */
+  private static final class FakeProvider implements ConnectionProvider {
+
+    @Override
+    public Connection getConnection() {
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+          new Class<?>[] {Connection.class}, (proxy, method, args) -> null);
+    }
+
+    @Override
+    public PoolMetrics getMetrics() {
+      return null;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package ru.mentee.power.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.math.BigDecimal;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.model.analytics.PlanNode;
+
+class QueryPlanParserTest {
+
+  private static final String PLAN_JSON = """
+      [{"Plan": {"Node Type": "Hash Join", "Join Type": "Inner", "Total Cost": 250.5,
+          "Plan Rows": 100, "Actual Total Time": 12.5, "Actual Rows": 90, "Actual Loops": 1,
+          "Hash Cond": "(o.user_id = u.id)", "Shared Hit Blocks": 40, "Shared Read Blocks": 10,
+          "Plans": [
+            {"Node Type": "Seq Scan", "Relation Name": "orders", "Alias": "o",
+             "Total Cost": 150.0, "Plan Rows": 1000, "Actual Total Time": 6.0,
+             "Actual Rows": 1000, "Actual Loops": 1, "Filter": "(status = 'PAID')",
+             "Shared Hit Blocks": 30, "Shared Read Blocks": 8},
+            {"Node Type": "Hash", "Total Cost": 20.0, "Plan Rows": 50,
+             "Actual Total Time": 1.5, "Actual Rows": 50, "Actual Loops": 1,
+             "Shared Hit Blocks": 5, "Shared Read Blocks": 2,
+             "Plans": [
+               {"Node Type": "Index Scan", "Relation Name": "users", "Alias": "u",
+                "Index Name": "users_pkey", "Total Cost": 18.0, "Plan Rows": 50,
+                "Actual Total Time": 0.5, "Actual Rows": 25, "Actual Loops": 2,
+                "Index Cond": "(id < 100)", "Shared Hit Blocks": 5, "Shared Read Blocks": 2}
+             ]}
+          ]},
+        "Planning": {"Shared Hit Blocks": 12, "Shared Read Blocks": 3},
+        "Planning Time": 0.734,
+        "Triggers": [],
+        "Execution Time": 13.2}]
+      """;
+
+  @Test
+  void takesQueryBuffersFromRootNode() {
+    QueryPlanParser parser = new QueryPlanParser(PLAN_JSON);
+
+    assertThat(parser.getBuffersHit()).isEqualTo(40L);
+    assertThat(parser.getBuffersRead()).isEqualTo(10L);
+  }
+
+  @Test
+  void readsPlanningAndExecutionTime() {
+    QueryPlanParser parser = new QueryPlanParser(PLAN_JSON);
+
+    assertThat(parser.getPlanningTime()).isEqualByComparingTo("0.734");
+    assertThat(parser.getPlanningTimeMs()).isEqualTo(1L);
+    assertThat(parser.getExecutionTime()).isEqualByComparingTo("13.2");
+    assertThat(parser.getExecutionTimeMs()).isEqualTo(13.2);
+  }
+
+  @Test
+  void computesSummaryMetrics() {
+    QueryPlanParser parser = new QueryPlanParser(PLAN_JSON);
+
+    assertThat(parser.getScanType()).isEqualTo("Seq Scan");
+    assertThat(parser.getRowsScanned()).isEqualTo(1_200L);
+    assertThat(parser.getRowsReturned()).isEqualTo(1_165L);
+    assertThat(parser.getCostEstimate()).isEqualTo(250.5);
+    assertThat(parser.getTotalCost()).isEqualByComparingTo("250.5");
+    assertThat(parser.getPlanShape()).contains("Hash Join", "Seq Scan", "users_pkey");
+    assertThat(parser.getPlanFingerprint()).isNotBlank();
+  }
+
+  @Test
+  void buildsTreeInTopDownOrder() {
+    QueryPlanParser parser = new QueryPlanParser(PLAN_JSON);
+
+    List<PlanNode> nodes = parser.getNodes();
+    assertThat(nodes).extracting(PlanNode::getNodeType)
+        .containsExactly("Hash Join", "Seq Scan", "Hash", "Index Scan");
+    assertThat(nodes).extracting(PlanNode::getDepth).containsExactly(0, 1, 1, 2);
+
+    PlanNode root = parser.getRootNode();
+    assertThat(root).isSameAs(nodes.get(0));
+    assertThat(root.getOperation()).isEqualTo("Hash Join (Inner)");
+    assertThat(root.getCondition()).isEqualTo("(o.user_id = u.id)");
+    assertThat(root.getChildren()).containsExactly(nodes.get(1), nodes.get(2));
+    assertThat(nodes.get(2).getChildren()).containsExactly(nodes.get(3));
+    assertThat(nodes.get(1).getFilter()).isEqualTo("(status = 'PAID')");
+    assertThat(nodes.get(3).getIndexName()).isEqualTo("users_pkey");
+  }
+
+  @Test
+  void computesExclusiveTimeAndBuffers() {
+    QueryPlanParser parser = new QueryPlanParser(PLAN_JSON);
+
+    List<PlanNode> nodes = parser.getNodes();
+    PlanNode root = nodes.get(0);
+    PlanNode indexScan = nodes.get(3);
+
+    assertThat(indexScan.getActualTime()).isEqualByComparingTo("1.0");
+    assertThat(root.getExclusiveTime()).isEqualByComparingTo("5.0");
+    assertThat(nodes.get(2).getExclusiveTime()).isEqualByComparingTo("0.5");
+    assertThat(root.getExclusiveBuffersHit()).isEqualTo(5L);
+    assertThat(root.getExclusiveBuffersRead()).isZero();
+    assertThat(parser.getHottestNode()).isSameAs(nodes.get(1));
+  }
+
+  @Test
+  void parsesJsonTreeLikeString() throws Exception {
+    QueryPlanParser stream = new QueryPlanParser(PLAN_JSON);
+    QueryPlanParser tree = new QueryPlanParser(new ObjectMapper().readTree(PLAN_JSON));
+
+    assertThat(tree.getNodes()).isEqualTo(stream.getNodes());
+    assertThat(tree.getPlanFingerprint()).isEqualTo(stream.getPlanFingerprint());
+    assertThat(tree.getBuffersHit()).isEqualTo(stream.getBuffersHit());
+    assertThat(tree.getPlanningTime()).isEqualByComparingTo(stream.getPlanningTime());
+  }
+
+  @Test
+  void leavesEmptyMetricsForInvalidPlan() {
+    for (String json : new String[] {null, "", "[]", "not a plan"}) {
+      QueryPlanParser parser = new QueryPlanParser(json);
+
+      assertThat(parser.getRootNode()).isNull();
+      assertThat(parser.getNodes()).isEmpty();
+      assertThat(parser.getHottestNode()).isNull();
+      assertThat(parser.getBuffersHit()).isZero();
+      assertThat(parser.getTotalCost()).isNull();
+      assertThat(parser.getPlanningTime()).isNull();
+    }
+  }
+
+  @Test
+  void keepsCostAsDecimal() {
+    QueryPlanParser parser = new QueryPlanParser(PLAN_JSON);
+
+    assertThat(parser.getNodes()).extracting(PlanNode::getCost)
+        .containsExactly(new BigDecimal("250.5"), new BigDecimal("150.0"),
+            new BigDecimal("20.0"), new BigDecimal("18.0"));
+  }
+}
@@ -0,0 +1,106 @@
+package ru.mentee.power.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.model.analytics.ConfidenceInterval;
+
+class SampleEstimatorTest {
+
+  private static final double Z_95 = 1.959964;
+
+  @Test
+  void zScoreMatchesNormalQuantiles() {
+    assertThat(SampleEstimator.zScore(0.95)).isCloseTo(Z_95, within(1e-6));
+    assertThat(SampleEstimator.zScore(0.99)).isCloseTo(2.575829, within(1e-6));
+    assertThat(SampleEstimator.zScore(0.5)).isCloseTo(0.674490, within(1e-6));
+  }
+
+  @Test
+  void zScoreRejectsLevelOutsideUnitInterval() {
+    assertThatThrownBy(() -> SampleEstimator.zScore(1.0))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> SampleEstimator.zScore(0.0))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void totalScalesSampleAndUsesHorvitzThompsonVariance() {
+    ConfidenceInterval interval = SampleEstimator.total(50, 250, 10, Z_95);
+
+    // (1 - 0.1) / 0.1^2 * 250 = 22500
+    assertThat(interval.getEstimate()).isCloseTo(500.0, within(1e-9));
+    assertThat(interval.getStandardError()).isCloseTo(150.0, within(1e-9));
+    assertThat(interval.getLow()).isCloseTo(500.0 - Z_95 * 150, within(1e-6));
+    assertThat(interval.getHigh()).isCloseTo(500.0 + Z_95 * 150, within(1e-6));
+    assertThat(interval.getRelativeError()).isCloseTo(Z_95 * 150 / 500, within(1e-6));
+  }
+
+  @Test
+  void totalLowerBoundIsNotBelowObservedSample() {
+    ConfidenceInterval interval = SampleEstimator.total(5, 25, 10, Z_95);
+
+    assertThat(interval.getEstimate()).isCloseTo(50.0, within(1e-9));
+    assertThat(interval.getLow()).isEqualTo(5.0);
+  }
+
+  @Test
+  void fullSampleIsExact() {
+    ConfidenceInterval total = SampleEstimator.total(120, 900, 100, Z_95);
+    ConfidenceInterval ratio = SampleEstimator.ratio(100, 10, 1200, 12, 115, 100, Z_95);
+
+    assertThat(total.getEstimate()).isEqualTo(120.0);
+    assertThat(total.getStandardError()).isZero();
+    assertThat(total.getLow()).isEqualTo(total.getHigh());
+    assertThat(ratio.getEstimate()).isEqualTo(10.0);
+    assertThat(ratio.getStandardError()).isZero();
+  }
+
+  @Test
+  void ratioUsesLinearizedVariance() {
+    ConfidenceInterval interval = SampleEstimator.ratio(100, 10, 1200, 12, 115, 50, Z_95);
+
+    // 1200 - 2 * 10 * 115 + 10^2 * 12 = 100; sqrt(0.5 * 100) / 10
+    assertThat(interval.getEstimate()).isCloseTo(10.0, within(1e-9));
+    assertThat(interval.getStandardError()).isCloseTo(Math.sqrt(50) / 10, within(1e-9));
+  }
+
+  @Test
+  void ratioWithoutDenominatorIsUndefined() {
+    assertThat(SampleEstimator.ratio(0, 0, 0, 0, 0, 10, Z_95)).isNull();
+  }
+
+  @Test
+  void zeroEstimateWithErrorHasInfiniteRelativeError() {
+    ConfidenceInterval interval = SampleEstimator.ratio(0, 10, 100, 12, 0, 50, Z_95);
+
+    assertThat(interval.getEstimate()).isZero();
+    assertThat(interval.getRelativeError()).isInfinite();
+  }
+
+  @Test
+  void percentForErrorReachesTargetError() {
+    double percent = SampleEstimator.percentForError(1, 0.2, 0.1);
+
+    double pilotOdds = (1 - 0.01) / 0.01;
+    double odds = (1 - percent / 100) / (percent / 100);
+    assertThat(0.2 * Math.sqrt(odds / pilotOdds)).isCloseTo(0.1, within(1e-9));
+  }
+
+  @Test
+  void percentForErrorKeepsPilotOrFallsBackToFullScan() {
+    assertThat(SampleEstimator.percentForError(2, 0.05, 0.1)).isEqualTo(2.0);
+    assertThat(SampleEstimator.percentForError(2, 0.2, 0.0)).isEqualTo(100.0);
+    assertThat(SampleEstimator.percentForError(2, Double.POSITIVE_INFINITY, 0.1))
+        .isEqualTo(100.0);
+  }
+
+  @Test
+  void percentForLatencyScalesLinearlyUpToFullScan() {
+    assertThat(SampleEstimator.percentForLatency(1, 200, 1000)).isEqualTo(5.0);
+    assertThat(SampleEstimator.percentForLatency(10, 10, 1000)).isEqualTo(100.0);
+    assertThat(SampleEstimator.percentForLatency(1, 0, 1000)).isEqualTo(100.0);
+  }
+}
@@ -0,0 +1,154 @@
+package ru.mentee.power.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SnapshotFileTest {
+
+  private static final String SCHEMA = "schema-v1";
+  private static final int HEADER_BYTES = 8;
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void readsWrittenSections() throws IOException {
+    Path path = dir.resolve("snapshot.bin");
+    long[] longs = LongStream.range(0, 10).map(i -> i * i - 3).toArray();
+    short[] shorts = {1, -1, Short.MAX_VALUE, Short.MIN_VALUE};
+    byte[] bytes = {7, 0, -7};
+    List<String> strings = Arrays.asList("MOSCOW", null, "", "Санкт-Петербург");
+
+    try (SnapshotFile.Writer writer = SnapshotFile.create(path)) {
+      writer.longs("longs", longs, 6);
+      writer.shorts("shorts", shorts, shorts.length);
+      writer.bytes("bytes", bytes);
+      writer.strings("strings", strings);
+      writer.finish(SCHEMA);
+    }
+
+    try (SnapshotFile.Reader reader = SnapshotFile.open(path, SCHEMA)) {
+      assertThat(reader.longs("longs")).containsExactly(Arrays.copyOf(longs, 6));
+      assertThat(reader.shorts("shorts")).containsExactly(shorts);
+      assertThat(reader.bytes("bytes")).containsExactly(bytes);
+      assertThat(reader.strings("strings")).containsExactlyElementsOf(strings);
+      assertThat(reader.has("longs")).isTrue();
+      assertThat(reader.has("missing")).isFalse();
+      assertThat(reader.getWrittenAtMillis()).isPositive();
+    }
+  }
+
+  @Test
+  void readsSectionsLargerThanWriteChunk() throws IOException {
+    Path path = dir.resolve("large.bin");
+    long[] longs = LongStream.range(0, 300_000).toArray();
+    byte[] bytes = new byte[3 * (1 << 20) + 5];
+    Arrays.fill(bytes, (byte) 0x5A);
+
+    try (SnapshotFile.Writer writer = SnapshotFile.create(path)) {
+      writer.bytes("bytes", new byte[] {1});
+      writer.longs("longs", longs, longs.length);
+      writer.bytes("large", bytes);
+      writer.finish(SCHEMA);
+    }
+
+    try (SnapshotFile.Reader reader = SnapshotFile.open(path, SCHEMA)) {
+      assertThat(reader.longs("longs")).containsExactly(longs);
+      assertThat(reader.bytes("large")).containsExactly(bytes);
+    }
+  }
+
+  @Test
+  void rejectsCorruptedSection() throws IOException {
+    Path path = writeSample("corrupted-section.bin");
+    flipByte(path, HEADER_BYTES + 3);
+
+    try (SnapshotFile.Reader reader = SnapshotFile.open(path, SCHEMA)) {
+      assertThatThrownBy(() -> reader.longs("longs"))
+          .isInstanceOf(IOException.class)
+          .hasMessageContaining("Checksum mismatch");
+      assertThat(reader.strings("strings")).containsExactly("a", "b");
+    }
+  }
+
+  @Test
+  void rejectsCorruptedCatalogue() throws IOException {
+    Path path = writeSample("corrupted-catalogue.bin");
+    flipByte(path, Files.size(path) - 20);
+
+    assertThatThrownBy(() -> SnapshotFile.open(path, SCHEMA)).isInstanceOf(IOException.class);
+  }
+
+  @Test
+  void rejectsSnapshotOfOtherSchema() throws IOException {
+    Path path = writeSample("schema.bin");
+
+    assertThatThrownBy(() -> SnapshotFile.open(path, "schema-v2"))
+        .isInstanceOf(IOException.class)
+        .hasMessageContaining("Schema changed");
+  }
+
+  @Test
+  void rejectsUnfinishedFile() throws IOException {
+    Path path = dir.resolve("unfinished.bin");
+    try (SnapshotFile.Writer writer = SnapshotFile.create(path)) {
+      writer.longs("longs", new long[] {1, 2, 3}, 3);
+    }
+
+    assertThatThrownBy(() -> SnapshotFile.open(path, SCHEMA)).isInstanceOf(IOException.class);
+  }
+
+  @Test
+  void rejectsTruncatedAndForeignFiles() throws IOException {
+    Path sample = writeSample("truncated.bin");
+    try (RandomAccessFile file = new RandomAccessFile(sample.toFile(), "rw")) {
+      file.setLength(file.length() - 1);
+    }
+    Path foreign = Files.write(dir.resolve("foreign.bin"), new byte[64]);
+    Path tiny = Files.write(dir.resolve("tiny.bin"), new byte[3]);
+
+    assertThatThrownBy(() -> SnapshotFile.open(sample, SCHEMA)).isInstanceOf(IOException.class);
+    assertThatThrownBy(() -> SnapshotFile.open(foreign, SCHEMA)).isInstanceOf(IOException.class);
+    assertThatThrownBy(() -> SnapshotFile.open(tiny, SCHEMA)).isInstanceOf(IOException.class);
+  }
+
+  @Test
+  void rejectsMissingSection() throws IOException {
+    Path path = writeSample("missing.bin");
+
+    try (SnapshotFile.Reader reader = SnapshotFile.open(path, SCHEMA)) {
+      assertThatThrownBy(() -> reader.shorts("shorts"))
+          .isInstanceOf(IOException.class)
+          .hasMessageContaining("no section shorts");
+    }
+  }
+
+  private Path writeSample(String name) throws IOException {
+    Path path = dir.resolve(name);
+    try (SnapshotFile.Writer writer = SnapshotFile.create(path)) {
+      writer.longs("longs", new long[] {10, 20, 30}, 3);
+      writer.strings("strings", List.of("a", "b"));
+      writer.finish(SCHEMA);
+    }
+    return path;
+  }
+
+  private static void flipByte(Path path, long position) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+      file.seek(position);
+      int value = file.read();
+      file.seek(position);
+      file.write(value ^ 0xFF);
+    }
+  }
+}